@@ -0,0 +1,62 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.audio.AudioFeatureExtractor;
+import com.amazon.alexa.avs.audio.AudioFeatures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AudioFeatureExtractor} computing the features of the 10 ms frames of one 100 ms chunk of
+ * microphone audio, which drive the level meter and the endpointer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioFeatureExtractorBenchmark {
+    private static final int FRAME_SAMPLES = 160;
+
+    private final AudioFeatureExtractor extractor = new AudioFeatureExtractor(FRAME_SAMPLES);
+    private final AudioFeatures features = new AudioFeatures();
+    private byte[] chunk;
+
+    @Setup
+    public void setUp() {
+        chunk = Fixtures.lpcmAudio(0.1);
+    }
+
+    @Benchmark
+    public double extractChunk() {
+        double level = 0;
+        for (int offset = 0; offset < chunk.length; offset += extractor.getFrameBytes()) {
+            extractor.extract(chunk, offset, offset, features);
+            level += features.getRms();
+        }
+        return level;
+    }
+}
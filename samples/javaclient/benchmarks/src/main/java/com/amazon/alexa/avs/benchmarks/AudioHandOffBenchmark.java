@@ -0,0 +1,156 @@
+/**
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.audio.AudioRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of handing one chunk of microphone audio from the capture thread to the thread that
+ * uploads it, through an {@link AudioRingBuffer} and through the {@link PipedInputStream} it
+ * replaced, written and flushed per chunk as the capture thread used to.
+ *
+ * An echo thread reads every chunk and writes it back the same way, and the benchmark thread waits
+ * until it has read the chunk back. Each operation is two hand-offs, so a single hand-off, from
+ * the write to the reader seeing the bytes, takes half the time reported.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioHandOffBenchmark {
+    // Six seconds of audio, as AudioCapture keeps
+    private static final int BUFFER_SIZE = 6 * Fixtures.LPCM_BYTES_PER_SECOND;
+
+    @State(Scope.Thread)
+    public static class RingBuffers {
+        private AudioRingBuffer out;
+        private AudioRingBuffer back;
+        private AudioRingBuffer.Reader backReader;
+        private Thread echo;
+        private byte[] chunk;
+        private byte[] read;
+
+        @Setup
+        public void setUp() {
+            chunk = Fixtures.lpcmAudio(0.1);
+            read = new byte[chunk.length];
+            out = new AudioRingBuffer(BUFFER_SIZE);
+            back = new AudioRingBuffer(BUFFER_SIZE);
+            backReader = back.newReader();
+            AudioRingBuffer.Reader outReader = out.newReader();
+            echo = startEcho(outReader, chunk.length, (b, len) -> back.write(b, 0, len));
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            out.close();
+            echo.join();
+            backReader.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Pipes {
+        private PipedOutputStream out;
+        private PipedInputStream backInput;
+        private Thread echo;
+        private byte[] chunk;
+        private byte[] read;
+
+        @Setup
+        public void setUp() throws IOException {
+            chunk = Fixtures.lpcmAudio(0.1);
+            read = new byte[chunk.length];
+            PipedInputStream outInput = new PipedInputStream(BUFFER_SIZE);
+            out = new PipedOutputStream(outInput);
+            backInput = new PipedInputStream(BUFFER_SIZE);
+            PipedOutputStream back = new PipedOutputStream(backInput);
+            echo = startEcho(outInput, chunk.length, (b, len) -> {
+                back.write(b, 0, len);
+                back.flush();
+            });
+        }
+
+        @TearDown
+        public void tearDown() throws IOException, InterruptedException {
+            out.close();
+            echo.join();
+            backInput.close();
+        }
+    }
+
+    @Benchmark
+    public int ringBuffer(RingBuffers state) throws IOException {
+        state.out.write(state.chunk, 0, state.chunk.length);
+        return readFully(state.backReader, state.read);
+    }
+
+    @Benchmark
+    public int pipe(Pipes state) throws IOException {
+        state.out.write(state.chunk, 0, state.chunk.length);
+        state.out.flush();
+        return readFully(state.backInput, state.read);
+    }
+
+    private interface ChunkWriter {
+        void write(byte[] b, int len) throws IOException;
+    }
+
+    private static Thread startEcho(InputStream input, int chunkSize, ChunkWriter writer) {
+        Thread thread = new Thread(() -> {
+            byte[] chunk = new byte[chunkSize];
+            try {
+                while (readFully(input, chunk) == chunkSize) {
+                    writer.write(chunk, chunkSize);
+                }
+            } catch (IOException e) {
+                // The benchmark is over
+            }
+        }, "Echo");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static int readFully(InputStream input, byte[] b) throws IOException {
+        int total = 0;
+        while (total < b.length) {
+            int read = input.read(b, total, b.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
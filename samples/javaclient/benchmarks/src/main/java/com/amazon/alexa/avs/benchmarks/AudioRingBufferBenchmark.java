@@ -0,0 +1,79 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.audio.AudioRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AudioRingBuffer} taking one chunk of microphone audio from the capture thread, alone and
+ * with the chunk read back by a reader, as the upload and the feature extraction each read it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioRingBufferBenchmark {
+    private AudioRingBuffer ringBuffer;
+    private AudioRingBuffer.Reader reader;
+    private byte[] chunk;
+    private byte[] read;
+
+    @Setup
+    public void setUp() {
+        // Six seconds of audio, as AudioCapture keeps
+        ringBuffer = new AudioRingBuffer(6 * Fixtures.LPCM_BYTES_PER_SECOND);
+        reader = ringBuffer.newReader();
+        // One chunk as the microphone delivers it
+        chunk = Fixtures.lpcmAudio(0.1);
+        read = new byte[chunk.length];
+    }
+
+    @TearDown
+    public void tearDown() {
+        reader.close();
+    }
+
+    @Benchmark
+    public long write() {
+        // The reader falls behind here, and skips ahead when it is next read
+        ringBuffer.write(chunk, 0, chunk.length);
+        return ringBuffer.getWritePosition();
+    }
+
+    @Benchmark
+    public int writeAndRead() throws IOException {
+        ringBuffer.write(chunk, 0, chunk.length);
+        int total = 0;
+        while (total < read.length) {
+            total += reader.read(read, total, read.length - total);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.AudioInputFormat;
+import com.amazon.alexa.avs.http.AudioInputStreamContentProvider;
+import com.amazon.alexa.avs.http.BufferPool;
+import com.amazon.alexa.avs.http.CachingContentProvider;
+import com.amazon.alexa.avs.http.ReplayBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CachingContentProvider} reading 3 seconds of audio for the first attempt at sending a
+ * Recognize event, and replaying it for a retry, with its {@link ReplayBuffer} taking chunks from
+ * a pool as AVSClient's does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CachingContentProviderBenchmark {
+    private final BufferPool bufferPool = new BufferPool();
+    private byte[] audio;
+    private CachingContentProvider replayable;
+
+    @Setup
+    public void setUp() {
+        audio = Fixtures.lpcmAudio(3);
+        replayable = newProvider();
+        drain(replayable);
+    }
+
+    @TearDown
+    public void tearDown() {
+        replayable.release();
+    }
+
+    @Benchmark
+    public long firstPass() {
+        CachingContentProvider provider = newProvider();
+        long length = drain(provider);
+        provider.release();
+        return length;
+    }
+
+    @Benchmark
+    public long replay() {
+        return drain(replayable);
+    }
+
+    private CachingContentProvider newProvider() {
+        return new CachingContentProvider(
+                new AudioInputStreamContentProvider(AudioInputFormat.LPCM,
+                        new ByteArrayInputStream(audio)),
+                new ReplayBuffer(bufferPool, ReplayBuffer.DEFAULT_MEMORY_LIMIT));
+    }
+
+    private static long drain(CachingContentProvider provider) {
+        long length = 0;
+        for (ByteBuffer buffer : provider) {
+            length += buffer.remaining();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.AudioInputFormat;
+import com.amazon.alexa.avs.audio.CaptureConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * {@link CaptureConverter} turning a 10 ms block of microphone audio, in the formats USB
+ * microphones commonly capture in, into 16 kHz mono. A 10 ms block per call is real time, so
+ * 10 ms divided by the score is how many microphones one core keeps up with.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CaptureConverterBenchmark {
+    @Param({ "16000", "44100", "48000", "96000" })
+    private int sampleRate;
+
+    @Param({ "1", "2", "6" })
+    private int channels;
+
+    @Param({ "-1", "0" })
+    private int channel;
+
+    private CaptureConverter converter;
+    private byte[] block;
+    private byte[] converted;
+
+    @Setup
+    public void setUp() {
+        AudioFormat input = new AudioFormat(sampleRate, 16, channels, true, false);
+        block = new byte[(sampleRate / 100) * input.getFrameSize()];
+        Random random = new Random(42);
+        for (int i = 0; i < block.length; i += 2) {
+            short sample = (short) (random.nextGaussian() * 3000);
+            block[i] = (byte) sample;
+            block[i + 1] = (byte) (sample >> 8);
+        }
+        converter = new CaptureConverter(input, AudioInputFormat.LPCM.getAudioFormat(), channel,
+                block.length);
+        converted = new byte[converter.getMaxOutputBytes()];
+    }
+
+    @Benchmark
+    public int convert() {
+        return converter.convert(block, 0, block.length, converted, 0);
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.AudioInputFormat;
+import com.amazon.alexa.avs.audio.AudioFeatureExtractor;
+import com.amazon.alexa.avs.audio.AudioFeatures;
+import com.amazon.alexa.avs.audio.SpeechEndpointer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Runs a corpus of recorded utterances through the {@link SpeechEndpointer} in every
+ * {@link SpeechEndpointer.Mode}, and reports where each recording would have stopped and how much
+ * audio would not have been uploaded.
+ *
+ * The arguments are WAV files, or directories of them, in 16 kHz mono 16 bit PCM. A recording may
+ * come with a text file of the same name holding the time its speech ends, in milliseconds; the
+ * report then also gives the time from the end of speech to the endpoint, and counts the
+ * recordings that would have been stopped before their speech ended.
+ *
+ * It is packaged with the benchmarks rather than the client, and runs from their jar with
+ * {@code java -cp target/benchmarks.jar com.amazon.alexa.avs.benchmarks.EndpointerEvaluation}.
+ */
+public class EndpointerEvaluation {
+    private static final AudioFormat FORMAT = AudioInputFormat.LPCM.getAudioFormat();
+    private static final int FRAME_MS = 10;
+    private static final int BYTES_PER_MS =
+            (int) (FORMAT.getFrameRate() * FORMAT.getFrameSize()) / 1000;
+
+    public static void main(String[] args) throws Exception {
+        List<File> recordings = new ArrayList<>();
+        for (String arg : args) {
+            addRecordings(new File(arg), recordings);
+        }
+        if (recordings.isEmpty()) {
+            System.err.println("Usage: EndpointerEvaluation <file.wav or directory>...");
+            System.exit(1);
+        }
+
+        Map<SpeechEndpointer.Mode, Summary> summaries = new EnumMap<>(SpeechEndpointer.Mode.class);
+        for (File recording : recordings) {
+            byte[] audio = readAudio(recording);
+            long speechEndMs = readSpeechEnd(recording);
+            for (SpeechEndpointer.Mode mode : SpeechEndpointer.Mode.values()) {
+                if (mode == SpeechEndpointer.Mode.OFF) {
+                    continue;
+                }
+                Result result = run(mode, audio);
+                summaries.computeIfAbsent(mode, m -> new Summary()).add(result, audio.length,
+                        speechEndMs);
+                System.out.println(String.format("%1$-40s %2$-10s %3$s", recording.getName(),
+                        mode, result.describe(audio.length, speechEndMs)));
+            }
+        }
+
+        System.out.println();
+        for (Map.Entry<SpeechEndpointer.Mode, Summary> entry : summaries.entrySet()) {
+            System.out.println(String.format("%1$-10s %2$s", entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private static Result run(SpeechEndpointer.Mode mode, byte[] audio) {
+        Result result = new Result();
+        SpeechEndpointer endpointer =
+                new SpeechEndpointer(mode, FORMAT.getSampleRate(), (endpoint, position) -> {
+                    result.endpoint = endpoint;
+                    result.position = position;
+                });
+        AudioFeatureExtractor extractor = new AudioFeatureExtractor(FRAME_MS * BYTES_PER_MS / 2);
+        AudioFeatures features = new AudioFeatures();
+        int frameBytes = extractor.getFrameBytes();
+        endpointer.onAudioStarted();
+        for (int offset = 0; ((offset + frameBytes) <= audio.length) && (result.endpoint == null);
+                offset += frameBytes) {
+            extractor.extract(audio, offset, offset, features);
+            endpointer.onAudioFeatures(features);
+        }
+        endpointer.onAudioEnded();
+        return result;
+    }
+
+    private static void addRecordings(File file, List<File> recordings) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    addRecordings(child, recordings);
+                }
+            }
+        } else if (file.getName().toLowerCase().endsWith(".wav")) {
+            recordings.add(file);
+        }
+    }
+
+    private static byte[] readAudio(File recording)
+            throws IOException, UnsupportedAudioFileException {
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(recording);
+                InputStream pcm = AudioSystem.getAudioInputStream(FORMAT, source)) {
+            return IOUtils.toByteArray(pcm);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedAudioFileException(
+                    recording + " can't be converted to " + FORMAT + ": " + e.getMessage());
+        }
+    }
+
+    private static long readSpeechEnd(File recording) throws IOException {
+        String name = recording.getName();
+        File label = new File(recording.getParentFile(),
+                name.substring(0, name.length() - ".wav".length()) + ".txt");
+        if (!label.isFile()) {
+            return -1;
+        }
+        return Long.parseLong(
+                new String(Files.readAllBytes(label.toPath()), StandardCharsets.UTF_8).trim());
+    }
+
+    private static class Result {
+        private SpeechEndpointer.Endpoint endpoint;
+        private long position;
+
+        private String describe(int length, long speechEndMs) {
+            if (endpoint == null) {
+                return String.format("no endpoint in %1$d ms", length / BYTES_PER_MS);
+            }
+            String line = String.format("%1$s at %2$d ms, %3$d ms not uploaded", endpoint,
+                    position / BYTES_PER_MS, (length - position) / BYTES_PER_MS);
+            if (speechEndMs >= 0) {
+                line += String.format(", %1$d ms after the end of speech",
+                        (position / BYTES_PER_MS) - speechEndMs);
+            }
+            return line;
+        }
+    }
+
+    private static class Summary {
+        private int recordings;
+        private int endpoints;
+        private int early;
+        private long audioBytes;
+        private long savedBytes;
+        private long labelled;
+        private long totalDelayMs;
+
+        private void add(Result result, int length, long speechEndMs) {
+            recordings++;
+            audioBytes += length;
+            if (result.endpoint == null) {
+                return;
+            }
+            endpoints++;
+            savedBytes += length - result.position;
+            if (speechEndMs >= 0) {
+                long delayMs = (result.position / BYTES_PER_MS) - speechEndMs;
+                labelled++;
+                totalDelayMs += delayMs;
+                if (delayMs < 0) {
+                    early++;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            String line = String.format("endpoints:%1$d/%2$d audio not uploaded:%3$.1f%%",
+                    endpoints, recordings, (100.0 * savedBytes) / Math.max(1, audioBytes));
+            if (labelled > 0) {
+                line += String.format(" mean ms after end of speech:%1$d cut off early:%2$d",
+                        totalDelayMs / labelled, early);
+            }
+            return line;
+        }
+    }
+}
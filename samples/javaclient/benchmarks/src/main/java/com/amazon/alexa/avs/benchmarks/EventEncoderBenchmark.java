@@ -0,0 +1,70 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.config.ObjectMapperFactory;
+import com.amazon.alexa.avs.http.BufferPool;
+import com.amazon.alexa.avs.http.EventEncoder;
+import com.amazon.alexa.avs.http.PooledContentProvider;
+import com.amazon.alexa.avs.message.request.RequestBody;
+
+import org.codehaus.jackson.map.ObjectWriter;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding the metadata of a Recognize event with {@link EventEncoder} into pooled buffers,
+ * against writing it to a String first, which is what the client used to do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventEncoderBenchmark {
+    private final ObjectWriter writer = ObjectMapperFactory.getObjectWriter();
+    private EventEncoder eventEncoder;
+    private RequestBody recognizeEvent;
+
+    @Setup
+    public void setUp() {
+        eventEncoder = new EventEncoder(new BufferPool());
+        recognizeEvent = Fixtures.recognizeEvent();
+    }
+
+    @Benchmark
+    public long encodePooled() throws IOException {
+        PooledContentProvider content = eventEncoder.encode(recognizeEvent);
+        long length = content.getLength();
+        content.release();
+        return length;
+    }
+
+    @Benchmark
+    public long encodeString() throws IOException {
+        return new StringContentProvider(writer.writeValueAsString(recognizeEvent)).getLength();
+    }
+}
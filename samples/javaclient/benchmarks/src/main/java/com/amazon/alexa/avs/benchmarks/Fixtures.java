@@ -0,0 +1,157 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.AVSAPIConstants;
+import com.amazon.alexa.avs.SpeechProfile;
+import com.amazon.alexa.avs.http.mock.MultipartResponse;
+import com.amazon.alexa.avs.message.request.RequestBody;
+import com.amazon.alexa.avs.message.request.RequestFactory;
+import com.amazon.alexa.avs.message.request.context.AlertsStatePayload;
+import com.amazon.alexa.avs.message.request.context.PlaybackStatePayload;
+import com.amazon.alexa.avs.message.request.context.SpeechStatePayload;
+import com.amazon.alexa.avs.message.request.context.VolumeStatePayload;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Realistic messages for the benchmarks to work on, generated with a fixed seed so every run
+ * sees the same bytes.
+ */
+final class Fixtures {
+    static final String BOUNDARY = "------abcde123";
+
+    // 16kHz, 16 bit, mono
+    static final int LPCM_BYTES_PER_SECOND = 32000;
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param seconds
+     * @return Speech-like LPCM audio: a tone with noise on top, little endian.
+     */
+    static byte[] lpcmAudio(double seconds) {
+        Random random = new Random(42);
+        int samples = (int) (seconds * LPCM_BYTES_PER_SECOND) / 2;
+        byte[] audio = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            double tone = Math.sin((2 * Math.PI * 220 * i) / 16000) * 6000;
+            short sample = (short) (tone + (random.nextGaussian() * 800));
+            audio[2 * i] = (byte) sample;
+            audio[(2 * i) + 1] = (byte) (sample >> 8);
+        }
+        return audio;
+    }
+
+    /**
+     * @param bytes
+     * @return Incompressible bytes standing in for MP3 audio.
+     */
+    static byte[] mp3Audio(int bytes) {
+        byte[] audio = new byte[bytes];
+        new Random(7).nextBytes(audio);
+        return audio;
+    }
+
+    /**
+     * @return The event the client sends when the user starts speaking.
+     */
+    static RequestBody recognizeEvent() {
+        return RequestFactory.createSpeechRecognizerRecognizeRequest(
+                UUID.randomUUID().toString(), SpeechProfile.CLOSE_TALK,
+                "AUDIO_L16_RATE_16000_CHANNELS_1",
+                new PlaybackStatePayload("amzn1.as-ct.v1.#ASIN#B00000000", 123456, "PLAYING"),
+                new SpeechStatePayload("amzn1.as-tt.v1.ThirdPartySdkSpeechlet#ACRI#1", 4000,
+                        "FINISHED"),
+                new AlertsStatePayload(Collections.emptyList(), Collections.emptyList()),
+                new VolumeStatePayload(50, false));
+    }
+
+    /**
+     * @return The JSON of a Speak directive.
+     */
+    static String speakDirective(String contentId) {
+        return directive(AVSAPIConstants.SpeechSynthesizer.NAMESPACE,
+                AVSAPIConstants.SpeechSynthesizer.Directives.Speak.NAME, speakPayload(contentId));
+    }
+
+    static String speakPayload(String contentId) {
+        return "{\"url\":\"cid:" + contentId + "\",\"format\":\"AUDIO_MPEG\","
+                + "\"token\":\"amzn1.as-tt.v1.ThirdPartySdkSpeechlet#ACRI#" + contentId + "\"}";
+    }
+
+    /**
+     * @return The response to a Recognize event: a Speak directive with 3 seconds of MP3 audio.
+     */
+    static byte[] ttsResponse() throws IOException {
+        return write(new MultipartResponse()
+                .addDirective(speakDirective("DeviceTTSRendererV4_abc"))
+                .addAttachment("DeviceTTSRendererV4_abc", mp3Audio(24 * 1024)));
+    }
+
+    /**
+     * @return A response with several directives and no attachments, such as a volume change
+     *         followed by a playlist.
+     */
+    static byte[] directivesResponse() throws IOException {
+        MultipartResponse response = new MultipartResponse();
+        response.addDirective(directive(AVSAPIConstants.Speaker.NAMESPACE,
+                AVSAPIConstants.Speaker.Directives.SetVolume.NAME, "{\"volume\":30}"));
+        for (int i = 0; i < 4; i++) {
+            response.addDirective(playDirective(i));
+        }
+        return write(response);
+    }
+
+    static String playDirective(int index) {
+        return directive(AVSAPIConstants.AudioPlayer.NAMESPACE,
+                AVSAPIConstants.AudioPlayer.Directives.Play.NAME, playPayload(index));
+    }
+
+    static String playPayload(int index) {
+        return "{\"playBehavior\":\"ENQUEUE\",\"audioItem\":{\"audioItemId\":\"item-" + index
+                        + "\",\"stream\":{\"url\":\"https://example.com/stream/" + index
+                        + ".mp3\",\"streamFormat\":\"AUDIO_MPEG\",\"offsetInMilliseconds\":0,"
+                        + "\"token\":\"token-" + index + "\",\"expectedPreviousToken\":\"token-"
+                        + (index - 1) + "\",\"progressReport\":{"
+                        + "\"progressReportDelayInMilliseconds\":15000,"
+                        + "\"progressReportIntervalInMilliseconds\":60000}}}}";
+    }
+
+    static String directive(String namespace, String name, String payload) {
+        return "{\"directive\":" + message(namespace, name, payload) + "}";
+    }
+
+    /**
+     * @return The JSON of a message without the envelope, as {@link
+     *         com.amazon.alexa.avs.message.Message.MessageDeserializer} sees it.
+     */
+    static String message(String namespace, String name, String payload) {
+        return "{\"header\":{\"namespace\":\"" + namespace + "\",\"name\":\"" + name
+                + "\",\"messageId\":\""
+                + UUID.nameUUIDFromBytes(payload.getBytes(StandardCharsets.UTF_8))
+                + "\",\"dialogRequestId\":\"dialog-1\"},\"payload\":" + payload + "}";
+    }
+
+    private static byte[] write(MultipartResponse response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.writeTo(out, BOUNDARY);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.AVSAPIConstants;
+import com.amazon.alexa.avs.config.ObjectMapperFactory;
+import com.amazon.alexa.avs.http.MessageParser;
+import com.amazon.alexa.avs.message.Message;
+import com.amazon.alexa.avs.message.response.ResponseBody;
+
+import org.codehaus.jackson.map.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning the JSON of a directive into a {@link Message}: through {@link MessageParser}, which is
+ * what the multipart parser calls with the whole directive part, and through
+ * {@link Message.MessageDeserializer} alone on the message inside it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageParserBenchmark {
+    private final Parser parser = new Parser();
+    private final ObjectReader messageReader = ObjectMapperFactory.getObjectReader(Message.class);
+    private byte[] speakDirective;
+    private byte[] playDirective;
+    private byte[] speakMessage;
+    private byte[] playMessage;
+
+    @Setup
+    public void setUp() {
+        String contentId = "DeviceTTSRendererV4_abc";
+        speakDirective = Fixtures.speakDirective(contentId).getBytes(StandardCharsets.UTF_8);
+        playDirective = Fixtures.playDirective(1).getBytes(StandardCharsets.UTF_8);
+        speakMessage = Fixtures.message(AVSAPIConstants.SpeechSynthesizer.NAMESPACE,
+                AVSAPIConstants.SpeechSynthesizer.Directives.Speak.NAME,
+                Fixtures.speakPayload(contentId)).getBytes(StandardCharsets.UTF_8);
+        playMessage = Fixtures.message(AVSAPIConstants.AudioPlayer.NAMESPACE,
+                AVSAPIConstants.AudioPlayer.Directives.Play.NAME, Fixtures.playPayload(1))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ResponseBody parseSpeak() throws IOException {
+        return parser.parse(speakDirective);
+    }
+
+    @Benchmark
+    public ResponseBody parsePlay() throws IOException {
+        return parser.parse(playDirective);
+    }
+
+    @Benchmark
+    public Message deserializeSpeak() throws IOException {
+        return messageReader.readValue(speakMessage);
+    }
+
+    @Benchmark
+    public Message deserializePlay() throws IOException {
+        return messageReader.readValue(playMessage);
+    }
+
+    /**
+     * Exposes the parsing the multipart parser does on every directive part.
+     */
+    private static class Parser extends MessageParser {
+        private ResponseBody parse(byte[] bytes) throws IOException {
+            return parse(bytes, ResponseBody.class);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.AudioInputFormat;
+import com.amazon.alexa.avs.http.AudioInputStreamContentProvider;
+import com.amazon.alexa.avs.http.BufferPool;
+import com.amazon.alexa.avs.http.CachingContentProvider;
+import com.amazon.alexa.avs.http.EventEncoder;
+import com.amazon.alexa.avs.http.MultipartContentProvider;
+import com.amazon.alexa.avs.http.PooledContentProvider;
+import com.amazon.alexa.avs.message.request.RequestBody;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and iterating the {@link MultipartContentProvider} of a Recognize event the way
+ * AVSClient does: pooled JSON metadata, followed by 3 seconds of LPCM audio read from a stream.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultipartContentProviderBenchmark {
+    private final BufferPool bufferPool = new BufferPool();
+    private EventEncoder eventEncoder;
+    private RequestBody recognizeEvent;
+    private byte[] audio;
+
+    @Setup
+    public void setUp() {
+        eventEncoder = new EventEncoder(bufferPool);
+        recognizeEvent = Fixtures.recognizeEvent();
+        audio = Fixtures.lpcmAudio(3);
+    }
+
+    /**
+     * @return The number of bytes that would be written to the stream.
+     */
+    @Benchmark
+    public long iterateRecognizeUpload() throws IOException {
+        PooledContentProvider metadata = eventEncoder.encode(recognizeEvent);
+        MultipartContentProvider multipart = new MultipartContentProvider();
+        multipart.addPart("metadata", metadata);
+        multipart.addPart("audio", new CachingContentProvider(new AudioInputStreamContentProvider(
+                AudioInputFormat.LPCM, new ByteArrayInputStream(audio))));
+
+        long length = 0;
+        for (ByteBuffer buffer : multipart) {
+            length += buffer.remaining();
+        }
+        metadata.release();
+        return length;
+    }
+}
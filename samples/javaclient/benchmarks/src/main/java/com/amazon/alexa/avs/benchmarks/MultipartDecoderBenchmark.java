@@ -0,0 +1,83 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.http.MultipartDecoder;
+
+import org.apache.commons.fileupload.MultipartStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting a Speak response into its parts with {@link MultipartDecoder}, against the
+ * commons-fileupload {@link MultipartStream} with the 512 byte buffer MultipartParser used to
+ * give it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultipartDecoderBenchmark {
+    private final byte[] boundary = Fixtures.BOUNDARY.getBytes(StandardCharsets.US_ASCII);
+    private byte[] ttsResponse;
+
+    @Setup
+    public void setUp() throws IOException {
+        ttsResponse = Fixtures.ttsResponse();
+    }
+
+    @Benchmark
+    public long multipartDecoder() throws IOException {
+        MultipartDecoder decoder =
+                new MultipartDecoder(new ByteArrayInputStream(ttsResponse), boundary);
+        long length = 0;
+        boolean hasNext = decoder.skipPreamble();
+        while (hasNext) {
+            decoder.readHeaders();
+            length += decoder.getContentType().length();
+            length += decoder.readBodyData(NullOutputStream.NULL_OUTPUT_STREAM);
+            hasNext = decoder.readBoundary();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public long multipartStream() throws IOException {
+        MultipartStream stream =
+                new MultipartStream(new ByteArrayInputStream(ttsResponse), boundary, 512, null);
+        long length = 0;
+        boolean hasNext = stream.skipPreamble();
+        while (hasNext) {
+            length += stream.readHeaders().length();
+            length += stream.readBodyData(NullOutputStream.NULL_OUTPUT_STREAM);
+            hasNext = stream.readBoundary();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.benchmarks;
+
+import com.amazon.alexa.avs.http.MultipartParser;
+import com.amazon.alexa.avs.http.MultipartParser.MultipartParserConsumer;
+import com.amazon.alexa.avs.message.response.Directive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MultipartParser#parseStream(InputStream, String)} on the responses AVS sends most: a
+ * Speak directive with its audio, and a batch of directives without attachments.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultipartParserBenchmark {
+    private byte[] ttsResponse;
+    private byte[] directivesResponse;
+    private MultipartParser parser;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        this.blackhole = blackhole;
+        ttsResponse = Fixtures.ttsResponse();
+        directivesResponse = Fixtures.directivesResponse();
+        parser = new MultipartParser(new MultipartParserConsumer() {
+            @Override
+            public void onDirective(Directive directive) {
+                MultipartParserBenchmark.this.blackhole.consume(directive);
+            }
+
+            @Override
+            public void onDirectiveAttachment(String contentId, InputStream attachmentContent) {
+                MultipartParserBenchmark.this.blackhole.consume(attachmentContent);
+            }
+        });
+    }
+
+    @Benchmark
+    public void parseTtsResponse() throws IOException {
+        parser.parseStream(new ByteArrayInputStream(ttsResponse), Fixtures.BOUNDARY);
+    }
+
+    @Benchmark
+    public void parseDirectivesResponse() throws IOException {
+        parser.parseStream(new ByteArrayInputStream(directivesResponse), Fixtures.BOUNDARY);
+    }
+}
@@ -26,6 +26,10 @@ import com.amazon.alexa.avs.message.response.audioplayer.Stream;
 import com.amazon.alexa.avs.message.response.speaker.SetMute;
 import com.amazon.alexa.avs.message.response.speaker.VolumePayload;
 import com.amazon.alexa.avs.message.response.speechsynthesizer.Speak;
+import com.amazon.alexa.avs.metrics.Counter;
+import com.amazon.alexa.avs.metrics.Histogram;
+import com.amazon.alexa.avs.metrics.InteractionTracer.Stage;
+import com.amazon.alexa.avs.metrics.MetricsRegistry;
 
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
@@ -44,7 +48,20 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.AudioDevice;
+import javazoom.jl.player.FactoryRegistry;
 import javazoom.jl.player.Player;
 import uk.co.caprica.vlcj.component.AudioMediaPlayerComponent;
 import uk.co.caprica.vlcj.player.MediaPlayer;
@@ -60,6 +77,9 @@ public class AVSAudioPlayer {
     private AudioMediaPlayerComponent audioPlayer;
     // queue of listen directive media
     private final Queue<Stream> playQueue;
+    // Changes the play queue one task at a time, so that directives and the actions deferred
+    // until pending events are handled don't interleave
+    private final ExecutorService playQueueExecutor;
     // queue of speak directive media
     private final Queue<SpeakItem> speakQueue;
     // Cache of URLs associated with the current AVSPlayItem/stream
@@ -72,10 +92,14 @@ public class AVSAudioPlayer {
     private Thread alarmThread;
     // Speaker thread
     private Thread playThread;
-    // Object on which to lock
-    private Object playLock = new Object();
+    // Held while audio is played through the default audio player
+    private final ReentrantLock playLock = new ReentrantLock();
+    // Signalled when the audio being played through the default audio player has finished
+    private final Condition playFinished = playLock.newCondition();
     // How long the thread should block on waiting for audio to finish playing
     private static final int TIMEOUT_IN_MS = 3000;
+    // How long to wait for pending events to be handled before moving on to the next item
+    private static final int PENDING_EVENTS_TIMEOUT_IN_S = 15;
 
     // VLCJ volumes are between 0-200. Alexa volumes are from 0-100. These constants are used to
     // convert and limit volume values.
@@ -130,12 +154,19 @@ public class AVSAudioPlayer {
 
     private boolean currentlyMuted;
 
+    private final Counter stutterCount = new Counter();
+    private final Histogram stutterDurations = Histogram.latencyMillis();
+    private final Histogram speechStartLatencies = Histogram.latencyMillis();
+    private final Histogram mediaStartLatencies = Histogram.latencyMillis();
+
     public AVSAudioPlayer(AVSController controller) {
         this.controller = controller;
         resLoader = Thread.currentThread().getContextClassLoader();
         timer = new AudioPlayerTimer();
         waitForPlaybackFinished = false;
-        playQueue = new LinkedList<Stream>();
+        playQueue = new ConcurrentLinkedQueue<Stream>();
+        playQueueExecutor =
+                Executors.newSingleThreadExecutor(TaskExecutor.threadFactory("PlayQueueThread"));
         speakQueue = new LinkedList<SpeakItem>();
         streamUrls = new HashSet<String>();
         attemptedUrls = new HashSet<String>();
@@ -157,6 +188,23 @@ public class AVSAudioPlayer {
         listeners = new HashSet<>();
     }
 
+    /**
+     * Register the number and duration of playback stutters, and the time from being asked to
+     * play speech or media to playing it.
+     *
+     * @param registry
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register("avs_audio_player_stutters_total",
+                "Times media playback stopped to buffer", stutterCount);
+        registry.register("avs_audio_player_stutter_duration_ms",
+                "Time media playback was stopped to buffer", stutterDurations);
+        String name = "avs_audio_player_start_latency_ms";
+        String help = "Time from being asked to play to playing";
+        registry.register(name, help, speechStartLatencies, "player", "speech");
+        registry.register(name, help, mediaStartLatencies, "player", "media");
+    }
+
     public void registerAlexaSpeechListener(AlexaSpeechListener listener) {
         listeners.add(listener);
     }
@@ -174,11 +222,13 @@ public class AVSAudioPlayer {
     public void handlePlay(Play play) throws DirectiveHandlingException {
         AudioItem item = play.getAudioItem();
         if (play.getPlayBehavior() == Play.PlayBehavior.REPLACE_ALL) {
-            clearAll();
-            // if already playing, transition to stopped and send PlaybackStopped event
-            audioPlayerStateMachine.playReplaceAll();
+            updatePlayQueue(() -> {
+                clearAll();
+                // if already playing, transition to stopped and send PlaybackStopped event
+                audioPlayerStateMachine.playReplaceAll();
+            });
         } else if (play.getPlayBehavior() == Play.PlayBehavior.REPLACE_ENQUEUED) {
-            clearEnqueued();
+            updatePlayQueue(this::clearEnqueued);
         }
 
         Stream stream = item.getStream();
@@ -197,14 +247,14 @@ public class AVSAudioPlayer {
                         StandardCopyOption.REPLACE_EXISTING);
 
                 stream.setUrl(tmp.getAbsolutePath());
-                add(stream);
+                updatePlayQueue(() -> add(stream));
             } catch (IOException e) {
                 log.error("Error while saving audio to a file", e);
                 throw new DirectiveHandlingException(ExceptionType.INTERNAL_ERROR,
                         "Error saving attached content to disk, unable to handle Play directive.");
             }
         } else {
-            add(stream);
+            updatePlayQueue(() -> add(stream));
         }
     }
 
@@ -216,13 +266,15 @@ public class AVSAudioPlayer {
     }
 
     public void handleClearQueue(ClearQueue clearQueue) {
-        if (clearQueue.getClearBehavior() == ClearQueue.ClearBehavior.CLEAR_ALL) {
-            clearAll();
-            audioPlayerStateMachine.clearQueueAll();
-        } else {
-            clearEnqueued();
-            audioPlayerStateMachine.clearQueueEnqueued();
-        }
+        updatePlayQueue(() -> {
+            if (clearQueue.getClearBehavior() == ClearQueue.ClearBehavior.CLEAR_ALL) {
+                clearAll();
+                audioPlayerStateMachine.clearQueueAll();
+            } else {
+                clearEnqueued();
+                audioPlayerStateMachine.clearQueueEnqueued();
+            }
+        });
     }
 
     public void handleSetVolume(VolumePayload volumePayload) {
@@ -259,9 +311,14 @@ public class AVSAudioPlayer {
 
             private boolean isPaused;
 
+            private long mediaStartNanos;
+
+            private long stutterStartNanos;
+
             @Override
             public void newMedia(MediaPlayer mediaPlayer) {
                 log.debug("newMedia: {}", mediaPlayer.mrl());
+                mediaStartNanos = System.nanoTime();
                 playbackStartedSuccessfully = false;
                 bufferUnderrunInProgress = false;
             }
@@ -294,6 +351,8 @@ public class AVSAudioPlayer {
                 if (playbackStartedSuccessfully && !bufferUnderrunInProgress) {
                     // We started buffering mid playback
                     bufferUnderrunInProgress = true;
+                    stutterCount.increment();
+                    stutterStartNanos = System.nanoTime();
                     long startOffset = 0;
                     startOffset = stream.getOffsetInMilliseconds();
                     playbackStutterStartedOffsetInMilliseconds =
@@ -305,6 +364,7 @@ public class AVSAudioPlayer {
                 if (bufferUnderrunInProgress && newCache >= 100.0f) {
                     // We are fully buffered after a buffer underrun event
                     bufferUnderrunInProgress = false;
+                    stutterDurations.record(millisSince(stutterStartNanos));
                     audioPlayerStateMachine.playbackStutterFinished();
                     startTimerAndProgressReporter();
                 }
@@ -312,6 +372,7 @@ public class AVSAudioPlayer {
                 if (!playbackStartedSuccessfully && newCache >= 100.0f) {
                     // We have successfully buffered the first time and started playback
                     playbackStartedSuccessfully = true;
+                    mediaStartLatencies.record(millisSince(mediaStartNanos));
 
                     long offset = stream.getOffsetInMilliseconds();
 
@@ -374,26 +435,21 @@ public class AVSAudioPlayer {
                 }
 
                 // wait for any pending events to finish(playbackStarted/progressReport)
-                while (controller.eventRunning()) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (Exception e) {
-                    }
-                }
-
-                // remove the item from the queue since it has finished playing
-                playQueue.poll();
+                afterPendingEvents("PlaybackFinishedThread", playQueue.peek(), () -> {
+                    // remove the item from the queue since it has finished playing
+                    playQueue.poll();
 
-                stopTimerAndProgressReporter();
-                audioPlayerStateMachine.playbackNearlyFinished();
-                audioPlayerStateMachine.playbackFinished();
-
-                // unblock playback now that playbackFinished has been sent
-                waitForPlaybackFinished = false;
-                if (!playQueue.isEmpty()) {
-                    // start playback if it wasn't the last item
-                    startPlayback();
-                }
+                    stopTimerAndProgressReporter();
+                    audioPlayerStateMachine.playbackNearlyFinished();
+                    audioPlayerStateMachine.playbackFinished();
+
+                    // unblock playback now that playbackFinished has been sent
+                    waitForPlaybackFinished = false;
+                    if (!playQueue.isEmpty()) {
+                        // start playback if it wasn't the last item
+                        startPlayback();
+                    }
+                });
             }
 
             @Override
@@ -410,15 +466,11 @@ public class AVSAudioPlayer {
                 }
 
                 // wait for any pending events to finish(playbackStarted/progressReport)
-                while (controller.eventRunning()) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (Exception e) {
-                    }
-                }
-                playQueue.clear();
-                stopTimerAndProgressReporter();
-                audioPlayerStateMachine.playbackFailed();
+                afterPendingEvents("PlaybackFailedThread", playQueue.peek(), () -> {
+                    playQueue.clear();
+                    stopTimerAndProgressReporter();
+                    audioPlayerStateMachine.playbackFailed();
+                });
             }
         });
     }
@@ -556,41 +608,36 @@ public class AVSAudioPlayer {
             return;
         }
 
-        Thread thread = new Thread() {
-
-            @Override
-            public void run() {
-                // wait for any speech to complete before starting playback
-                // also wait for playbackFinished to be called after getNextItem
-                while (!speakQueue.isEmpty() || waitForPlaybackFinished) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        log.error("Interupted while waiting to start playback", e);
-                    }
+        TaskExecutor.start("PlaybackThread", () -> {
+            // wait for any speech to complete before starting playback
+            // also wait for playbackFinished to be called after getNextItem
+            while (!speakQueue.isEmpty() || waitForPlaybackFinished) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    log.error("Interupted while waiting to start playback", e);
                 }
+            }
 
-                Stream stream = playQueue.peek();
+            Stream stream = playQueue.peek();
 
-                if (stream == null) {
-                    // if a stop/clearQueue came down before we started
-                    return;
-                }
+            if (stream == null) {
+                // if a stop/clearQueue came down before we started
+                return;
+            }
 
-                latestStreamToken = stream.getToken();
+            latestStreamToken = stream.getToken();
 
-                if (!playItem(stream)) {
-                    // an error will be reported from the vlcj listener
-                    return;
-                }
+            if (!playItem(stream)) {
+                // an error will be reported from the vlcj listener
+                return;
+            }
 
-                if (isSpeaking() || isAlarming()) {
-                    // pause if Alexa is speaking or there is an active alert.
-                    interruptContent();
-                }
+            if (isSpeaking() || isAlarming()) {
+                // pause if Alexa is speaking or there is an active alert.
+                interruptContent();
             }
-        };
-        thread.start();
+        });
     }
 
     /**
@@ -671,25 +718,30 @@ public class AVSAudioPlayer {
         controller
                 .sendRequest(RequestFactory.createSpeechSynthesizerSpeechStartedEvent(latestToken));
 
-        Thread thread = new Thread() {
-            @Override
-            public void run() {
-                synchronized (playLock) {
-                    try {
-                        InputStream inpStream = speak.getAudio();
-                        interruptAlertsAndContent();
-                        play(inpStream);
-                        while (inpStream.available() > 0) {
-                            playLock.wait(TIMEOUT_IN_MS);
-                        }
-                    } catch (InterruptedException | IOException e) {
+        TaskExecutor.start("SpeechThread", () -> {
+            playLock.lock();
+            try {
+                try {
+                    long start = System.nanoTime();
+                    InputStream inpStream = speak.getAudio();
+                    interruptAlertsAndContent();
+                    // The audio may still be arriving, so its available bytes say nothing about
+                    // whether it has been played
+                    CountDownLatch played = play(inpStream, () -> {
+                        speechStartLatencies.record(millisSince(start));
+                        controller.getInteractionTracer().mark(Stage.FIRST_AUDIO_PLAYED);
+                    });
+                    while (played.getCount() > 0) {
+                        playFinished.await(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS);
                     }
-
-                    finishedSpeechItem();
+                } catch (InterruptedException e) {
                 }
+
+                finishedSpeechItem();
+            } finally {
+                playLock.unlock();
             }
-        };
-        thread.start();
+        });
     }
 
     /**
@@ -714,7 +766,7 @@ public class AVSAudioPlayer {
     /**
      * Clear the queue of items to play, but keep the most recent item.
      */
-    public void clearEnqueued() {
+    private void clearEnqueued() {
         // save the top item
         Stream top = playQueue.poll();
         // clear the queue and re-add the top item
@@ -727,7 +779,7 @@ public class AVSAudioPlayer {
     /**
      * Clear all media scheduled to play, including items currently playing
      */
-    public void clearAll() {
+    private void clearAll() {
         // stop playback and clear all
         stop();
         playQueue.clear();
@@ -762,6 +814,61 @@ public class AVSAudioPlayer {
         progressReporter.stop();
     }
 
+    /**
+     * Change the play queue on the thread that makes every change to it, and wait for the change
+     * to be made.
+     *
+     * @param update
+     */
+    private void updatePlayQueue(Runnable update) {
+        try {
+            playQueueExecutor.submit(update).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Run the action once every AudioPlayer event sent so far has been handled by AVS, or the wait
+     * has timed out. The wait is on a thread of its own, so that the media player's event thread
+     * is not held up by events that are slow to be handled, such as events retried while offline.
+     * The action then changes the play queue like a directive would, unless the stream it was
+     * started for is no longer the one playing, because a directive replaced or cleared it
+     * meanwhile.
+     *
+     * @param name
+     *            The name of the thread.
+     * @param stream
+     *            The stream at the head of the play queue.
+     * @param action
+     */
+    private void afterPendingEvents(String name, Stream stream, Runnable action) {
+        TaskExecutor.start(name, () -> {
+            try {
+                controller.awaitPendingEvents(AVSAPIConstants.AudioPlayer.NAMESPACE)
+                        .get(PENDING_EVENTS_TIMEOUT_IN_S, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                log.warn("Timed out waiting for pending events to finish");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // awaitPendingEvents never completes exceptionally
+            }
+            playQueueExecutor.execute(() -> {
+                if (playQueue.peek() != stream) {
+                    log.info("Skipping the end of a stream that is no longer playing");
+                    return;
+                }
+                action.run();
+            });
+        });
+    }
+
     /**
      * Get the playback state of the media player
      */
@@ -856,27 +963,24 @@ public class AVSAudioPlayer {
             } else {
                 alertState = AlertState.PLAYING;
 
-                alarmThread = new Thread() {
-                    @Override
-                    public void run() {
-                        while (isAlarming() && !isSpeaking()) {
-                            if (Thread.interrupted()) {
-                                break;
-                            }
-                            InputStream inpStream = resLoader.getResourceAsStream("res/alarm.mp3");
-                            synchronized (playLock) {
-                                try {
-                                    play(inpStream);
-                                    while (inpStream.available() > 0) {
-                                        playLock.wait(TIMEOUT_IN_MS);
-                                    }
-                                } catch (InterruptedException | IOException e) {
-                                }
+                alarmThread = TaskExecutor.start("AlarmThread", () -> {
+                    while (isAlarming() && !isSpeaking()) {
+                        if (Thread.interrupted()) {
+                            break;
+                        }
+                        InputStream inpStream = resLoader.getResourceAsStream("res/alarm.mp3");
+                        playLock.lock();
+                        try {
+                            CountDownLatch played = play(inpStream);
+                            while (played.getCount() > 0) {
+                                playFinished.await(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS);
                             }
+                        } catch (InterruptedException e) {
+                        } finally {
+                            playLock.unlock();
                         }
                     }
-                };
-                alarmThread.start();
+                });
             }
         }
     }
@@ -915,32 +1019,55 @@ public class AVSAudioPlayer {
 
     /**
      * Play a generic input stream through the default audio player without blocking
+     *
+     * @return A latch that is released once the stream has been played or playback has stopped
      */
-    private synchronized void play(final InputStream inpStream) {
-        play(inpStream, false);
+    private synchronized CountDownLatch play(final InputStream inpStream) {
+        return play(inpStream, (Runnable) null);
     }
 
     /**
      * Play a generic input stream through the default audio player
      */
     private synchronized void play(final InputStream inpStream, boolean block) {
-        playThread = new Thread() {
-            @Override
-            public void run() {
-                synchronized (playLock) {
-                    try {
-                        speaker = new Player(inpStream);
-                        speaker.play();
-                    } catch (Exception e) {
-                        log.error("An error occurred while trying to play audio", e);
-                    } finally {
-                        IOUtils.closeQuietly(inpStream);
+        play(inpStream, (Runnable) null);
+    }
+
+    /**
+     * Play a generic input stream through the default audio player without blocking, and run the
+     * given listener, if any, once the first decoded frame has been written to the audio device
+     *
+     * @return A latch that is released once the stream has been played or playback has stopped
+     */
+    private synchronized CountDownLatch play(final InputStream inpStream,
+            Runnable firstFrameListener) {
+        CountDownLatch played = new CountDownLatch(1);
+        playThread = TaskExecutor.start("PlayThread", () -> {
+            playLock.lock();
+            try {
+                try {
+                    AudioDevice device = FactoryRegistry.systemRegistry().createAudioDevice();
+                    if (firstFrameListener != null) {
+                        device = new FirstFrameAudioDevice(device, firstFrameListener);
                     }
-                    playLock.notifyAll();
+                    speaker = new Player(inpStream, device);
+                    speaker.play();
+                } catch (Exception e) {
+                    log.error("An error occurred while trying to play audio", e);
+                } finally {
+                    IOUtils.closeQuietly(inpStream);
+                    played.countDown();
                 }
+                playFinished.signalAll();
+            } finally {
+                playLock.unlock();
             }
-        };
-        playThread.start();
+        });
+        return played;
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
     }
 
     private void notifyAlexaSpeechStarted() {
@@ -955,6 +1082,54 @@ public class AVSAudioPlayer {
         }
     }
 
+    /**
+     * An {@link AudioDevice} that runs a listener when the first samples are written to it.
+     */
+    private static class FirstFrameAudioDevice implements AudioDevice {
+        private final AudioDevice device;
+        private Runnable firstFrameListener;
+
+        public FirstFrameAudioDevice(AudioDevice device, Runnable firstFrameListener) {
+            this.device = device;
+            this.firstFrameListener = firstFrameListener;
+        }
+
+        @Override
+        public void open(Decoder decoder) throws JavaLayerException {
+            device.open(decoder);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return device.isOpen();
+        }
+
+        @Override
+        public void write(short[] samples, int offset, int length) throws JavaLayerException {
+            device.write(samples, offset, length);
+            if (firstFrameListener != null) {
+                Runnable listener = firstFrameListener;
+                firstFrameListener = null;
+                listener.run();
+            }
+        }
+
+        @Override
+        public void close() {
+            device.close();
+        }
+
+        @Override
+        public void flush() {
+            device.flush();
+        }
+
+        @Override
+        public int getPosition() {
+            return device.getPosition();
+        }
+    }
+
     private static class ProgressReportDelayEventRunnable implements Runnable {
 
         private final AudioPlayerStateMachine playbackStateMachine;
@@ -14,12 +14,14 @@ package com.amazon.alexa.avs;
 
 import com.amazon.alexa.avs.AVSAudioPlayer.AlexaSpeechListener;
 import com.amazon.alexa.avs.audio.SimpleAudioPlayer;
+import com.amazon.alexa.avs.audio.SpeechEndpointer;
 import com.amazon.alexa.avs.auth.AccessTokenListener;
 import com.amazon.alexa.avs.config.DeviceConfig;
 import com.amazon.alexa.avs.exception.DirectiveHandlingException;
 import com.amazon.alexa.avs.exception.DirectiveHandlingException.ExceptionType;
 import com.amazon.alexa.avs.http.AVSClient;
 import com.amazon.alexa.avs.http.AVSClientFactory;
+import com.amazon.alexa.avs.http.AVSResponse;
 import com.amazon.alexa.avs.http.LinearRetryPolicy;
 import com.amazon.alexa.avs.http.ParsingFailedHandler;
 import com.amazon.alexa.avs.message.request.RequestBody;
@@ -39,6 +41,9 @@ import com.amazon.alexa.avs.message.response.speechsynthesizer.Speak;
 import com.amazon.alexa.avs.message.response.system.SetEndpoint;
 import com.amazon.alexa.avs.message.response.templateruntime.CardHandler;
 import com.amazon.alexa.avs.message.response.templateruntime.RenderTemplate;
+import com.amazon.alexa.avs.metrics.InteractionTracer;
+import com.amazon.alexa.avs.metrics.InteractionTracer.Stage;
+import com.amazon.alexa.avs.metrics.MetricsRegistry;
 import com.amazon.alexa.avs.ui.NotificationsUIHandler;
 import com.amazon.alexa.avs.wakeword.WakeWordDetectedHandler;
 import com.amazon.alexa.avs.wakeword.WakeWordIPC;
@@ -48,6 +53,7 @@ import com.amazon.alexa.avs.wakeword.WakeWordIPCFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -58,9 +64,12 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
@@ -79,8 +88,13 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
     private AVSClient avsClient;
 
     private final DialogRequestIdAuthority dialogRequestIdAuthority;
+    private final InteractionTracer interactionTracer = new InteractionTracer();
+    private final MetricsRegistry metrics = new MetricsRegistry();
     private AlertManager alertManager;
-    private boolean eventRunning = false; // is an event currently being sent
+    // events that have been sent but whose responses have not been handled yet, with their
+    // namespaces
+    private final Map<CompletableFuture<AVSResponse>, String> pendingEvents =
+            new ConcurrentHashMap<>();
 
     private static final AudioInputFormat AUDIO_TYPE = AudioInputFormat.LPCM;
     private static final String START_SOUND = "res/start.mp3";
@@ -115,20 +129,26 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
     private final int WAKE_WORD_RELEASE_TRIES = 5;
     private final int WAKE_WORD_RELEASE_RETRY_DELAY_MS = 1000;
     private final AVSClientFactory avsClientFactory;
+    private final MicrophoneLineFactory microphoneLineFactory;
     private final DirectiveEnqueuer directiveEnqueuer;
     private final DeviceConfig config;
+    private final SpeechEndpointer endpointer;
     private NotificationManager notificationManager;
     private CardHandler cardHandler;
     private ResultListener listener;
 
     public AVSController(AVSAudioPlayerFactory audioFactory, AlertManagerFactory alarmFactory,
             AVSClientFactory avsClientFactory, DialogRequestIdAuthority dialogRequestIdAuthority,
-            WakeWordIPCFactory wakewordIPCFactory, DeviceConfig config) throws Exception {
+            WakeWordIPCFactory wakewordIPCFactory, MicrophoneLineFactory microphoneLineFactory,
+            DeviceConfig config) throws Exception {
 
         this.avsClientFactory = avsClientFactory;
+        this.microphoneLineFactory = microphoneLineFactory;
         this.wakeWordAgentEnabled = config.getWakeWordAgentEnabled();
 
         this.config = config;
+        endpointer = new SpeechEndpointer(config.getEndpointing(),
+                AUDIO_TYPE.getAudioFormat().getSampleRate(), this::onEndpoint);
 
         if (this.wakeWordAgentEnabled) {
             try {
@@ -143,8 +163,6 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
             }
         }
 
-        initializeMicrophone();
-
         // Ensure that we have attempted to finish loading all relevant data from file and the
         // downchannel has been successfully set up before sending synchronize state
         CountDownLatch loadBeforeSync = new CountDownLatch(3);
@@ -180,11 +198,7 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
             }
         };
 
-        this.player = audioFactory.getAudioPlayer(this);
-        this.player.registerAlexaSpeechListener(this);
         this.dialogRequestIdAuthority = dialogRequestIdAuthority;
-        speechRequestAudioPlayerPauseController =
-                new SpeechRequestAudioPlayerPauseController(player);
 
         dependentQueue = new LinkedBlockingDeque<>();
 
@@ -192,10 +206,29 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
 
         directiveEnqueuer = new DirectiveEnqueuer(dialogRequestIdAuthority, dependentQueue,
                 independentQueue, this);
+        directiveEnqueuer.setInteractionTracer(interactionTracer);
+        directiveEnqueuer.registerMetrics(metrics);
 
         avsClient = avsClientFactory.getAVSClient(directiveEnqueuer, this, listener);
+        avsClient.setInteractionTracer(interactionTracer);
+        avsClient.registerMetrics(metrics);
 
-        alertManager = alarmFactory.getAlertManager(this, this, AlertsFileDataStore.getInstance());
+        // Connect to AVS while the microphone and the media player are being set up, rather than
+        // when the first event is sent
+        avsClient.warmUp().thenAccept(millis -> log.info(
+                "Connection to AVS ready {} ms after startup",
+                ManagementFactory.getRuntimeMXBean().getUptime()));
+
+        initializeMicrophone();
+
+        this.player = audioFactory.getAudioPlayer(this);
+        this.player.registerAlexaSpeechListener(this);
+        this.player.registerMetrics(metrics);
+        speechRequestAudioPlayerPauseController =
+                new SpeechRequestAudioPlayerPauseController(player);
+
+        alertManager = alarmFactory.getAlertManager(this, this, new AlertsFileDataStore(config.getDataDirectory()));
+        alertManager.registerMetrics(metrics);
 
         // ensure we notify AVS of playbackStopped on app exit
         Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -203,6 +236,9 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
             public void run() {
                 player.stop();
                 avsClient.shutdown();
+                if (microphone != null) {
+                    microphone.close();
+                }
             }
         });
 
@@ -210,6 +246,11 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
                 new BlockableDirectiveThread(dependentQueue, this, "DependentDirectiveThread");
         independentDirectiveThread =
                 new BlockableDirectiveThread(independentQueue, this, "IndependentDirectiveThread");
+        registerDirectiveQueueMetrics();
+        interactionTracer.getLatencies().forEach((stage, latencies) -> metrics.register(
+                "avs_interaction_stage_ms",
+                "Time from the start of a voice interaction to each of its stages", latencies,
+                "stage", stage.name().toLowerCase()));
 
         lastUserInteractionTimestampSeconds =
                 new AtomicLong(System.currentTimeMillis() / MILLISECONDS_PER_SECOND);
@@ -218,6 +259,19 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
                 TimeUnit.HOURS);
     }
 
+    private void registerDirectiveQueueMetrics() {
+        String depth = "avs_directive_queue_depth";
+        String depthHelp = "Directives waiting to be dispatched";
+        metrics.register(depth, depthHelp, dependentQueue::size, "queue", "dependent");
+        metrics.register(depth, depthHelp, independentQueue::size, "queue", "independent");
+        String wait = "avs_directive_queue_wait_ms";
+        String waitHelp = "Time directives waited to be dispatched";
+        metrics.register(wait, waitHelp, dependentDirectiveThread.getWaitTimes(), "queue",
+                "dependent");
+        metrics.register(wait, waitHelp, independentDirectiveThread.getWaitTimes(), "queue",
+                "independent");
+    }
+
     public void init(ListenHandler listenHandler, NotificationIndicator notificationIndicator,
             CardHandler cardHandler) {
         // Initialize all GUI-related handlers
@@ -227,15 +281,52 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
         this.wakeWordDetectedHandler = listenHandler;
         this.cardHandler = cardHandler;
         this.notificationManager =
-                new NotificationManager(notificationIndicator, new SimpleAudioPlayer());
+                new NotificationManager(notificationIndicator, new SimpleAudioPlayer(),
+                        config.getDataDirectory());
+        notificationManager.registerMetrics(metrics);
 
         alertManager.loadFromDisk(listener);
         notificationManager.loadFromDisk(listener);
     }
 
     private void getMicrophone(AVSController controller) throws LineUnavailableException {
-        controller.microphone = AudioCapture.getAudioHardware(AUDIO_TYPE.getAudioFormat(),
-                new MicrophoneLineFactory());
+        controller.microphone = new AudioCapture(AUDIO_TYPE.getAudioFormat(),
+                controller.microphoneLineFactory);
+        controller.microphone.setInteractionTracer(controller.interactionTracer);
+        controller.microphone.setPreRollMs(config.getPreRollMs());
+        controller.microphone.setCaptureSampleRate(config.getCaptureSampleRate());
+        controller.microphone.setCaptureChannel(config.getCaptureChannel());
+        controller.listenForEndpoint(controller.microphone);
+        if (controller.wakeWordAgentEnabled) {
+            // The wake word agent captures from the line between recordings
+            controller.microphone.setReleaseBetweenRecordings(true);
+        } else {
+            // The line stays open from now on, so recordings start without waiting for it
+            controller.microphone.start();
+        }
+    }
+
+    private void listenForEndpoint(AudioCapture capture) {
+        if (endpointer.getMode() != SpeechEndpointer.Mode.OFF) {
+            capture.addAudioFeatureListener(endpointer);
+        }
+    }
+
+    /**
+     * Stop recording once the end of speech is found on the device, the way a StopCapture
+     * directive would, without waiting for AVS to find it.
+     *
+     * @param endpoint
+     * @param position
+     */
+    private void onEndpoint(SpeechEndpointer.Endpoint endpoint, long position) {
+        interactionTracer.mark(Stage.END_OF_SPEECH_DETECTED);
+        ExpectStopCaptureListener handler = stopCaptureHandler;
+        if (handler != null) {
+            handler.onStopCaptureDirective();
+        } else {
+            stopRecording();
+        }
     }
 
     private void initializeMicrophone() {
@@ -314,6 +405,7 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
 
         try {
             String dialogRequestId = dialogRequestIdAuthority.createNewDialogRequestId();
+            interactionTracer.begin(dialogRequestId);
 
             RequestBody body = RequestFactory.createSpeechRecognizerRecognizeRequest(
                     dialogRequestId, PROFILE, FORMAT, player.getPlaybackState(),
@@ -399,14 +491,27 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
         }
     }
 
-    public void sendRequest(RequestBody body) {
-        eventRunning = true;
+    /**
+     * Send an event to AVS.
+     *
+     * @param body
+     * @return A future that completes once the response to the event has been handled.
+     */
+    public CompletableFuture<AVSResponse> sendRequest(RequestBody body) {
+        CompletableFuture<AVSResponse> response;
         try {
-            avsClient.sendEvent(body);
+            response = avsClient.sendEventAsync(body);
         } catch (Exception e) {
             log.error("Failed to send request", e);
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+            return response;
         }
-        eventRunning = false;
+
+        CompletableFuture<AVSResponse> pending = response;
+        pendingEvents.put(pending, body.getEvent().getNamespace());
+        pending.whenComplete((r, e) -> pendingEvents.remove(pending));
+        return response;
     }
 
     /**
@@ -422,7 +527,22 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
     }
 
     public boolean eventRunning() {
-        return eventRunning;
+        return !pendingEvents.isEmpty();
+    }
+
+    /**
+     * @param namespace
+     * @return A future that completes once every event of the namespace sent so far has been
+     *         handled, whether it succeeded or not.
+     */
+    public CompletableFuture<Void> awaitPendingEvents(String namespace) {
+        CompletableFuture<?>[] pending = pendingEvents
+                .entrySet()
+                .stream()
+                .filter(event -> namespace.equals(event.getValue()))
+                .map(event -> event.getKey().handle((r, e) -> null))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(pending);
     }
 
     @Override
@@ -431,6 +551,7 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
 
         String directiveName = directive.getName();
         log.info("Handling directive: {}.{}", directiveNamespace, directiveName);
+        interactionTracer.mark(Stage.DIRECTIVE_DISPATCHED, directive.getDialogRequestId());
         if (dialogRequestIdAuthority.isCurrentDialogRequestId(directive.getDialogRequestId())) {
             speechRequestAudioPlayerPauseController.dispatchDirective();
         }
@@ -611,6 +732,8 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
 
             avsClient.closeDownchannel();
             avsClient = avsClientFactory.getAVSClient(directiveEnqueuer, this, listener);
+            avsClient.setInteractionTracer(interactionTracer);
+            avsClient.registerMetrics(metrics);
         } catch (MalformedURLException e) {
             log.error("The SetEndpoint payload had a malformed URL");
             throw new DirectiveHandlingException(ExceptionType.UNEXPECTED_INFORMATION_RECEIVED,
@@ -761,5 +884,22 @@ public class AVSController implements RecordingStateListener, AlertHandler, Aler
 
     public void setAudioFileCapture(AudioCapture audioFileCapture) {
         this.audioFileCapture = audioFileCapture;
+        audioFileCapture.setInteractionTracer(interactionTracer);
+        listenForEndpoint(audioFileCapture);
+    }
+
+    /**
+     * @return The tracer that follows voice interactions, with the latency of each of their
+     *         stages so far.
+     */
+    public InteractionTracer getInteractionTracer() {
+        return interactionTracer;
+    }
+
+    /**
+     * @return The metrics of this controller and of the components it drives.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
     }
 }
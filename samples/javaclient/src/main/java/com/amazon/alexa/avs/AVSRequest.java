@@ -14,11 +14,20 @@ package com.amazon.alexa.avs;
 
 import com.amazon.alexa.avs.http.AVSClient.Resource;
 import com.amazon.alexa.avs.http.MultipartParser;
+import com.amazon.alexa.avs.http.RequestPriority;
 import com.amazon.alexa.avs.http.RetryPolicy;
 
 import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Request;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AVSRequest {
     private final Resource resource;
@@ -26,13 +35,36 @@ public class AVSRequest {
     private final RetryPolicy retryPolicy;
     private final MultipartParser multipartParser;
     private final RequestListener requestListener;
+    private final String orderingKey;
+    private final RequestPriority priority;
+    private final long queuedAtNanos;
+    private final long deadlineNanos;
+    private final CompletableFuture<Integer> completion = new CompletableFuture<>();
+    private final List<Runnable> releaseHooks = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean released = new AtomicBoolean();
+    private final List<Runnable> responseHeadersHooks = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean responseHeadersReceived = new AtomicBoolean();
+    private final AtomicInteger failedAttempts = new AtomicInteger();
+    private volatile Request httpRequest;
 
-    public AVSRequest(Resource resource, ContentProvider contentProvider, RetryPolicy retryPolicy, MultipartParser multipartParser, RequestListener requestListener) {
+    public AVSRequest(Resource resource, ContentProvider contentProvider, RetryPolicy retryPolicy, MultipartParser multipartParser, RequestListener requestListener, String orderingKey, RequestPriority priority) {
         this.resource = resource;
         this.contentProvider = contentProvider;
         this.retryPolicy = retryPolicy;
         this.multipartParser = multipartParser;
         this.requestListener = requestListener;
+        this.orderingKey = orderingKey;
+        this.priority = priority;
+        queuedAtNanos = System.nanoTime();
+        deadlineNanos = queuedAtNanos + TimeUnit.MILLISECONDS.toNanos(priority.getTimeToLiveMs());
+    }
+
+    public AVSRequest(Resource resource, ContentProvider contentProvider, RetryPolicy retryPolicy, MultipartParser multipartParser, RequestListener requestListener, String orderingKey) {
+        this(resource, contentProvider, retryPolicy, multipartParser, requestListener, orderingKey, RequestPriority.BACKGROUND);
+    }
+
+    public AVSRequest(Resource resource, ContentProvider contentProvider, RetryPolicy retryPolicy, MultipartParser multipartParser, RequestListener requestListener) {
+        this(resource, contentProvider, retryPolicy, multipartParser, requestListener, null);
     }
 
     public AVSRequest(Resource resource, ContentProvider contentProvider, RetryPolicy retryPolicy, MultipartParser multipartParser) {
@@ -51,6 +83,22 @@ public class AVSRequest {
         return retryPolicy;
     }
 
+    /**
+     * @return The number of attempts at this request that failed so far.
+     */
+    public int getFailedAttempts() {
+        return failedAttempts.get();
+    }
+
+    /**
+     * Record a failed attempt at this request.
+     *
+     * @return The number of attempts that failed so far.
+     */
+    public int onAttemptFailed() {
+        return failedAttempts.incrementAndGet();
+    }
+
     public MultipartParser getMultipartParser() {
         return multipartParser;
     }
@@ -58,4 +106,137 @@ public class AVSRequest {
     public Optional<RequestListener> getRequestListener() {
         return Optional.ofNullable(requestListener);
     }
+
+    /**
+     * Completes with the HTTP status code of the response once the response has been fully
+     * handled, or exceptionally if the request failed after all retries. Cancelling it aborts the
+     * request if it is in flight, or skips it if it has not been sent yet.
+     *
+     * @return the completion of this request.
+     */
+    public CompletableFuture<Integer> getCompletion() {
+        return completion;
+    }
+
+    public boolean isCancelled() {
+        return completion.isCancelled();
+    }
+
+    /**
+     * Cancel this request, aborting the HTTP request if one is in flight.
+     */
+    public void cancel() {
+        completion.cancel(false);
+        Request inFlight = httpRequest;
+        if (inFlight != null) {
+            inFlight.abort(new CancellationException("The request was cancelled"));
+        }
+    }
+
+    /**
+     * Set the HTTP request that is currently in flight for this request, so it can be aborted if
+     * this request is cancelled.
+     *
+     * @param httpRequest
+     */
+    public void setHttpRequest(Request httpRequest) {
+        this.httpRequest = httpRequest;
+        if (isCancelled() && (httpRequest != null)) {
+            httpRequest.abort(new CancellationException("The request was cancelled"));
+        }
+    }
+
+    /**
+     * Requests that share an ordering key are sent to AVS one after another, in the order they
+     * were enqueued. Requests without an ordering key may be sent concurrently with any other
+     * request.
+     *
+     * @return the ordering key of this request, if any.
+     */
+    public Optional<String> getOrderingKey() {
+        return Optional.ofNullable(orderingKey);
+    }
+
+    /**
+     * @return the class of this request, which decides the order requests are sent in.
+     */
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return how long ago this request was created, in milliseconds.
+     */
+    public long getQueuedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedAtNanos);
+    }
+
+    /**
+     * @return how long this request may still wait to be sent, in milliseconds.
+     */
+    public long getRemainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * @return true if this request has waited so long that it is no longer worth sending.
+     */
+    public boolean isExpired() {
+        return (deadlineNanos - System.nanoTime()) <= 0;
+    }
+
+    /**
+     * Register a hook that frees a resource only needed until the response headers arrive, such as
+     * the copy of the content kept for a retry. Hooks run once, when
+     * {@link #responseHeadersReceived()} or {@link #release()} is first called.
+     *
+     * @param hook
+     */
+    public void onResponseHeaders(Runnable hook) {
+        responseHeadersHooks.add(hook);
+        if (responseHeadersReceived.get() && responseHeadersHooks.remove(hook)) {
+            hook.run();
+        }
+    }
+
+    /**
+     * Called once AVS has started responding, after which the request will not be retried.
+     */
+    public void responseHeadersReceived() {
+        if (responseHeadersReceived.compareAndSet(false, true)) {
+            runHooks(responseHeadersHooks);
+        }
+    }
+
+    /**
+     * Register a hook that frees a resource held by this request, such as pooled buffers of its
+     * content. Hooks run once, when {@link #release()} is first called.
+     *
+     * @param hook
+     */
+    public void onRelease(Runnable hook) {
+        releaseHooks.add(hook);
+        if (released.get() && releaseHooks.remove(hook)) {
+            hook.run();
+        }
+    }
+
+    /**
+     * Free the resources held by this request. Called once the request will not be sent (again),
+     * whether it was sent, cancelled or dropped.
+     */
+    public void release() {
+        responseHeadersReceived();
+        if (released.compareAndSet(false, true)) {
+            runHooks(releaseHooks);
+        }
+    }
+
+    private static void runHooks(List<Runnable> hooks) {
+        for (Runnable hook : hooks) {
+            if (hooks.remove(hook)) {
+                hook.run();
+            }
+        }
+    }
 }
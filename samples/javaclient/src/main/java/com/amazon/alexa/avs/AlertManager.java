@@ -13,6 +13,8 @@
 package com.amazon.alexa.avs;
 
 import com.amazon.alexa.avs.message.request.context.AlertsStatePayload;
+import com.amazon.alexa.avs.metrics.Counter;
+import com.amazon.alexa.avs.metrics.MetricsRegistry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +35,9 @@ public class AlertManager implements AlertHandler {
     private final Map<String, AlertScheduler> schedulers;
     private final Set<String> activeAlerts;
     private final DataStore<List<Alert>> dataStore;
+    private final Counter setCount = new Counter();
+    private final Counter deletedCount = new Counter();
+    private final Counter startedCount = new Counter();
 
     private static final Logger log = LoggerFactory.getLogger(AlertManager.class);
 
@@ -81,6 +86,28 @@ public class AlertManager implements AlertHandler {
 
     }
 
+    /**
+     * Register the number of alerts set, deleted and started, and of those scheduled and active.
+     *
+     * @param registry
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register("avs_alerts_set_total", "Alerts set", setCount);
+        registry.register("avs_alerts_deleted_total", "Alerts deleted", deletedCount);
+        registry.register("avs_alerts_started_total", "Alerts that went off", startedCount);
+        registry.register("avs_alerts_scheduled", "Alerts waiting to go off",
+                this::getScheduledCount);
+        registry.register("avs_alerts_active", "Alerts going off", this::getActiveCount);
+    }
+
+    private synchronized int getScheduledCount() {
+        return schedulers.size();
+    }
+
+    private synchronized int getActiveCount() {
+        return activeAlerts.size();
+    }
+
     public synchronized boolean hasAlert(String alertToken) {
         return schedulers.containsKey(alertToken);
     }
@@ -115,6 +142,9 @@ public class AlertManager implements AlertHandler {
     public synchronized void add(final Alert alert, final boolean suppressEvent) {
         final AlertScheduler scheduler = new AlertScheduler(alert, this);
         schedulers.put(alert.getToken(), scheduler);
+        if (!suppressEvent) {
+            setCount.increment();
+        }
         log.debug("Adding alert with token {}", alert.getToken());
         writeCurrentAlertsToDisk(new ResultListener() {
             @Override
@@ -139,6 +169,7 @@ public class AlertManager implements AlertHandler {
         final AlertScheduler scheduler = schedulers.remove(alertToken);
         log.debug("Deleting alert with token {}", alertToken);
         if (scheduler != null) {
+            deletedCount.increment();
             final Alert alert = scheduler.getAlert();
             writeCurrentAlertsToDisk(new ResultListener() {
                 @Override
@@ -178,6 +209,7 @@ public class AlertManager implements AlertHandler {
     @Override
     public synchronized void startAlert(String alertToken) {
         activeAlerts.add(alertToken);
+        startedCount.increment();
         listener.onAlertStarted(alertToken);
         handler.startAlert(alertToken);
     }
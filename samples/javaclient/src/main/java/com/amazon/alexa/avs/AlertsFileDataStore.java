@@ -17,6 +17,7 @@ import com.amazon.alexa.avs.config.ObjectMapperFactory;
 import org.codehaus.jackson.map.ObjectReader;
 import org.codehaus.jackson.type.TypeReference;
 
+import java.io.File;
 import java.util.List;
 
 /**
@@ -24,14 +25,13 @@ import java.util.List;
  */
 public class AlertsFileDataStore extends FileDataStore<List<Alert>> {
     private static final String ALARM_FILE = "alarms.json";
-    private static AlertsFileDataStore sInstance = new AlertsFileDataStore();
 
-    private AlertsFileDataStore() {
-        super(ALARM_FILE);
-    }
-
-    public synchronized static AlertsFileDataStore getInstance() {
-        return sInstance;
+    /**
+     * @param directory
+     *            The directory to keep the alerts in, or null for the working directory.
+     */
+    public AlertsFileDataStore(File directory) {
+        super(new File(directory, ALARM_FILE).getPath());
     }
 
     @Override
@@ -16,11 +16,18 @@ import com.amazon.alexa.avs.auth.AuthSetup;
 import com.amazon.alexa.avs.config.DeviceConfig;
 import com.amazon.alexa.avs.config.DeviceConfigUtils;
 import com.amazon.alexa.avs.http.AVSClientFactory;
+import com.amazon.alexa.avs.metrics.MetricsMBean;
+import com.amazon.alexa.avs.metrics.MetricsRegistry;
+import com.amazon.alexa.avs.metrics.MetricsServer;
 import com.amazon.alexa.avs.ui.graphical.GraphicalUI;
 import com.amazon.alexa.avs.ui.headless.HeadlessUI;
 import com.amazon.alexa.avs.wakeword.WakeWordIPCFactory;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public class App {
+    private static final Logger log = LoggerFactory.getLogger(App.class);
 
     private AVSController controller;
 
@@ -41,11 +48,14 @@ public class App {
     }
 
     public App(DeviceConfig config) throws Exception {
+        // Before anything starts a thread
+        TaskExecutor.configure(config.getThreadMode());
         AuthSetup authSetup = new AuthSetup(config);
         controller =
                 new AVSController(new AVSAudioPlayerFactory(), new AlertManagerFactory(),
-                        getAVSClientFactory(config), DialogRequestIdAuthority.getInstance(),
-                        new WakeWordIPCFactory(), config);
+                        getAVSClientFactory(config), new DialogRequestIdAuthority(),
+                        new WakeWordIPCFactory(), new MicrophoneLineFactory(), config);
+        exposeMetrics(controller.getMetrics(), config);
         if (config.getHeadlessModeEnabled()) {
             new HeadlessUI(controller, authSetup, config);
         } else {
@@ -53,6 +63,30 @@ public class App {
         }
     }
 
+    /**
+     * Expose the metrics through JMX, and to Prometheus on localhost unless the metrics port is 0.
+     * The client runs without them if they can't be exposed.
+     */
+    private void exposeMetrics(MetricsRegistry metrics, DeviceConfig config) {
+        try {
+            MetricsMBean.register(metrics);
+        } catch (Exception e) {
+            log.warn("Could not register the metrics with JMX", e);
+        }
+
+        if (config.getMetricsPort() == 0) {
+            return;
+        }
+        MetricsServer metricsServer = new MetricsServer(metrics, config.getMetricsPort());
+        try {
+            metricsServer.start();
+            log.info("Serving metrics at http://localhost:{}{}", metricsServer.getPort(),
+                    MetricsServer.PATH);
+        } catch (Exception e) {
+            log.warn("Could not serve the metrics on port {}", config.getMetricsPort(), e);
+        }
+    }
+
     protected AVSClientFactory getAVSClientFactory(DeviceConfig config) {
         return new AVSClientFactory(config);
     }
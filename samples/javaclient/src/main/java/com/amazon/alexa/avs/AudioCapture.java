@@ -12,40 +12,78 @@
  */
 package com.amazon.alexa.avs;
 
+import com.amazon.alexa.avs.audio.AudioFeatureExtractor;
+import com.amazon.alexa.avs.audio.AudioFeatureListener;
+import com.amazon.alexa.avs.audio.AudioFeatures;
+import com.amazon.alexa.avs.audio.AudioRingBuffer;
+import com.amazon.alexa.avs.audio.CaptureConverter;
+import com.amazon.alexa.avs.audio.CaptureFormatNegotiator;
+import com.amazon.alexa.avs.metrics.InteractionTracer;
+import com.amazon.alexa.avs.metrics.InteractionTracer.Stage;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.TargetDataLine;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Keeps the microphone line open and writes everything it captures into an
+ * {@link AudioRingBuffer}, from which every consumer reads at its own pace: the stream of each
+ * recording, the features that drive the visualizer and the endpointer, and any local detector.
+ *
+ * Since the line is already open when a recording starts, nothing is lost to opening it, and a
+ * recording can start with the audio captured just before it, so the first syllable of an
+ * utterance that began before the trigger is not cut off.
+ *
+ * The line is opened in the format the microphone captures in, as chosen by the
+ * {@link CaptureFormatNegotiator}, and converted to the format of the recordings by a
+ * {@link CaptureConverter} on the capture thread.
+ *
+ * When another process must be able to capture from the microphone between recordings, such as a
+ * wake word agent on a device that cannot be shared, the capture can instead release the line at
+ * the end of every recording and open it again for the next one. Recordings then have no pre-roll.
+ */
 public class AudioCapture {
-    private static AudioCapture sAudioCapture;
     private TargetDataLine microphoneLine;
     private AudioFormat audioFormat;
-    private AudioBufferThread thread;
+    private Thread thread;
+    private AudioRingBuffer ringBuffer;
+    private Recording recording;
+    private int preRollBytes;
+    private int captureSampleRate;
+    private int captureChannel = CaptureConverter.MIX_CHANNELS;
+    private boolean releaseBetweenRecordings;
+    private volatile InteractionTracer interactionTracer;
+    private final CopyOnWriteArrayList<AudioFeatureListener> featureListeners =
+            new CopyOnWriteArrayList<>();
 
     private static final int BUFFER_SIZE_IN_SECONDS = 6;
+    private static final int FEATURE_FRAME_MS = 10;
 
     private int BUFFER_SIZE_IN_BYTES;
 
     private static final Logger log = LoggerFactory.getLogger(AudioCapture.class);
 
-    public static AudioCapture getAudioHardware(final AudioFormat audioFormat,
-                                                MicrophoneLineFactory microphoneLineFactory) throws LineUnavailableException {
-        if (sAudioCapture == null) {
-            sAudioCapture = new AudioCapture(audioFormat, microphoneLineFactory);
-        }
-        return sAudioCapture;
-    }
-
     protected AudioCapture() {}
 
-    private AudioCapture(final AudioFormat audioFormat, MicrophoneLineFactory microphoneLineFactory)
+    /**
+     * Creates a capture on the line from the given factory. Each device has a capture of its own,
+     * so devices in one JVM never share a microphone or the audio captured before a recording.
+     *
+     * @param audioFormat
+     * @param microphoneLineFactory
+     * @throws LineUnavailableException
+     */
+    public AudioCapture(final AudioFormat audioFormat, MicrophoneLineFactory microphoneLineFactory)
             throws LineUnavailableException {
         super();
         this.audioFormat = audioFormat;
@@ -57,69 +95,330 @@ public class AudioCapture {
                 * BUFFER_SIZE_IN_SECONDS);
     }
 
-    public InputStream getAudioInputStream(final RecordingStateListener stateListener,
+    /**
+     * @param interactionTracer
+     *            The tracer to stamp when a recording has the microphone.
+     */
+    public void setInteractionTracer(InteractionTracer interactionTracer) {
+        this.interactionTracer = interactionTracer;
+    }
+
+    /**
+     * Set how much of the audio captured before a recording starts is included in it. The ring
+     * buffer is sized for it when the microphone is opened, so this should be set before.
+     *
+     * @param preRollMs
+     */
+    public synchronized void setPreRollMs(int preRollMs) {
+        preRollBytes = toBytes(preRollMs);
+    }
+
+    /**
+     * Set the rate to open the microphone line at, or 0 to choose one. Takes effect the next
+     * time the line is opened.
+     *
+     * @param captureSampleRate
+     */
+    public synchronized void setCaptureSampleRate(int captureSampleRate) {
+        this.captureSampleRate = captureSampleRate;
+    }
+
+    /**
+     * Set the channel of the microphone to record, counting from 0, or
+     * {@link CaptureConverter#MIX_CHANNELS} to record the average of all of them. Takes effect the
+     * next time the line is opened.
+     *
+     * @param captureChannel
+     */
+    public synchronized void setCaptureChannel(int captureChannel) {
+        this.captureChannel = captureChannel;
+    }
+
+    /**
+     * Set whether the microphone line is closed at the end of every recording, so that another
+     * process can capture from it until the next recording opens it again.
+     *
+     * @param releaseBetweenRecordings
+     */
+    public synchronized void setReleaseBetweenRecordings(boolean releaseBetweenRecordings) {
+        this.releaseBetweenRecordings = releaseBetweenRecordings;
+    }
+
+    /**
+     * @param listener
+     *            Notified of the features of every frame of each recording from now on, on a
+     *            thread of its own rather than the one that reads the microphone.
+     */
+    public void addAudioFeatureListener(AudioFeatureListener listener) {
+        featureListeners.addIfAbsent(listener);
+    }
+
+    public void removeAudioFeatureListener(AudioFeatureListener listener) {
+        featureListeners.remove(listener);
+    }
+
+    /**
+     * Open the microphone line and keep capturing until {@link #close()}, if it is not open
+     * already.
+     *
+     * @throws LineUnavailableException
+     */
+    public synchronized void start() throws LineUnavailableException {
+        if ((ringBuffer != null) && !ringBuffer.isClosed() && microphoneLine.isOpen()) {
+            return;
+        }
+        AudioFormat lineFormat = CaptureFormatNegotiator.negotiate(
+                microphoneLine.getLineInfo(), audioFormat, captureSampleRate, captureChannel);
+        microphoneLine.open(lineFormat);
+        microphoneLine.start();
+        ringBuffer = new AudioRingBuffer(BUFFER_SIZE_IN_BYTES + preRollBytes);
+        thread = TaskExecutor.start(CaptureThread.class.getSimpleName(),
+                new CaptureThread(ringBuffer, lineFormat));
+        log.info("Opened the microphone line in {}", lineFormat);
+    }
+
+    /**
+     * Start a recording, which ends at the next {@link #stopCapture()}. The microphone is opened
+     * first if it is not open yet.
+     *
+     * @param stateListener
+     * @param rmsListener
+     * @return The audio of the recording, starting with the pre-roll.
+     * @throws LineUnavailableException
+     * @throws IOException
+     */
+    public synchronized InputStream getAudioInputStream(final RecordingStateListener stateListener,
                                            final RecordingRMSListener rmsListener) throws LineUnavailableException, IOException {
-        try {
-            startCapture();
-            PipedInputStream inputStream = new PipedInputStream(BUFFER_SIZE_IN_BYTES);
-            thread = new AudioBufferThread(inputStream, stateListener, rmsListener);
-            thread.start();
-            return inputStream;
-        } catch (LineUnavailableException | IOException e) {
-            stopCapture();
-            throw e;
+        start();
+        stopCapture();
+        long begin = Math.max(ringBuffer.getOldestPosition(),
+                ringBuffer.getWritePosition() - preRollBytes);
+        AudioRingBuffer.Reader inputStream = ringBuffer.newReader(begin);
+        AudioRingBuffer.Reader featureStream = ringBuffer.newReader(begin);
+        recording = new Recording(stateListener, inputStream, featureStream);
+        InteractionTracer tracer = interactionTracer;
+        if (tracer != null) {
+            tracer.mark(Stage.MICROPHONE_OPENED);
+        }
+        startFeatureExtraction(featureStream, rmsListener);
+        if (stateListener != null) {
+            stateListener.recordingStarted();
         }
+        return inputStream;
     }
 
-    public void stopCapture() {
-        microphoneLine.stop();
-        microphoneLine.close();
+    /**
+     * End the current recording with the audio captured so far. The microphone stays open, unless
+     * it is released between recordings.
+     */
+    public synchronized void stopCapture() {
+        if (recording != null) {
+            recording.end(ringBuffer.getWritePosition());
+            recording = null;
+            if (releaseBetweenRecordings) {
+                closeLine();
+            }
+        }
+    }
 
+    /**
+     * Read the captured audio from the given time ago on, for as long as the microphone is open,
+     * for instance to look for a wake word. The reader should be closed once it is no longer
+     * read.
+     *
+     * @param preRollMs
+     * @return A reader of the captured audio.
+     * @throws LineUnavailableException
+     */
+    public synchronized AudioRingBuffer.Reader newReader(int preRollMs)
+            throws LineUnavailableException {
+        start();
+        return ringBuffer.newReader(Math.max(ringBuffer.getOldestPosition(),
+                ringBuffer.getWritePosition() - toBytes(preRollMs)));
     }
 
-    private void startCapture() throws LineUnavailableException {
-        microphoneLine.open(audioFormat);
-        microphoneLine.start();
+    /**
+     * End the current recording and close the microphone line.
+     */
+    public synchronized void close() {
+        stopCapture();
+        closeLine();
+    }
+
+    private void closeLine() {
+        microphoneLine.stop();
+        microphoneLine.close();
+        if (thread != null) {
+            // The line may be opened again right away, and must not be read by the old thread
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
     }
 
     public int getAudioBufferSizeInBytes() {
         return BUFFER_SIZE_IN_BYTES;
     }
 
-    private class AudioBufferThread extends Thread {
+    private int toBytes(int ms) {
+        int frames = (int) ((audioFormat.getSampleRate() * ms) / 1000);
+        return frames * audioFormat.getFrameSize();
+    }
 
-        private final AudioStateOutputStream audioStateOutputStream;
+    private void startFeatureExtraction(AudioRingBuffer.Reader featureStream,
+            RecordingRMSListener rmsListener) {
+        List<AudioFeatureListener> listeners = new ArrayList<>(featureListeners);
+        if (rmsListener != null) {
+            listeners.add(new AudioFeatureListener() {
+                @Override
+                public void onAudioFeatures(AudioFeatures features) {
+                    rmsListener.rmsChanged(features.getVisualizerLevel());
+                }
 
-        public AudioBufferThread(PipedInputStream inputStream,
-                                 RecordingStateListener recordingStateListener, RecordingRMSListener rmsListener)
-                throws IOException {
-            audioStateOutputStream =
-                    new AudioStateOutputStream(inputStream, recordingStateListener, rmsListener);
+                @Override
+                public void onAudioEnded() {
+                    rmsListener.rmsChanged(0);
+                }
+            });
+        }
+        if (listeners.isEmpty()) {
+            featureStream.close();
+            return;
+        }
+        int frameSamples = (int) (audioFormat.getSampleRate() * FEATURE_FRAME_MS) / 1000;
+        TaskExecutor.start(AudioFeatureThread.class.getSimpleName(),
+                new AudioFeatureThread(featureStream, frameSamples, listeners));
+    }
+
+    /**
+     * The streams of a recording, which end together.
+     */
+    private static class Recording {
+        private final RecordingStateListener stateListener;
+        private final AudioRingBuffer.Reader[] streams;
+
+        public Recording(RecordingStateListener stateListener,
+                AudioRingBuffer.Reader... streams) {
+            this.stateListener = stateListener;
+            this.streams = streams;
+        }
+
+        public void end(long position) {
+            for (AudioRingBuffer.Reader stream : streams) {
+                stream.endAt(position);
+            }
+            if (stateListener != null) {
+                stateListener.recordingCompleted();
+            }
+        }
+    }
+
+    /**
+     * Reads the microphone for as long as the line is open. Nothing else runs on this thread, so
+     * no consumer can hold up the microphone.
+     */
+    private class CaptureThread implements Runnable {
+        private final AudioRingBuffer ringBuffer;
+        private final byte[] data;
+        // Null when the line captures in the format of the recordings
+        private final CaptureConverter converter;
+        private final byte[] converted;
+
+        public CaptureThread(AudioRingBuffer ringBuffer, AudioFormat lineFormat) {
+            this.ringBuffer = ringBuffer;
+            int frameSize = lineFormat.getFrameSize();
+            data = new byte[Math.max(frameSize,
+                    ((microphoneLine.getBufferSize() / 5) / frameSize) * frameSize)];
+            if (lineFormat.matches(audioFormat)) {
+                converter = null;
+                converted = null;
+            } else {
+                converter = new CaptureConverter(lineFormat, audioFormat, captureChannel,
+                        data.length);
+                converted = new byte[converter.getMaxOutputBytes()];
+            }
         }
 
         @Override
         public void run() {
-            while (microphoneLine.isOpen()) {
-                copyAudioBytesFromInputToOutput();
+            try {
+                while (microphoneLine.isOpen()) {
+                    int numBytesRead = microphoneLine.read(data, 0, data.length);
+                    if (numBytesRead <= 0) {
+                        continue;
+                    }
+                    if (converter == null) {
+                        ringBuffer.write(data, 0, numBytesRead);
+                    } else {
+                        int length = converter.convert(data, 0, numBytesRead, converted, 0);
+                        ringBuffer.write(converted, 0, length);
+                    }
+                }
+            } finally {
+                // Ends the streams of a recording that was not stopped, and every other reader
+                ringBuffer.close();
+                log.info("The microphone line closed");
             }
-            closePipedOutputStream();
+        }
+    }
+
+    /**
+     * Reads the captured audio a frame at a time and passes the features of every frame on to
+     * the listeners, so that neither the extraction nor the listeners hold up the microphone.
+     */
+    private static class AudioFeatureThread implements Runnable {
+        private final InputStream audio;
+        private final AudioFeatureExtractor extractor;
+        private final AudioFeatures features = new AudioFeatures();
+        private final List<AudioFeatureListener> listeners;
+        private final byte[] frame;
+
+        public AudioFeatureThread(InputStream audio, int frameSamples,
+                List<AudioFeatureListener> listeners) {
+            this.audio = audio;
+            this.listeners = listeners;
+            extractor = new AudioFeatureExtractor(frameSamples);
+            frame = new byte[extractor.getFrameBytes()];
         }
 
-        private void copyAudioBytesFromInputToOutput() {
-            byte[] data = new byte[microphoneLine.getBufferSize() / 5];
-            int numBytesRead = microphoneLine.read(data, 0, data.length);
+        @Override
+        public void run() {
+            long position = 0;
+            for (AudioFeatureListener listener : listeners) {
+                listener.onAudioStarted();
+            }
             try {
-                audioStateOutputStream.write(data, 0, numBytesRead);
+                int filled = 0;
+                int read;
+                while ((read = audio.read(frame, filled, frame.length - filled)) >= 0) {
+                    filled += read;
+                    if (filled == frame.length) {
+                        extractor.extract(frame, 0, position, features);
+                        position += frame.length;
+                        filled = 0;
+                        notifyListeners();
+                    }
+                }
             } catch (IOException e) {
-                stopCapture();
+                log.error("Failed to read the captured audio", e);
+            } finally {
+                IOUtils.closeQuietly(audio);
+                for (AudioFeatureListener listener : listeners) {
+                    listener.onAudioEnded();
+                }
             }
         }
 
-        private void closePipedOutputStream() {
-            try {
-                audioStateOutputStream.close();
-            } catch (IOException e) {
-                log.error("Failed to close audio stream ", e);
+        private void notifyListeners() {
+            for (AudioFeatureListener listener : listeners) {
+                try {
+                    listener.onAudioFeatures(features);
+                } catch (RuntimeException e) {
+                    log.error("Audio feature listener failed", e);
+                }
             }
         }
     }
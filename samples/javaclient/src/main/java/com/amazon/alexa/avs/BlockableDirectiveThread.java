@@ -13,8 +13,10 @@
 package com.amazon.alexa.avs;
 
 import com.amazon.alexa.avs.message.response.Directive;
+import com.amazon.alexa.avs.metrics.Histogram;
 
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This thread takes a queue which will be filled with directives and dispatches them to the given
@@ -25,6 +27,7 @@ public class BlockableDirectiveThread extends Thread {
     private final BlockingQueue<Directive> directiveQueue;
     private final DirectiveDispatcher directiveDispatcher;
     private volatile boolean block;
+    private final Histogram waitTimes = Histogram.latencyMillis();
 
     public BlockableDirectiveThread(BlockingQueue<Directive> directiveQueue,
             DirectiveDispatcher directiveDispatcher) {
@@ -47,6 +50,14 @@ public class BlockableDirectiveThread extends Thread {
         notify();
     }
 
+    /**
+     * @return The time directives waited in the queue before they were dispatched, in
+     *         milliseconds.
+     */
+    public Histogram getWaitTimes() {
+        return waitTimes;
+    }
+
     public synchronized void clear() {
         directiveQueue.clear();
     }
@@ -61,6 +72,11 @@ public class BlockableDirectiveThread extends Thread {
                     }
                 }
                 Directive directive = directiveQueue.take();
+                long enqueuedNanos = directive.getEnqueuedNanos();
+                if (enqueuedNanos != 0) {
+                    waitTimes.record(
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedNanos));
+                }
                 directiveDispatcher.dispatch(directive);
             } catch (InterruptedException e) {
             }
@@ -15,23 +15,14 @@ package com.amazon.alexa.avs;
 import java.util.UUID;
 
 /**
- * DialogRequestIdAuthority creates and keeps track of the active dialogRequestId.
+ * DialogRequestIdAuthority creates and keeps track of the active dialogRequestId. Each device has
+ * its own, since each has its own dialog in progress.
  */
 public class DialogRequestIdAuthority {
 
-    private static final DialogRequestIdAuthority instance;
+    private volatile String currentDialogRequestId;
 
-    static {
-        instance = new DialogRequestIdAuthority();
-    }
-
-    private String currentDialogRequestId;
-
-    private DialogRequestIdAuthority() {
-    }
-
-    public static DialogRequestIdAuthority getInstance() {
-        return instance;
+    public DialogRequestIdAuthority() {
     }
 
     public String createNewDialogRequestId() {
@@ -40,6 +31,7 @@ public class DialogRequestIdAuthority {
     }
 
     public boolean isCurrentDialogRequestId(String candidateRequestId) {
+        String currentDialogRequestId = this.currentDialogRequestId;
         return currentDialogRequestId != null && currentDialogRequestId.equals(candidateRequestId);
     }
 }
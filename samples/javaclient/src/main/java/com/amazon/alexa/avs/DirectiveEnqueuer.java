@@ -16,6 +16,10 @@ import com.amazon.alexa.avs.http.MultipartParser.MultipartParserConsumer;
 import com.amazon.alexa.avs.message.Payload;
 import com.amazon.alexa.avs.message.response.AttachedContentPayload;
 import com.amazon.alexa.avs.message.response.Directive;
+import com.amazon.alexa.avs.metrics.Counter;
+import com.amazon.alexa.avs.metrics.InteractionTracer;
+import com.amazon.alexa.avs.metrics.InteractionTracer.Stage;
+import com.amazon.alexa.avs.metrics.MetricsRegistry;
 
 import java.io.InputStream;
 import java.util.HashMap;
@@ -24,7 +28,6 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * The DirectiveEnqueuer takes parts parsed from a multipart parser, combines directves with their
@@ -56,7 +59,14 @@ public class DirectiveEnqueuer implements MultipartParserConsumer {
     // Map of all attachments which have not yet been matched with directives.
     private final Map<String, InputStream> attachments;
 
-    private ExecutorService executor = Executors.newCachedThreadPool();
+    private ExecutorService executor = TaskExecutor.newExecutor("DirectiveEnqueuer");
+
+    private volatile InteractionTracer interactionTracer;
+
+    private final Counter bypassedCount = new Counter();
+    private final Counter independentCount = new Counter();
+    private final Counter dependentCount = new Counter();
+    private final Counter droppedCount = new Counter();
 
     public DirectiveEnqueuer(DialogRequestIdAuthority dialogRequestIdAuthority,
             Queue<Directive> dependentQueue, Queue<Directive> independentQueue,
@@ -69,6 +79,30 @@ public class DirectiveEnqueuer implements MultipartParserConsumer {
         attachments = new HashMap<>();
     }
 
+    /**
+     * @param interactionTracer
+     *            The tracer to stamp when the directives of a voice interaction are enqueued.
+     */
+    public void setInteractionTracer(InteractionTracer interactionTracer) {
+        this.interactionTracer = interactionTracer;
+    }
+
+    /**
+     * Register the number of directives handed to each queue, and dropped because they belonged
+     * to an earlier dialog.
+     *
+     * @param registry
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        String name = "avs_directives_enqueued_total";
+        String help = "Directives handed to each directive queue";
+        registry.register(name, help, dependentCount, "queue", "dependent");
+        registry.register(name, help, independentCount, "queue", "independent");
+        registry.register(name, help, bypassedCount, "queue", "bypass");
+        registry.register("avs_directives_dropped_total",
+                "Directives dropped because they belonged to an earlier dialog", droppedCount);
+    }
+
     @Override
     public synchronized void onDirective(Directive directive) {
         incompleteDirectiveQueue.add(directive);
@@ -81,6 +115,15 @@ public class DirectiveEnqueuer implements MultipartParserConsumer {
         matchAttachementsWithDirectives();
     }
 
+    /**
+     * Directives are handed off with their attachments as soon as the attachments start arriving,
+     * so playback of a Speak can start before the whole of its audio has been downloaded.
+     */
+    @Override
+    public boolean acceptsStreamingAttachments() {
+        return true;
+    }
+
     private void matchAttachementsWithDirectives() {
         for (Directive directive : incompleteDirectiveQueue) {
             Payload payload = directive.getPayload();
@@ -123,7 +166,12 @@ public class DirectiveEnqueuer implements MultipartParserConsumer {
 
     private void enqueueDirective(Directive directive) {
         String dialogRequestId = directive.getDialogRequestId();
+        InteractionTracer tracer = interactionTracer;
+        if (tracer != null) {
+            tracer.mark(Stage.DIRECTIVE_ENQUEUED, dialogRequestId);
+        }
         if (shouldBypassQueue(dialogRequestId, directive)) {
+            bypassedCount.increment();
             executor.execute(new Runnable() {
                 @Override
                 public void run() {
@@ -131,9 +179,15 @@ public class DirectiveEnqueuer implements MultipartParserConsumer {
                 }
             });
         } else if (dialogRequestId == null) {
+            independentCount.increment();
+            directive.markEnqueued();
             independentQueue.add(directive);
         } else if (dialogRequestIdAuthority.isCurrentDialogRequestId(dialogRequestId)) {
+            dependentCount.increment();
+            directive.markEnqueued();
             dependentQueue.add(directive);
+        } else {
+            droppedCount.increment();
         }
     }
 
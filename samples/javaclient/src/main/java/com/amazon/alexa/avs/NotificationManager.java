@@ -15,6 +15,8 @@ import com.amazon.alexa.avs.http.BasicHttpClient;
 import com.amazon.alexa.avs.message.request.context.NotificationsStatePayload;
 import com.amazon.alexa.avs.message.response.notifications.SetIndicator;
 import com.amazon.alexa.avs.message.response.notifications.SetIndicator.Asset;
+import com.amazon.alexa.avs.metrics.Counter;
+import com.amazon.alexa.avs.metrics.MetricsRegistry;
 
 import org.apache.commons.io.IOUtils;
 import org.codehaus.jackson.map.ObjectReader;
@@ -66,6 +68,8 @@ public class NotificationManager {
     private Status indicatorStatus;
     private AtomicBoolean isSetIndicatorPersisted;
     private AtomicReference<String> activeAudioAsset;
+    private final Counter setIndicatorCount = new Counter();
+    private final Counter clearIndicatorCount = new Counter();
 
     /**
      *
@@ -77,8 +81,20 @@ public class NotificationManager {
      *            SetIndicator directive
      */
     public NotificationManager(NotificationIndicator indicator, SimpleAudioPlayer audioPlayer) {
+        this(indicator, audioPlayer, null);
+    }
+
+    /**
+     * @param indicator
+     * @param audioPlayer
+     * @param dataDirectory
+     *            The directory to keep the indicator state in, or null for the working directory.
+     */
+    public NotificationManager(NotificationIndicator indicator, SimpleAudioPlayer audioPlayer,
+            File dataDirectory) {
         this(indicator, audioPlayer, new BasicHttpClient(new SslContextFactory()),
-                new NotificationsFileDataStore(NOTIFICATION_STATUS_FILENAME));
+                new NotificationsFileDataStore(
+                        new File(dataDirectory, NOTIFICATION_STATUS_FILENAME).getPath()));
     }
 
     NotificationManager(NotificationIndicator indicator, SimpleAudioPlayer audioPlayer,
@@ -87,7 +103,7 @@ public class NotificationManager {
         this.player = audioPlayer;
         this.assets = Collections.synchronizedMap(new HashMap<String, File>());
         this.indicatorExecutor = Executors.newSingleThreadExecutor();
-        this.assetDownloader = Executors.newCachedThreadPool();
+        this.assetDownloader = TaskExecutor.newExecutor("NotificationAssetDownloader");
         this.allowPersistentIndicator = new AtomicBoolean(true);
         this.httpClient = httpClient;
         this.isSetIndicatorPersisted = new AtomicBoolean(false);
@@ -175,7 +191,24 @@ public class NotificationManager {
         });
     }
 
+    /**
+     * Register the number of SetIndicator and ClearIndicator directives handled, and whether the
+     * indicator is on.
+     *
+     * @param registry
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register("avs_notifications_set_indicator_total",
+                "SetIndicator directives handled", setIndicatorCount);
+        registry.register("avs_notifications_clear_indicator_total",
+                "ClearIndicator directives handled", clearIndicatorCount);
+        registry.register("avs_notifications_indicator_on",
+                "1 if the notification indicator is on, 0 otherwise",
+                () -> indicatorStatus.isEnabled ? 1 : 0);
+    }
+
     public void handleSetIndicator(final SetIndicator setIndicator) {
+        setIndicatorCount.increment();
         isSetIndicatorPersisted.set(setIndicator.shouldPersistVisualIndicator());
         final Optional<Future<?>> audioAssetDownloadFuture = cacheAudioIndicators(setIndicator);
         allowPersistentIndicator.set(true);
@@ -245,6 +278,7 @@ public class NotificationManager {
     }
 
     public void handleClearIndicator() {
+        clearIndicatorCount.increment();
         allowPersistentIndicator.set(false);
         synchronized (indicatorFutures) {
             for (Future<?> f : indicatorFutures) {
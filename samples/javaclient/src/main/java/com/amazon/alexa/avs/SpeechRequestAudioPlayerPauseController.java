@@ -101,7 +101,7 @@ public class SpeechRequestAudioPlayerPauseController
         log.debug("Finished processing speech request");
         resumeAudioThread.ifPresent(t -> t.interrupt());
         outstandingDirectiveCount = Optional.of(new CountDownLatch(directiveCount));
-        resumeAudioThread = Optional.of(new Thread() {
+        resumeAudioThread = Optional.of(TaskExecutor.newThread("ResumeAudioThread", new Runnable() {
 
             boolean isInterrupted = false;
 
@@ -131,7 +131,7 @@ public class SpeechRequestAudioPlayerPauseController
                 }
             }
 
-        });
+        }));
         resumeAudioThread.ifPresent(t -> t.start());
 
     }
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads that run the client's blocking tasks: playing audio, waiting for the end of
+ * a speech request, reading the microphone, the downchannel and the wake word agent.
+ *
+ * The {@link Mode} is chosen once at startup with {@link #configure(Mode)}. In
+ * {@link Mode#VIRTUAL} mode every task gets a virtual thread, which costs a few hundred bytes
+ * rather than a native stack, so a thread per task stays cheap with many devices in one JVM.
+ * Virtual threads are only reached through reflection, since the client is built for Java 8; where
+ * the JVM does not have them the client falls back to {@link Mode#PLATFORM} threads, which run the
+ * same code.
+ *
+ * Threads are named after their task. Virtual threads are always daemon threads.
+ *
+ * Tasks must not block while holding a monitor: a virtual thread that waits inside a synchronized
+ * block, or in {@link Object#wait()}, stays pinned to its carrier thread, and a few of them stall
+ * every other device. They wait on {@link java.util.concurrent.locks.Lock}s and their conditions
+ * instead.
+ */
+public final class TaskExecutor {
+    private static final Logger log = LoggerFactory.getLogger(TaskExecutor.class);
+
+    public enum Mode {
+        PLATFORM,
+        VIRTUAL;
+    }
+
+    private static volatile Mode mode = Mode.PLATFORM;
+
+    private TaskExecutor() {
+    }
+
+    /**
+     * Choose how tasks run. Threads created before keep running as they are.
+     *
+     * @param requested
+     * @return The mode in effect, which is {@link Mode#PLATFORM} if virtual threads were requested
+     *         but this JVM does not have them.
+     */
+    public static synchronized Mode configure(Mode requested) {
+        if ((requested == Mode.VIRTUAL) && (VirtualThreads.FACTORY == null)) {
+            log.warn("Virtual threads are not available in Java {}, using platform threads",
+                    System.getProperty("java.specification.version"));
+            mode = Mode.PLATFORM;
+        } else {
+            mode = requested;
+        }
+        log.info("Running blocking tasks on {} threads", mode.name().toLowerCase());
+        return mode;
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @param name
+     * @param task
+     * @return A thread for the task, not started yet.
+     */
+    public static Thread newThread(String name, Runnable task) {
+        if (mode == Mode.VIRTUAL) {
+            Thread thread = VirtualThreads.FACTORY.newThread(task);
+            thread.setName(name);
+            return thread;
+        }
+        return new Thread(task, name);
+    }
+
+    /**
+     * Run the task on a thread of its own.
+     *
+     * @param name
+     * @param task
+     * @return The started thread.
+     */
+    public static Thread start(String name, Runnable task) {
+        Thread thread = newThread(name, task);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * @param name
+     *            The name of the threads, which are numbered from 1.
+     * @return A factory for the threads of an executor.
+     */
+    public static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> newThread(name + "-" + count.incrementAndGet(), task);
+    }
+
+    /**
+     * @param name
+     * @return An executor that runs every task on a thread of its own, or, with platform threads,
+     *         on a thread that was left idle by a previous task.
+     */
+    public static ExecutorService newExecutor(String name) {
+        ThreadFactory factory = threadFactory(name);
+        if (mode == Mode.VIRTUAL) {
+            return VirtualThreads.newThreadPerTaskExecutor(factory);
+        }
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    /**
+     * The Java 21 virtual thread API, looked up once.
+     */
+    private static class VirtualThreads {
+        // Unlike the builder it comes from, the factory is thread safe
+        private static final ThreadFactory FACTORY;
+        private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+        static {
+            ThreadFactory factory = null;
+            Method newThreadPerTaskExecutor = null;
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                newThreadPerTaskExecutor =
+                        Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Before Java 21, or a preview that is not enabled
+                factory = null;
+            }
+            FACTORY = factory;
+            NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        }
+
+        private static ExecutorService newThreadPerTaskExecutor(ThreadFactory factory) {
+            try {
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create a virtual thread executor", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.audio;
+
+/**
+ * Computes the {@link AudioFeatures} of fixed size frames of 16 bit little endian mono PCM,
+ * without allocating.
+ *
+ * A frame is first decoded into a reused array of samples in one pass, then summed in a second
+ * pass with several independent accumulators, so that neither loop carries a dependency from one
+ * sample to the next and the JIT is free to unroll and vectorize them. All sums are exact integer
+ * sums. An extractor keeps the last sample of a frame to count the zero crossing into the next
+ * one, so it must only be used for a single stream, by one thread at a time.
+ */
+public class AudioFeatureExtractor {
+    private static final int BYTES_PER_SAMPLE = 2;
+    private static final int CLIP_LEVEL = Short.MAX_VALUE;
+
+    private final short[] samples;
+    private short lastSample;
+
+    /**
+     * @param frameSamples
+     *            The number of samples in a frame.
+     */
+    public AudioFeatureExtractor(int frameSamples) {
+        if (frameSamples < 1) {
+            throw new IllegalArgumentException("A frame must have at least one sample");
+        }
+        samples = new short[frameSamples];
+    }
+
+    /**
+     * @return The size of a frame in bytes.
+     */
+    public int getFrameBytes() {
+        return samples.length * BYTES_PER_SAMPLE;
+    }
+
+    /**
+     * Compute the features of a frame.
+     *
+     * @param pcm
+     * @param offset
+     *            The offset of the frame in pcm, which must hold {@link #getFrameBytes()} bytes
+     *            from there.
+     * @param position
+     *            The position of the frame in the stream, which is passed on to the features.
+     * @param features
+     *            Set to the features of the frame.
+     */
+    public void extract(byte[] pcm, int offset, long position, AudioFeatures features) {
+        decode(pcm, offset);
+
+        final short[] s = samples;
+        final int n = s.length;
+        final int unrolled = n & ~3;
+        long squares0 = 0, squares1 = 0, squares2 = 0, squares3 = 0;
+        int magnitudes0 = 0, magnitudes1 = 0, magnitudes2 = 0, magnitudes3 = 0;
+        int peak0 = 0, peak1 = 0, peak2 = 0, peak3 = 0;
+        int clipped = 0;
+        int i = 0;
+        for (; i < unrolled; i += 4) {
+            int a0 = Math.abs(s[i]);
+            int a1 = Math.abs(s[i + 1]);
+            int a2 = Math.abs(s[i + 2]);
+            int a3 = Math.abs(s[i + 3]);
+            squares0 += a0 * a0;
+            squares1 += a1 * a1;
+            squares2 += a2 * a2;
+            squares3 += a3 * a3;
+            magnitudes0 += a0;
+            magnitudes1 += a1;
+            magnitudes2 += a2;
+            magnitudes3 += a3;
+            peak0 = Math.max(peak0, a0);
+            peak1 = Math.max(peak1, a1);
+            peak2 = Math.max(peak2, a2);
+            peak3 = Math.max(peak3, a3);
+            // 1 for a sample at full scale, which is 32767 or 32768 depending on its sign
+            clipped += ((CLIP_LEVEL - 1 - a0) >>> 31) + ((CLIP_LEVEL - 1 - a1) >>> 31)
+                    + ((CLIP_LEVEL - 1 - a2) >>> 31) + ((CLIP_LEVEL - 1 - a3) >>> 31);
+        }
+        for (; i < n; i++) {
+            int a = Math.abs(s[i]);
+            squares0 += a * a;
+            magnitudes0 += a;
+            peak0 = Math.max(peak0, a);
+            clipped += (CLIP_LEVEL - 1 - a) >>> 31;
+        }
+
+        // Counted apart, since it compares neighbouring samples: the sign bit of a ^ b is set
+        // when a and b have different signs
+        int zeroCrossings = (lastSample ^ s[0]) >>> 31;
+        for (int j = 1; j < n; j++) {
+            zeroCrossings += (s[j - 1] ^ s[j]) >>> 31;
+        }
+        lastSample = s[n - 1];
+
+        features.set(position, n, squares0 + squares1 + squares2 + squares3,
+                (long) magnitudes0 + magnitudes1 + magnitudes2 + magnitudes3,
+                Math.max(Math.max(peak0, peak1), Math.max(peak2, peak3)), zeroCrossings, clipped);
+    }
+
+    /**
+     * Forget the last sample, before the frames of another stream.
+     */
+    public void reset() {
+        lastSample = 0;
+    }
+
+    private void decode(byte[] pcm, int offset) {
+        final short[] s = samples;
+        for (int i = 0, b = offset; i < s.length; i++, b += BYTES_PER_SAMPLE) {
+            s[i] = (short) ((pcm[b] & 0xff) | (pcm[b + 1] << 8));
+        }
+    }
+}
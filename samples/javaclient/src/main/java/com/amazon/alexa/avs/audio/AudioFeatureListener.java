@@ -0,0 +1,39 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.audio;
+
+/**
+ * Receives the {@link AudioFeatures} of every frame of captured audio.
+ */
+public interface AudioFeatureListener {
+    /**
+     * Called before the features of the first frame of a capture.
+     */
+    default void onAudioStarted() {
+    }
+
+    /**
+     * Called on the thread that extracts the features, not the one that reads the microphone.
+     *
+     * @param features
+     *            The features of the last frame. The instance is reused for the next frame, so it
+     *            must not be kept after this returns.
+     */
+    void onAudioFeatures(AudioFeatures features);
+
+    /**
+     * Called once the captured audio has ended.
+     */
+    default void onAudioEnded() {
+    }
+}
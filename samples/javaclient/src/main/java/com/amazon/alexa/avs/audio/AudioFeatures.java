@@ -0,0 +1,106 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.audio;
+
+/**
+ * The features of a frame of 16 bit PCM audio, as computed by {@link AudioFeatureExtractor}.
+ * Levels are relative to full scale, from 0 to 1.
+ */
+public class AudioFeatures {
+    private static final double FULL_SCALE = -(double) Short.MIN_VALUE;
+    // The scale of the level reported to RecordingRMSListeners: half of full scale reads as 100
+    private static final double VISUALIZER_SCALE = 100 / (Short.MAX_VALUE / 2.0);
+
+    private long position;
+    private int sampleCount;
+    private long sumOfSquares;
+    private long sumOfMagnitudes;
+    private int peak;
+    private int zeroCrossings;
+    private int clippedSamples;
+
+    void set(long position, int sampleCount, long sumOfSquares, long sumOfMagnitudes, int peak,
+            int zeroCrossings, int clippedSamples) {
+        this.position = position;
+        this.sampleCount = sampleCount;
+        this.sumOfSquares = sumOfSquares;
+        this.sumOfMagnitudes = sumOfMagnitudes;
+        this.peak = peak;
+        this.zeroCrossings = zeroCrossings;
+        this.clippedSamples = clippedSamples;
+    }
+
+    /**
+     * @return The position of the frame in the captured audio, in bytes.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return The root mean square level of the frame.
+     */
+    public double getRms() {
+        if (sampleCount == 0) {
+            return 0;
+        }
+        return Math.sqrt((double) sumOfSquares / sampleCount) / FULL_SCALE;
+    }
+
+    /**
+     * @return The level of the loudest sample of the frame.
+     */
+    public double getPeak() {
+        return peak / FULL_SCALE;
+    }
+
+    /**
+     * @return The fraction of consecutive samples that change sign, including the change from the
+     *         last sample of the previous frame.
+     */
+    public double getZeroCrossingRate() {
+        return (sampleCount == 0) ? 0 : (double) zeroCrossings / sampleCount;
+    }
+
+    /**
+     * @return The number of samples at full scale, which were most likely clipped.
+     */
+    public int getClippedSamples() {
+        return clippedSamples;
+    }
+
+    /**
+     * @return The level shown by the speech visualizer, from 1 for silence to about 100 for loud
+     *         speech.
+     */
+    public int getVisualizerLevel() {
+        if (sampleCount == 0) {
+            return 0;
+        }
+        // The root mean square of (scale * |sample| + 1), expanded so it needs only the sums
+        double meanSquare = (double) sumOfSquares / sampleCount;
+        double meanMagnitude = (double) sumOfMagnitudes / sampleCount;
+        return (int) Math.sqrt((VISUALIZER_SCALE * VISUALIZER_SCALE * meanSquare)
+                + (2 * VISUALIZER_SCALE * meanMagnitude) + 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AudioFeatures rms:%1$.4f peak:%2$.4f zcr:%3$.3f clipped:%4$d",
+                getRms(), getPeak(), getZeroCrossingRate(), clippedSamples);
+    }
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.audio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands captured audio from the single thread that reads the microphone to any number of
+ * {@link Reader}s, each at its own position in the stream.
+ *
+ * Writing never blocks and never takes a lock: the writer claims the bytes it is about to
+ * overwrite, copies the audio into the ring and publishes it by advancing the write position, and
+ * readers that are waiting for audio are unparked. A reader checks the claim after copying, so it
+ * never returns bytes that were overwritten while it copied them. A reader that falls more than
+ * the capacity of the ring behind has lost the audio that was overwritten; it skips ahead to the
+ * oldest audio still in the ring and counts the bytes it lost, rather than holding up the
+ * microphone and every other reader.
+ *
+ * Positions count the bytes written since the ring was created, so they never wrap.
+ */
+public class AudioRingBuffer {
+    private static final Logger log = LoggerFactory.getLogger(AudioRingBuffer.class);
+
+    // How long a waiting reader parks before checking again, however it was woken up
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final byte[] ring;
+    private final int mask;
+    private final List<Reader> readers = new CopyOnWriteArrayList<>();
+    private final AtomicLong overrunBytes = new AtomicLong();
+
+    // The position the producer may be writing up to. It is set before the bytes are copied, with
+    // getAndSet so the copies can't be reordered before it.
+    private final AtomicLong claimPosition = new AtomicLong();
+    // Only written by the producer, so a volatile store is enough to publish
+    private volatile long writePosition;
+    private volatile boolean closed;
+
+    /**
+     * @param minCapacity
+     *            The number of bytes to keep, which is rounded up to a power of two.
+     */
+    public AudioRingBuffer(int minCapacity) {
+        if ((minCapacity < 1) || (minCapacity > (1 << 30))) {
+            throw new IllegalArgumentException("Invalid capacity: " + minCapacity);
+        }
+        int capacity = Integer.highestOneBit(minCapacity);
+        if (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+        ring = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * @return The position the next byte will be written at.
+     */
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    /**
+     * @return The position of the oldest byte still in the ring.
+     */
+    public long getOldestPosition() {
+        return Math.max(0, claimPosition.get() - ring.length);
+    }
+
+    /**
+     * Append audio and wake up the readers waiting for it. Only one thread may write.
+     *
+     * @param b
+     * @param off
+     * @param len
+     */
+    public void write(byte[] b, int off, int len) {
+        if (closed) {
+            throw new IllegalStateException("The ring buffer is closed");
+        }
+        long position = writePosition;
+        claimPosition.getAndSet(position + len);
+        while (len > 0) {
+            // Only the newest capacity bytes of a write larger than the ring would survive
+            if (len > ring.length) {
+                position += len - ring.length;
+                off += len - ring.length;
+                len = ring.length;
+            }
+            int index = (int) (position & mask);
+            int count = Math.min(len, ring.length - index);
+            System.arraycopy(b, off, ring, index, count);
+            position += count;
+            off += count;
+            len -= count;
+        }
+        writePosition = position;
+        wakeReaders();
+    }
+
+    /**
+     * Mark the end of the audio. Readers get what is left in the ring, then the end of the
+     * stream.
+     */
+    public void close() {
+        closed = true;
+        wakeReaders();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return A reader that starts with the next byte written.
+     */
+    public Reader newReader() {
+        return newReader(writePosition);
+    }
+
+    /**
+     * @param position
+     *            The position to start reading at, which may be in the past as long as it is
+     *            still in the ring.
+     * @return A reader that starts at the given position.
+     */
+    public Reader newReader(long position) {
+        if ((position > writePosition) || (position < getOldestPosition())) {
+            throw new IllegalArgumentException("Position " + position + " is not in the ring");
+        }
+        Reader reader = new Reader(position);
+        readers.add(reader);
+        return reader;
+    }
+
+    /**
+     * @return The number of bytes lost by readers that fell behind.
+     */
+    public long getOverrunBytes() {
+        return overrunBytes.get();
+    }
+
+    private void wakeReaders() {
+        for (Reader reader : readers) {
+            Thread waiter = reader.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /**
+     * Reads the ring from its own position. A reader must only be used by one thread at a time,
+     * and should be closed once it is no longer read, so the producer stops waking it.
+     *
+     * A reader ends when the ring is closed, or at the position given to {@link #endAt(long)},
+     * so that a ring that is written for as long as the microphone is open can back a stream for
+     * every utterance.
+     */
+    public class Reader extends InputStream {
+        private long position;
+        // Written after copying out of the ring, so the copy can't be reordered after the check of
+        // the claim that follows
+        private volatile long copied;
+        private volatile long endPosition = Long.MAX_VALUE;
+        private volatile Thread waiter;
+        private volatile boolean readerClosed;
+
+        private Reader(long position) {
+            this.position = position;
+        }
+
+        /**
+         * @return The position of the next byte this reader will read.
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * End the stream at the given position: the reader gets the audio up to it, then the end
+         * of the stream. Any thread may call this.
+         *
+         * @param position
+         */
+        public void endAt(long position) {
+            endPosition = position;
+            Thread thread = waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+        }
+
+        /**
+         * Wait until audio is available, then read as much of it as fits.
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (readerClosed) {
+                    throw new IOException("The reader is closed");
+                }
+                long end = endPosition;
+                if (position >= end) {
+                    // Nothing more will be read, so the producer can stop waking this reader
+                    readers.remove(this);
+                    return -1;
+                }
+                if (writePosition > position) {
+                    int read = copy(b, off, (int) Math.min(len, end - position));
+                    if (read > 0) {
+                        return read;
+                    }
+                    // Overwritten while copying, try again from where the reader skipped to
+                    continue;
+                }
+                if (closed && (writePosition == position)) {
+                    return -1;
+                }
+                await();
+            }
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.max(0, Math.min(Integer.MAX_VALUE, getLimit() - position));
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, getLimit() - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            readerClosed = true;
+            readers.remove(this);
+            Thread thread = waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        // The position the reader may read up to right now
+        private long getLimit() {
+            return Math.min(writePosition, endPosition);
+        }
+
+        private int copy(byte[] b, int off, int maxLen) {
+            skipOverwritten();
+            long start = position;
+            int len = (int) Math.min(maxLen, writePosition - start);
+            int index = (int) (start & mask);
+            int first = Math.min(len, ring.length - index);
+            System.arraycopy(ring, index, b, off, first);
+            if (first < len) {
+                System.arraycopy(ring, 0, b, off + first, len - first);
+            }
+            copied = start + len;
+            // The producer may have claimed part of what was copied, which may then be newer audio
+            if (claimPosition.get() - start > ring.length) {
+                skipOverwritten();
+                return 0;
+            }
+            position = start + len;
+            return len;
+        }
+
+        private void skipOverwritten() {
+            // Bytes that are claimed may be being overwritten already
+            long oldest = claimPosition.get() - ring.length;
+            if (position < oldest) {
+                long lost = oldest - position;
+                overrunBytes.addAndGet(lost);
+                log.warn("An audio reader fell behind and lost {} bytes", lost);
+                position = oldest;
+            }
+        }
+
+        private void await() throws IOException {
+            waiter = Thread.currentThread();
+            try {
+                // The producer publishes before it looks for waiters, and the reader registers
+                // before it looks at the position, so one of them always sees the other
+                if ((writePosition == position) && (position < endPosition) && !closed
+                        && !readerClosed) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+            } finally {
+                waiter = null;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while waiting for audio");
+            }
+        }
+    }
+}
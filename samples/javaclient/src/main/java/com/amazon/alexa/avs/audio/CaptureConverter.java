@@ -0,0 +1,165 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.audio;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Converts the 16 bit PCM a microphone captures in its own format, at any rate and with any
+ * number of channels, to 16 bit little endian mono PCM at the rate AVS expects, without
+ * allocating.
+ *
+ * Every frame is reduced to one sample, either a selected channel or the average of all of
+ * them, and the samples are resampled with a {@link PolyphaseResampler}. A converter keeps the
+ * state of the resampler from one block to the next, so it must only be used for a single
+ * stream, by one thread at a time.
+ */
+public class CaptureConverter {
+    /** Average all the channels, rather than select one. */
+    public static final int MIX_CHANNELS = -1;
+
+    private static final int BYTES_PER_SAMPLE = 2;
+
+    private final int channels;
+    private final int channel;
+    private final boolean bigEndian;
+    private final int maxInputFrames;
+    private final PolyphaseResampler resampler;
+    private final float[] samples;
+    private final float[] resampled;
+
+    /**
+     * @param inputFormat
+     *            The format of the microphone line, 16 bit signed PCM.
+     * @param outputFormat
+     *            The format to convert to, 16 bit signed little endian mono PCM.
+     * @param channel
+     *            The channel to keep, counting from 0, or {@link #MIX_CHANNELS}.
+     * @param maxInputBytes
+     *            The most bytes that will be passed to {@link #convert} at once.
+     */
+    public CaptureConverter(AudioFormat inputFormat, AudioFormat outputFormat, int channel,
+            int maxInputBytes) {
+        if (!isSigned16Bit(inputFormat) || (inputFormat.getChannels() < 1)) {
+            throw new IllegalArgumentException("Can't convert from " + inputFormat);
+        }
+        if (!isSigned16Bit(outputFormat) || (outputFormat.getChannels() != 1)
+                || outputFormat.isBigEndian()) {
+            throw new IllegalArgumentException("Can't convert to " + outputFormat);
+        }
+        if ((channel < MIX_CHANNELS) || (channel >= inputFormat.getChannels())) {
+            throw new IllegalArgumentException("There is no channel " + channel + " in "
+                    + inputFormat);
+        }
+        channels = inputFormat.getChannels();
+        this.channel = channel;
+        bigEndian = inputFormat.isBigEndian();
+        maxInputFrames = maxInputBytes / inputFormat.getFrameSize();
+        int inputRate = Math.round(inputFormat.getSampleRate());
+        int outputRate = Math.round(outputFormat.getSampleRate());
+        resampler = (inputRate == outputRate) ? null
+                : new PolyphaseResampler(inputRate, outputRate, maxInputFrames);
+        samples = new float[maxInputFrames];
+        resampled = (resampler == null) ? samples : new float[resampler.getMaxOutputSamples()];
+    }
+
+    /**
+     * @param format
+     * @return Whether the audio of the microphone can be converted from this format.
+     */
+    public static boolean isSigned16Bit(AudioFormat format) {
+        return AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())
+                && (format.getSampleSizeInBits() == 16);
+    }
+
+    /**
+     * @return The most bytes a call to {@link #convert} returns.
+     */
+    public int getMaxOutputBytes() {
+        return resampled.length * BYTES_PER_SAMPLE;
+    }
+
+    /**
+     * Convert a block of whole frames.
+     *
+     * @param in
+     * @param offset
+     * @param length
+     *            The number of bytes to convert, a multiple of the input frame size and at most
+     *            maxInputBytes.
+     * @param out
+     *            Receives the converted audio, with room for {@link #getMaxOutputBytes()} bytes
+     *            from outOffset.
+     * @param outOffset
+     * @return The number of bytes of converted audio.
+     */
+    public int convert(byte[] in, int offset, int length, byte[] out, int outOffset) {
+        int frames = length / (channels * BYTES_PER_SAMPLE);
+        if ((frames > maxInputFrames) || ((frames * channels * BYTES_PER_SAMPLE) != length)) {
+            throw new IllegalArgumentException("Can't convert " + length + " bytes");
+        }
+        if (channel == MIX_CHANNELS) {
+            mix(in, offset, frames);
+        } else {
+            select(in, offset, frames);
+        }
+        int count = (resampler == null) ? frames
+                : resampler.process(samples, 0, frames, resampled, 0);
+        encode(resampled, count, out, outOffset);
+        return count * BYTES_PER_SAMPLE;
+    }
+
+    /**
+     * Forget the audio so far, before the line is opened again.
+     */
+    public void reset() {
+        if (resampler != null) {
+            resampler.reset();
+        }
+    }
+
+    private void mix(byte[] in, int offset, int frames) {
+        final float scale = 1.0f / channels;
+        int i = offset;
+        for (int frame = 0; frame < frames; frame++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++, i += BYTES_PER_SAMPLE) {
+                sum += sample(in, i);
+            }
+            samples[frame] = sum * scale;
+        }
+    }
+
+    private void select(byte[] in, int offset, int frames) {
+        final int frameSize = channels * BYTES_PER_SAMPLE;
+        int i = offset + (channel * BYTES_PER_SAMPLE);
+        for (int frame = 0; frame < frames; frame++, i += frameSize) {
+            samples[frame] = sample(in, i);
+        }
+    }
+
+    private int sample(byte[] in, int i) {
+        return bigEndian ? ((in[i] << 8) | (in[i + 1] & 0xff))
+                : ((in[i + 1] << 8) | (in[i] & 0xff));
+    }
+
+    private static void encode(float[] samples, int count, byte[] out, int offset) {
+        for (int i = 0, j = offset; i < count; i++, j += BYTES_PER_SAMPLE) {
+            // Round to nearest, and clip what the filter's overshoot took out of range
+            int sample = (int) Math.floor(samples[i] + 0.5f);
+            sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            out[j] = (byte) sample;
+            out[j + 1] = (byte) (sample >> 8);
+        }
+    }
+}
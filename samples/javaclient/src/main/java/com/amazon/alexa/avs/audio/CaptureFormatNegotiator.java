@@ -0,0 +1,104 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+
+/**
+ * Chooses the format to open a microphone line in, so that it captures in its own format and the
+ * conversion to the format AVS expects is done by a {@link CaptureConverter} rather than by the
+ * driver, or not at all when the device can't convert.
+ *
+ * The line is opened in 16 bit PCM at the first rate it supports of: the configured rate, the
+ * rates it lists itself, then the rates microphones most commonly capture at natively. It gets
+ * the most channels it lists, so that a microphone array is not mixed down by the driver.
+ */
+public final class CaptureFormatNegotiator {
+    private static final float[] COMMON_SAMPLE_RATES = { 48000, 44100, 32000, 16000 };
+    private static final int[] COMMON_CHANNELS = { 2, 1 };
+
+    private CaptureFormatNegotiator() {
+    }
+
+    /**
+     * @param lineInfo
+     *            The description of the microphone line.
+     * @param target
+     *            The format AVS expects, which is returned if the line supports no other.
+     * @param sampleRate
+     *            The rate to capture at, or 0 to choose one.
+     * @param channel
+     *            The channel that will be kept, or {@link CaptureConverter#MIX_CHANNELS}.
+     * @return The format to open the line in.
+     */
+    public static AudioFormat negotiate(Line.Info lineInfo, AudioFormat target, float sampleRate,
+            int channel) {
+        if (!(lineInfo instanceof DataLine.Info)) {
+            return target;
+        }
+        DataLine.Info info = (DataLine.Info) lineInfo;
+
+        List<Float> rates = new ArrayList<>();
+        List<Integer> channelCounts = new ArrayList<>();
+        if (sampleRate > 0) {
+            rates.add(sampleRate);
+        }
+        for (AudioFormat format : info.getFormats()) {
+            if (!CaptureConverter.isSigned16Bit(format)) {
+                continue;
+            }
+            if ((sampleRate <= 0) && (format.getSampleRate() != AudioSystem.NOT_SPECIFIED)) {
+                addIfAbsent(rates, format.getSampleRate());
+            }
+            if (format.getChannels() != AudioSystem.NOT_SPECIFIED) {
+                addIfAbsent(channelCounts, format.getChannels());
+            }
+        }
+        if (sampleRate <= 0) {
+            for (float rate : COMMON_SAMPLE_RATES) {
+                addIfAbsent(rates, rate);
+            }
+        }
+        channelCounts.sort((a, b) -> b - a);
+        for (int count : COMMON_CHANNELS) {
+            addIfAbsent(channelCounts, count);
+        }
+
+        for (float rate : rates) {
+            for (int channels : channelCounts) {
+                if (channels <= channel) {
+                    continue;
+                }
+                for (boolean bigEndian : new boolean[] { false, true }) {
+                    AudioFormat format = new AudioFormat(rate, 16, channels, true, bigEndian);
+                    if (info.isFormatSupported(format)) {
+                        return format;
+                    }
+                }
+            }
+        }
+        return target;
+    }
+
+    private static <T> void addIfAbsent(List<T> values, T value) {
+        if (!values.contains(value)) {
+            values.add(value);
+        }
+    }
+}
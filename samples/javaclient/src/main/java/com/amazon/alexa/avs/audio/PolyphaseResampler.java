@@ -0,0 +1,202 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.audio;
+
+import java.util.Arrays;
+
+/**
+ * Converts a stream of samples from one sample rate to another, a block at a time and without
+ * allocating.
+ *
+ * The ratio of the rates is reduced to up / down, and the stream is conceptually upsampled by
+ * up, low pass filtered and downsampled by down. Only the output samples are computed: each one
+ * is the dot product of the most recent input samples with one phase of a polyphase
+ * decomposition of the filter. The filter is a Kaiser windowed sinc with its cutoff just below
+ * the lower of the two Nyquist frequencies, so that what the output can't represent is removed
+ * rather than folded back into the speech band. Each phase is normalized to unit gain at DC.
+ *
+ * The last input samples of a block are kept for the next one, so a resampler must only be used
+ * for a single stream, by one thread at a time.
+ */
+public class PolyphaseResampler {
+    // Half the length of the filter, in samples of the lower of the two rates
+    private static final int HALF_LENGTH = 24;
+    // Where the filter cuts off, as a fraction of the lower Nyquist frequency
+    private static final double CUTOFF = 0.94;
+    // About 80 dB of stopband attenuation
+    private static final double KAISER_BETA = 8;
+
+    private final int up;
+    private final int down;
+    private final int maxInputSamples;
+    private final int taps;
+    private final float[][] phases;
+    // The last taps - 1 input samples of the previous block, followed by the current block
+    private final float[] history;
+    private int historyLength;
+    // The index in history of the newest input sample of the next output sample, and its phase
+    private int nextIndex;
+    private int nextPhase;
+
+    /**
+     * @param inputRate
+     * @param outputRate
+     * @param maxInputSamples
+     *            The most samples that will be passed to {@link #process} at once.
+     */
+    public PolyphaseResampler(int inputRate, int outputRate, int maxInputSamples) {
+        if ((inputRate < 1) || (outputRate < 1) || (maxInputSamples < 1)) {
+            throw new IllegalArgumentException("Invalid resampling from " + inputRate + " Hz to "
+                    + outputRate + " Hz in blocks of " + maxInputSamples);
+        }
+        int divisor = gcd(inputRate, outputRate);
+        up = outputRate / divisor;
+        down = inputRate / divisor;
+        this.maxInputSamples = maxInputSamples;
+
+        // The filter spans the same time whichever way the rate is converted
+        double inputSamplesPerLowerRateSample = Math.max(1.0, (double) down / up);
+        taps = (int) Math.ceil(2 * HALF_LENGTH * inputSamplesPerLowerRateSample);
+        phases = designPhases(up, down, taps);
+        history = new float[(taps - 1) + maxInputSamples];
+        reset();
+    }
+
+    /**
+     * @return The most samples a call to {@link #process} returns.
+     */
+    public int getMaxOutputSamples() {
+        return (int) (((long) maxInputSamples * up) / down) + 1;
+    }
+
+    /**
+     * Resample a block of the stream.
+     *
+     * @param in
+     * @param offset
+     * @param count
+     *            The number of input samples, at most maxInputSamples.
+     * @param out
+     *            Receives the output samples, with room for {@link #getMaxOutputSamples()}
+     *            samples from outOffset.
+     * @param outOffset
+     * @return The number of output samples.
+     */
+    public int process(float[] in, int offset, int count, float[] out, int outOffset) {
+        if (count > maxInputSamples) {
+            throw new IllegalArgumentException(
+                    count + " samples is more than the maximum of " + maxInputSamples);
+        }
+        final float[] h = history;
+        System.arraycopy(in, offset, h, historyLength, count);
+        historyLength += count;
+
+        final int n = taps;
+        int index = nextIndex;
+        int phase = nextPhase;
+        int produced = 0;
+        while (index < historyLength) {
+            final float[] coefficients = phases[phase];
+            final int start = index - (n - 1);
+            // The coefficients of a phase are stored in time order, oldest sample first
+            float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+            int k = 0;
+            for (; k + 3 < n; k += 4) {
+                sum0 += coefficients[k] * h[start + k];
+                sum1 += coefficients[k + 1] * h[start + k + 1];
+                sum2 += coefficients[k + 2] * h[start + k + 2];
+                sum3 += coefficients[k + 3] * h[start + k + 3];
+            }
+            for (; k < n; k++) {
+                sum0 += coefficients[k] * h[start + k];
+            }
+            out[outOffset + produced++] = (sum0 + sum1) + (sum2 + sum3);
+
+            phase += down;
+            index += phase / up;
+            phase %= up;
+        }
+
+        // Keep the samples the next output still needs
+        int keepFrom = Math.min(index - (n - 1), historyLength);
+        System.arraycopy(h, keepFrom, h, 0, historyLength - keepFrom);
+        historyLength -= keepFrom;
+        nextIndex = index - keepFrom;
+        nextPhase = phase;
+        return produced;
+    }
+
+    /**
+     * Forget the stream so far, as if it had been silent.
+     */
+    public void reset() {
+        Arrays.fill(history, 0);
+        historyLength = taps - 1;
+        nextIndex = taps - 1;
+        nextPhase = 0;
+    }
+
+    private static float[][] designPhases(int up, int down, int taps) {
+        // The prototype runs at the upsampled rate, where the lower Nyquist frequency is at
+        // 1 / max(up, down) of the Nyquist frequency
+        int length = up * taps;
+        double cutoff = CUTOFF / Math.max(up, down);
+        double center = (length - 1) / 2.0;
+        double windowNormalization = besselI0(KAISER_BETA);
+
+        float[][] phases = new float[up][taps];
+        for (int p = 0; p < up; p++) {
+            double sum = 0;
+            double[] coefficients = new double[taps];
+            for (int k = 0; k < taps; k++) {
+                // Tap k of phase p weighs the input sample taps - 1 - k before the newest one
+                int i = p + ((taps - 1 - k) * up);
+                double t = i - center;
+                double sinc = (t == 0) ? cutoff
+                        : Math.sin(Math.PI * cutoff * t) / (Math.PI * t);
+                double x = t / center;
+                double window =
+                        besselI0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - (x * x))))
+                                / windowNormalization;
+                coefficients[k] = sinc * window;
+                sum += coefficients[k];
+            }
+            for (int k = 0; k < taps; k++) {
+                phases[p][k] = (float) (coefficients[k] / sum);
+            }
+        }
+        return phases;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < (sum * 1e-12)) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
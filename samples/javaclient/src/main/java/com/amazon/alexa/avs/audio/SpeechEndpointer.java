@@ -0,0 +1,248 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.audio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Detects the end of an utterance in the captured audio, so that the capture can be stopped
+ * without waiting for AVS to find the end of speech and send a StopCapture directive.
+ *
+ * Every frame is classified as speech or not by its level over an estimate of the background
+ * noise, the level of the quietest frame of the last second. Pauses between words keep it down
+ * while speech goes on, and it forgets a dropout or a rise in the noise within a second.
+ * Quieter frames still count as speech when their zero crossing rate is high, to keep unvoiced
+ * consonants such as a trailing "s". Speech starts after a run of speech frames, and ends after
+ * a silence in which no such run was heard. The {@link Mode} sets how loud speech has to be and how long a
+ * silence ends it; only {@link Mode#SAFE} never stops a capture in which no speech was heard.
+ *
+ * The endpointer is a listener of a single capture at a time.
+ */
+public class SpeechEndpointer implements AudioFeatureListener {
+    private static final Logger log = LoggerFactory.getLogger(SpeechEndpointer.class);
+
+    // Frames quieter than this are never speech, however quiet the background
+    private static final double MIN_SPEECH_DB = -60;
+    private static final double MIN_NOISE_DB = -90;
+    // The noise is the quietest frame of the last second, kept as the minimum of every tenth
+    private static final double NOISE_WINDOW_MS = 1000;
+    private static final int NOISE_BLOCKS = 10;
+    private static final double UNVOICED_ZERO_CROSSING_RATE = 0.3;
+    // Background noise varies by a few dB from frame to frame, and hiss crosses zero often too
+    private static final double MIN_UNVOICED_OVER_NOISE_DB = 6;
+
+    public enum Mode {
+        /** Leave the end of speech to AVS. */
+        OFF(0, 0, 0, 0),
+        /** Only trim a long trailing silence after speech was heard. */
+        SAFE(6, 60, 1500, 0),
+        NORMAL(8, 50, 800, 8000),
+        AGGRESSIVE(10, 30, 600, 5000);
+
+        private final double speechThresholdDb;
+        private final int minSpeechMs;
+        private final int trailingSilenceMs;
+        private final int noSpeechTimeoutMs;
+
+        private Mode(double speechThresholdDb, int minSpeechMs, int trailingSilenceMs,
+                int noSpeechTimeoutMs) {
+            this.speechThresholdDb = speechThresholdDb;
+            this.minSpeechMs = minSpeechMs;
+            this.trailingSilenceMs = trailingSilenceMs;
+            this.noSpeechTimeoutMs = noSpeechTimeoutMs;
+        }
+
+        /**
+         * @return How far over the background noise a frame has to be to be speech, in dB.
+         */
+        public double getSpeechThresholdDb() {
+            return speechThresholdDb;
+        }
+
+        /**
+         * @return The length of the run of speech frames that starts speech.
+         */
+        public int getMinSpeechMs() {
+            return minSpeechMs;
+        }
+
+        /**
+         * @return The length of the silence after speech that ends it.
+         */
+        public int getTrailingSilenceMs() {
+            return trailingSilenceMs;
+        }
+
+        /**
+         * @return How long to wait for speech to start before giving up, 0 to wait until the
+         *         capture is stopped some other way.
+         */
+        public int getNoSpeechTimeoutMs() {
+            return noSpeechTimeoutMs;
+        }
+    }
+
+    public enum Endpoint {
+        /** Speech was followed by enough silence. */
+        END_OF_SPEECH,
+        /** No speech started in time. */
+        NO_SPEECH;
+    }
+
+    /**
+     * Told when the endpointer finds the end of an utterance.
+     */
+    public interface EndpointListener {
+        /**
+         * Called on the thread that extracts the audio features, once per capture at most.
+         *
+         * @param endpoint
+         * @param position
+         *            The position in the captured audio at which the endpoint was found, in
+         *            bytes.
+         */
+        void onEndpoint(Endpoint endpoint, long position);
+    }
+
+    private final Mode mode;
+    private final float sampleRate;
+    private final EndpointListener listener;
+
+    private final double[] noiseBlocksDb = new double[NOISE_BLOCKS];
+    private int noiseBlock;
+    private double noiseBlockMs;
+    private double noiseDb;
+    private boolean speechStarted;
+    private boolean ended;
+    private double speechRunMs;
+    private double silenceRunMs;
+    private double elapsedMs;
+
+    /**
+     * @param mode
+     * @param sampleRate
+     *            The sample rate of the captured audio.
+     * @param listener
+     */
+    public SpeechEndpointer(Mode mode, float sampleRate, EndpointListener listener) {
+        this.mode = mode;
+        this.sampleRate = sampleRate;
+        this.listener = listener;
+        reset();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    @Override
+    public void onAudioStarted() {
+        reset();
+    }
+
+    @Override
+    public void onAudioFeatures(AudioFeatures features) {
+        if ((mode == Mode.OFF) || ended) {
+            return;
+        }
+        double frameMs = (features.getSampleCount() * 1000.0) / sampleRate;
+        elapsedMs += frameMs;
+
+        double levelDb = toDb(features.getRms());
+        boolean speech = isSpeech(levelDb, features.getZeroCrossingRate());
+        trackNoise(levelDb, frameMs);
+
+        if (speech) {
+            speechRunMs += frameMs;
+        } else {
+            speechRunMs = 0;
+        }
+        if (speechRunMs >= mode.getMinSpeechMs()) {
+            silenceRunMs = 0;
+            if (!speechStarted) {
+                speechStarted = true;
+                log.debug("Speech started at {} ms", (long) elapsedMs);
+            }
+        } else {
+            // A run of speech frames too short to be speech doesn't break the silence
+            silenceRunMs += frameMs;
+        }
+
+        long position = features.getPosition() + (features.getSampleCount() * 2);
+        if (speechStarted && (silenceRunMs >= mode.getTrailingSilenceMs())) {
+            end(Endpoint.END_OF_SPEECH, position);
+        } else if (!speechStarted && (mode.getNoSpeechTimeoutMs() > 0)
+                && (elapsedMs >= mode.getNoSpeechTimeoutMs())) {
+            end(Endpoint.NO_SPEECH, position);
+        }
+    }
+
+    @Override
+    public void onAudioEnded() {
+        reset();
+    }
+
+    /**
+     * Forget the capture so far, before a new one.
+     */
+    public void reset() {
+        Arrays.fill(noiseBlocksDb, Double.POSITIVE_INFINITY);
+        noiseBlock = 0;
+        noiseBlockMs = 0;
+        noiseDb = Double.NaN;
+        speechStarted = false;
+        ended = false;
+        speechRunMs = 0;
+        silenceRunMs = 0;
+        elapsedMs = 0;
+    }
+
+    private boolean isSpeech(double levelDb, double zeroCrossingRate) {
+        if (Double.isNaN(noiseDb) || (levelDb < MIN_SPEECH_DB)) {
+            return false;
+        }
+        double overNoiseDb = levelDb - noiseDb;
+        return (overNoiseDb >= mode.getSpeechThresholdDb())
+                || ((overNoiseDb >= Math.max(MIN_UNVOICED_OVER_NOISE_DB,
+                        mode.getSpeechThresholdDb() / 2))
+                        && (zeroCrossingRate >= UNVOICED_ZERO_CROSSING_RATE));
+    }
+
+    private void trackNoise(double levelDb, double frameMs) {
+        noiseBlocksDb[noiseBlock] = Math.min(noiseBlocksDb[noiseBlock], levelDb);
+        noiseBlockMs += frameMs;
+        if (noiseBlockMs >= (NOISE_WINDOW_MS / NOISE_BLOCKS)) {
+            noiseBlock = (noiseBlock + 1) % NOISE_BLOCKS;
+            noiseBlocksDb[noiseBlock] = Double.POSITIVE_INFINITY;
+            noiseBlockMs = 0;
+        }
+        double minimum = Double.POSITIVE_INFINITY;
+        for (double blockDb : noiseBlocksDb) {
+            minimum = Math.min(minimum, blockDb);
+        }
+        noiseDb = Math.max(MIN_NOISE_DB, minimum);
+    }
+
+    private void end(Endpoint endpoint, long position) {
+        ended = true;
+        log.info("{} after {} ms of audio", endpoint, (long) elapsedMs);
+        listener.onEndpoint(endpoint, position);
+    }
+
+    private static double toDb(double level) {
+        return (level > 0) ? (20 * Math.log10(level)) : MIN_NOISE_DB;
+    }
+}
@@ -26,6 +26,10 @@ import javax.json.JsonObjectBuilder;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.amazon.alexa.avs.TaskExecutor;
+import com.amazon.alexa.avs.audio.CaptureConverter;
+import com.amazon.alexa.avs.audio.SpeechEndpointer;
+
 /**
  * Container that encapsulates all the information that exists in the config file.
  */
@@ -48,6 +52,35 @@ public class DeviceConfig {
     public static final String WAKE_WORD_AGENT_ENABLED = "wakeWordAgentEnabled";
     public static final String LOCALE = "locale";
     public static final String HEADLESS = "headless";
+    public static final String MAX_CONCURRENT_EVENTS = "maxConcurrentEvents";
+    public static final String EVENT_JOURNAL_FILE = "eventJournalFile";
+    public static final String AUDIO_REPLAY_MEMORY_LIMIT_KB = "audioReplayMemoryLimitKB";
+    public static final String EVENT_RESPONSE_BUFFER_KB = "eventResponseBufferKB";
+    public static final String DOWNCHANNEL_RESPONSE_BUFFER_KB = "downchannelResponseBufferKB";
+    public static final String METRICS_PORT = "metricsPort";
+    public static final String DATA_DIRECTORY = "dataDirectory";
+    public static final String THREAD_MODE = "threadMode";
+    public static final String ENDPOINTING = "endpointing";
+    public static final String PRE_ROLL_MS = "preRollMs";
+    public static final String CAPTURE_SAMPLE_RATE = "captureSampleRate";
+    public static final String CAPTURE_CHANNEL = "captureChannel";
+
+    public static final int DEFAULT_MAX_CONCURRENT_EVENTS = 1;
+    public static final String DEFAULT_EVENT_JOURNAL_FILE = "events.journal";
+    public static final int DEFAULT_AUDIO_REPLAY_MEMORY_LIMIT_KB = 1024;
+    public static final int DEFAULT_EVENT_RESPONSE_BUFFER_KB = 64;
+    public static final int DEFAULT_DOWNCHANNEL_RESPONSE_BUFFER_KB = 16;
+    public static final int DEFAULT_METRICS_PORT = 9404;
+    public static final String DEFAULT_DATA_DIRECTORY = "";
+    public static final TaskExecutor.Mode DEFAULT_THREAD_MODE = TaskExecutor.Mode.PLATFORM;
+    public static final SpeechEndpointer.Mode DEFAULT_ENDPOINTING = SpeechEndpointer.Mode.SAFE;
+    public static final int DEFAULT_PRE_ROLL_MS = 300;
+    public static final int MAX_PRE_ROLL_MS = 2000;
+    public static final int DEFAULT_CAPTURE_SAMPLE_RATE = 0;
+    public static final int MIN_CAPTURE_SAMPLE_RATE = 8000;
+    public static final int MAX_CAPTURE_SAMPLE_RATE = 192000;
+    public static final int DEFAULT_CAPTURE_CHANNEL = CaptureConverter.MIX_CHANNELS;
+    public static final int MAX_CAPTURE_CHANNEL = 31;
 
     /*
      * Required parameters from the config file.
@@ -65,6 +98,18 @@ public class DeviceConfig {
     private CompanionServiceInformation companionServiceInfo;
     private boolean wakeWordAgentEnabled;
     private boolean headlessModeEnabled;
+    private int maxConcurrentEvents = DEFAULT_MAX_CONCURRENT_EVENTS;
+    private String eventJournalFile = DEFAULT_EVENT_JOURNAL_FILE;
+    private int audioReplayMemoryLimitKB = DEFAULT_AUDIO_REPLAY_MEMORY_LIMIT_KB;
+    private int eventResponseBufferKB = DEFAULT_EVENT_RESPONSE_BUFFER_KB;
+    private int downchannelResponseBufferKB = DEFAULT_DOWNCHANNEL_RESPONSE_BUFFER_KB;
+    private int metricsPort = DEFAULT_METRICS_PORT;
+    private String dataDirectory = DEFAULT_DATA_DIRECTORY;
+    private TaskExecutor.Mode threadMode = DEFAULT_THREAD_MODE;
+    private SpeechEndpointer.Mode endpointing = DEFAULT_ENDPOINTING;
+    private int preRollMs = DEFAULT_PRE_ROLL_MS;
+    private int captureSampleRate = DEFAULT_CAPTURE_SAMPLE_RATE;
+    private int captureChannel = DEFAULT_CAPTURE_CHANNEL;
 
     @SuppressWarnings("javadoc")
     public enum ProvisioningMethod {
@@ -247,6 +292,270 @@ public class DeviceConfig {
         return headlessModeEnabled;
     }
 
+    /**
+     * @return the maximum number of events that may be sent to AVS as concurrent HTTP/2 streams.
+     */
+    public int getMaxConcurrentEvents() {
+        return maxConcurrentEvents;
+    }
+
+    /**
+     * Set the maximum number of events that may be sent to AVS as concurrent HTTP/2 streams. A
+     * value of 1 sends events strictly one at a time.
+     *
+     * @param maxConcurrentEvents
+     */
+    public void setMaxConcurrentEvents(int maxConcurrentEvents) {
+        if (maxConcurrentEvents < 1) {
+            throw new MalformedConfigException(
+                    MAX_CONCURRENT_EVENTS + " must be at least 1 in your config file.");
+        }
+        this.maxConcurrentEvents = maxConcurrentEvents;
+    }
+
+    /**
+     * @return the file that events which must reach AVS are journaled to until they have been
+     *         delivered, or an empty string if the journal is disabled.
+     */
+    public String getEventJournalFile() {
+        return eventJournalFile;
+    }
+
+    /**
+     * Set the file that events which must reach AVS are journaled to. An empty string disables
+     * the journal.
+     *
+     * @param eventJournalFile
+     */
+    public void setEventJournalFile(String eventJournalFile) {
+        if (eventJournalFile == null) {
+            throw new MalformedConfigException(
+                    EVENT_JOURNAL_FILE + " must not be null in your config file.");
+        }
+        this.eventJournalFile = eventJournalFile;
+    }
+
+    /**
+     * @return the amount of recorded audio, in KiB, that is kept in memory in case a Recognize
+     *         event has to be sent again. Audio past that is kept in a temporary file.
+     */
+    public int getAudioReplayMemoryLimitKB() {
+        return audioReplayMemoryLimitKB;
+    }
+
+    /**
+     * Set the amount of recorded audio, in KiB, that is kept in memory in case a Recognize event
+     * has to be sent again. A value of 0 keeps all of it in a temporary file.
+     *
+     * @param audioReplayMemoryLimitKB
+     */
+    public void setAudioReplayMemoryLimitKB(int audioReplayMemoryLimitKB) {
+        if (audioReplayMemoryLimitKB < 0) {
+            throw new MalformedConfigException(
+                    AUDIO_REPLAY_MEMORY_LIMIT_KB + " must not be negative in your config file.");
+        }
+        this.audioReplayMemoryLimitKB = audioReplayMemoryLimitKB;
+    }
+
+    /**
+     * @return the amount of the response to an event, in KiB, that is buffered before AVS is held
+     *         back by flow control until the client catches up.
+     */
+    public int getEventResponseBufferKB() {
+        return eventResponseBufferKB;
+    }
+
+    /**
+     * Set the amount of the response to an event, in KiB, that is buffered before AVS is held back
+     * by flow control until the client catches up.
+     *
+     * @param eventResponseBufferKB
+     */
+    public void setEventResponseBufferKB(int eventResponseBufferKB) {
+        if (eventResponseBufferKB < 1) {
+            throw new MalformedConfigException(
+                    EVENT_RESPONSE_BUFFER_KB + " must be at least 1 in your config file.");
+        }
+        this.eventResponseBufferKB = eventResponseBufferKB;
+    }
+
+    /**
+     * @return the amount of the downchannel, in KiB, that is buffered before AVS is held back by
+     *         flow control until the client catches up.
+     */
+    public int getDownchannelResponseBufferKB() {
+        return downchannelResponseBufferKB;
+    }
+
+    /**
+     * Set the amount of the downchannel, in KiB, that is buffered before AVS is held back by flow
+     * control until the client catches up.
+     *
+     * @param downchannelResponseBufferKB
+     */
+    public void setDownchannelResponseBufferKB(int downchannelResponseBufferKB) {
+        if (downchannelResponseBufferKB < 1) {
+            throw new MalformedConfigException(
+                    DOWNCHANNEL_RESPONSE_BUFFER_KB + " must be at least 1 in your config file.");
+        }
+        this.downchannelResponseBufferKB = downchannelResponseBufferKB;
+    }
+
+    /**
+     * @return the port on localhost the metrics are served on, or 0 if they are not served.
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * Set the port on localhost to serve the metrics on for Prometheus, or 0 not to serve them.
+     *
+     * @param metricsPort
+     */
+    public void setMetricsPort(int metricsPort) {
+        if ((metricsPort < 0) || (metricsPort > 65535)) {
+            throw new MalformedConfigException(
+                    METRICS_PORT + " must be between 0 and 65535 in your config file.");
+        }
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * @return the directory the alerts, the notification indicator and a relative event journal
+     *         are kept in, or null for the working directory.
+     */
+    public File getDataDirectory() {
+        return StringUtils.isBlank(dataDirectory) ? null : new File(dataDirectory);
+    }
+
+    /**
+     * Set the directory the device keeps its state in, so that several devices can run side by
+     * side. An empty string keeps it in the working directory.
+     *
+     * @param dataDirectory
+     */
+    public void setDataDirectory(String dataDirectory) {
+        if (dataDirectory == null) {
+            throw new MalformedConfigException(
+                    DATA_DIRECTORY + " must not be null in your config file.");
+        }
+        this.dataDirectory = dataDirectory;
+    }
+
+    /**
+     * @return whether blocking tasks run on platform or virtual threads.
+     */
+    public TaskExecutor.Mode getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Set whether blocking tasks run on "platform" or "virtual" threads. Virtual threads need Java
+     * 21, the client falls back to platform threads without it.
+     *
+     * @param threadMode
+     */
+    public void setThreadMode(String threadMode) {
+        try {
+            this.threadMode = TaskExecutor.Mode.valueOf(threadMode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new MalformedConfigException(
+                    THREAD_MODE + " should be either \"platform\" or \"virtual\".");
+        }
+    }
+
+    /**
+     * @return how the end of speech is detected on the device.
+     */
+    public SpeechEndpointer.Mode getEndpointing() {
+        return endpointing;
+    }
+
+    /**
+     * Set how the end of speech is detected on the device: "off" to leave it to AVS, "safe" to
+     * only stop recording after a long silence following speech, or "normal" or "aggressive" to
+     * stop sooner, and also when no speech is heard.
+     *
+     * @param endpointing
+     */
+    public void setEndpointing(String endpointing) {
+        try {
+            this.endpointing =
+                    SpeechEndpointer.Mode.valueOf(endpointing.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new MalformedConfigException(ENDPOINTING
+                    + " should be one of \"off\", \"safe\", \"normal\" or \"aggressive\".");
+        }
+    }
+
+    /**
+     * @return how much of the audio captured before a recording starts is sent with it, in
+     *         milliseconds.
+     */
+    public int getPreRollMs() {
+        return preRollMs;
+    }
+
+    /**
+     * Set how much of the audio captured before a recording starts is sent with it, so that the
+     * start of an utterance that began before the trigger is not cut off.
+     *
+     * @param preRollMs
+     */
+    public void setPreRollMs(int preRollMs) {
+        if ((preRollMs < 0) || (preRollMs > MAX_PRE_ROLL_MS)) {
+            throw new MalformedConfigException(PRE_ROLL_MS + " must be between 0 and "
+                    + MAX_PRE_ROLL_MS + " in your config file.");
+        }
+        this.preRollMs = preRollMs;
+    }
+
+    /**
+     * @return the rate the microphone is opened at, or 0 if it is chosen from the rates the
+     *         microphone supports.
+     */
+    public int getCaptureSampleRate() {
+        return captureSampleRate;
+    }
+
+    /**
+     * Set the rate to open the microphone at, or 0 to choose it from the rates the microphone
+     * supports. The audio is converted to 16 kHz either way.
+     *
+     * @param captureSampleRate
+     */
+    public void setCaptureSampleRate(int captureSampleRate) {
+        if ((captureSampleRate != 0) && ((captureSampleRate < MIN_CAPTURE_SAMPLE_RATE)
+                || (captureSampleRate > MAX_CAPTURE_SAMPLE_RATE))) {
+            throw new MalformedConfigException(CAPTURE_SAMPLE_RATE + " must be 0 or between "
+                    + MIN_CAPTURE_SAMPLE_RATE + " and " + MAX_CAPTURE_SAMPLE_RATE
+                    + " in your config file.");
+        }
+        this.captureSampleRate = captureSampleRate;
+    }
+
+    /**
+     * @return the channel of the microphone that is recorded, or -1 if all of them are mixed.
+     */
+    public int getCaptureChannel() {
+        return captureChannel;
+    }
+
+    /**
+     * Set the channel of the microphone to record, counting from 0, or -1 to mix all of them.
+     *
+     * @param captureChannel
+     */
+    public void setCaptureChannel(int captureChannel) {
+        if ((captureChannel < CaptureConverter.MIX_CHANNELS)
+                || (captureChannel > MAX_CAPTURE_CHANNEL)) {
+            throw new MalformedConfigException(CAPTURE_CHANNEL + " must be between -1 and "
+                    + MAX_CAPTURE_CHANNEL + " in your config file.");
+        }
+        this.captureChannel = captureChannel;
+    }
+
     /**
      * @return locale
      */
@@ -322,6 +631,51 @@ public class DeviceConfig {
                 .add(LOCALE, locale.toLanguageTag())
                 .add(AVS_HOST, avsHost.toString());
 
+        if (maxConcurrentEvents != DEFAULT_MAX_CONCURRENT_EVENTS) {
+            builder.add(MAX_CONCURRENT_EVENTS, maxConcurrentEvents);
+        }
+
+        if (!DEFAULT_EVENT_JOURNAL_FILE.equals(eventJournalFile)) {
+            builder.add(EVENT_JOURNAL_FILE, eventJournalFile);
+        }
+
+        if (audioReplayMemoryLimitKB != DEFAULT_AUDIO_REPLAY_MEMORY_LIMIT_KB) {
+            builder.add(AUDIO_REPLAY_MEMORY_LIMIT_KB, audioReplayMemoryLimitKB);
+        }
+
+        if (eventResponseBufferKB != DEFAULT_EVENT_RESPONSE_BUFFER_KB) {
+            builder.add(EVENT_RESPONSE_BUFFER_KB, eventResponseBufferKB);
+        }
+
+        if (downchannelResponseBufferKB != DEFAULT_DOWNCHANNEL_RESPONSE_BUFFER_KB) {
+            builder.add(DOWNCHANNEL_RESPONSE_BUFFER_KB, downchannelResponseBufferKB);
+        }
+
+        if (metricsPort != DEFAULT_METRICS_PORT) {
+            builder.add(METRICS_PORT, metricsPort);
+        }
+
+        if (!DEFAULT_DATA_DIRECTORY.equals(dataDirectory)) {
+            builder.add(DATA_DIRECTORY, dataDirectory);
+        }
+
+        if (threadMode != DEFAULT_THREAD_MODE) {
+            builder.add(THREAD_MODE, threadMode.name().toLowerCase(Locale.ROOT));
+        }
+
+        if (endpointing != DEFAULT_ENDPOINTING) {
+            builder.add(ENDPOINTING, endpointing.name().toLowerCase(Locale.ROOT));
+        }
+        if (preRollMs != DEFAULT_PRE_ROLL_MS) {
+            builder.add(PRE_ROLL_MS, preRollMs);
+        }
+        if (captureSampleRate != DEFAULT_CAPTURE_SAMPLE_RATE) {
+            builder.add(CAPTURE_SAMPLE_RATE, captureSampleRate);
+        }
+        if (captureChannel != DEFAULT_CAPTURE_CHANNEL) {
+            builder.add(CAPTURE_CHANNEL, captureChannel);
+        }
+
         if (companionAppInfo != null) {
             builder.add(COMPANION_APP, companionAppInfo.toJson());
         }
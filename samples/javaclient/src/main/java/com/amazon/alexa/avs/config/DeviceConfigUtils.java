@@ -118,6 +118,33 @@ public final class DeviceConfigUtils {
             DeviceConfig deviceConfig = new DeviceConfig(productId, dsn, provisioningMethod,
                     wakeWordAgentEnabled, headlessModeEnabled, locale, companionAppInfo,
                     companionServiceInfo, avsHost);
+            deviceConfig.setMaxConcurrentEvents(configObject.getInt(
+                    DeviceConfig.MAX_CONCURRENT_EVENTS, DeviceConfig.DEFAULT_MAX_CONCURRENT_EVENTS));
+            deviceConfig.setEventJournalFile(configObject.getString(
+                    DeviceConfig.EVENT_JOURNAL_FILE, DeviceConfig.DEFAULT_EVENT_JOURNAL_FILE));
+            deviceConfig.setAudioReplayMemoryLimitKB(configObject.getInt(
+                    DeviceConfig.AUDIO_REPLAY_MEMORY_LIMIT_KB,
+                    DeviceConfig.DEFAULT_AUDIO_REPLAY_MEMORY_LIMIT_KB));
+            deviceConfig.setEventResponseBufferKB(configObject.getInt(
+                    DeviceConfig.EVENT_RESPONSE_BUFFER_KB,
+                    DeviceConfig.DEFAULT_EVENT_RESPONSE_BUFFER_KB));
+            deviceConfig.setDownchannelResponseBufferKB(configObject.getInt(
+                    DeviceConfig.DOWNCHANNEL_RESPONSE_BUFFER_KB,
+                    DeviceConfig.DEFAULT_DOWNCHANNEL_RESPONSE_BUFFER_KB));
+            deviceConfig.setMetricsPort(configObject.getInt(DeviceConfig.METRICS_PORT,
+                    DeviceConfig.DEFAULT_METRICS_PORT));
+            deviceConfig.setDataDirectory(configObject.getString(DeviceConfig.DATA_DIRECTORY,
+                    DeviceConfig.DEFAULT_DATA_DIRECTORY));
+            deviceConfig.setThreadMode(configObject.getString(DeviceConfig.THREAD_MODE,
+                    DeviceConfig.DEFAULT_THREAD_MODE.name()));
+            deviceConfig.setEndpointing(configObject.getString(DeviceConfig.ENDPOINTING,
+                    DeviceConfig.DEFAULT_ENDPOINTING.name()));
+            deviceConfig.setPreRollMs(configObject.getInt(DeviceConfig.PRE_ROLL_MS,
+                    DeviceConfig.DEFAULT_PRE_ROLL_MS));
+            deviceConfig.setCaptureSampleRate(configObject.getInt(
+                    DeviceConfig.CAPTURE_SAMPLE_RATE, DeviceConfig.DEFAULT_CAPTURE_SAMPLE_RATE));
+            deviceConfig.setCaptureChannel(configObject.getInt(DeviceConfig.CAPTURE_CHANNEL,
+                    DeviceConfig.DEFAULT_CAPTURE_CHANNEL));
 
             return deviceConfig;
         } catch (FileNotFoundException e) {
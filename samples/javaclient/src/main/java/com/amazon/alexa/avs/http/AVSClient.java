@@ -16,18 +16,27 @@ import com.amazon.alexa.avs.AVSRequest;
 import com.amazon.alexa.avs.AudioInputFormat;
 import com.amazon.alexa.avs.RequestListener;
 import com.amazon.alexa.avs.ResultListener;
-import com.amazon.alexa.avs.config.ObjectMapperFactory;
+import com.amazon.alexa.avs.TaskExecutor;
 import com.amazon.alexa.avs.exception.AVSException;
 import com.amazon.alexa.avs.exception.AVSJsonProcessingException;
 import com.amazon.alexa.avs.exception.AlexaSystemException;
 import com.amazon.alexa.avs.exception.AlexaSystemExceptionCode;
 import com.amazon.alexa.avs.http.MultipartParser.MultipartParserConsumer;
 import com.amazon.alexa.avs.http.jetty.InputStreamResponseListener;
+import com.amazon.alexa.avs.http.jetty.PingAwareHTTP2Client;
 import com.amazon.alexa.avs.http.jetty.PingSendingHttpClientTransportOverHTTP2;
 import com.amazon.alexa.avs.http.jetty.PingSendingHttpClientTransportOverHTTP2.ConnectionListener;
+import com.amazon.alexa.avs.message.DialogRequestIdHeader;
+import com.amazon.alexa.avs.message.Header;
 import com.amazon.alexa.avs.message.Message;
 import com.amazon.alexa.avs.message.request.RequestBody;
 import com.amazon.alexa.avs.message.response.AlexaExceptionResponse;
+import com.amazon.alexa.avs.message.response.Directive;
+import com.amazon.alexa.avs.metrics.Counter;
+import com.amazon.alexa.avs.metrics.Histogram;
+import com.amazon.alexa.avs.metrics.InteractionTracer;
+import com.amazon.alexa.avs.metrics.InteractionTracer.Stage;
+import com.amazon.alexa.avs.metrics.MetricsRegistry;
 
 import org.apache.commons.fileupload.MultipartStream;
 import org.apache.commons.fileupload.MultipartStream.MalformedStreamException;
@@ -36,16 +45,13 @@ import org.apache.commons.lang3.StringUtils;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.JsonProcessingException;
 import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.ObjectWriter;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
-import org.eclipse.jetty.client.util.StringContentProvider;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
-import org.eclipse.jetty.http2.client.HTTP2Client;
 import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.component.LifeCycle.Listener;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
@@ -55,14 +61,28 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetAddress;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class AVSClient implements ConnectionListener {
     private static final Logger log = LoggerFactory.getLogger(AVSClient.class);
@@ -70,10 +90,15 @@ public class AVSClient implements ConnectionListener {
     private static final int REQUEST_TIMEOUT_IN_S = 15;
     private static final int REQUEST_ATTEMPTS = 3;
     private static final long REQUEST_RETRY_DELAY_MS = 1000;
+    private static final int DEFAULT_MAX_CONCURRENT_EVENTS = 1;
 
     private static final String EVENTS_ENDPOINT = "/v20160207/events";
     private static final String DIRECTIVES_ENDPOINT = "/v20160207/directives";
-    private final BlockingQueue<AVSRequest> requestQueue;
+    private static final String PING_ENDPOINT = "/ping";
+    private static final long WARM_UP_TIMEOUT_IN_S = 30;
+    private static final long JOURNAL_REPLAY_INTERVAL_MS = 250;
+    private static final int MAX_STATUS_CODE = 599;
+    private final RequestScheduler requestScheduler;
 
     static final String METADATA_NAME = "metadata";
     static final String AUDIO_NAME = "audio";
@@ -103,14 +128,39 @@ public class AVSClient implements ConnectionListener {
     private URL host;
 
     private SslContextFactory sslContextFactory;
-    private static String accessToken = "";
+    private volatile String accessToken = "";
     private DownchannelRequestThread downchannelThread;
     private RequestThread requestThread;
-    private MultipartParser requestResponseParser;
+    private final RequestPipeline requestPipeline;
+    private final MultipartParserConsumer multipartParserConsumer;
+    private final SharedTransport sharedTransport;
+    private final ScheduledExecutorService scheduler;
+    private final EventCoalescer eventCoalescer;
+    private final BufferPool bufferPool;
+    private volatile long audioReplayMemoryLimit = ReplayBuffer.DEFAULT_MEMORY_LIMIT;
+    private final Map<Resource, Long> responseBufferSizes = new ConcurrentHashMap<>();
+    private final EventEncoder eventEncoder;
+    private final RetryEngine retryEngine;
+    // Keeps requests from being sent in parallel when only one event may be in flight
+    private final ReentrantLock sequentialRequestLock = new ReentrantLock();
+    private final EventJournal eventJournal;
+    private final AtomicBoolean replayingJournal = new AtomicBoolean();
     private MultipartParser downchannelParser;
-    private HTTP2Client http2Client;
+    private final PingAwareHTTP2Client http2Client;
+    private final Histogram pingRoundTripTimes = Histogram.latencyMillis();
     private ParsingFailedHandler parsingFailedHandler;
     private ResultListener resultListener;
+    private volatile long timeToConnectedMs = -1;
+    private volatile InteractionTracer interactionTracer;
+    private final Map<Resource, Counter> requestCounts = new EnumMap<>(Resource.class);
+    private final Counter retryCount = new Counter();
+    // By status code, created as codes are seen
+    private final AtomicReferenceArray<Counter> responseCounts =
+            new AtomicReferenceArray<>(MAX_STATUS_CODE + 1);
+    private final Counter bytesSent = new Counter();
+    private final Counter bytesReceived = new Counter();
+    private final MultipartParser.Metrics parserMetrics = new MultipartParser.Metrics();
+    private volatile MetricsRegistry metricsRegistry;
 
     /**
      * Constructor that takes a host, a {@link MultipartParserConsumer}, and a {@link SslContextFactory} .
@@ -133,12 +183,125 @@ public class AVSClient implements ConnectionListener {
     public AVSClient(URL host, MultipartParserConsumer multipartParserConsumer,
             SslContextFactory sslContextFactory, ParsingFailedHandler parsingFailedHandler,
             ResultListener resultListener) throws Exception {
-        http2Client = new HTTP2Client();
+        this(host, multipartParserConsumer, sslContextFactory, parsingFailedHandler,
+                resultListener, DEFAULT_MAX_CONCURRENT_EVENTS);
+    }
+
+    /**
+     * Constructor that additionally takes the number of events that may be sent to AVS as
+     * concurrent HTTP/2 streams. Events that AVS needs to receive in order are still sent one at a
+     * time, see {@link EventOrdering}. With a value of 1, events are sent one at a time and never
+     * in parallel with the setup of the downchannel.
+     *
+     * @param host
+     *            The URL of the AVS host.
+     * @param multipartParserConsumer
+     *            The {@link MultipartParserConsumer} for executing the directives from the
+     *            multipartParser.
+     * @param sslContextFactory
+     *            The {@link SslContextFactory} to use for validating certificates.
+     * @param parsingFailedHandler
+     *            The handler for handling parse failures.
+     * @param resultListener
+     *            The listener for checking that the downchannel has been set up
+     * @param maxConcurrentEvents
+     *            The maximum number of events to have in flight at once.
+     * @throws Exception
+     */
+    public AVSClient(URL host, MultipartParserConsumer multipartParserConsumer,
+            SslContextFactory sslContextFactory, ParsingFailedHandler parsingFailedHandler,
+            ResultListener resultListener, int maxConcurrentEvents) throws Exception {
+        this(host, multipartParserConsumer, sslContextFactory, parsingFailedHandler,
+                resultListener, maxConcurrentEvents, null);
+    }
+
+    /**
+     * Constructor that additionally takes a journal for the events that must reach AVS. Those
+     * events are journaled before they are sent, and replayed once the connection is back if they
+     * could not be sent.
+     *
+     * @param host
+     *            The URL of the AVS host.
+     * @param multipartParserConsumer
+     *            The {@link MultipartParserConsumer} for executing the directives from the
+     *            multipartParser.
+     * @param sslContextFactory
+     *            The {@link SslContextFactory} to use for validating certificates.
+     * @param parsingFailedHandler
+     *            The handler for handling parse failures.
+     * @param resultListener
+     *            The listener for checking that the downchannel has been set up
+     * @param maxConcurrentEvents
+     *            The maximum number of events to have in flight at once.
+     * @param eventJournal
+     *            The journal, or null to send events without journaling them.
+     * @throws Exception
+     */
+    public AVSClient(URL host, MultipartParserConsumer multipartParserConsumer,
+            SslContextFactory sslContextFactory, ParsingFailedHandler parsingFailedHandler,
+            ResultListener resultListener, int maxConcurrentEvents, EventJournal eventJournal)
+            throws Exception {
+        this(host, multipartParserConsumer, sslContextFactory, parsingFailedHandler,
+                resultListener, maxConcurrentEvents, eventJournal, null);
+    }
+
+    /**
+     * Constructor that additionally takes the transport to share with other clients in the same
+     * JVM, to run many devices side by side. Each client still has its own connection, access
+     * token and request threads.
+     *
+     * @param host
+     *            The URL of the AVS host.
+     * @param multipartParserConsumer
+     *            The {@link MultipartParserConsumer} for executing the directives from the
+     *            multipartParser.
+     * @param sslContextFactory
+     *            The {@link SslContextFactory} to use for validating certificates.
+     * @param parsingFailedHandler
+     *            The handler for handling parse failures.
+     * @param resultListener
+     *            The listener for checking that the downchannel has been set up
+     * @param maxConcurrentEvents
+     *            The maximum number of events to have in flight at once.
+     * @param eventJournal
+     *            The journal, or null to send events without journaling them.
+     * @param sharedTransport
+     *            The started transport to share, or null for the client to have its own.
+     * @throws Exception
+     */
+    public AVSClient(URL host, MultipartParserConsumer multipartParserConsumer,
+            SslContextFactory sslContextFactory, ParsingFailedHandler parsingFailedHandler,
+            ResultListener resultListener, int maxConcurrentEvents, EventJournal eventJournal,
+            SharedTransport sharedTransport) throws Exception {
+        this.eventJournal = eventJournal;
+        for (Resource resource : Resource.values()) {
+            requestCounts.put(resource, new Counter());
+        }
+        this.sharedTransport = sharedTransport;
+        if (sharedTransport != null) {
+            scheduler = sharedTransport.getScheduler();
+            bufferPool = sharedTransport.getBufferPool();
+            http2Client = sharedTransport.getHttp2Client();
+        } else {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            bufferPool = new BufferPool();
+            http2Client = new PingAwareHTTP2Client();
+            // Responses that are read slowly hold back their share of the connection's receive
+            // window, see InputStreamResponseListener. Give every stream that can be open at once
+            // a full stream window of it, so a slow downchannel can't stall the event responses.
+            http2Client.setInitialSessionRecvWindow(
+                    http2Client.getInitialStreamRecvWindow() * (maxConcurrentEvents + 1));
+        }
+        eventEncoder = new EventEncoder(bufferPool);
+        retryEngine = new RetryEngine(scheduler);
         this.host = host;
         this.sslContextFactory = sslContextFactory;
-        requestQueue = new LinkedBlockingDeque<>();
-        requestResponseParser = new MultipartParser(multipartParserConsumer);
-        downchannelParser = new MultipartParser(multipartParserConsumer);
+        requestScheduler = new RequestScheduler();
+        this.multipartParserConsumer = multipartParserConsumer;
+        downchannelParser = newMultipartParser(multipartParserConsumer);
+        requestPipeline = new RequestPipeline(maxConcurrentEvents, this::sendRequest,
+                requestScheduler::requeue);
+        eventCoalescer = new EventCoalescer(this::enqueueRequest, scheduler);
 
         this.parsingFailedHandler = parsingFailedHandler;
 
@@ -146,7 +309,7 @@ public class AVSClient implements ConnectionListener {
 
         createNewHttpClient();
 
-        requestThread = new RequestThread(requestQueue);
+        requestThread = new RequestThread(requestScheduler);
 
         if (StringUtils.isNotBlank(accessToken)) {
             startRequestThread();
@@ -166,8 +329,15 @@ public class AVSClient implements ConnectionListener {
         }
 
         // Sets up an HttpClient that sends HTTP/1.1 requests over an HTTP/2 transport
-        httpClient = new HttpClient(new PingSendingHttpClientTransportOverHTTP2(http2Client, this),
+        httpClient = new HttpClient(new PingSendingHttpClientTransportOverHTTP2(http2Client, this,
+                pingRoundTripTimes, (sharedTransport != null) ? scheduler : null),
                 sslContextFactory);
+        if (sharedTransport != null) {
+            // Already started, so the HttpClient leaves them running when it stops
+            httpClient.setExecutor(sharedTransport.getExecutor());
+            httpClient.setScheduler(sharedTransport.getJettyScheduler());
+            httpClient.setByteBufferPool(sharedTransport.getJettyBufferPool());
+        }
         httpClient.addLifeCycleListener(new Listener() {
 
             @Override
@@ -204,6 +374,72 @@ public class AVSClient implements ConnectionListener {
 
     }
 
+    /**
+     * Open the HTTP/2 connection to AVS ahead of the first event, so that DNS resolution, the TLS
+     * handshake and the HTTP/2 preface are out of the way by the time the user first speaks. The
+     * connection is opened with a request to the ping endpoint; its response is ignored, so this
+     * works before an access token is available. Later requests reuse the connection.
+     *
+     * @return A future that completes with the time in milliseconds it took to connect.
+     */
+    public CompletableFuture<Long> warmUp() {
+        long start = System.nanoTime();
+        CompletableFuture<Long> connected = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> {
+            try {
+                InetAddress.getAllByName(host.getHost());
+                log.info("Resolved {} in {} ms", host.getHost(), millisSince(start));
+
+                Request request = httpClient
+                        .newRequest(host.toString() + PING_ENDPOINT)
+                        .method(HttpMethod.GET)
+                        .timeout(WARM_UP_TIMEOUT_IN_S, TimeUnit.SECONDS);
+                if (StringUtils.isNotBlank(accessToken)) {
+                    request.header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+                }
+                // The request only begins once the connection has been established
+                request.onRequestBegin(r -> connected.complete(millisSince(start)));
+                request.send(result -> {
+                    if (result.isFailed()) {
+                        connected.completeExceptionally(result.getFailure());
+                    }
+                });
+            } catch (Exception e) {
+                connected.completeExceptionally(e);
+            }
+        });
+
+        connected.whenComplete((millis, e) -> {
+            if (e != null) {
+                log.warn("Could not open the connection to AVS ahead of time", e);
+            } else {
+                timeToConnectedMs = millis;
+                log.info("Connected to {} in {} ms", host, millis);
+            }
+        });
+        return connected;
+    }
+
+    /**
+     * @return The time in milliseconds it took {@link #warmUp()} to connect to AVS, or -1 if it
+     *         has not connected.
+     */
+    public long getTimeToConnectedMs() {
+        return timeToConnectedMs;
+    }
+
+    /**
+     * @return The round trip times of the HTTP/2 PINGs that keep the connection alive, in
+     *         milliseconds.
+     */
+    public Histogram getPingRoundTripTimes() {
+        return pingRoundTripTimes;
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
     private Request createRequest(Resource resource, ContentProvider content) throws Exception {
         if (!httpClient.isStarted()) {
             log.error("HttpClient is stopped when it should be started");
@@ -221,33 +457,127 @@ public class AVSClient implements ConnectionListener {
     }
 
     /**
-     * Execute a request.
+     * Make an attempt at an event. If it fails and is to be retried, it is queued again once its
+     * retry is due, and the stream is free for other events meanwhile.
+     * Otherwise its listener is notified that it has finished.
+     *
+     * @param avsRequest
+     * @return true if the request is finished.
+     */
+    private boolean sendRequest(AVSRequest avsRequest) {
+        long retryDelay = -1;
+        try {
+            retryDelay = attempt(avsRequest);
+            if (retryDelay >= 0) {
+                if (retryEngine.schedule(() -> requestScheduler.retry(avsRequest), retryDelay)) {
+                    return false;
+                }
+                fail(avsRequest, new RejectedExecutionException("The client is shutting down"));
+                retryDelay = -1;
+            }
+        } finally {
+            if (retryDelay < 0) {
+                avsRequest.release();
+            }
+        }
+        avsRequest.getRequestListener().ifPresent(l -> l.onRequestFinished());
+        return true;
+    }
+
+    /**
+     * Execute a request, retrying it on this thread. Only for the downchannel, which has a thread
+     * of its own, so waiting for a retry on it holds nothing else back.
      *
      * @param avsRequest
      */
     private void doRequest(AVSRequest avsRequest) {
+        long retryDelay;
+        while ((retryDelay = attempt(avsRequest)) >= 0) {
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 
-        Callable<Void> task = new Callable<Void>() {
-            @Override
-            public Void call() throws Exception {
-                Request request =
-                        createRequest(avsRequest.getResource(), avsRequest.getContentProvider());
-                doRequestActual(request, avsRequest.getRequestListener(),
-                        avsRequest.getMultipartParser());
-                return null;
+    /**
+     * Make a single attempt at a request, and complete it unless it is to be retried.
+     *
+     * While the circuit is open, events fail without being sent, and the downchannel waits to be
+     * the probe that tells whether AVS can be reached again.
+     *
+     * @param avsRequest
+     * @return The time to wait before the next attempt, in milliseconds, or -1 if the request is
+     *         finished.
+     */
+    private long attempt(AVSRequest avsRequest) {
+        if (eventCoalescer.isSuperseded(avsRequest)) {
+            return -1;
+        }
+        if (avsRequest.isCancelled()) {
+            log.info("Skipping a request that was cancelled before it was sent");
+            return -1;
+        }
+        boolean firstAttempt = avsRequest.getFailedAttempts() == 0;
+        if (!retryEngine.allowAttempt(firstAttempt)) {
+            if (avsRequest.getResource() == Resource.DIRECTIVES) {
+                return Math.max(1, retryEngine.getMillisUntilProbe());
             }
-        };
+            fail(avsRequest, new CircuitOpenException());
+            return -1;
+        }
+        if (!firstAttempt) {
+            retryCount.increment();
+        }
 
+        int statusCode = -1;
         try {
-            avsRequest.getRetryPolicy().tryCall(task, RequestException.class);
+            Request request =
+                    createRequest(avsRequest.getResource(), avsRequest.getContentProvider());
+            avsRequest.setHttpRequest(request);
+            request.onResponseHeaders(r -> avsRequest.responseHeadersReceived());
+            statusCode = doRequestActual(request, avsRequest.getResource(),
+                    avsRequest.getRequestListener(), avsRequest.getMultipartParser());
+        } catch (RequestException e) {
+            if (avsRequest.isCancelled()) {
+                fail(avsRequest, e);
+                return -1;
+            }
+            retryEngine.onConnectionFailed();
+            int failedAttempts = avsRequest.onAttemptFailed();
+            long retryDelay =
+                    retryEngine.getRetryDelay(avsRequest.getRetryPolicy(), failedAttempts);
+            if (retryDelay >= 0) {
+                log.warn("Attempt {} at a request failed, retrying in {} ms", failedAttempts,
+                        retryDelay, e);
+                return retryDelay;
+            }
+            fail(avsRequest, e);
+            return -1;
         } catch (MultipartStream.MalformedStreamException e) {
             if (!e.getMessage().equals("Stream ended unexpectedly")) {
                 log.error("Malformed stream exception", e);
             }
         } catch (Exception e) {
-            log.error("There was a problem with the request.", e);
-            avsRequest.getRequestListener().ifPresent(l -> l.onRequestError(e));
+            fail(avsRequest, e);
+            return -1;
+        } finally {
+            avsRequest.setHttpRequest(null);
         }
+        avsRequest.getCompletion().complete(statusCode);
+        return -1;
+    }
+
+    private void fail(AVSRequest avsRequest, Exception e) {
+        if (avsRequest.isCancelled()) {
+            log.info("The request was cancelled");
+            return;
+        }
+        log.error("There was a problem with the request.", e);
+        avsRequest.getRequestListener().ifPresent(l -> l.onRequestError(e));
+        avsRequest.getCompletion().completeExceptionally(e);
     }
 
     /**
@@ -255,33 +585,51 @@ public class AVSClient implements ConnectionListener {
      *
      * @param request
      *            The request to make.
+     * @param resource
+     *            The resource the request is made to.
      * @param requestListener
      *            The request listener to check request status.
      * @param multipartParser
      *            The {@link MultipartParser} to use for parsing the response to this request.
+     * @return The HTTP status code of the response.
      * @throws AVSException
      *             is thrown when we get a non-2xx HTTP status code.
      * @throws IOException
      *             is thrown when parsing the multipart stream, and reading from the
      *             {@link InputStreamResponseListener}.
      */
-    private void doRequestActual(Request request, Optional<RequestListener> requestListener,
-            MultipartParser multipartParser) throws AVSException, IOException {
+    private int doRequestActual(Request request, Resource resource,
+            Optional<RequestListener> requestListener, MultipartParser multipartParser)
+            throws AVSException, IOException {
         request.header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+        request.onRequestContent((r, content) -> bytesSent.add(content.remaining()));
+        request.onResponseContent((r, content) -> bytesReceived.add(content.remaining()));
+        requestCounts.get(resource).increment();
 
-        InputStreamResponseListener responseListener = new InputStreamResponseListener();
+        InputStreamResponseListener responseListener =
+                new InputStreamResponseListener(getResponseBufferSize(resource), bufferPool);
         Response response;
         InputStream inputStream = null;
 
         try {
-            // We have a request queue that maintains correct sequencing of events to appease the
-            // server needing no events to happen in parallel. However, Downchannel requests don't
-            // happen on that queue, they happen separately. By synchronizing here we can ensure
-            // that no requests on the request queue will happen in parallel with the downchannel
-            // requests.
-            synchronized (this) {
+            if (requestPipeline.getMaxConcurrentStreams() > 1) {
+                // Events that need ordering are sequenced by the request pipeline, everything
+                // else is multiplexed over the HTTP/2 connection alongside the downchannel.
                 request.send(responseListener);
                 response = responseListener.get(REQUEST_TIMEOUT_IN_S, TimeUnit.SECONDS);
+            } else {
+                // We have a request queue that maintains correct sequencing of events to appease
+                // the server needing no events to happen in parallel. However, Downchannel
+                // requests don't happen on that queue, they happen separately. By locking here we
+                // can ensure that no requests on the request queue will happen in parallel with
+                // the downchannel requests.
+                sequentialRequestLock.lock();
+                try {
+                    request.send(responseListener);
+                    response = responseListener.get(REQUEST_TIMEOUT_IN_S, TimeUnit.SECONDS);
+                } finally {
+                    sequentialRequestLock.unlock();
+                }
             }
             inputStream = responseListener.getInputStream();
         } catch (Exception e) {
@@ -289,7 +637,9 @@ public class AVSClient implements ConnectionListener {
             throw new RequestException(e);
         }
 
+        retryEngine.onConnectionSucceeded();
         int statusCode = response.getStatus();
+        countResponse(statusCode);
         log.info("Response code: {}", statusCode);
         log.info("Response headers: {}", response.getHeaders());
 
@@ -301,7 +651,7 @@ public class AVSClient implements ConnectionListener {
         if (statusCode == HttpStatus.NO_CONTENT_204) {
             requestListener.ifPresent(l -> l.onRequestSuccess());
             log.info("This response successfully had no content.");
-            return;
+            return statusCode;
         }
 
         String contentType = response.getHeaders().get(HttpHeader.CONTENT_TYPE);
@@ -330,6 +680,72 @@ public class AVSClient implements ConnectionListener {
         } finally {
             IOUtils.closeQuietly(inputStream);
         }
+        return statusCode;
+    }
+
+    private MultipartParser newMultipartParser(MultipartParserConsumer consumer) {
+        MultipartParser parser = new MultipartParser(consumer);
+        parser.setInteractionTracer(interactionTracer);
+        parser.setMetrics(parserMetrics);
+        return parser;
+    }
+
+    private void countResponse(int statusCode) {
+        if ((statusCode < 0) || (statusCode > MAX_STATUS_CODE)) {
+            return;
+        }
+        Counter counter = responseCounts.get(statusCode);
+        if (counter == null) {
+            responseCounts.compareAndSet(statusCode, null, new Counter());
+            counter = responseCounts.get(statusCode);
+            MetricsRegistry registry = metricsRegistry;
+            if (registry != null) {
+                registerResponseCount(registry, statusCode, counter);
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * Register the metrics of this client: requests, retries, responses by status code, bytes
+     * sent and received, ping round trip times and the parsing of responses.
+     *
+     * @param registry
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        metricsRegistry = registry;
+        requestCounts.forEach((resource, counter) -> registry.register(
+                "avs_client_requests_total", "Requests sent to AVS, including retries", counter,
+                "resource", resource.name().toLowerCase()));
+        registry.register("avs_client_retries_total", "Requests sent to AVS again after a failure",
+                retryCount);
+        for (int statusCode = 0; statusCode <= MAX_STATUS_CODE; statusCode++) {
+            Counter counter = responseCounts.get(statusCode);
+            if (counter != null) {
+                registerResponseCount(registry, statusCode, counter);
+            }
+        }
+        registry.register("avs_client_sent_bytes_total", "Bytes of request content sent to AVS",
+                bytesSent);
+        registry.register("avs_client_received_bytes_total",
+                "Bytes of response content received from AVS", bytesReceived);
+        registry.register("avs_client_ping_rtt_ms", "Round trip time of HTTP/2 pings to AVS",
+                pingRoundTripTimes);
+        registry.register("avs_client_time_to_connected_ms",
+                "Time from startup until the connection to AVS was ready, -1 until it is",
+                () -> timeToConnectedMs);
+        registry.register("avs_client_buffer_pool_hit_ratio",
+                "Share of buffer acquisitions served from the pool", bufferPool::getHitRate);
+        registry.register("avs_client_buffer_pool_outstanding",
+                "Buffers acquired from the pool and not released yet", bufferPool::getOutstanding);
+        parserMetrics.register(registry);
+        retryEngine.registerMetrics(registry);
+    }
+
+    private static void registerResponseCount(MetricsRegistry registry, int statusCode,
+            Counter counter) {
+        registry.register("avs_client_responses_total", "Responses from AVS by status code",
+                counter, "status", Integer.toString(statusCode));
     }
 
     /**
@@ -372,12 +788,7 @@ public class AVSClient implements ConnectionListener {
      */
     public void sendEvent(RequestBody body, RequestListener listener)
             throws JsonGenerationException, JsonMappingException, IOException {
-        MultipartContentProvider multipartContent = new MultipartContentProvider();
-        multipartContent.addPart(METADATA_NAME, createMetadataContent(body));
-
-        enqueueRequest(new AVSRequest(Resource.EVENTS, multipartContent,
-                new LinearRetryPolicy(REQUEST_RETRY_DELAY_MS, REQUEST_ATTEMPTS),
-                requestResponseParser, listener));
+        enqueueEvent(body, null, listener);
     }
 
     /**
@@ -392,19 +803,227 @@ public class AVSClient implements ConnectionListener {
     public void sendEvent(RequestBody body, InputStream inputStream, RequestListener listener,
             AudioInputFormat audiotype)
             throws JsonGenerationException, JsonMappingException, IOException {
+        enqueueEvent(body, createAudioContent(body, inputStream, audiotype), listener);
+    }
+
+    /**
+     * Send an event with a {@link RequestBody} without waiting for it to be sent.
+     *
+     * @param body
+     * @return A future that completes with the response to the event once the response has been
+     *         fully parsed. Cancelling the future cancels the event.
+     * @throws JsonMappingException
+     * @throws JsonGenerationException
+     * @throws IOException
+     */
+    public CompletableFuture<AVSResponse> sendEventAsync(RequestBody body)
+            throws JsonGenerationException, JsonMappingException, IOException {
+        return enqueueEvent(body, null, null);
+    }
 
-        AudioInputStreamContentProvider audioContent =
-                new AudioInputStreamContentProvider(audiotype, inputStream);
+    /**
+     * Send an event with a {@link RequestBody} without waiting for it to be sent. The event is
+     * cancelled if no response has been handled within the given timeout.
+     *
+     * @param body
+     * @param timeout
+     * @param unit
+     * @return A future that completes with the response to the event, or exceptionally with a
+     *         {@link TimeoutException}.
+     * @throws JsonMappingException
+     * @throws JsonGenerationException
+     * @throws IOException
+     */
+    public CompletableFuture<AVSResponse> sendEventAsync(RequestBody body, long timeout,
+            TimeUnit unit) throws JsonGenerationException, JsonMappingException, IOException {
+        return withTimeout(sendEventAsync(body), timeout, unit);
+    }
+
+    /**
+     * Send a speech recognition event with a {@link RequestBody} without waiting for it to be
+     * sent.
+     *
+     * @param body
+     * @param inputStream
+     * @param audiotype
+     * @return A future that completes with the response to the event once the response has been
+     *         fully parsed. Cancelling the future cancels the event.
+     * @throws IOException
+     */
+    public CompletableFuture<AVSResponse> sendEventAsync(RequestBody body,
+            InputStream inputStream, AudioInputFormat audiotype)
+            throws JsonGenerationException, JsonMappingException, IOException {
+        return enqueueEvent(body, createAudioContent(body, inputStream, audiotype), null);
+    }
+
+    /**
+     * Complete the given future exceptionally with a {@link TimeoutException} if it has not
+     * completed within the given timeout. If the future belongs to an event, the event is
+     * cancelled.
+     *
+     * @param future
+     * @param timeout
+     * @param unit
+     * @return the given future.
+     */
+    public <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeout,
+            TimeUnit unit) {
+        ScheduledFuture<?> timer = scheduler.schedule(
+                () -> future.completeExceptionally(new TimeoutException()), timeout, unit);
+        future.whenComplete((r, e) -> timer.cancel(false));
+        return future;
+    }
+
+    private CompletableFuture<AVSResponse> enqueueEvent(RequestBody body,
+            ContentProvider.Typed audioContent, RequestListener listener) throws IOException {
+        PooledContentProvider metadataContent = createMetadataContent(body);
+        Header header = body.getEvent().getHeader();
 
-        CachingContentProvider cachableContent = new CachingContentProvider(audioContent);
+        EventJournal.Record record = null;
+        if ((eventJournal != null) && (audioContent == null) && EventJournal.isDurable(header)) {
+            record = eventJournal.append(header, metadataContent);
+        }
+        return enqueueEvent(header, metadataContent, audioContent, listener, record);
+    }
 
+    private CompletableFuture<AVSResponse> enqueueEvent(Header header,
+            PooledContentProvider metadataContent, ContentProvider.Typed audioContent,
+            RequestListener listener, EventJournal.Record record) {
         MultipartContentProvider multipartContent = new MultipartContentProvider();
-        multipartContent.addPart(METADATA_NAME, createMetadataContent(body));
-        multipartContent.addPart(AUDIO_NAME, cachableContent);
+        multipartContent.addPart(METADATA_NAME, metadataContent);
+        if (audioContent != null) {
+            multipartContent.addPart(AUDIO_NAME, audioContent);
+        }
+
+        DirectiveCollector directives = new DirectiveCollector(multipartParserConsumer);
+        MultipartParser parser = newMultipartParser(directives);
+        AVSRequest request = new AVSRequest(Resource.EVENTS, multipartContent,
+                new LinearRetryPolicy(REQUEST_RETRY_DELAY_MS, REQUEST_ATTEMPTS), parser, listener,
+                EventOrdering.getOrderingKey(header), RequestPriority.of(header));
+        request.onRelease(metadataContent::release);
+        InteractionTracer tracer = interactionTracer;
+        if ((tracer != null) && (header instanceof DialogRequestIdHeader)) {
+            String dialogRequestId = ((DialogRequestIdHeader) header).getDialogRequestId();
+            request.onResponseHeaders(() -> tracer.mark(Stage.RESPONSE_HEADERS, dialogRequestId));
+        }
+        if (audioContent instanceof CachingContentProvider) {
+            CachingContentProvider cachingContent = (CachingContentProvider) audioContent;
+            // The audio is only kept for a retry, which can't happen once AVS has responded
+            request.onResponseHeaders(cachingContent::release);
+            request.onRelease(cachingContent::close);
+        }
+
+        if (record != null) {
+            request.getCompletion().whenComplete((statusCode, e) -> {
+                // Only keep events that never reached AVS, an event AVS rejected is not retried
+                if ((e instanceof RequestException) || (e instanceof CircuitOpenException)
+                        || (e instanceof CancellationException)
+                        || (e instanceof RejectedExecutionException)
+                        || (e instanceof TimeoutException)) {
+                    eventJournal.retry(record);
+                } else {
+                    eventJournal.acknowledge(record);
+                }
+            });
+        }
 
-        enqueueRequest(new AVSRequest(Resource.EVENTS, multipartContent,
-                new LinearRetryPolicy(REQUEST_RETRY_DELAY_MS, REQUEST_ATTEMPTS),
-                requestResponseParser, listener));
+        CompletableFuture<AVSResponse> response = new CompletableFuture<>();
+        request.getCompletion().whenComplete((statusCode, e) -> {
+            if (e != null) {
+                response.completeExceptionally(e);
+            } else {
+                response.complete(new AVSResponse(statusCode, directives.getDirectives()));
+            }
+        });
+        // Cancelling the response, directly or through a timeout, cancels the request
+        response.whenComplete((r, e) -> {
+            if (e != null) {
+                request.cancel();
+            }
+        });
+
+        eventCoalescer.offer(request, header);
+        return response;
+    }
+
+    /**
+     * Start replaying the journaled events that never reached AVS, one at a time so a backlog
+     * does not crowd out live events.
+     */
+    private void replayJournal() {
+        if ((eventJournal != null) && replayingJournal.compareAndSet(false, true)) {
+            scheduler.execute(() -> replayJournaledEvent(-1));
+        }
+    }
+
+    private void replayJournaledEvent(long previousSequence) {
+        EventJournal.Record record = eventJournal.nextToReplay(previousSequence);
+        if (record == null) {
+            replayingJournal.set(false);
+            return;
+        }
+
+        log.info("Replaying {} from the event journal", record);
+        enqueueEvent(record.getHeader(), eventJournal.read(record, bufferPool), null, null,
+                record);
+        scheduler.schedule(() -> replayJournaledEvent(record.getSequence()),
+                JOURNAL_REPLAY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private CachingContentProvider createAudioContent(RequestBody body, InputStream inputStream,
+            AudioInputFormat audiotype) {
+        AudioInputStreamContentProvider audioContent =
+                new AudioInputStreamContentProvider(audiotype, inputStream, bufferPool);
+        Header header = body.getEvent().getHeader();
+        InteractionTracer tracer = interactionTracer;
+        if ((tracer != null) && (header instanceof DialogRequestIdHeader)) {
+            String dialogRequestId = ((DialogRequestIdHeader) header).getDialogRequestId();
+            audioContent.onFirstChunkWritten(
+                    () -> tracer.mark(Stage.FIRST_AUDIO_SENT, dialogRequestId));
+        }
+
+        return new CachingContentProvider(audioContent,
+                new ReplayBuffer(bufferPool, audioReplayMemoryLimit));
+    }
+
+    /**
+     * Set how much of the audio of an event is kept in memory in case the event has to be sent
+     * again. Audio past that is kept in a temporary file.
+     *
+     * @param audioReplayMemoryLimit
+     *            The limit in bytes.
+     */
+    public void setAudioReplayMemoryLimit(long audioReplayMemoryLimit) {
+        this.audioReplayMemoryLimit = audioReplayMemoryLimit;
+    }
+
+    /**
+     * Set how much of a response from the given resource is buffered before AVS is held back by
+     * flow control until the response has been read. The default is
+     * {@link InputStreamResponseListener#DEFAULT_MAX_BUFFER_SIZE}.
+     *
+     * @param resource
+     * @param responseBufferSize
+     *            The size in bytes.
+     */
+    public void setResponseBufferSize(Resource resource, long responseBufferSize) {
+        responseBufferSizes.put(resource, responseBufferSize);
+    }
+
+    private long getResponseBufferSize(Resource resource) {
+        return responseBufferSizes.getOrDefault(resource,
+                InputStreamResponseListener.DEFAULT_MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * Set the tracer to stamp with the progress of voice interactions: when their audio starts
+     * being sent, when the response to them starts and when their directives are parsed.
+     *
+     * @param interactionTracer
+     */
+    public void setInteractionTracer(InteractionTracer interactionTracer) {
+        this.interactionTracer = interactionTracer;
+        downchannelParser.setInteractionTracer(interactionTracer);
     }
 
     public void closeDownchannel() {
@@ -422,21 +1041,36 @@ public class AVSClient implements ConnectionListener {
         return host;
     }
 
-    private StringContentProvider createMetadataContent(RequestBody body)
-            throws JsonGenerationException, JsonMappingException, IOException {
-        ObjectWriter writer = ObjectMapperFactory.getObjectWriter();
-        log.info("Request metadata: \n{}",
-                writer.withDefaultPrettyPrinter().writeValueAsString(body));
-        String metadata = writer.writeValueAsString(body);
-        StringContentProvider metadataContent =
-                new StringContentProvider(ContentTypes.JSON, metadata, StandardCharsets.UTF_8);
-        return metadataContent;
+    private PooledContentProvider createMetadataContent(RequestBody body) throws IOException {
+        log.info("Sending event {}", body.getEvent().getHeader());
+        return eventEncoder.encode(body);
+    }
+
+    /**
+     * @return The number of events that were merged with or dropped in favor of newer events, by
+     *         event name.
+     */
+    public Map<String, Long> getCoalescedEventCounts() {
+        return eventCoalescer.getCoalescedCounts();
+    }
+
+    /**
+     * @return The scheduler that orders queued events by priority, with its queue depth and wait
+     *         time metrics.
+     */
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
+    /**
+     * @return The pool the content of outbound events is encoded into.
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
     }
 
     private void enqueueRequest(AVSRequest request) {
-        if (!requestQueue.offer(request)) {
-            log.error("Failed to enqueue request");
-        }
+        requestScheduler.offer(request);
     }
 
     private static Optional<String> getHeaderParameter(final String headerValue, final String key) {
@@ -461,26 +1095,17 @@ public class AVSClient implements ConnectionListener {
      *
      * @param accessToken
      */
-
-    private static void setAccessTokenValue(String accessToken){
-        AVSClient.accessToken = accessToken;
-    }
-
     public void setAccessToken(String accessToken) {
-        setAccessTokenValue(accessToken);
+        this.accessToken = accessToken;
         startRequestThread();
         startDownchannelThread();
     }
 
     public void revokeAccessToken() {
-        setAccessTokenValue("");
+        accessToken = "";
         stopDownchannelThread();
     }
 
-    private static void cacheAccessToken(String accessToken) {
-        AVSClient.accessToken = accessToken;
-    }
-
     void startRequestThread() {
         if (!requestThread.isAlive()) {
             requestThread.start();
@@ -504,6 +1129,12 @@ public class AVSClient implements ConnectionListener {
      */
     public void shutdown() {
         try {
+            eventCoalescer.flush();
+            requestThread.shutdown();
+            requestPipeline.shutdown();
+            if (sharedTransport == null) {
+                scheduler.shutdownNow();
+            }
             downchannelThread.shutdownGracefully();
             httpClient.stop();
         } catch (Exception e) {
@@ -514,11 +1145,13 @@ public class AVSClient implements ConnectionListener {
      * Thread for handling the long-lived response from the server for the downchannel communication
      * of directives.
      */
-    private class DownchannelRequestThread extends Thread {
-        private boolean running = true;
+    private class DownchannelRequestThread implements Runnable {
+        private final Thread thread =
+                TaskExecutor.newThread(DownchannelRequestThread.class.getSimpleName(), this);
+        private volatile boolean running = true;
 
-        public DownchannelRequestThread() {
-            setName(this.getClass().getSimpleName());
+        public void start() {
+            thread.start();
         }
 
         public void shutdownGracefully() {
@@ -573,26 +1206,94 @@ public class AVSClient implements ConnectionListener {
         }
     }
 
-    private class RequestThread extends Thread {
-        private BlockingQueue<AVSRequest> queue;
+    /**
+     * Hands requests from the {@link RequestScheduler} to the {@link RequestPipeline}. A request
+     * is only taken from the scheduler once the pipeline has a free stream for it, so requests
+     * wait in priority order rather than in the pipeline.
+     */
+    private class RequestThread implements Runnable {
+        private final Thread thread =
+                TaskExecutor.newThread(RequestThread.class.getSimpleName(), this);
+        private RequestScheduler scheduler;
 
-        public RequestThread(BlockingQueue<AVSRequest> queue) {
-            this.queue = queue;
-            setName(this.getClass().getSimpleName());
+        public RequestThread(RequestScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        public void start() {
+            // Once shut down, it stays stopped
+            if (thread.getState() == Thread.State.NEW) {
+                thread.start();
+            }
+        }
+
+        public boolean isAlive() {
+            return thread.isAlive();
+        }
+
+        /**
+         * Stop handing requests to the pipeline. Requests still queued are not sent.
+         */
+        public void shutdown() {
+            thread.interrupt();
         }
 
         @Override
         public void run() {
             while (true) {
                 try {
-                    AVSRequest request = queue.take();
-                    doRequest(request);
-
-                    request.getRequestListener().ifPresent(l -> l.onRequestFinished());
+                    requestPipeline.awaitFreeStream();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                AVSRequest request;
+                try {
+                    request = scheduler.take();
                 } catch (InterruptedException e) {
-                    log.error("Exception in the request thread", e);
+                    // No request will go out on the stream that was reserved for it
+                    requestPipeline.releaseStream();
+                    break;
+                }
+                if (request.getFailedAttempts() > 0) {
+                    requestPipeline.retry(request);
+                } else {
+                    requestPipeline.submit(request);
                 }
             }
+            log.info("The request thread was interrupted and stopped");
+        }
+    }
+
+    /**
+     * Passes parsed directives on to the client's consumer while keeping track of the directives
+     * that belong to a single response.
+     */
+    private static class DirectiveCollector implements MultipartParserConsumer {
+        private final MultipartParserConsumer consumer;
+        private final List<Directive> directives = new CopyOnWriteArrayList<>();
+
+        private DirectiveCollector(MultipartParserConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        public List<Directive> getDirectives() {
+            return new ArrayList<>(directives);
+        }
+
+        @Override
+        public void onDirective(Directive directive) {
+            directives.add(directive);
+            consumer.onDirective(directive);
+        }
+
+        @Override
+        public void onDirectiveAttachment(String contentId, InputStream attachmentContent) {
+            consumer.onDirectiveAttachment(contentId, attachmentContent);
+        }
+
+        @Override
+        public boolean acceptsStreamingAttachments() {
+            return consumer.acceptsStreamingAttachments();
         }
     }
 
@@ -604,6 +1305,17 @@ public class AVSClient implements ConnectionListener {
         }
     }
 
+    /**
+     * The request was not sent because AVS could not be reached by the requests before it.
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException() {
+            super("AVS can't be reached, the request was not sent");
+        }
+    }
+
     public static class MalformedResponseException extends RuntimeException {
         private static final long serialVersionUID = 1L;
 
@@ -622,7 +1334,9 @@ public class AVSClient implements ConnectionListener {
 
     @Override
     public void onConnected() {
+        retryEngine.onConnectionSucceeded();
         downchannelParser.onConnected();
+        replayJournal();
     }
 
     @Override
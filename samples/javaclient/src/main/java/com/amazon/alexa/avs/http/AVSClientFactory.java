@@ -15,20 +15,77 @@ package com.amazon.alexa.avs.http;
 import com.amazon.alexa.avs.DirectiveEnqueuer;
 import com.amazon.alexa.avs.ResultListener;
 import com.amazon.alexa.avs.config.DeviceConfig;
+import com.amazon.alexa.avs.http.AVSClient.Resource;
 
+import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
 public class AVSClientFactory {
     private DeviceConfig config;
+    private URL avsHost;
+    private SharedTransport sharedTransport;
+    // Shared by every client the factory creates, so events survive an endpoint change
+    private EventJournal eventJournal;
 
     public AVSClientFactory(DeviceConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * Creates an {@link AVSClientFactory} whose clients connect to the given host instead of the
+     * one in the config, such as a {@link com.amazon.alexa.avs.http.mock.MockAVSServer}. An
+     * "http://" host is reached over HTTP/2 without TLS.
+     *
+     * @param config
+     * @param avsHost
+     *            The host to connect to, or null to use the one in the config.
+     */
+    public AVSClientFactory(DeviceConfig config, URL avsHost) {
+        this(config, avsHost, null);
+    }
+
+    /**
+     * Creates an {@link AVSClientFactory} whose clients share the given transport with the clients
+     * of other devices in the same JVM.
+     *
+     * @param config
+     * @param avsHost
+     *            The host to connect to, or null to use the one in the config.
+     * @param sharedTransport
+     *            The started transport to share, or null for every client to have its own.
+     */
+    public AVSClientFactory(DeviceConfig config, URL avsHost, SharedTransport sharedTransport) {
         this.config = config;
+        this.avsHost = avsHost;
+        this.sharedTransport = sharedTransport;
     }
 
     public AVSClient getAVSClient(DirectiveEnqueuer directiveEnqueuer,
             ParsingFailedHandler parsingFailedHandler, ResultListener resultListener)
             throws Exception {
-        return new AVSClient(config.getAvsHost(), directiveEnqueuer, new SslContextFactory(),
-                parsingFailedHandler, resultListener);
+        URL host = (avsHost != null) ? avsHost : config.getAvsHost();
+        AVSClient client = new AVSClient(host, directiveEnqueuer, new SslContextFactory(),
+                parsingFailedHandler, resultListener, config.getMaxConcurrentEvents(),
+                getEventJournal(), sharedTransport);
+        client.setAudioReplayMemoryLimit(config.getAudioReplayMemoryLimitKB() * 1024L);
+        client.setResponseBufferSize(Resource.EVENTS, config.getEventResponseBufferKB() * 1024L);
+        client.setResponseBufferSize(Resource.DIRECTIVES,
+                config.getDownchannelResponseBufferKB() * 1024L);
+        return client;
+    }
+
+    private synchronized EventJournal getEventJournal() throws IOException {
+        if ((eventJournal == null) && StringUtils.isNotBlank(config.getEventJournalFile())) {
+            File file = new File(config.getEventJournalFile());
+            if (!file.isAbsolute()) {
+                file = new File(config.getDataDirectory(), config.getEventJournalFile());
+            }
+            eventJournal = new EventJournal(file);
+        }
+        return eventJournal;
     }
 }
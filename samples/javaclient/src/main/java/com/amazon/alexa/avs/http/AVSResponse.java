@@ -0,0 +1,46 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import com.amazon.alexa.avs.message.response.Directive;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of an event sent to AVS: the HTTP status of the response and the directives that
+ * were parsed from it. The directives have also been handed to the client's
+ * {@link MultipartParser.MultipartParserConsumer}.
+ */
+public class AVSResponse {
+    private final int statusCode;
+    private final List<Directive> directives;
+
+    public AVSResponse(int statusCode, List<Directive> directives) {
+        this.statusCode = statusCode;
+        this.directives = Collections.unmodifiableList(directives);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public List<Directive> getDirectives() {
+        return directives;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("status:%1$d directives:%2$s", statusCode, directives);
+    }
+}
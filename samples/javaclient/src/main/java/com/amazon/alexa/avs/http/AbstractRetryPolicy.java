@@ -16,7 +16,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * A {@link RetryPolicy} that makes up to a maximum number of attempts, waiting a random time
+ * between 0 and the backoff of the concrete policy before each retry ("full jitter"), so clients
+ * that failed together don't retry together.
+ */
 public abstract class AbstractRetryPolicy implements RetryPolicy {
     private int maxAttempts;
 
@@ -27,7 +33,7 @@ public abstract class AbstractRetryPolicy implements RetryPolicy {
     }
 
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} The calling thread sleeps between attempts.
      */
     @Override
     public void tryCall(Callable<Void> callable, Class<? extends Throwable> exception)
@@ -40,9 +46,9 @@ public abstract class AbstractRetryPolicy implements RetryPolicy {
             } catch (Exception e) {
                 attempts++;
                 if ((exception != null) && (exception.isAssignableFrom(e.getClass()))
-                        && !(attempts >= maxAttempts)) {
+                        && shouldRetry(attempts)) {
                     log.warn("Error occured while making call. This call will retry.", e);
-                    Thread.sleep(getDelay(attempts));
+                    Thread.sleep(getRetryDelay(attempts));
                 } else {
                     throw e;
                 }
@@ -50,8 +56,19 @@ public abstract class AbstractRetryPolicy implements RetryPolicy {
         }
     }
 
+    @Override
+    public boolean shouldRetry(int failedAttempts) {
+        return failedAttempts < maxAttempts;
+    }
+
+    @Override
+    public long getRetryDelay(int failedAttempts) {
+        long backoff = getDelay(failedAttempts);
+        return (backoff > 0) ? ThreadLocalRandom.current().nextLong(backoff + 1) : 0;
+    }
+
     /**
-     * Get the expected delay in milliseconds.
+     * Get the backoff in milliseconds, the upper bound of the delay before a retry.
      *
      * @param attempts
      * @return
@@ -15,23 +15,170 @@ package com.amazon.alexa.avs.http;
 import com.amazon.alexa.avs.AudioInputFormat;
 
 import org.eclipse.jetty.client.api.ContentProvider;
-import org.eclipse.jetty.client.util.InputStreamContentProvider;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * A {@link ContentProvider} that streams an InputStream in chunks with size provided by
  * {@link AudioInputFormat#getChunkSizeBytes()}.
+ *
+ * Chunks are copied into direct buffers acquired from a {@link ByteBufferPool}, and handed back to
+ * the pool once Jetty has written them, which it signals by completing the iterator as a
+ * {@link Callback}, or at the latest when the next chunk is taken. Iterators that wrap this one
+ * pass the completion on. The stream is closed when it ends, or when the iterator is closed.
  */
-public class AudioInputStreamContentProvider extends InputStreamContentProvider implements
-        ContentProvider.Typed {
+public class AudioInputStreamContentProvider implements ContentProvider.Typed {
+    private static final Logger log = LoggerFactory.getLogger(AudioInputStreamContentProvider.class);
+
+    private final ByteBufferPool pool;
+    private final int chunkSize;
+    private final InputStream stream;
+    private volatile Runnable firstChunkListener;
 
     public AudioInputStreamContentProvider(AudioInputFormat audioType, InputStream stream) {
-        super(stream, audioType.getChunkSizeBytes());
+        this(audioType, stream, new BufferPool());
+    }
+
+    /**
+     * @param audioType
+     * @param stream
+     * @param pool
+     *            The pool to take the buffers the audio is read into from.
+     */
+    public AudioInputStreamContentProvider(AudioInputFormat audioType, InputStream stream,
+            ByteBufferPool pool) {
+        this.pool = pool;
+        this.chunkSize = audioType.getChunkSizeBytes();
+        this.stream = stream;
+    }
+
+    /**
+     * @param listener
+     *            Run once, when Jetty has written the first chunk of audio to the stream.
+     */
+    public void onFirstChunkWritten(Runnable listener) {
+        this.firstChunkListener = listener;
+    }
+
+    @Override
+    public long getLength() {
+        return -1;
     }
 
     @Override
     public String getContentType() {
         return ContentTypes.AUDIO;
     }
+
+    @Override
+    public Iterator<ByteBuffer> iterator() {
+        return new AudioIterator();
+    }
+
+    private class AudioIterator implements Iterator<ByteBuffer>, Callback, Closeable {
+        // One array for every read, where InputStreamContentProvider allocated one per chunk
+        private final byte[] chunk = new byte[chunkSize];
+        // Read by hasNext() and not handed out yet
+        private ByteBuffer pending;
+        // Handed out by next() and not written yet
+        private ByteBuffer writing;
+        private boolean ended;
+        private boolean written;
+
+        @Override
+        public synchronized boolean hasNext() {
+            if (pending != null) {
+                return true;
+            }
+            if (ended) {
+                return false;
+            }
+
+            int read;
+            try {
+                read = stream.read(chunk);
+            } catch (IOException e) {
+                end();
+                throw new UncheckedIOException(e);
+            }
+            if (read < 0) {
+                end();
+                return false;
+            }
+
+            ByteBuffer buffer = pool.acquire(read, true);
+            buffer.clear();
+            buffer.put(chunk, 0, read);
+            buffer.flip();
+            pending = buffer;
+            return true;
+        }
+
+        @Override
+        public synchronized ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            release(writing);
+            writing = pending;
+            pending = null;
+            return writing;
+        }
+
+        @Override
+        public synchronized void succeeded() {
+            if ((writing != null) && !written) {
+                written = true;
+                Runnable listener = firstChunkListener;
+                if (listener != null) {
+                    listener.run();
+                }
+            }
+            release(writing);
+            writing = null;
+        }
+
+        @Override
+        public synchronized void failed(Throwable x) {
+            release(writing);
+            writing = null;
+        }
+
+        @Override
+        public synchronized void close() {
+            release(writing);
+            release(pending);
+            writing = null;
+            pending = null;
+            end();
+        }
+
+        private void release(ByteBuffer buffer) {
+            if (buffer != null) {
+                pool.release(buffer);
+            }
+        }
+
+        private void end() {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            try {
+                stream.close();
+            } catch (IOException e) {
+                log.warn("Could not close the audio stream", e);
+            }
+        }
+    }
 }
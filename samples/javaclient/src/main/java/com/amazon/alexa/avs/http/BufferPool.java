@@ -0,0 +1,170 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ByteBufferPool} that keeps released buffers in buckets of power of two capacities, so
+ * that buffers of similar sizes are reused instead of allocated for every request. Like Jetty's
+ * pools, acquired buffers are empty and in flush mode (position and limit are 0).
+ *
+ * Hits, misses and the number of buffers currently acquired are counted to make leaks and an
+ * undersized pool visible.
+ */
+public class BufferPool implements ByteBufferPool {
+    public static final int DEFAULT_MAX_BUFFERS_PER_BUCKET = 64;
+
+    private static final int MIN_CAPACITY_SHIFT = 9; // 512 bytes
+    private static final int MAX_CAPACITY_SHIFT = 20; // 1 MiB
+
+    private final Bucket[] heapBuckets = newBuckets();
+    private final Bucket[] directBuckets = newBuckets();
+    private final int maxBuffersPerBucket;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong outstanding = new AtomicLong();
+
+    public BufferPool() {
+        this(DEFAULT_MAX_BUFFERS_PER_BUCKET);
+    }
+
+    /**
+     * @param maxBuffersPerBucket
+     *            The maximum number of released buffers of each capacity to keep for reuse.
+     */
+    public BufferPool(int maxBuffersPerBucket) {
+        this.maxBuffersPerBucket = maxBuffersPerBucket;
+    }
+
+    @Override
+    public ByteBuffer acquire(int size, boolean direct) {
+        outstanding.incrementAndGet();
+        int shift = shiftFor(size);
+        if (shift > MAX_CAPACITY_SHIFT) {
+            // Too big to be worth keeping around
+            misses.incrementAndGet();
+            return allocate(size, direct);
+        }
+
+        Bucket bucket = bucketsFor(direct)[shift - MIN_CAPACITY_SHIFT];
+        ByteBuffer buffer = bucket.buffers.poll();
+        if (buffer == null) {
+            misses.incrementAndGet();
+            return allocate(1 << shift, direct);
+        }
+        bucket.size.decrementAndGet();
+        hits.incrementAndGet();
+        buffer.clear();
+        buffer.limit(0);
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        outstanding.decrementAndGet();
+
+        int capacity = buffer.capacity();
+        if ((Integer.bitCount(capacity) != 1) || (capacity < (1 << MIN_CAPACITY_SHIFT))
+                || (capacity > (1 << MAX_CAPACITY_SHIFT))) {
+            return;
+        }
+
+        Bucket bucket =
+                bucketsFor(buffer.isDirect())[Integer.numberOfTrailingZeros(capacity)
+                        - MIN_CAPACITY_SHIFT];
+        if (bucket.size.incrementAndGet() > maxBuffersPerBucket) {
+            bucket.size.decrementAndGet();
+            return;
+        }
+        bucket.buffers.offer(buffer);
+    }
+
+    /**
+     * @return The number of acquisitions that were served by a previously released buffer.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of acquisitions that had to allocate a new buffer.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The share of acquisitions that were served by a previously released buffer, or 0 if
+     *         nothing has been acquired yet.
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return The number of buffers that have been acquired and not released yet.
+     */
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BufferPool hits:%1$d misses:%2$d hitRate:%3$.2f outstanding:%4$d",
+                getHits(), getMisses(), getHitRate(), getOutstanding());
+    }
+
+    private Bucket[] bucketsFor(boolean direct) {
+        return direct ? directBuckets : heapBuckets;
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        ByteBuffer buffer =
+                direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        buffer.limit(0);
+        return buffer;
+    }
+
+    private static int shiftFor(int size) {
+        if (size <= (1 << MIN_CAPACITY_SHIFT)) {
+            return MIN_CAPACITY_SHIFT;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    private static Bucket[] newBuckets() {
+        Bucket[] buckets = new Bucket[(MAX_CAPACITY_SHIFT - MIN_CAPACITY_SHIFT) + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+        return buckets;
+    }
+
+    private static final class Bucket {
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+    }
+}
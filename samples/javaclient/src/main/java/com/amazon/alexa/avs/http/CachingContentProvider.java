@@ -13,26 +13,43 @@
 package com.amazon.alexa.avs.http;
 
 import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.util.Callback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * Decorates a {@link ContentProvider} and adds caching behavior to allow for HTTP request retries.
+ *
+ * The content is copied into a {@link ReplayBuffer} as it is sent, which holds a bounded amount in
+ * memory and spills the rest to disk. Once a retry can no longer happen, {@link #release()} frees
+ * the copy.
+ *
+ * The iterators are not {@link java.io.Closeable}: the original iterator outlives the attempts
+ * that stop partway through, and is only closed by {@link #close()}.
  */
 public class CachingContentProvider implements ContentProvider.Typed {
 
     private static final Logger log = LoggerFactory.getLogger(CachingContentProvider.class);
 
     private ContentProvider contentProvider;
+    private ReplayBuffer replayBuffer;
     private CachingIterator cachingIterator;
 
     public CachingContentProvider(ContentProvider contentProvider) {
+        this(contentProvider, new ReplayBuffer(new BufferPool(), ReplayBuffer.DEFAULT_MEMORY_LIMIT));
+    }
+
+    /**
+     * @param contentProvider
+     * @param replayBuffer
+     *            The buffer to keep a copy of the content in.
+     */
+    public CachingContentProvider(ContentProvider contentProvider, ReplayBuffer replayBuffer) {
         this.contentProvider = contentProvider;
+        this.replayBuffer = replayBuffer;
     }
 
     @Override
@@ -41,11 +58,11 @@ public class CachingContentProvider implements ContentProvider.Typed {
     }
 
     @Override
-    public Iterator<ByteBuffer> iterator() {
+    public synchronized Iterator<ByteBuffer> iterator() {
 
         if (cachingIterator == null) {
             log.info("Create new CachingIterator");
-            cachingIterator = new CachingIterator(contentProvider.iterator());
+            cachingIterator = new CachingIterator(contentProvider.iterator(), replayBuffer);
             return cachingIterator;
         } else {
             log.info("Using cached iterator");
@@ -62,20 +79,41 @@ public class CachingContentProvider implements ContentProvider.Typed {
     }
 
     /**
-     * Keeps a cache of ByteBuffers that come from the original iterator.
+     * Free the copy of the content. The content can't be iterated again afterwards.
      */
-    public static class CachingIterator implements Iterator<ByteBuffer> {
+    public void release() {
+        replayBuffer.release();
+    }
+
+    /**
+     * Free the copy of the content, and close the original iterator, once no attempt at sending
+     * the content is left.
+     */
+    public synchronized void close() {
+        release();
+        if (cachingIterator != null) {
+            ContentIterators.close(cachingIterator.originalIterator);
+        }
+    }
+
+    /**
+     * Copies the ByteBuffers that come from the original iterator into a {@link ReplayBuffer}.
+     */
+    public static class CachingIterator implements Iterator<ByteBuffer>, Callback {
         private Iterator<ByteBuffer> originalIterator;
-        private boolean cacheBytes = true;
-        private List<ByteBuffer> cache = new LinkedList<ByteBuffer>();
+        private ReplayBuffer replayBuffer;
 
-        public CachingIterator(Iterator<ByteBuffer> originalIterator) {
+        public CachingIterator(Iterator<ByteBuffer> originalIterator, ReplayBuffer replayBuffer) {
             this.originalIterator = originalIterator;
+            this.replayBuffer = replayBuffer;
         }
 
+        /**
+         * @return An iterator over the content that has been sent so far, followed by the content
+         *         that has not been read from the original iterator yet.
+         */
         public Iterator<ByteBuffer> getCachedIterator() {
-            cacheBytes = false;
-            return cache.iterator();
+            return new ReplayingIterator(replayBuffer.iterator());
         }
 
         @Override
@@ -86,12 +124,58 @@ public class CachingContentProvider implements ContentProvider.Typed {
         @Override
         public ByteBuffer next() {
             ByteBuffer byteBuffer = originalIterator.next();
-            if (cacheBytes) {
-                cache.add(byteBuffer.duplicate());
-            } else {
-                log.warn("next was called on iterator after the cached bytes were returned");
-            }
+            replayBuffer.append(byteBuffer);
             return byteBuffer;
         }
+
+        @Override
+        public void succeeded() {
+            ContentIterators.succeeded(originalIterator);
+        }
+
+        @Override
+        public void failed(Throwable x) {
+            ContentIterators.failed(originalIterator, x);
+        }
+
+        private class ReplayingIterator implements Iterator<ByteBuffer>, Callback {
+            private final Iterator<ByteBuffer> cached;
+            private boolean readingOriginal;
+
+            private ReplayingIterator(Iterator<ByteBuffer> cached) {
+                this.cached = cached;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return cached.hasNext() || CachingIterator.this.hasNext();
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (cached.hasNext()) {
+                    return cached.next();
+                }
+                // Content read from the original iterator from here on is appended to the
+                // replay buffer too, in case there is yet another retry
+                readingOriginal = true;
+                return CachingIterator.this.next();
+            }
+
+            @Override
+            public void succeeded() {
+                // The readingOriginal buffers are copies that nothing has to be done with
+                if (readingOriginal) {
+                    CachingIterator.this.succeeded();
+                }
+            }
+
+            @Override
+            public void failed(Throwable x) {
+                if (readingOriginal) {
+                    CachingIterator.this.failed(x);
+                }
+            }
+        }
     }
 }
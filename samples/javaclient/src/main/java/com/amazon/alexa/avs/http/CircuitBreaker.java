@@ -0,0 +1,162 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops requests from being sent while AVS can't be reached, so they fail right away instead of
+ * each waiting for its own connection timeouts and retries.
+ *
+ * The circuit opens after a number of consecutive connection failures. While it is open no
+ * request is allowed until the open time has passed; then a single request is let through as a
+ * probe. If the probe fails the circuit opens again for twice as long, up to a maximum, and if
+ * any request gets a response the circuit closes. Open times are jittered, so that devices that
+ * lost their connection together don't all probe at the same moment.
+ */
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MS = 5000;
+    public static final long DEFAULT_MAX_OPEN_MS = TimeUnit.MINUTES.toMillis(1);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN;
+    }
+
+    private final int failureThreshold;
+    private final long initialOpenMs;
+    private final long maxOpenMs;
+    private final AtomicLong openCount = new AtomicLong();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openMs;
+    // While OPEN, when the next probe may go; while HALF_OPEN, when the probe is given up on
+    private long nextProbeNanos;
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MS, DEFAULT_MAX_OPEN_MS);
+    }
+
+    /**
+     * @param failureThreshold
+     *            The number of consecutive connection failures that open the circuit.
+     * @param initialOpenMs
+     *            How long the circuit stays open the first time, in milliseconds.
+     * @param maxOpenMs
+     *            How long the circuit stays open at most, in milliseconds.
+     */
+    public CircuitBreaker(int failureThreshold, long initialOpenMs, long maxOpenMs) {
+        this.failureThreshold = failureThreshold;
+        this.initialOpenMs = initialOpenMs;
+        this.maxOpenMs = maxOpenMs;
+        openMs = initialOpenMs;
+    }
+
+    /**
+     * Ask whether a request may be sent now. When the circuit is open and due a probe, the caller
+     * that gets true is the probe.
+     *
+     * @return true if the request may be sent.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+            case HALF_OPEN:
+                if (System.nanoTime() - nextProbeNanos < 0) {
+                    return false;
+                }
+                // A probe that neither failed nor succeeded within the open time is given up on
+                state = State.HALF_OPEN;
+                nextProbeNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openMs);
+                log.info("Probing the connection to AVS");
+                return true;
+            default:
+                throw new IllegalStateException(state.name());
+        }
+    }
+
+    /**
+     * Record that a request reached AVS, which closes the circuit.
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("AVS can be reached again, closing the circuit");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openMs = initialOpenMs;
+    }
+
+    /**
+     * Record that a request could not reach AVS.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            openMs = Math.min(openMs * 2, maxOpenMs);
+            open();
+        } else if ((state == State.CLOSED) && (consecutiveFailures >= failureThreshold)) {
+            open();
+        }
+    }
+
+    private void open() {
+        // Equal jitter: at least half the open time, so the circuit does stay open for a while
+        long delayMs = (openMs / 2) + ThreadLocalRandom.current().nextLong((openMs / 2) + 1);
+        nextProbeNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        state = State.OPEN;
+        openCount.incrementAndGet();
+        log.warn("{} consecutive connection failures, failing requests for {} ms",
+                consecutiveFailures, delayMs);
+    }
+
+    /**
+     * @return The time until a probe may be sent, in milliseconds, or 0 if the circuit is closed
+     *         or due a probe.
+     */
+    public synchronized long getMillisUntilProbe() {
+        if (state == State.CLOSED) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(nextProbeNanos - System.nanoTime()));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return The number of times the circuit opened.
+     */
+    public long getOpenCount() {
+        return openCount.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("CircuitBreaker state:%1$s failures:%2$d opened:%3$d", state,
+                consecutiveFailures, getOpenCount());
+    }
+}
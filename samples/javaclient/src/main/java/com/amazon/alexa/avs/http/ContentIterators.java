@@ -0,0 +1,55 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Jetty completes a content iterator that is a {@link Callback} once the buffer it returned has
+ * been written, and closes one that is {@link Closeable} when the request is done with it. These
+ * pass that on from an iterator to the iterator it wraps.
+ */
+final class ContentIterators {
+    private static final Logger log = LoggerFactory.getLogger(ContentIterators.class);
+
+    private ContentIterators() {
+    }
+
+    static void succeeded(Iterator<?> iterator) {
+        if (iterator instanceof Callback) {
+            ((Callback) iterator).succeeded();
+        }
+    }
+
+    static void failed(Iterator<?> iterator, Throwable x) {
+        if (iterator instanceof Callback) {
+            ((Callback) iterator).failed(x);
+        }
+    }
+
+    static void close(Iterator<?> iterator) {
+        if (iterator instanceof Closeable) {
+            try {
+                ((Closeable) iterator).close();
+            } catch (IOException e) {
+                log.warn("Could not close {}", iterator, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import com.amazon.alexa.avs.AVSAPIConstants;
+import com.amazon.alexa.avs.AVSRequest;
+import com.amazon.alexa.avs.message.Header;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Sits in front of the request queue and merges events that have been superseded by newer events
+ * before they are sent to AVS. The rules for each type of event are declared in {@link #RULES}:
+ * <ul>
+ * <li>{@link Strategy#LATEST_IN_WINDOW} events are sent right away, and open a short window for
+ * their coalescing key. Events that follow within the window are held back until it ends, and only
+ * the last of them is sent, which opens the next window. The futures of the events that were
+ * merged away complete with the outcome of the event that was sent.</li>
+ * <li>{@link Strategy#DROP_IF_SUPERSEDED} events are cancelled instead of sent if a
+ * {@link Strategy#SUPERSEDES} event with the same coalescing key was enqueued after them.</li>
+ * </ul>
+ */
+public class EventCoalescer {
+    private static final Logger log = LoggerFactory.getLogger(EventCoalescer.class);
+
+    private static final long VOLUME_WINDOW_MS = 250;
+
+    private static final String SPEAKER_STATE = "SpeakerState";
+    private static final String PLAYBACK_STATE = "PlaybackState";
+
+    private enum Strategy {
+        LATEST_IN_WINDOW,
+        DROP_IF_SUPERSEDED,
+        SUPERSEDES
+    }
+
+    private static final class Rule {
+        private final String coalescingKey;
+        private final Strategy strategy;
+        private final long windowMs;
+
+        private Rule(String coalescingKey, Strategy strategy, long windowMs) {
+            this.coalescingKey = coalescingKey;
+            this.strategy = strategy;
+            this.windowMs = windowMs;
+        }
+    }
+
+    /**
+     * Rules keyed by "namespace.name", or by "namespace" for rules that apply to every event in a
+     * namespace that has no rule of its own.
+     */
+    private static final Map<String, Rule> RULES = new HashMap<>();
+    static {
+        // Both events carry the whole volume state, so only the last one matters
+        RULES.put(key(AVSAPIConstants.Speaker.NAMESPACE,
+                AVSAPIConstants.Speaker.Events.VolumeChanged.NAME),
+                new Rule(SPEAKER_STATE, Strategy.LATEST_IN_WINDOW, VOLUME_WINDOW_MS));
+        RULES.put(key(AVSAPIConstants.Speaker.NAMESPACE,
+                AVSAPIConstants.Speaker.Events.MuteChanged.NAME),
+                new Rule(SPEAKER_STATE, Strategy.LATEST_IN_WINDOW, VOLUME_WINDOW_MS));
+
+        // A progress report is stale once any newer playback event exists
+        RULES.put(key(AVSAPIConstants.AudioPlayer.NAMESPACE,
+                AVSAPIConstants.AudioPlayer.Events.ProgressReportDelayElapsed.NAME),
+                new Rule(PLAYBACK_STATE, Strategy.DROP_IF_SUPERSEDED, 0));
+        RULES.put(key(AVSAPIConstants.AudioPlayer.NAMESPACE,
+                AVSAPIConstants.AudioPlayer.Events.ProgressReportIntervalElapsed.NAME),
+                new Rule(PLAYBACK_STATE, Strategy.DROP_IF_SUPERSEDED, 0));
+        RULES.put(AVSAPIConstants.AudioPlayer.NAMESPACE,
+                new Rule(PLAYBACK_STATE, Strategy.SUPERSEDES, 0));
+    }
+
+    private final Consumer<AVSRequest> downstream;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong sequence = new AtomicLong();
+    // Sequence number of the latest superseding event for each coalescing key
+    private final Map<String, Long> latestSuperseding = new ConcurrentHashMap<>();
+    // Events that may still be dropped, with the sequence number they were enqueued at
+    private final Map<AVSRequest, Droppable> droppable = new ConcurrentHashMap<>();
+    // The open window of each coalescing key, guarded by this
+    private final Map<String, Window> windows = new HashMap<>();
+
+    private final Map<String, AtomicLong> coalescedCounts = new ConcurrentHashMap<>();
+
+    /**
+     * @param downstream
+     *            Receives the events that should be sent.
+     * @param scheduler
+     *            Used to release events at the end of their window.
+     */
+    public EventCoalescer(Consumer<AVSRequest> downstream, ScheduledExecutorService scheduler) {
+        this.downstream = downstream;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Enqueue an event, merging it with or holding it back for newer events according to its
+     * rule.
+     *
+     * @param request
+     * @param header
+     *            The header of the event being sent in the request.
+     */
+    public void offer(AVSRequest request, Header header) {
+        String eventName = key(header.getNamespace(), header.getName());
+        Rule rule = getRule(header);
+        if (rule == null) {
+            downstream.accept(request);
+            return;
+        }
+
+        switch (rule.strategy) {
+            case LATEST_IN_WINDOW:
+                offerWindowed(request, rule, eventName);
+                break;
+            case DROP_IF_SUPERSEDED:
+                droppable.put(request,
+                        new Droppable(rule.coalescingKey, sequence.incrementAndGet(), eventName));
+                // Requests shed or rejected before they are checked must not stay in the map
+                request.onRelease(() -> droppable.remove(request));
+                downstream.accept(request);
+                break;
+            case SUPERSEDES:
+                latestSuperseding.put(rule.coalescingKey, sequence.incrementAndGet());
+                downstream.accept(request);
+                break;
+            default:
+                downstream.accept(request);
+        }
+    }
+
+    /**
+     * Check, right before sending it, whether a request has been superseded by a newer event. A
+     * superseded request is cancelled and must not be sent.
+     *
+     * @param request
+     * @return true if the request was superseded.
+     */
+    public boolean isSuperseded(AVSRequest request) {
+        Droppable event = droppable.remove(request);
+        if (event == null) {
+            return false;
+        }
+
+        Long latest = latestSuperseding.get(event.coalescingKey);
+        if ((latest != null) && (latest > event.sequence)) {
+            log.debug("Dropping {} because a newer {} event exists", event.eventName,
+                    event.coalescingKey);
+            countCoalesced(event.eventName);
+            request.cancel();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Send every event that is being held back right away.
+     */
+    public void flush() {
+        List<AVSRequest> pending = new ArrayList<>();
+        synchronized (this) {
+            for (Window window : windows.values()) {
+                if (window.heldBack != null) {
+                    pending.add(window.heldBack);
+                }
+            }
+            windows.clear();
+        }
+        pending.forEach(downstream);
+    }
+
+    /**
+     * @return The number of events that were merged away or dropped, by event name.
+     */
+    public Map<String, Long> getCoalescedCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        coalescedCounts.forEach((name, count) -> counts.put(name, count.get()));
+        return counts;
+    }
+
+    /**
+     * @return The total number of events that were merged away or dropped.
+     */
+    public long getTotalCoalesced() {
+        return coalescedCounts.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    private void offerWindowed(AVSRequest request, Rule rule, String eventName) {
+        AVSRequest superseded;
+        synchronized (this) {
+            Window window = windows.get(rule.coalescingKey);
+            if (window == null) {
+                windows.put(rule.coalescingKey, new Window());
+                superseded = null;
+            } else {
+                superseded = window.heldBack;
+                window.heldBack = request;
+                if (superseded == null) {
+                    return;
+                }
+            }
+        }
+
+        if (superseded == null) {
+            // The first event of a burst is not held back
+            scheduleEndOfWindow(rule);
+            downstream.accept(request);
+            return;
+        }
+
+        countCoalesced(eventName);
+        superseded.release();
+        // Whoever is waiting on the superseded event sees the outcome of the one that replaced it
+        request.getCompletion().whenComplete((statusCode, e) -> {
+            if (e != null) {
+                superseded.getCompletion().completeExceptionally(e);
+            } else {
+                superseded.getCompletion().complete(statusCode);
+            }
+        });
+    }
+
+    private void scheduleEndOfWindow(Rule rule) {
+        scheduler.schedule(() -> endWindow(rule), rule.windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send the last event held back in the window, which opens the next window, or close the
+     * window if no event came during it.
+     *
+     * @param rule
+     */
+    private void endWindow(Rule rule) {
+        AVSRequest request;
+        synchronized (this) {
+            Window window = windows.get(rule.coalescingKey);
+            if (window == null) {
+                // Flushed meanwhile
+                return;
+            }
+            request = window.heldBack;
+            if (request == null) {
+                windows.remove(rule.coalescingKey);
+                return;
+            }
+            windows.put(rule.coalescingKey, new Window());
+        }
+        scheduleEndOfWindow(rule);
+        downstream.accept(request);
+    }
+
+    private void countCoalesced(String eventName) {
+        coalescedCounts.computeIfAbsent(eventName, name -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * @param header
+     * @return The key of the state the event reports, if only the latest event for that key
+     *         matters, or null otherwise.
+     */
+    static String getStateKey(Header header) {
+        Rule rule = getRule(header);
+        return ((rule != null) && (rule.strategy == Strategy.LATEST_IN_WINDOW))
+                ? rule.coalescingKey : null;
+    }
+
+    private static Rule getRule(Header header) {
+        Rule rule = RULES.get(key(header.getNamespace(), header.getName()));
+        if (rule == null) {
+            rule = RULES.get(header.getNamespace());
+        }
+        return rule;
+    }
+
+    private static String key(String namespace, String name) {
+        return namespace + "." + name;
+    }
+
+    private static final class Window {
+        // The latest event since the window opened, sent when it ends
+        private AVSRequest heldBack;
+    }
+
+    private static final class Droppable {
+        private final String coalescingKey;
+        private final long sequence;
+        private final String eventName;
+
+        private Droppable(String coalescingKey, long sequence, String eventName) {
+            this.coalescingKey = coalescingKey;
+            this.sequence = sequence;
+            this.eventName = eventName;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import com.amazon.alexa.avs.config.ObjectMapperFactory;
+
+import org.codehaus.jackson.map.ObjectWriter;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializes the JSON of outbound events in a single pass, straight into buffers acquired from a
+ * {@link ByteBufferPool}. Unlike {@link ObjectWriter#writeValueAsString(Object)} no intermediate
+ * String or byte[] is created, and the buffers are reused once the event has been sent.
+ */
+public class EventEncoder {
+    private static final Logger log = LoggerFactory.getLogger(EventEncoder.class);
+
+    // Most events fit in one chunk; Recognize events with a full context take a few
+    static final int CHUNK_SIZE = 2048;
+
+    private final ByteBufferPool pool;
+    private final ObjectWriter writer = ObjectMapperFactory.getObjectWriter();
+
+    public EventEncoder(ByteBufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Encode a value as JSON. The returned content must be released once it has been sent.
+     *
+     * @param value
+     * @return The JSON content, backed by pooled buffers.
+     * @throws IOException
+     */
+    public PooledContentProvider encode(Object value) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Request metadata: \n{}",
+                    writer.withDefaultPrettyPrinter().writeValueAsString(value));
+        }
+
+        PooledOutputStream out = new PooledOutputStream();
+        try {
+            writer.writeValue(out, value);
+        } catch (IOException | RuntimeException e) {
+            out.buffers.forEach(pool::release);
+            throw e;
+        }
+        return new PooledContentProvider(pool, out.finish(), ContentTypes.JSON);
+    }
+
+    private class PooledOutputStream extends OutputStream {
+        private final List<ByteBuffer> buffers = new ArrayList<>(1);
+        private ByteBuffer current;
+
+        @Override
+        public void write(int b) {
+            ensureSpace().put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                ByteBuffer buffer = ensureSpace();
+                int count = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        private ByteBuffer ensureSpace() {
+            if ((current == null) || !current.hasRemaining()) {
+                current = pool.acquire(CHUNK_SIZE, false);
+                // Pooled buffers come in flush mode, switch to fill mode
+                current.limit(current.capacity());
+                buffers.add(current);
+            }
+            return current;
+        }
+
+        /**
+         * @return The buffers that were written to, in flush mode.
+         */
+        private List<ByteBuffer> finish() {
+            for (ByteBuffer buffer : buffers) {
+                buffer.flip();
+            }
+            return buffers;
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import com.amazon.alexa.avs.AVSAPIConstants;
+import com.amazon.alexa.avs.message.Header;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only, memory-mapped journal of the events that must reach AVS even if the connection
+ * is down when they are sent, such as Alerts and AudioPlayer lifecycle events. Events are
+ * journaled before they are queued, acknowledged once AVS has responded to them, and the events
+ * that were never acknowledged are replayed once the connection is back, including after a
+ * restart.
+ *
+ * Appending only copies the event into the mapped file; the file is flushed to disk in the
+ * background, so journaling adds no I/O to sending an event.
+ *
+ * The file starts with a magic number and a version, followed by records of the form:
+ *
+ * <pre>
+ * int length | byte state | long sequence | long timestamp | short+bytes namespace |
+ * short+bytes name | bytes JSON
+ * </pre>
+ *
+ * The length is written last, so a record torn by a crash reads as the end of the journal.
+ * Acknowledging overwrites the state in place. When the file is full it is compacted, dropping
+ * acknowledged and expired records and state events superseded by a newer one. The compacted
+ * journal is written to a file of its own first and then copied over the journal in place, rather
+ * than moved over it, since a file that is mapped can't be replaced on Windows. A compaction that
+ * was cut short by a crash is finished the next time the journal is opened.
+ */
+public class EventJournal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(EventJournal.class);
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int MAGIC = 0x41565345; // "AVSE"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 8;
+    private static final int STATE_OFFSET = 4;
+
+    private static final byte PENDING = 1;
+    private static final byte ACKNOWLEDGED = 2;
+
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final long MAX_RECORD_AGE_MS = TimeUnit.HOURS.toMillis(24);
+
+    private static final Set<String> DURABLE_NAMESPACES = new HashSet<>();
+    private static final Set<String> NON_DURABLE_EVENTS = new HashSet<>();
+    static {
+        DURABLE_NAMESPACES.add(AVSAPIConstants.Alerts.NAMESPACE);
+        DURABLE_NAMESPACES.add(AVSAPIConstants.AudioPlayer.NAMESPACE);
+        DURABLE_NAMESPACES.add(AVSAPIConstants.Speaker.NAMESPACE);
+        DURABLE_NAMESPACES.add(AVSAPIConstants.Settings.NAMESPACE);
+
+        // Progress reports are worthless once they are late
+        NON_DURABLE_EVENTS.add(AVSAPIConstants.AudioPlayer.Events.ProgressReportDelayElapsed.NAME);
+        NON_DURABLE_EVENTS
+                .add(AVSAPIConstants.AudioPlayer.Events.ProgressReportIntervalElapsed.NAME);
+    }
+
+    private final File file;
+    // The compacted journal, from when it is complete until it has been copied over the journal
+    private final File compactedFile;
+    private final File partialCompactedFile;
+    private final int capacity;
+    private final ScheduledExecutorService flusher;
+
+    // All of the following are guarded by this
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int writePosition;
+    private long nextSequence;
+    private boolean dirty;
+    private final Map<Long, Record> pending = new LinkedHashMap<>();
+
+    /**
+     * A journaled event that has not been acknowledged yet.
+     */
+    public static final class Record {
+        private final long sequence;
+        private final long timestamp;
+        private final Header header;
+        private int offset;
+        private int length;
+        private boolean inFlight;
+
+        private Record(long sequence, long timestamp, Header header, int offset, int length) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.header = header;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public Header getHeader() {
+            return header;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%1$s #%2$d", header, sequence);
+        }
+    }
+
+    public EventJournal(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Open the journal, creating it if needed, and load the events that were never acknowledged.
+     *
+     * @param file
+     * @param capacity
+     *            The size of the journal file in bytes.
+     * @throws IOException
+     */
+    public EventJournal(File file, int capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        compactedFile = new File(file.getPath() + ".compact");
+        partialCompactedFile = new File(file.getPath() + ".compact.tmp");
+        load();
+        compact();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, EventJournal.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+
+        if (!pending.isEmpty()) {
+            log.info("{} events from the journal are waiting to be sent", pending.size());
+        }
+    }
+
+    /**
+     * @param header
+     * @return true if the event must reach AVS even if the connection is down when it is sent.
+     */
+    public static boolean isDurable(Header header) {
+        return DURABLE_NAMESPACES.contains(header.getNamespace())
+                && !NON_DURABLE_EVENTS.contains(header.getName());
+    }
+
+    /**
+     * Journal an event that is about to be sent. The record is in flight, so it is not replayed
+     * until it is acknowledged or {@link #retry(Record) handed back}.
+     *
+     * @param header
+     * @param json
+     *            The JSON of the event, in flush mode. The buffers are not modified.
+     * @return The record, or null if the event did not fit in the journal.
+     */
+    public synchronized Record append(Header header, Iterable<ByteBuffer> json) {
+        byte[] namespace = header.getNamespace().getBytes(StandardCharsets.UTF_8);
+        byte[] name = header.getName().getBytes(StandardCharsets.UTF_8);
+        int jsonLength = 0;
+        for (ByteBuffer buffer : json) {
+            jsonLength += buffer.remaining();
+        }
+        int length = RECORD_HEADER_SIZE + 2 + namespace.length + 2 + name.length + jsonLength;
+
+        if ((writePosition + length + 4) > capacity) {
+            try {
+                compact();
+            } catch (IOException e) {
+                log.error("Could not compact the event journal", e);
+            }
+            if ((writePosition + length + 4) > capacity) {
+                log.warn("The event journal is full, {} is sent without being journaled", header);
+                return null;
+            }
+        }
+
+        long sequence = nextSequence++;
+        long timestamp = System.currentTimeMillis();
+        int offset = writePosition;
+        map.position(offset + STATE_OFFSET);
+        map.put(PENDING);
+        map.putLong(sequence);
+        map.putLong(timestamp);
+        map.putShort((short) namespace.length);
+        map.put(namespace);
+        map.putShort((short) name.length);
+        map.put(name);
+        for (ByteBuffer buffer : json) {
+            map.put(buffer.duplicate());
+        }
+        // Terminate the journal after this record before making the record visible
+        map.putInt(offset + length, 0);
+        map.putInt(offset, length);
+        writePosition = offset + length;
+        dirty = true;
+
+        Record record = new Record(sequence, timestamp, header, offset, length);
+        record.inFlight = true;
+        pending.put(sequence, record);
+        return record;
+    }
+
+    /**
+     * Mark an event as delivered, so it is never replayed.
+     *
+     * @param record
+     */
+    public synchronized void acknowledge(Record record) {
+        if (pending.remove(record.sequence) == null) {
+            return;
+        }
+        map.put(record.offset + STATE_OFFSET, ACKNOWLEDGED);
+        dirty = true;
+    }
+
+    /**
+     * Hand an event that could not be delivered back to the journal, to be replayed the next time
+     * the connection is up.
+     *
+     * @param record
+     */
+    public synchronized void retry(Record record) {
+        record.inFlight = false;
+    }
+
+    /**
+     * Take the oldest event that is waiting to be replayed and was journaled after the given one.
+     * The record is in flight until it is acknowledged or handed back with {@link #retry(Record)}.
+     *
+     * @param previousSequence
+     *            The sequence number of the previously replayed record, or -1 to start with the
+     *            oldest one. Replaying in rounds like this tries every event once even if it keeps
+     *            failing.
+     * @return The record, or null if there is nothing to replay.
+     */
+    public synchronized Record nextToReplay(long previousSequence) {
+        long now = System.currentTimeMillis();
+        for (Record record : new ArrayList<>(pending.values())) {
+            if (record.inFlight || (record.sequence <= previousSequence)) {
+                continue;
+            }
+            if ((now - record.timestamp) > MAX_RECORD_AGE_MS) {
+                log.info("Dropping {} from the journal because it is too old", record);
+                acknowledge(record);
+                continue;
+            }
+            record.inFlight = true;
+            return record;
+        }
+        return null;
+    }
+
+    /**
+     * Copy the JSON of an event into buffers acquired from the given pool.
+     *
+     * @param record
+     * @param pool
+     * @return The JSON content.
+     */
+    public synchronized PooledContentProvider read(Record record, ByteBufferPool pool) {
+        ByteBuffer source = map.duplicate();
+        source.position(record.offset + jsonOffset(record));
+        source.limit(record.offset + record.length);
+
+        ByteBuffer buffer = pool.acquire(source.remaining(), false);
+        buffer.limit(buffer.capacity());
+        buffer.put(source);
+        buffer.flip();
+        return new PooledContentProvider(pool, Collections.singletonList(buffer),
+                ContentTypes.JSON);
+    }
+
+    /**
+     * @return The number of events that have not been acknowledged.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flusher.shutdown();
+        flush();
+        channel.close();
+    }
+
+    private synchronized void flush() {
+        if (dirty) {
+            map.force();
+            dirty = false;
+        }
+    }
+
+    private void load() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = channel.size() == 0;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (finishCompaction()) {
+            created = false;
+        }
+        if (created) {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            writePosition = FILE_HEADER_SIZE;
+            map.putInt(writePosition, 0);
+            return;
+        }
+        if ((map.getInt(0) != MAGIC) || (map.getInt(4) != VERSION)) {
+            throw new IOException("Not an event journal: " + file);
+        }
+
+        int offset = FILE_HEADER_SIZE;
+        while ((offset + 4) <= capacity) {
+            int length = map.getInt(offset);
+            if ((length < RECORD_HEADER_SIZE) || ((offset + length) > capacity)) {
+                break;
+            }
+            long sequence = map.getLong(offset + STATE_OFFSET + 1);
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (map.get(offset + STATE_OFFSET) == PENDING) {
+                long timestamp = map.getLong(offset + STATE_OFFSET + 9);
+                Record record = new Record(sequence, timestamp, readHeader(offset), offset, length);
+                pending.put(sequence, record);
+            }
+            offset += length;
+        }
+        writePosition = offset;
+    }
+
+    /**
+     * Rewrite the journal so that it only holds the events that still need to be delivered, if
+     * that frees any space.
+     */
+    private void compact() throws IOException {
+        List<Record> live = new ArrayList<>();
+        Map<String, Record> latestState = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (Record record : pending.values()) {
+            if (!record.inFlight && ((now - record.timestamp) > MAX_RECORD_AGE_MS)) {
+                continue;
+            }
+            String stateKey = EventCoalescer.getStateKey(record.header);
+            if (stateKey != null) {
+                Record superseded = latestState.put(stateKey, record);
+                if ((superseded != null) && !superseded.inFlight) {
+                    live.remove(superseded);
+                }
+            }
+            live.add(record);
+        }
+
+        int size = FILE_HEADER_SIZE;
+        for (Record record : live) {
+            size += record.length;
+        }
+        if (size == writePosition) {
+            // Every record is still needed
+            return;
+        }
+
+        ByteBuffer compacted = ByteBuffer.allocate(size + 4);
+        compacted.putInt(MAGIC);
+        compacted.putInt(VERSION);
+        int[] offsets = new int[live.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            Record record = live.get(i);
+            ByteBuffer source = map.duplicate();
+            source.position(record.offset);
+            source.limit(record.offset + record.length);
+            offsets[i] = compacted.position();
+            compacted.put(source);
+        }
+        compacted.putInt(0);
+        compacted.flip();
+
+        // Neither file is mapped, so the move works on Windows as well
+        try (FileChannel target = FileChannel.open(partialCompactedFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (compacted.hasRemaining()) {
+                target.write(compacted);
+            }
+            target.force(true);
+        }
+        Files.move(partialCompactedFile.toPath(), compactedFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        compacted.rewind();
+        copyOverJournal(compacted);
+
+        int dropped = pending.size() - live.size();
+        pending.clear();
+        for (int i = 0; i < offsets.length; i++) {
+            Record record = live.get(i);
+            record.offset = offsets[i];
+            pending.put(record.sequence, record);
+        }
+        writePosition = size;
+        dirty = false;
+        log.debug("Compacted the event journal: {} events kept, {} dropped", live.size(),
+                dropped);
+    }
+
+    /**
+     * Copy a compaction that was cut short over the journal.
+     *
+     * @return true if there was one.
+     */
+    private boolean finishCompaction() throws IOException {
+        // The journal was not touched yet if the compacted file was not complete
+        Files.deleteIfExists(partialCompactedFile.toPath());
+        if (!compactedFile.exists()) {
+            return false;
+        }
+        log.info("Finishing a compaction of the event journal that was cut short");
+        copyOverJournal(ByteBuffer.wrap(Files.readAllBytes(compactedFile.toPath())));
+        return true;
+    }
+
+    private void copyOverJournal(ByteBuffer compacted) throws IOException {
+        map.position(0);
+        map.put(compacted);
+        map.force();
+        Files.delete(compactedFile.toPath());
+    }
+
+    private Header readHeader(int offset) {
+        ByteBuffer source = map.duplicate();
+        source.position(offset + RECORD_HEADER_SIZE);
+        String namespace = readString(source);
+        String name = readString(source);
+        return new Header(namespace, name);
+    }
+
+    private static String readString(ByteBuffer source) {
+        byte[] bytes = new byte[source.getShort()];
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int jsonOffset(Record record) {
+        return RECORD_HEADER_SIZE + 2
+                + record.header.getNamespace().getBytes(StandardCharsets.UTF_8).length + 2
+                + record.header.getName().getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import com.amazon.alexa.avs.AVSAPIConstants;
+import com.amazon.alexa.avs.message.Header;
+import com.amazon.alexa.avs.message.request.RequestBody;
+
+/**
+ * Decides which events AVS needs to receive in order. Events that map to the same ordering key
+ * are sent one at a time in the order they were enqueued; all other events are independent and may
+ * be sent as concurrent HTTP/2 streams.
+ */
+public final class EventOrdering {
+    /**
+     * Recognize and the SpeechSynthesizer events describe a single dialog and must not overtake
+     * each other.
+     */
+    public static final String DIALOG = "Dialog";
+
+    /**
+     * AudioPlayer lifecycle and PlaybackController events describe a single playback state.
+     */
+    public static final String PLAYBACK = "Playback";
+
+    private EventOrdering() {
+    }
+
+    /**
+     * @param body
+     *            The event about to be sent.
+     * @return The ordering key for the event, or null if the event is independent.
+     */
+    public static String getOrderingKey(RequestBody body) {
+        if ((body == null) || (body.getEvent() == null)) {
+            return null;
+        }
+        return getOrderingKey(body.getEvent().getHeader());
+    }
+
+    /**
+     * @param header
+     *            The header of the event about to be sent.
+     * @return The ordering key for the event, or null if the event is independent.
+     */
+    public static String getOrderingKey(Header header) {
+        if (header == null) {
+            return null;
+        }
+        String namespace = header.getNamespace();
+        String name = header.getName();
+
+        if (AVSAPIConstants.SpeechRecognizer.NAMESPACE.equals(namespace)
+                || AVSAPIConstants.SpeechSynthesizer.NAMESPACE.equals(namespace)) {
+            return DIALOG;
+        }
+
+        if (AVSAPIConstants.AudioPlayer.NAMESPACE.equals(namespace)) {
+            if (isProgressReport(name)) {
+                return null;
+            }
+            return PLAYBACK;
+        }
+
+        if (AVSAPIConstants.PlaybackController.NAMESPACE.equals(namespace)) {
+            return PLAYBACK;
+        }
+
+        return null;
+    }
+
+    private static boolean isProgressReport(String name) {
+        return AVSAPIConstants.AudioPlayer.Events.ProgressReportDelayElapsed.NAME.equals(name)
+                || AVSAPIConstants.AudioPlayer.Events.ProgressReportIntervalElapsed.NAME
+                        .equals(name);
+    }
+}
@@ -38,16 +38,21 @@ public class MessageParser {
     }
 
     protected <T> T parse(byte[] bytes, Class<T> clazz) throws IOException {
+        return parse(bytes, 0, bytes.length, clazz);
+    }
+
+    protected <T> T parse(byte[] bytes, int offset, int length, Class<T> clazz)
+            throws IOException {
         try {
             ObjectReader reader = ObjectMapperFactory.getObjectReader();
-            Object logBody = reader.withType(Object.class).readValue(bytes);
+            Object logBody = reader.withType(Object.class).readValue(bytes, offset, length);
             log.info("Response metadata: \n{}", ObjectMapperFactory
                     .getObjectWriter()
                     .withDefaultPrettyPrinter()
                     .writeValueAsString(logBody));
-            return reader.withType(clazz).readValue(bytes);
+            return reader.withType(clazz).readValue(bytes, offset, length);
         } catch (JsonProcessingException e) {
-            String unparseable = new String(bytes, "UTF-8");
+            String unparseable = new String(bytes, offset, length, "UTF-8");
             throw new AVSJsonProcessingException(
                     String.format("Failed to parse a %1$s", clazz.getSimpleName()), e, unparseable);
         }
@@ -13,7 +13,9 @@
 package com.amazon.alexa.avs.http;
 
 import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.util.Callback;
 
+import java.io.Closeable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -130,7 +132,7 @@ public class MultipartContentProvider implements ContentProvider.Typed {
         }
     }
 
-    private static class MultipartIterator implements Iterator<ByteBuffer> {
+    private static class MultipartIterator implements Iterator<ByteBuffer>, Callback, Closeable {
         private IteratorOfIterators<ByteBuffer> iteratorOfIterators;
 
         private MultipartIterator(List<PartContentProvider> parts) {
@@ -156,13 +158,35 @@ public class MultipartContentProvider implements ContentProvider.Typed {
         public ByteBuffer next() {
             return iteratorOfIterators.next();
         }
+
+        @Override
+        public void succeeded() {
+            iteratorOfIterators.succeeded();
+        }
+
+        @Override
+        public void failed(Throwable x) {
+            iteratorOfIterators.failed(x);
+        }
+
+        @Override
+        public void close() {
+            iteratorOfIterators.close();
+        }
     }
 
-    private static class IteratorOfIterators<T> implements Iterator<T> {
+    /**
+     * Passes the completion of a buffer on to the iterator that returned it, which hasNext() may
+     * already have moved past.
+     */
+    private static class IteratorOfIterators<T> implements Iterator<T>, Callback, Closeable {
+        private final List<Iterator<T>> listOfIterators;
         private final Iterator<Iterator<T>> iterators;
         private Iterator<T> currentIterator;
+        private Iterator<T> lastIterator;
 
         private IteratorOfIterators(List<Iterator<T>> listOfIterators) {
+            this.listOfIterators = listOfIterators;
             this.iterators = listOfIterators.iterator();
         }
 
@@ -191,7 +215,23 @@ public class MultipartContentProvider implements ContentProvider.Typed {
 
         @Override
         public T next() {
+            lastIterator = currentIterator;
             return currentIterator.next();
         }
+
+        @Override
+        public void succeeded() {
+            ContentIterators.succeeded(lastIterator);
+        }
+
+        @Override
+        public void failed(Throwable x) {
+            ContentIterators.failed(lastIterator, x);
+        }
+
+        @Override
+        public void close() {
+            listOfIterators.forEach(ContentIterators::close);
+        }
     }
 }
@@ -0,0 +1,422 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import org.apache.commons.fileupload.MultipartStream.MalformedStreamException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the parts of a multipart stream, in the order of calls of
+ * {@link org.apache.commons.fileupload.MultipartStream}: {@link #skipPreamble()}, then for every
+ * part {@link #readHeaders()} and {@link #readBodyData(OutputStream)}, then
+ * {@link #readBoundary()} to find out whether another part follows.
+ *
+ * The stream is read into a single {@link ByteBuffer}, in which delimiters are searched for with
+ * Boyer-Moore-Horspool, so most of the bytes of a part are never compared one by one. Part bodies
+ * are written straight from that buffer, and the Content-Type and Content-ID headers are copied
+ * into {@link HeaderValue}s that are reused from part to part, so reading a part allocates
+ * nothing.
+ *
+ * A part is complete as soon as the delimiter after it has been read, without waiting for what
+ * follows the delimiter, which matters for the downchannel where the next part may be minutes
+ * away.
+ */
+public class MultipartDecoder {
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    public static final int MAX_HEADERS_SIZE = 10 * 1024;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte DASH = '-';
+    private static final byte[] CONTENT_TYPE =
+            HttpHeaders.CONTENT_TYPE.toLowerCase().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTENT_ID =
+            HttpHeaders.CONTENT_ID.toLowerCase().getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream input;
+    // In flush mode between calls, the bytes from position to limit have not been consumed yet
+    private final ByteBuffer buffer;
+    private final byte[] bytes;
+    // CRLF--boundary, the first delimiter is the same without the CRLF
+    private final byte[] delimiter;
+    private final int[] delimiterShifts;
+    private final int[] firstDelimiterShifts;
+    private final HeaderValue contentType = new HeaderValue();
+    private final HeaderValue contentId = new HeaderValue();
+
+    public MultipartDecoder(InputStream input, byte[] boundary) {
+        this(input, boundary, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param input
+     * @param boundary
+     *            The boundary from the Content-Type of the stream.
+     * @param bufferSize
+     *            The size of the buffer the stream is read into. Part headers must fit in it.
+     */
+    public MultipartDecoder(InputStream input, byte[] boundary, int bufferSize) {
+        this.input = input;
+        delimiter = new byte[boundary.length + 4];
+        delimiter[0] = CR;
+        delimiter[1] = LF;
+        delimiter[2] = DASH;
+        delimiter[3] = DASH;
+        System.arraycopy(boundary, 0, delimiter, 4, boundary.length);
+        delimiterShifts = shifts(delimiter, 0);
+        firstDelimiterShifts = shifts(delimiter, 2);
+
+        // Room for the largest header section and its blank line, and for a delimiter that
+        // straddles two reads
+        bytes = new byte[Math.max(bufferSize,
+                Math.max(MAX_HEADERS_SIZE + 2, delimiter.length * 2))];
+        buffer = ByteBuffer.wrap(bytes);
+        buffer.limit(0);
+    }
+
+    /**
+     * Skip everything up to and including the first delimiter.
+     *
+     * @return true if a part follows, false if the stream has no parts.
+     * @throws IOException
+     */
+    public boolean skipPreamble() throws IOException {
+        try {
+            skipTo(2, firstDelimiterShifts);
+            return readBoundary();
+        } catch (MalformedStreamException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read what follows a delimiter. Like MultipartStream, a stream that fails here, between
+     * parts, is reported as having ended unexpectedly whatever the cause.
+     *
+     * @return true if another part follows, false if that was the closing delimiter.
+     * @throws IOException
+     */
+    public boolean readBoundary() throws IOException {
+        try {
+            return readAfterDelimiter();
+        } catch (MalformedStreamException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new MalformedStreamException("Stream ended unexpectedly");
+        }
+    }
+
+    private boolean readAfterDelimiter() throws IOException {
+        require(2);
+        byte first = buffer.get();
+        byte second = buffer.get();
+        if ((first == DASH) && (second == DASH)) {
+            return false;
+        }
+        // Transport padding is allowed between the boundary and the line break
+        while ((first == ' ') || (first == '\t')) {
+            first = second;
+            require(1);
+            second = buffer.get();
+        }
+        if ((first != CR) || (second != LF)) {
+            throw new MalformedStreamException("Unexpected characters follow a boundary");
+        }
+        return true;
+    }
+
+    /**
+     * Read the headers of the part, up to the blank line that ends them. Only Content-Type and
+     * Content-ID are kept, see {@link #getContentType()} and {@link #getContentId()}.
+     *
+     * @throws IOException
+     */
+    public void readHeaders() throws IOException {
+        contentType.clear();
+        contentId.clear();
+        int lineStart = buffer.position();
+        int offset = lineStart;
+        while (true) {
+            if (offset + 1 >= buffer.limit()) {
+                if ((offset - buffer.position()) >= MAX_HEADERS_SIZE) {
+                    throw new MalformedStreamException(
+                            "Header section has more than " + MAX_HEADERS_SIZE + " bytes");
+                }
+                int consumed = buffer.position();
+                require((offset - consumed) + 2);
+                // Filling may have moved the unconsumed bytes to the start of the buffer
+                int moved = consumed - buffer.position();
+                lineStart -= moved;
+                offset -= moved;
+                continue;
+            }
+            if ((bytes[offset] != CR) || (bytes[offset + 1] != LF)) {
+                offset++;
+                continue;
+            }
+            if (offset == lineStart) {
+                // The blank line
+                buffer.position(offset + 2);
+                return;
+            }
+            parseHeader(lineStart, offset);
+            offset += 2;
+            lineStart = offset;
+        }
+    }
+
+    /**
+     * @return The Content-Type of the part, valid until the next call of {@link #readHeaders()}.
+     */
+    public HeaderValue getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return The Content-ID of the part, valid until the next call of {@link #readHeaders()}.
+     */
+    public HeaderValue getContentId() {
+        return contentId;
+    }
+
+    /**
+     * Write the body of the part to the given stream, and consume the delimiter that ends it.
+     *
+     * @param out
+     * @return The number of bytes written.
+     * @throws IOException
+     */
+    public long readBodyData(OutputStream out) throws IOException {
+        return copyTo(out, 0, delimiterShifts);
+    }
+
+    /**
+     * Skip the body of the part, and the delimiter that ends it.
+     *
+     * @return The number of bytes skipped.
+     * @throws IOException
+     */
+    public long discardBodyData() throws IOException {
+        return copyTo(null, 0, delimiterShifts);
+    }
+
+    private void skipTo(int patternStart, int[] shifts) throws IOException {
+        copyTo(null, patternStart, shifts);
+    }
+
+    private long copyTo(OutputStream out, int patternStart, int[] shifts) throws IOException {
+        int patternLength = delimiter.length - patternStart;
+        long copied = 0;
+        while (true) {
+            int start = buffer.position();
+            int match = indexOf(start, buffer.limit(), patternStart, shifts);
+            if (match >= 0) {
+                copied += write(out, start, match - start);
+                buffer.position(match + patternLength);
+                return copied;
+            }
+            // The last bytes might be the start of a delimiter, everything before them is content
+            int safe = Math.max(start, buffer.limit() - (patternLength - 1));
+            copied += write(out, start, safe - start);
+            buffer.position(safe);
+            require(patternLength);
+        }
+    }
+
+    private long write(OutputStream out, int offset, int length) throws IOException {
+        if ((out != null) && (length > 0)) {
+            out.write(bytes, offset, length);
+        }
+        return length;
+    }
+
+    /**
+     * Boyer-Moore-Horspool search for delimiter[patternStart..] in bytes[from..to).
+     */
+    private int indexOf(int from, int to, int patternStart, int[] shifts) {
+        int last = delimiter.length - 1;
+        int lastInBytes = (from + last) - patternStart;
+        while (lastInBytes < to) {
+            int i = lastInBytes;
+            int j = last;
+            while (bytes[i] == delimiter[j]) {
+                if (j == patternStart) {
+                    return i;
+                }
+                i--;
+                j--;
+            }
+            lastInBytes += shifts[bytes[lastInBytes] & 0xFF];
+        }
+        return -1;
+    }
+
+    private static int[] shifts(byte[] pattern, int patternStart) {
+        int length = pattern.length - patternStart;
+        int[] shifts = new int[256];
+        Arrays.fill(shifts, length);
+        for (int i = patternStart; i < (pattern.length - 1); i++) {
+            shifts[pattern[i] & 0xFF] = pattern.length - 1 - i;
+        }
+        return shifts;
+    }
+
+    /**
+     * Make sure at least the given number of unconsumed bytes is in the buffer, compacting it and
+     * reading more of the stream if needed.
+     */
+    private void require(int count) throws IOException {
+        while (buffer.remaining() < count) {
+            buffer.compact();
+            int read = input.read(bytes, buffer.position(), buffer.remaining());
+            if (read > 0) {
+                buffer.position(buffer.position() + read);
+            }
+            buffer.flip();
+            if (read < 0) {
+                throw new MalformedStreamException("Stream ended unexpectedly");
+            }
+        }
+    }
+
+    private void parseHeader(int start, int end) {
+        int colon = start;
+        while ((colon < end) && (bytes[colon] != ':')) {
+            colon++;
+        }
+        if (colon == end) {
+            return;
+        }
+        HeaderValue value;
+        if (nameEquals(start, colon, CONTENT_TYPE)) {
+            value = contentType;
+        } else if (nameEquals(start, colon, CONTENT_ID)) {
+            value = contentId;
+        } else {
+            return;
+        }
+        int valueStart = colon + 1;
+        while ((valueStart < end) && isWhitespace(bytes[valueStart])) {
+            valueStart++;
+        }
+        int valueEnd = end;
+        while ((valueEnd > valueStart) && isWhitespace(bytes[valueEnd - 1])) {
+            valueEnd--;
+        }
+        value.set(bytes, valueStart, valueEnd - valueStart);
+    }
+
+    private boolean nameEquals(int start, int end, byte[] lowerCaseName) {
+        while ((start < end) && isWhitespace(bytes[start])) {
+            start++;
+        }
+        while ((end > start) && isWhitespace(bytes[end - 1])) {
+            end--;
+        }
+        if ((end - start) != lowerCaseName.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            byte b = bytes[start + i];
+            if ((b >= 'A') && (b <= 'Z')) {
+                b += 'a' - 'A';
+            }
+            if (b != lowerCaseName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return (b == ' ') || (b == '\t');
+    }
+
+    /**
+     * The value of a part header, kept in an array that is reused for every part. Header values
+     * are US-ASCII, so every byte is one char.
+     */
+    public static class HeaderValue implements CharSequence {
+        private byte[] value = new byte[64];
+        private int length = -1;
+
+        private void set(byte[] source, int offset, int length) {
+            if (value.length < length) {
+                value = new byte[Math.max(length, value.length * 2)];
+            }
+            System.arraycopy(source, offset, value, 0, length);
+            this.length = length;
+        }
+
+        private void clear() {
+            length = -1;
+        }
+
+        /**
+         * @return false if the part has no such header.
+         */
+        public boolean isPresent() {
+            return length >= 0;
+        }
+
+        /**
+         * @param text
+         * @return true if the header is present and contains the given US-ASCII text.
+         */
+        public boolean contains(String text) {
+            int last = length - text.length();
+            for (int i = 0; i <= last; i++) {
+                int j = 0;
+                while ((j < text.length()) && (value[i + j] == text.charAt(j))) {
+                    j++;
+                }
+                if (j == text.length()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int length() {
+            return Math.max(length, 0);
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((index < 0) || (index >= length())) {
+                throw new IndexOutOfBoundsException();
+            }
+            return (char) (value[index] & 0xFF);
+        }
+
+        @Override
+        public String subSequence(int start, int end) {
+            if ((start < 0) || (end > length()) || (start > end)) {
+                throw new IndexOutOfBoundsException();
+            }
+            return new String(value, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length());
+        }
+    }
+}
@@ -12,44 +12,64 @@
  */
 package com.amazon.alexa.avs.http;
 
+import com.amazon.alexa.avs.AVSAPIConstants;
 import com.amazon.alexa.avs.http.jetty.PingSendingHttpClientTransportOverHTTP2.ConnectionListener;
 import com.amazon.alexa.avs.message.response.Directive;
 import com.amazon.alexa.avs.message.response.ResponseBody;
+import com.amazon.alexa.avs.metrics.Counter;
+import com.amazon.alexa.avs.metrics.Histogram;
+import com.amazon.alexa.avs.metrics.InteractionTracer;
+import com.amazon.alexa.avs.metrics.InteractionTracer.Stage;
+import com.amazon.alexa.avs.metrics.MetricsRegistry;
 
-import org.apache.commons.fileupload.MultipartStream;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MultipartParser extends MessageParser implements ConnectionListener {
     private static final Logger log = LoggerFactory.getLogger(MultipartParser.class);
-    private static final int MULTIPART_BUFFER_SIZE = 512;
+    private static final int MULTIPART_BUFFER_SIZE = 16 * 1024;
 
     private final MultipartParserConsumer consumer;
     private final AtomicBoolean shutdown;
-    private MultipartStream multipartStream;
-    private Map<String, String> headers;
+    // Reused for the JSON of every part
+    private final PartBuffer metadata = new PartBuffer();
+    private MultipartDecoder decoder;
+    private volatile InteractionTracer interactionTracer;
+    private volatile Metrics metrics = new Metrics();
 
     public MultipartParser(MultipartParserConsumer consumer) {
         this.consumer = consumer;
         this.shutdown = new AtomicBoolean(false);
     }
 
+    /**
+     * @param interactionTracer
+     *            The tracer to stamp with the directives parsed for a voice interaction.
+     */
+    public void setInteractionTracer(InteractionTracer interactionTracer) {
+        this.interactionTracer = interactionTracer;
+    }
+
+    /**
+     * @param metrics
+     *            The metrics to record the parts parsed into, shared with other parsers.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
     public void parseStream(InputStream inputStream, String boundary) throws IOException {
         shutdown.set(false);
-        multipartStream =
-                new MultipartStream(inputStream, boundary.getBytes(), MULTIPART_BUFFER_SIZE, null);
-        headers = null;
+        decoder = new MultipartDecoder(inputStream,
+                boundary.getBytes(StandardCharsets.US_ASCII), MULTIPART_BUFFER_SIZE);
 
         loopStream();
     }
@@ -58,16 +78,16 @@ public class MultipartParser extends MessageParser implements ConnectionListener
         shutdown.set(false);
     }
 
-    private ResponseBody parseResponseBody(byte[] bytes) throws IOException {
-        return parse(bytes, ResponseBody.class);
+    private ResponseBody parseResponseBody(PartBuffer part) throws IOException {
+        return parse(part.getBytes(), 0, part.size(), ResponseBody.class);
     }
 
     private void loopStream() throws IOException {
         try {
-            boolean hasNextPart = multipartStream.skipPreamble();
+            boolean hasNextPart = decoder.skipPreamble();
             while (hasNextPart) {
                 handlePart();
-                hasNextPart = multipartStream.readBoundary();
+                hasNextPart = decoder.readBoundary();
             }
         } catch (IOException e) {
             if (!shutdown.get()) {
@@ -77,78 +97,121 @@ public class MultipartParser extends MessageParser implements ConnectionListener
     }
 
     private void handlePart() throws IOException {
-        headers = getPartHeaders();
-        byte[] partBytes = getPartBytes();
-        boolean isMetadata = isPartJSON(headers);
+        decoder.readHeaders();
+        boolean isMetadata = isPartJSON();
 
         if (isMetadata) {
-            handleMetadata(partBytes);
+            metrics.jsonParts.increment();
+            metadata.reset();
+            decoder.readBodyData(metadata);
+            handleMetadata(metadata);
         } else {
-            handleAudio(partBytes);
+            metrics.attachmentParts.increment();
+            if (consumer.acceptsStreamingAttachments()) {
+                streamAudio();
+            } else {
+                handleAudio(getPartBytes());
+            }
         }
     }
 
-    private void handleMetadata(byte[] partBytes) throws IOException {
-        Directive directive = parseResponseBody(partBytes).getDirective();
+    private void handleMetadata(PartBuffer part) throws IOException {
+        long start = System.nanoTime();
+        Directive directive = parseResponseBody(part).getDirective();
+        metrics.parseTimes.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
         if (directive != null) {
+            trace(directive);
             consumer.onDirective(directive);
         } else {
             log.error("Failed to parse a directive.");
         }
     }
 
+    private void trace(Directive directive) {
+        InteractionTracer tracer = interactionTracer;
+        if (tracer == null) {
+            return;
+        }
+        String dialogRequestId = directive.getDialogRequestId();
+        tracer.mark(Stage.FIRST_DIRECTIVE_PARSED, dialogRequestId);
+        if (AVSAPIConstants.SpeechRecognizer.NAMESPACE.equals(directive.getNamespace())
+                && AVSAPIConstants.SpeechRecognizer.Directives.StopCapture.NAME
+                        .equals(directive.getName())) {
+            tracer.mark(Stage.STOP_CAPTURE_RECEIVED, dialogRequestId);
+        }
+    }
+
     private void handleAudio(byte[] partBytes) {
-        String contentId = getMultipartContentId(headers);
+        String contentId = getMultipartContentId();
         InputStream attachmentContent = new ByteArrayInputStream(partBytes);
 
         consumer.onDirectiveAttachment(contentId, attachmentContent);
     }
 
-    private byte[] getPartBytes() throws IOException {
-        ByteArrayOutputStream data = new ByteArrayOutputStream();
-        multipartStream.readBodyData(data);
-        return data.toByteArray();
-    }
+    /**
+     * Hand the attachment to the consumer before its bytes arrive, then feed them to it as they
+     * are read from the response.
+     */
+    private void streamAudio() throws IOException {
+        String contentId = getMultipartContentId();
+        StreamingAttachment attachment = new StreamingAttachment();
+
+        consumer.onDirectiveAttachment(contentId, attachment);
 
-    private Map<String, String> getPartHeaders() throws IOException {
-        String headers = multipartStream.readHeaders();
-        BufferedReader reader = new BufferedReader(new StringReader(headers));
-        Map<String, String> headerMap = new HashMap<>();
         try {
-            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-                line = line.trim();
-                if (!StringUtils.isBlank(line) && line.contains(":")) {
-                    int colon = line.indexOf(":");
-                    String headerName = line.substring(0, colon).trim();
-                    String headerValue = line.substring(colon + 1).trim();
-                    headerMap.put(headerName.toLowerCase(), headerValue);
-                }
-            }
-        } catch (Exception e) {
+            decoder.readBodyData(attachment.getSink());
+            attachment.finish();
+        } catch (IOException e) {
+            attachment.fail(e);
+            throw e;
         }
+    }
 
-        return headerMap;
+    private byte[] getPartBytes() throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        decoder.readBodyData(data);
+        return data.toByteArray();
     }
 
-    private String getMultipartHeaderValue(Map<String, String> headers, String searchHeader) {
-        return headers.get(searchHeader.toLowerCase());
+    private String getMultipartContentId() {
+        // Content-ID: <id>
+        CharSequence contentId = decoder.getContentId();
+        return contentId.subSequence(1, contentId.length() - 1).toString();
     }
 
-    private String getMultipartContentId(Map<String, String> headers) {
-        String contentId = getMultipartHeaderValue(headers, HttpHeaders.CONTENT_ID);
-        contentId = contentId.substring(1, contentId.length() - 1);
-        return contentId;
+    private boolean isPartJSON() {
+        return decoder.getContentType().contains(ContentTypes.JSON);
     }
 
-    private boolean isPartJSON(Map<String, String> headers) {
-        String contentType = getMultipartHeaderValue(headers, HttpHeaders.CONTENT_TYPE);
-        return StringUtils.contains(contentType, ContentTypes.JSON);
+    /**
+     * A {@link ByteArrayOutputStream} whose array can be parsed without copying it.
+     */
+    private static class PartBuffer extends ByteArrayOutputStream {
+        private byte[] getBytes() {
+            return buf;
+        }
     }
 
     public interface MultipartParserConsumer {
         void onDirective(Directive directive);
 
+        /**
+         * Called with the content of a binary part. If {@link #acceptsStreamingAttachments()}
+         * returns true, this is called as soon as the part starts, and attachmentContent is a live
+         * stream that blocks until the rest of the part has been received.
+         *
+         * @param contentId
+         * @param attachmentContent
+         */
         void onDirectiveAttachment(String contentId, InputStream attachmentContent);
+
+        /**
+         * @return true if this consumer can handle attachments that are still being received, false
+         *         if attachments should only be handed over once they have been fully received.
+         */
+        default boolean acceptsStreamingAttachments() {
+            return false;
+        }
     }
 
     @Override
@@ -160,4 +223,24 @@ public class MultipartParser extends MessageParser implements ConnectionListener
     public void onDisconnected() {
         shutdown.set(true);
     }
+
+    /**
+     * The number of parts and the time spent parsing the JSON ones, shared by the parsers of a
+     * client.
+     */
+    public static class Metrics {
+        private final Counter jsonParts = new Counter();
+        private final Counter attachmentParts = new Counter();
+        // In microseconds, parsing a directive takes well under a millisecond
+        private final Histogram parseTimes = Histogram.exponential(1, 2, 24);
+
+        public void register(MetricsRegistry registry) {
+            registry.register("avs_multipart_parts_total", "Parts parsed from AVS responses",
+                    jsonParts, "type", "json");
+            registry.register("avs_multipart_parts_total", "Parts parsed from AVS responses",
+                    attachmentParts, "type", "attachment");
+            registry.register("avs_multipart_parse_time_us",
+                    "Time to parse the JSON of a directive, in microseconds", parseTimes);
+        }
+    }
 }
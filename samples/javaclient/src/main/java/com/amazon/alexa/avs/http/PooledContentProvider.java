@@ -0,0 +1,94 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.io.ByteBufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link ContentProvider} over buffers acquired from a {@link ByteBufferPool}. The content can
+ * be iterated any number of times, so it can be resent on retries, until {@link #release()} hands
+ * the buffers back to the pool.
+ */
+public class PooledContentProvider implements ContentProvider.Typed {
+    private final ByteBufferPool pool;
+    private final List<ByteBuffer> buffers;
+    private final String contentType;
+    private final long length;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * @param pool
+     *            The pool the buffers were acquired from.
+     * @param buffers
+     *            The content, in flush mode.
+     * @param contentType
+     */
+    public PooledContentProvider(ByteBufferPool pool, List<ByteBuffer> buffers,
+            String contentType) {
+        this.pool = pool;
+        this.buffers = Collections.unmodifiableList(buffers);
+        this.contentType = contentType;
+
+        long total = 0;
+        for (ByteBuffer buffer : buffers) {
+            total += buffer.remaining();
+        }
+        this.length = total;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public Iterator<ByteBuffer> iterator() {
+        if (released.get()) {
+            throw new IllegalStateException("The content has already been released");
+        }
+        Iterator<ByteBuffer> iterator = buffers.iterator();
+        return new Iterator<ByteBuffer>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public ByteBuffer next() {
+                // Every iteration gets its own position so the content can be replayed
+                return iterator.next().duplicate();
+            }
+        };
+    }
+
+    /**
+     * Return the buffers to the pool. The content must not be iterated afterwards.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            buffers.forEach(pool::release);
+        }
+    }
+}
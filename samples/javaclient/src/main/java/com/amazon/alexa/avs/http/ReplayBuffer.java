@@ -0,0 +1,227 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A copy of the content sent so far, kept so it can be sent again on a retry.
+ *
+ * Content is copied, so the buffers it came from can be reused as soon as they are written. The
+ * first bytes, up to the memory limit, go into fixed size direct buffers from a
+ * {@link ByteBufferPool}; the rest is spilled to a temporary file. Everything is freed by
+ * {@link #release()}, after which nothing is kept and the content can no longer be replayed.
+ */
+public class ReplayBuffer {
+    private static final Logger log = LoggerFactory.getLogger(ReplayBuffer.class);
+
+    public static final long DEFAULT_MEMORY_LIMIT = 1024 * 1024;
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    private final ByteBufferPool pool;
+    private final long memoryLimit;
+    // Chunks are in fill mode, every one but the last is full
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long memorySize;
+    private File spillFile;
+    private FileChannel spillChannel;
+    private long spillSize;
+    private boolean complete = true;
+    private boolean released;
+
+    /**
+     * @param pool
+     *            The pool to take the in-memory chunks from.
+     * @param memoryLimit
+     *            The number of bytes to keep in memory before spilling to a temporary file.
+     */
+    public ReplayBuffer(ByteBufferPool pool, long memoryLimit) {
+        this.pool = pool;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Copy the remaining bytes of the given buffer, without consuming them.
+     *
+     * @param data
+     */
+    public synchronized void append(ByteBuffer data) {
+        if (released || !complete) {
+            return;
+        }
+        ByteBuffer source = data.duplicate();
+        while (source.hasRemaining() && (memorySize < memoryLimit)) {
+            ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if ((chunk == null) || !chunk.hasRemaining()) {
+                chunk = pool.acquire(CHUNK_SIZE, true);
+                chunk.clear();
+                chunks.add(chunk);
+            }
+            int length = (int) Math.min(Math.min(source.remaining(), chunk.remaining()),
+                    memoryLimit - memorySize);
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + length);
+            chunk.put(slice);
+            source.position(source.position() + length);
+            memorySize += length;
+        }
+        if (source.hasRemaining()) {
+            spill(source);
+        }
+    }
+
+    private void spill(ByteBuffer source) {
+        try {
+            if (spillChannel == null) {
+                spillFile = File.createTempFile("avs-replay", ".tmp");
+                spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.WRITE,
+                        StandardOpenOption.READ);
+                log.info("Spilling content past {} bytes to {}", memoryLimit, spillFile);
+            }
+            while (source.hasRemaining()) {
+                spillSize += spillChannel.write(source, spillSize);
+            }
+        } catch (IOException e) {
+            log.error("Could not spill content to disk, it will not be replayable", e);
+            complete = false;
+        }
+    }
+
+    /**
+     * @return The number of bytes kept.
+     */
+    public synchronized long size() {
+        return memorySize + spillSize;
+    }
+
+    /**
+     * @return The number of bytes kept in a temporary file.
+     */
+    public synchronized long getSpilledSize() {
+        return spillSize;
+    }
+
+    /**
+     * @return true if everything appended so far is still kept.
+     */
+    public synchronized boolean isReplayable() {
+        return complete && !released;
+    }
+
+    /**
+     * @return An iterator over the bytes kept so far.
+     */
+    public synchronized Iterator<ByteBuffer> iterator() {
+        if (!isReplayable()) {
+            throw new IllegalStateException("The content is no longer available to replay");
+        }
+        return new ReplayIterator(size());
+    }
+
+    /**
+     * Free the memory and the temporary file. Idempotent.
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        chunks.forEach(pool::release);
+        chunks.clear();
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+                Files.deleteIfExists(spillFile.toPath());
+            } catch (IOException e) {
+                log.warn("Could not delete {}", spillFile, e);
+            }
+        }
+    }
+
+    /**
+     * @return A copy of the bytes from the given offset up to the end of the chunk they are in, or
+     *         of a chunk's worth of spilled bytes, and no further than end.
+     */
+    private synchronized ByteBuffer read(long offset, long end) {
+        if (released) {
+            throw new IllegalStateException("The content was released while it was replayed");
+        }
+        if (offset < memorySize) {
+            ByteBuffer chunk = chunks.get((int) (offset / CHUNK_SIZE));
+            long chunkStart = offset - (offset % CHUNK_SIZE);
+            ByteBuffer view = chunk.duplicate();
+            view.flip();
+            view.limit((int) Math.min(view.limit(), end - chunkStart));
+            view.position((int) (offset - chunkStart));
+            // Copied rather than shared, so the chunk can go back to the pool while the copy is
+            // still being written. Retries are rare enough for the copy not to matter.
+            ByteBuffer copy = ByteBuffer.allocate(view.remaining());
+            copy.put(view);
+            copy.flip();
+            return copy;
+        }
+
+        long spillOffset = offset - memorySize;
+        ByteBuffer buffer =
+                ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, end - offset));
+        try {
+            while (buffer.hasRemaining()) {
+                if (spillChannel.read(buffer, spillOffset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + spillFile);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private class ReplayIterator implements Iterator<ByteBuffer> {
+        private final long end;
+        private long offset;
+
+        private ReplayIterator(long end) {
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return offset < end;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ByteBuffer buffer = read(offset, end);
+            offset += buffer.remaining();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import com.amazon.alexa.avs.AVSRequest;
+import com.amazon.alexa.avs.TaskExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Sends {@link AVSRequest}s as concurrent HTTP/2 streams. At most maxConcurrentStreams requests
+ * are in flight at once. Requests that share an ordering key form a lane: a lane only ever has one
+ * request in flight, and its requests are sent in the order they were submitted. Requests without
+ * an ordering key are sent as soon as a stream is available.
+ *
+ * A request that waits behind its lane holds no stream: it gives back the stream it was submitted
+ * on, and takes over the stream of the request before it once that request is finished. A request
+ * that failed and waits to be retried gives up its stream for other requests to use, but keeps its
+ * lane until it is finished. It is sent again with {@link #retry(AVSRequest)}, on a stream
+ * reserved like any other, which is always freed in time since no request waiting in a lane holds
+ * one. If it completes without being sent again, for instance because it was shed while it waited,
+ * it gives up its lane then.
+ */
+public class RequestPipeline {
+    private static final Logger log = LoggerFactory.getLogger(RequestPipeline.class);
+
+    private final ExecutorService streamExecutor;
+    private final RequestSender requestSender;
+    private final Consumer<List<AVSRequest>> requeue;
+    private final int maxConcurrentStreams;
+
+    // Pending requests for each lane that currently has a request in flight
+    private final Map<String, Queue<AVSRequest>> lanes = new HashMap<>();
+    // Requests that failed and hold their lane until they are retried or complete
+    private final Set<AVSRequest> awaitingRetry = new HashSet<>();
+    // One permit per stream that is not taken by a request in flight, or about to be
+    private final Semaphore freeStreams;
+
+    /**
+     * Sends a single attempt at a request.
+     */
+    public interface RequestSender {
+        /**
+         * Send the request and return once its response has been handled.
+         *
+         * @param request
+         * @return false if the attempt failed and the request will be sent again with
+         *         {@link RequestPipeline#retry(AVSRequest)}, true if the request is finished.
+         */
+        boolean send(AVSRequest request);
+    }
+
+    /**
+     * @param maxConcurrentStreams
+     *            The maximum number of requests to have in flight at any time.
+     * @param requestSender
+     *            Sends a single attempt at a request.
+     * @param requeue
+     *            Queues requests that were submitted but not sent to be submitted again, in the
+     *            order given and ahead of the requests queued since.
+     */
+    public RequestPipeline(int maxConcurrentStreams, RequestSender requestSender,
+            Consumer<List<AVSRequest>> requeue) {
+        if (maxConcurrentStreams < 1) {
+            throw new IllegalArgumentException("maxConcurrentStreams must be at least 1");
+        }
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.requestSender = requestSender;
+        this.requeue = requeue;
+        freeStreams = new Semaphore(maxConcurrentStreams);
+        // The free streams bound the number of requests in flight, and so of busy threads
+        streamExecutor = TaskExecutor.newExecutor(RequestPipeline.class.getSimpleName());
+    }
+
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    /**
+     * Wait until fewer than maxConcurrentStreams requests are in flight, and reserve a stream for
+     * the next request to be submitted. Callers that pick the next request by priority
+     * should wait for a stream first, so requests are only chosen when they can be sent right
+     * away.
+     *
+     * @throws InterruptedException
+     */
+    public void awaitFreeStream() throws InterruptedException {
+        freeStreams.acquire();
+    }
+
+    /**
+     * Give back the stream reserved by {@link #awaitFreeStream()} when no request will be
+     * submitted on it.
+     */
+    public void releaseStream() {
+        freeStreams.release();
+    }
+
+    /**
+     * Queue a request to be sent on the stream reserved by {@link #awaitFreeStream()}. This never
+     * blocks.
+     *
+     * @param request
+     */
+    public void submit(AVSRequest request) {
+        Optional<String> orderingKey = request.getOrderingKey();
+        if (!orderingKey.isPresent()) {
+            execute(request, null);
+            return;
+        }
+
+        String lane = orderingKey.get();
+        synchronized (lanes) {
+            Queue<AVSRequest> pending = lanes.get(lane);
+            if (pending != null) {
+                // The lane already has a request in flight, this one goes out on its stream once
+                // it finishes
+                pending.add(request);
+                freeStreams.release();
+                return;
+            }
+            lanes.put(lane, new ArrayDeque<>());
+        }
+        execute(request, lane);
+    }
+
+    /**
+     * Send a request that failed again, on the stream reserved by {@link #awaitFreeStream()}. The
+     * request still holds its lane, if any, so it is sent before the requests that were queued
+     * behind it. This never blocks.
+     *
+     * @param request
+     */
+    public void retry(AVSRequest request) {
+        String lane = null;
+        synchronized (lanes) {
+            if (awaitingRetry.remove(request)) {
+                lane = request.getOrderingKey().orElse(null);
+            }
+        }
+        // A request that gave up its lane meanwhile was completed, and is only skipped
+        execute(request, lane);
+    }
+
+    /**
+     * Stop accepting new requests. Requests that were already submitted are still sent.
+     */
+    public void shutdown() {
+        streamExecutor.shutdown();
+    }
+
+    private void send(AVSRequest request, String lane) {
+        boolean finished = true;
+        try {
+            finished = requestSender.send(request);
+        } catch (RuntimeException e) {
+            log.error("Unexpected error while sending a request", e);
+        } finally {
+            if ((lane != null) && finished) {
+                advanceLane(lane);
+            } else {
+                if (lane != null) {
+                    holdLaneUntilRetry(request, lane);
+                }
+                freeStreams.release();
+            }
+        }
+    }
+
+    /**
+     * Keep the lane of a request that failed until it is retried. Should the request complete
+     * without being retried, the lane is closed and the requests waiting in it are queued again,
+     * to be submitted on streams reserved like any other since the failed request holds none.
+     *
+     * @param request
+     * @param lane
+     */
+    private void holdLaneUntilRetry(AVSRequest request, String lane) {
+        synchronized (lanes) {
+            awaitingRetry.add(request);
+        }
+        request.getCompletion().whenComplete((result, e) -> {
+            List<AVSRequest> pending;
+            synchronized (lanes) {
+                if (!awaitingRetry.remove(request)) {
+                    return;
+                }
+                pending = new ArrayList<>(lanes.remove(lane));
+            }
+            if (!pending.isEmpty()) {
+                requeue.accept(pending);
+            }
+        });
+    }
+
+    /**
+     * Send the next request of the lane on the stream of the request that just finished, or free
+     * the stream if the lane is empty.
+     *
+     * @param lane
+     */
+    private void advanceLane(String lane) {
+        AVSRequest next;
+        synchronized (lanes) {
+            next = lanes.get(lane).poll();
+            if (next == null) {
+                lanes.remove(lane);
+            }
+        }
+        if (next == null) {
+            freeStreams.release();
+            return;
+        }
+        execute(next, lane);
+    }
+
+    private void execute(AVSRequest request, String lane) {
+        try {
+            streamExecutor.execute(() -> send(request, lane));
+        } catch (RejectedExecutionException e) {
+            log.warn("Dropping a request because the request pipeline has been shut down");
+            request.release();
+            freeStreams.release();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import com.amazon.alexa.avs.AVSAPIConstants;
+import com.amazon.alexa.avs.message.Header;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The classes of requests the {@link RequestScheduler} orders by, highest priority first. Each
+ * class has a time to live after which a request that is still queued is no longer worth sending.
+ */
+public enum RequestPriority {
+    /**
+     * The user is waiting for a response.
+     */
+    RECOGNIZE(TimeUnit.SECONDS.toMillis(10)),
+
+    /**
+     * Events that describe what the user is hearing right now.
+     */
+    PLAYBACK_CONTROL(TimeUnit.MINUTES.toMillis(1)),
+
+    /**
+     * Reporting and housekeeping.
+     */
+    BACKGROUND(TimeUnit.MINUTES.toMillis(5));
+
+    private final long timeToLiveMs;
+
+    RequestPriority(long timeToLiveMs) {
+        this.timeToLiveMs = timeToLiveMs;
+    }
+
+    /**
+     * @return How long a request of this class may wait to be sent, in milliseconds.
+     */
+    public long getTimeToLiveMs() {
+        return timeToLiveMs;
+    }
+
+    /**
+     * @param header
+     *            The header of the event about to be sent.
+     * @return The class of the event.
+     */
+    public static RequestPriority of(Header header) {
+        String namespace = header.getNamespace();
+        String name = header.getName();
+
+        if (AVSAPIConstants.SpeechRecognizer.NAMESPACE.equals(namespace)) {
+            return RECOGNIZE;
+        }
+
+        if (AVSAPIConstants.AudioPlayer.NAMESPACE.equals(namespace)) {
+            if (AVSAPIConstants.AudioPlayer.Events.ProgressReportDelayElapsed.NAME.equals(name)
+                    || AVSAPIConstants.AudioPlayer.Events.ProgressReportIntervalElapsed.NAME
+                            .equals(name)) {
+                return BACKGROUND;
+            }
+            return PLAYBACK_CONTROL;
+        }
+
+        if (AVSAPIConstants.PlaybackController.NAMESPACE.equals(namespace)
+                || AVSAPIConstants.SpeechSynthesizer.NAMESPACE.equals(namespace)
+                || AVSAPIConstants.Alerts.NAMESPACE.equals(namespace)) {
+            return PLAYBACK_CONTROL;
+        }
+
+        return BACKGROUND;
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import com.amazon.alexa.avs.AVSRequest;
+import com.amazon.alexa.avs.metrics.Histogram;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queues requests until they can be sent, and hands them out highest {@link RequestPriority}
+ * first, in the order they were queued within a priority. Requests that share an ordering key are
+ * always handed out in the order they were queued, whatever their priority: a request is held back
+ * while an older request with its ordering key is queued, and that older request is handed out in
+ * its place. Requests that have been queued past their deadline are shed: their listener and
+ * completion get a {@link TimeoutException} instead of the request being sent late.
+ *
+ * Queue depth, time spent queued and the number of shed requests are tracked for every priority.
+ */
+public class RequestScheduler {
+    private static final Logger log = LoggerFactory.getLogger(RequestScheduler.class);
+
+    // Guards the queues
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when a request is queued
+    private final Condition queued = lock.newCondition();
+    private final Map<RequestPriority, Deque<AVSRequest>> queues =
+            new EnumMap<>(RequestPriority.class);
+    // The queued requests of each ordering key, oldest first
+    private final Map<String, Deque<AVSRequest>> orderingKeys = new HashMap<>();
+    private final Map<RequestPriority, Histogram> waitTimes = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, AtomicLong> shedCounts =
+            new EnumMap<>(RequestPriority.class);
+
+    public RequestScheduler() {
+        for (RequestPriority priority : RequestPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            waitTimes.put(priority, Histogram.latencyMillis());
+            shedCounts.put(priority, new AtomicLong());
+        }
+    }
+
+    /**
+     * Queue a request. This never blocks.
+     *
+     * @param request
+     */
+    public void offer(AVSRequest request) {
+        lock.lock();
+        try {
+            queues.get(request.getPriority()).add(request);
+            request.getOrderingKey().ifPresent(key -> orderingKeys
+                    .computeIfAbsent(key, k -> new ArrayDeque<>())
+                    .add(request));
+            queued.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue a request that failed and is due to be retried, ahead of the requests of its priority
+     * and of its ordering key that were queued since. This never blocks.
+     *
+     * @param request
+     */
+    public void retry(AVSRequest request) {
+        lock.lock();
+        try {
+            // It was queued before any of them, so the queue stays in deadline order
+            queues.get(request.getPriority()).addFirst(request);
+            request.getOrderingKey().ifPresent(key -> orderingKeys
+                    .computeIfAbsent(key, k -> new ArrayDeque<>())
+                    .addFirst(request));
+            queued.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue requests that were handed out but not sent, ahead of the requests of their priority
+     * and of their ordering key, in the order given. This never blocks.
+     *
+     * @param requests
+     */
+    public void requeue(List<AVSRequest> requests) {
+        lock.lock();
+        try {
+            for (int i = requests.size() - 1; i >= 0; i--) {
+                AVSRequest request = requests.get(i);
+                queues.get(request.getPriority()).addFirst(request);
+                request.getOrderingKey().ifPresent(key -> orderingKeys
+                        .computeIfAbsent(key, k -> new ArrayDeque<>())
+                        .addFirst(request));
+            }
+            queued.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for the highest priority request that is still worth sending.
+     *
+     * @return the request.
+     * @throws InterruptedException
+     */
+    public AVSRequest take() throws InterruptedException {
+        while (true) {
+            List<AVSRequest> stale = new ArrayList<>();
+            AVSRequest next;
+            lock.lock();
+            try {
+                next = poll(stale);
+                while ((next == null) && stale.isEmpty()) {
+                    // Wake up in time to shed the next request that goes stale
+                    long millis = getMillisUntilNextDeadline();
+                    if (millis == 0) {
+                        queued.await();
+                    } else {
+                        queued.await(millis, TimeUnit.MILLISECONDS);
+                    }
+                    next = poll(stale);
+                }
+            } finally {
+                lock.unlock();
+            }
+            stale.forEach(this::shed);
+            if (next != null) {
+                waitTimes.get(next.getPriority()).record(next.getQueuedMillis());
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @param priority
+     * @return The number of requests of the given priority waiting to be sent.
+     */
+    public int getQueueDepth(RequestPriority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param priority
+     * @return The time requests of the given priority spent queued before they were sent, in
+     *         milliseconds.
+     */
+    public Histogram getWaitTimes(RequestPriority priority) {
+        return waitTimes.get(priority);
+    }
+
+    /**
+     * @param priority
+     * @return The number of requests of the given priority that were shed because they missed
+     *         their deadline.
+     */
+    public long getShedCount(RequestPriority priority) {
+        return shedCounts.get(priority).get();
+    }
+
+    private AVSRequest poll(List<AVSRequest> stale) {
+        AVSRequest next = null;
+        for (Queue<AVSRequest> queue : queues.values()) {
+            // Deadlines are in queue order within a priority, so stale requests are always at the
+            // head of their queue
+            while ((queue.peek() != null) && queue.peek().isExpired()) {
+                AVSRequest request = queue.poll();
+                removeFromOrderingKey(request);
+                stale.add(request);
+            }
+            if (next == null) {
+                next = pollFirstInOrder(queue);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @param queue
+     * @return The first request of the queue that no older request of its ordering key is queued
+     *         before, removed from the queue, or null if there is none.
+     */
+    private AVSRequest pollFirstInOrder(Queue<AVSRequest> queue) {
+        Iterator<AVSRequest> requests = queue.iterator();
+        while (requests.hasNext()) {
+            AVSRequest request = requests.next();
+            Optional<String> key = request.getOrderingKey();
+            if (!key.isPresent() || (orderingKeys.get(key.get()).peek() == request)) {
+                requests.remove();
+                removeFromOrderingKey(request);
+                return request;
+            }
+        }
+        return null;
+    }
+
+    private void removeFromOrderingKey(AVSRequest request) {
+        request.getOrderingKey().ifPresent(key -> {
+            Deque<AVSRequest> requests = orderingKeys.get(key);
+            requests.remove(request);
+            if (requests.isEmpty()) {
+                orderingKeys.remove(key);
+            }
+        });
+    }
+
+    private long getMillisUntilNextDeadline() {
+        long millis = 0;
+        for (Queue<AVSRequest> queue : queues.values()) {
+            AVSRequest head = queue.peek();
+            if (head != null) {
+                long remaining = Math.max(1, head.getRemainingMillis());
+                millis = (millis == 0) ? remaining : Math.min(millis, remaining);
+            }
+        }
+        return millis;
+    }
+
+    private void shed(AVSRequest request) {
+        shedCounts.get(request.getPriority()).incrementAndGet();
+        log.warn("Dropping a {} request that waited {} ms to be sent", request.getPriority(),
+                request.getQueuedMillis());
+
+        TimeoutException e = new TimeoutException("The request missed its deadline");
+        request.release();
+        request.getRequestListener().ifPresent(l -> {
+            l.onRequestError(e);
+            l.onRequestFinished();
+        });
+        request.getCompletion().completeExceptionally(e);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (RequestPriority priority : RequestPriority.values()) {
+            builder.append(String.format("%1$s depth:%2$d shed:%3$d wait[%4$s] ", priority,
+                    getQueueDepth(priority), getShedCount(priority), getWaitTimes(priority)));
+        }
+        return builder.toString().trim();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits retries to a share of the requests a device sends, so that a failing service is not hit
+ * with several times its normal load by clients retrying.
+ *
+ * Every first attempt earns a fraction of a retry, and a retry spends a whole one. A small number
+ * of retries per second is always allowed, so that a device that sends little can still retry.
+ * Unspent retries are capped, so a long quiet period doesn't save up for a burst.
+ */
+public class RetryBudget {
+    public static final double DEFAULT_RETRY_RATIO = 0.2;
+    public static final double DEFAULT_MIN_RETRIES_PER_SECOND = 1;
+    public static final double DEFAULT_MAX_RETRIES = 10;
+
+    private final double retryRatio;
+    private final double minRetriesPerSecond;
+    private final double maxRetries;
+
+    private double balance;
+    private long lastRefillNanos = System.nanoTime();
+
+    public RetryBudget() {
+        this(DEFAULT_RETRY_RATIO, DEFAULT_MIN_RETRIES_PER_SECOND, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * @param retryRatio
+     *            The retries earned by every first attempt.
+     * @param minRetriesPerSecond
+     *            The retries earned every second whatever the traffic.
+     * @param maxRetries
+     *            The most retries that can be saved up.
+     */
+    public RetryBudget(double retryRatio, double minRetriesPerSecond, double maxRetries) {
+        this.retryRatio = retryRatio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.maxRetries = maxRetries;
+        balance = maxRetries;
+    }
+
+    /**
+     * Record a first attempt at a request.
+     */
+    public synchronized void onRequest() {
+        refill();
+        balance = Math.min(maxRetries, balance + retryRatio);
+    }
+
+    /**
+     * Spend a retry if there is one left.
+     *
+     * @return true if the retry may be made.
+     */
+    public synchronized boolean tryRetry() {
+        refill();
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+
+    /**
+     * @return The number of retries that can be made right now.
+     */
+    public synchronized double getBalance() {
+        refill();
+        return balance;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double seconds = (double) (now - lastRefillNanos) / TimeUnit.SECONDS.toNanos(1);
+        lastRefillNanos = now;
+        balance = Math.min(maxRetries, balance + (seconds * minRetriesPerSecond));
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import com.amazon.alexa.avs.metrics.Counter;
+import com.amazon.alexa.avs.metrics.MetricsRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether and when the requests of a device are retried, without holding a thread while
+ * they wait.
+ *
+ * A failed request is retried if its {@link RetryPolicy} allows another attempt and the
+ * {@link RetryBudget} of the device has a retry left. The retry is scheduled after the jittered
+ * delay of the policy, and never before the {@link CircuitBreaker} lets requests through again.
+ * The circuit breaker is shared by the downchannel and the events, so both fail fast while AVS
+ * can't be reached, and both resume as soon as either gets through.
+ */
+public class RetryEngine {
+    private static final Logger log = LoggerFactory.getLogger(RetryEngine.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final RetryBudget budget;
+    private final CircuitBreaker circuitBreaker;
+    private final Counter budgetExhaustedCount = new Counter();
+    private final Counter fastFailureCount = new Counter();
+
+    /**
+     * @param scheduler
+     *            The scheduler to wait for retries on.
+     */
+    public RetryEngine(ScheduledExecutorService scheduler) {
+        this(scheduler, new RetryBudget(), new CircuitBreaker());
+    }
+
+    public RetryEngine(ScheduledExecutorService scheduler, RetryBudget budget,
+            CircuitBreaker circuitBreaker) {
+        this.scheduler = scheduler;
+        this.budget = budget;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Ask whether an attempt may be made now. An attempt that is not allowed should fail fast.
+     *
+     * @param firstAttempt
+     *            Whether this is the first attempt at a request, rather than a retry.
+     * @return true if the attempt may be made.
+     */
+    public boolean allowAttempt(boolean firstAttempt) {
+        if (firstAttempt) {
+            budget.onRequest();
+        }
+        if (circuitBreaker.allowRequest()) {
+            return true;
+        }
+        fastFailureCount.increment();
+        return false;
+    }
+
+    /**
+     * Record that an attempt reached AVS, whatever the response.
+     */
+    public void onConnectionSucceeded() {
+        circuitBreaker.onSuccess();
+    }
+
+    /**
+     * Record that an attempt could not reach AVS.
+     */
+    public void onConnectionFailed() {
+        circuitBreaker.onFailure();
+    }
+
+    /**
+     * @param policy
+     * @param failedAttempts
+     *            The number of attempts that failed so far, including the last one.
+     * @return The time to wait before retrying, in milliseconds, or -1 not to retry.
+     */
+    public long getRetryDelay(RetryPolicy policy, int failedAttempts) {
+        if (!policy.shouldRetry(failedAttempts)) {
+            return -1;
+        }
+        if (!budget.tryRetry()) {
+            budgetExhaustedCount.increment();
+            log.warn("Not retrying, the retry budget is spent");
+            return -1;
+        }
+        return Math.max(policy.getRetryDelay(failedAttempts),
+                circuitBreaker.getMillisUntilProbe());
+    }
+
+    /**
+     * @return The time until a request may be sent again, in milliseconds, 0 if it may be now.
+     */
+    public long getMillisUntilProbe() {
+        return circuitBreaker.getMillisUntilProbe();
+    }
+
+    /**
+     * Run a retry after the given delay.
+     *
+     * @param retry
+     * @param delayMs
+     * @return false if the retry could not be scheduled because the scheduler has shut down.
+     */
+    public boolean schedule(Runnable retry, long delayMs) {
+        try {
+            scheduler.schedule(retry, delayMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Register the state of the circuit breaker and the retries that were not made.
+     *
+     * @param registry
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register("avs_client_circuit_open",
+                "1 while requests to AVS fail fast, 0 while they are sent",
+                () -> (circuitBreaker.getState() == CircuitBreaker.State.CLOSED) ? 0 : 1);
+        registry.register("avs_client_circuit_opened_total",
+                "Times requests to AVS started failing fast", circuitBreaker::getOpenCount);
+        registry.register("avs_client_fast_failures_total",
+                "Requests failed without being sent because the circuit was open",
+                fastFailureCount);
+        registry.register("avs_client_retry_budget_exhausted_total",
+                "Failed requests that were not retried because the retry budget was spent",
+                budgetExhaustedCount);
+        registry.register("avs_client_retry_budget_balance", "Retries that can be made right now",
+                budget::getBalance);
+    }
+}
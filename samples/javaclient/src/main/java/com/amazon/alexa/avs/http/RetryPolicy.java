@@ -29,4 +29,18 @@ public interface RetryPolicy {
      * @throws Exception
      */
     void tryCall(Callable<Void> callable, Class<? extends Throwable> exception) throws Exception;
+
+    /**
+     * @param failedAttempts
+     *            The number of attempts that failed so far.
+     * @return Whether another attempt may follow.
+     */
+    boolean shouldRetry(int failedAttempts);
+
+    /**
+     * @param failedAttempts
+     *            The number of attempts that failed so far.
+     * @return The time to wait before the next attempt, in milliseconds.
+     */
+    long getRetryDelay(int failedAttempts);
 }
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import com.amazon.alexa.avs.http.jetty.PingAwareHTTP2Client;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The parts of the HTTP/2 stack that many {@link AVSClient}s in the same JVM can share: the Jetty
+ * client with its selector threads, the thread pool and scheduler behind it, the scheduler for
+ * PINGs, retries and coalesced events, and the buffer pools.
+ *
+ * Each client still opens a connection of its own, as AVS expects one per device, but the cost of a
+ * device is then its connection and its own request threads rather than a full Jetty stack. The shared parts are started by {@link #start()}, are left
+ * running when the clients stop, and are stopped by {@link #stop()} once all of them have.
+ */
+public class SharedTransport {
+    public static final int DEFAULT_MAX_THREADS = 200;
+    private static final int MIN_THREADS = 4;
+    private static final int SCHEDULER_THREADS = 2;
+
+    private final QueuedThreadPool executor;
+    private final Scheduler jettyScheduler;
+    private final ScheduledExecutorService scheduler;
+    private final ByteBufferPool jettyBufferPool = new MappedByteBufferPool();
+    private final BufferPool bufferPool = new BufferPool();
+    private final PingAwareHTTP2Client http2Client = new PingAwareHTTP2Client();
+
+    /**
+     * @param maxThreads
+     *            The number of Jetty threads that read and dispatch the responses of all clients.
+     * @param maxConcurrentEvents
+     *            The number of events each client may have in flight, see
+     *            {@link AVSClient#AVSClient(java.net.URL, MultipartParserConsumer,
+     *            org.eclipse.jetty.util.ssl.SslContextFactory, ParsingFailedHandler,
+     *            com.amazon.alexa.avs.ResultListener, int)}.
+     */
+    public SharedTransport(int maxThreads, int maxConcurrentEvents) {
+        executor = new QueuedThreadPool(maxThreads, Math.min(MIN_THREADS, maxThreads));
+        executor.setName("avs-http");
+        jettyScheduler = new ScheduledExecutorScheduler("avs-http-scheduler", true);
+        ScheduledThreadPoolExecutor scheduledExecutor =
+                new ScheduledThreadPoolExecutor(SCHEDULER_THREADS, new NamedThreadFactory());
+        // Clients cancel their timers all the time, don't keep them around until they expire
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        scheduler = scheduledExecutor;
+
+        http2Client.setExecutor(executor);
+        http2Client.setScheduler(jettyScheduler);
+        http2Client.setByteBufferPool(jettyBufferPool);
+        // Every session is a single client's, see AVSClient
+        http2Client.setInitialSessionRecvWindow(
+                http2Client.getInitialStreamRecvWindow() * (maxConcurrentEvents + 1));
+    }
+
+    public synchronized void start() throws Exception {
+        executor.start();
+        jettyScheduler.start();
+        http2Client.start();
+    }
+
+    public synchronized void stop() throws Exception {
+        scheduler.shutdownNow();
+        http2Client.stop();
+        jettyScheduler.stop();
+        executor.stop();
+    }
+
+    public boolean isStarted() {
+        return http2Client.isStarted();
+    }
+
+    public PingAwareHTTP2Client getHttp2Client() {
+        return http2Client;
+    }
+
+    public QueuedThreadPool getExecutor() {
+        return executor;
+    }
+
+    public Scheduler getJettyScheduler() {
+        return jettyScheduler;
+    }
+
+    /**
+     * @return The scheduler for the timers of the clients. Tasks on it must not block.
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public ByteBufferPool getJettyBufferPool() {
+        return jettyBufferPool;
+    }
+
+    /**
+     * @return The pool the clients take the buffers for their request and response content from.
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final ThreadFactory delegate = Executors.defaultThreadFactory();
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = delegate.newThread(runnable);
+            thread.setName("avs-scheduler-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
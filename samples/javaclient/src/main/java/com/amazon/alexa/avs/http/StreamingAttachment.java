@@ -0,0 +1,218 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link InputStream} over a multipart attachment that is still being received. The
+ * {@link MultipartParser} writes the bytes of the part to {@link #getSink()} as they arrive, and
+ * the consumer of the attachment can read them immediately. Reads block until more of the
+ * attachment has arrived or the end of the part is reached.
+ *
+ * Writing only blocks once the bytes that were not read yet reach a limit, so the parser is free to
+ * move on to the following parts of the response while nobody is reading this attachment yet. Past
+ * the limit the parser stops reading the response until the attachment is read or closed, which
+ * holds back the Jetty callbacks of the response and lets HTTP/2 flow control slow the server down,
+ * rather than queuing the whole attachment on the heap. A consumer that does not want the rest of
+ * an attachment should close it.
+ */
+public class StreamingAttachment extends InputStream {
+    public static final int DEFAULT_MAX_QUEUED_BYTES = 1 << 20;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when bytes arrive, and when the attachment ends or is closed
+    private final Condition arrived = lock.newCondition();
+    // Signalled when queued bytes are read, and when the attachment is closed
+    private final Condition drained = lock.newCondition();
+    private final Queue<byte[]> chunks = new ArrayDeque<>();
+    private final OutputStream sink = new Sink();
+    private final int maxQueuedBytes;
+    private byte[] current;
+    private int position;
+    // The bytes that were written and not read yet
+    private int queuedBytes;
+    private boolean finished;
+    private boolean closed;
+    private IOException failure;
+
+    public StreamingAttachment() {
+        this(DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    /**
+     * @param maxQueuedBytes
+     *            The number of bytes that were written and not read yet past which writing blocks.
+     */
+    public StreamingAttachment(int maxQueuedBytes) {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * @return The stream the parser writes the attachment bytes to.
+     */
+    public OutputStream getSink() {
+        return sink;
+    }
+
+    /**
+     * Signal that the whole attachment has been received.
+     */
+    public void finish() {
+        lock.lock();
+        try {
+            finished = true;
+            arrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Signal that the attachment could not be received completely. Readers will get the given
+     * exception once they have read all of the bytes that did arrive.
+     *
+     * @param e
+     */
+    public void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            finished = true;
+            arrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        byte[] chunk = Arrays.copyOfRange(bytes, offset, offset + length);
+        lock.lock();
+        try {
+            while (!closed && (queuedBytes >= maxQueuedBytes)) {
+                try {
+                    drained.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (!closed) {
+                chunks.add(chunk);
+                queuedBytes += length;
+                arrived.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return (read == -1) ? -1 : (single[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if ((offset < 0) || (length < 0) || (length > (buffer.length - offset))) {
+            throw new IndexOutOfBoundsException();
+        } else if (length == 0) {
+            return 0;
+        }
+
+        lock.lock();
+        try {
+            while ((current == null) || (position == current.length)) {
+                current = chunks.poll();
+                position = 0;
+                if (current != null) {
+                    continue;
+                }
+                if (closed) {
+                    throw new IOException("Attachment stream closed");
+                }
+                if (finished) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                }
+                try {
+                    arrived.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, count);
+            position += count;
+            queuedBytes -= count;
+            drained.signalAll();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int available() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            chunks.clear();
+            current = null;
+            queuedBytes = 0;
+            arrived.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class Sink extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            append(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            append(bytes, offset, length);
+        }
+    }
+}
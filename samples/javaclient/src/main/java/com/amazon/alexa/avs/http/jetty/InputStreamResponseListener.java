@@ -30,10 +30,14 @@
 
 package com.amazon.alexa.avs.http.jetty;
 
+import com.amazon.alexa.avs.http.BufferPool;
+
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Response.Listener;
 import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -43,14 +47,17 @@ import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Implementation of {@link Listener} that produces an {@link InputStream}
@@ -75,26 +82,39 @@ import java.util.concurrent.atomic.AtomicReference;
  * <p>
  * The {@link HttpClient} implementation (the producer) will feed the input stream
  * asynchronously while the application (the consumer) is reading from it.
- * Chunks of content are maintained in a queue, and it is possible to specify a
- * maximum buffer size for the bytes held in the queue, by default 16384 bytes.
+ * Chunks of content are copied into buffers from a {@link ByteBufferPool} and kept
+ * in a queue, and it is possible to specify a maximum buffer size for the bytes held
+ * in the queue, by default 16384 bytes.
  * <p>
  * If the consumer is faster than the producer, then the consumer will block
  * with the typical {@link InputStream#read()} semantic.
- * If the consumer is slower than the producer, then the producer will block
- * until the client consumes.
+ * If the consumer is slower than the producer, then chunks past the maximum buffer
+ * size are only acknowledged to HttpClient once the consumer has read them. Over
+ * HTTP/2 that holds back the WINDOW_UPDATE for them, so flow control stops the
+ * server from sending more, and no HttpClient thread is blocked.
+ * <p>
+ * The content buffers themselves can't be kept instead of copied: HTTP/2 parses
+ * DATA frames out of a network buffer that is read into again as soon as the frame
+ * has been handled.
  */
 public class InputStreamResponseListener extends Listener.Adapter
 {
+    public static final long DEFAULT_MAX_BUFFER_SIZE = 16 * 1024L;
+
     private static final Logger LOG = Log.getLogger(InputStreamResponseListener.class);
-    private static final byte[] EOF = new byte[0];
-    private static final byte[] CLOSED = new byte[0];
-    private static final byte[] FAILURE = new byte[0];
-    private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
-    private final AtomicLong length = new AtomicLong();
+    // A lock rather than the monitor, so a reader on a virtual thread does not pin its carrier
+    // thread while it waits for content
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Deque<Chunk> queue = new ArrayDeque<>();
     private final CountDownLatch responseLatch = new CountDownLatch(1);
     private final CountDownLatch resultLatch = new CountDownLatch(1);
     private final AtomicReference<InputStream> stream = new AtomicReference<>();
     private final long maxBufferSize;
+    private final ByteBufferPool pool;
+    // Guarded by the lock, like the queue
+    private long length;
+    private boolean ended;
     private Response response;
     private Result result;
     private volatile Throwable failure;
@@ -102,12 +122,22 @@ public class InputStreamResponseListener extends Listener.Adapter
 
     public InputStreamResponseListener()
     {
-        this(16 * 1024L);
+        this(DEFAULT_MAX_BUFFER_SIZE);
     }
 
     public InputStreamResponseListener(long maxBufferSize)
+    {
+        this(maxBufferSize, new BufferPool());
+    }
+
+    /**
+     * @param maxBufferSize the number of bytes to hold before holding back flow control
+     * @param pool the pool to take the buffers the content is copied into from
+     */
+    public InputStreamResponseListener(long maxBufferSize, ByteBufferPool pool)
     {
         this.maxBufferSize = maxBufferSize;
+        this.pool = pool;
     }
 
     @Override
@@ -118,47 +148,42 @@ public class InputStreamResponseListener extends Listener.Adapter
     }
 
     @Override
-    public void onContent(Response response, ByteBuffer content)
+    public void onContent(Response response, ByteBuffer content, Callback callback)
     {
-        if (!closed)
+        int remaining = content.remaining();
+        if (closed || (failure != null) || (remaining == 0))
         {
-            int remaining = content.remaining();
-            if (remaining > 0)
-            {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Queuing skipped, {}", (remaining == 0) ? "empty content" : "stream already closed");
+            }
+            callback.succeeded();
+            return;
+        }
 
-                byte[] bytes = new byte[remaining];
-                content.get(bytes);
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Queuing {}/{} bytes", bytes, remaining);
-                }
-                queue.offer(bytes);
+        ByteBuffer copy = pool.acquire(remaining, false);
+        copy.clear();
+        copy.put(content);
+        copy.flip();
 
-                long newLength = length.addAndGet(remaining);
-                while (newLength >= maxBufferSize)
-                {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Queued bytes limit {}/{} exceeded, waiting", newLength, maxBufferSize);
-                    }
-                    // Block to avoid infinite buffering
-                    if (!await()) {
-                        break;
-                    }
-                    newLength = length.get();
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Queued bytes limit {}/{} exceeded, woken up", newLength, maxBufferSize);
-                    }
-                }
-            }
-            else
-            {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Queuing skipped, empty content {}", content);
-                }
-            }
+        boolean deferred;
+        lock.lock();
+        try
+        {
+            length += remaining;
+            // Past the limit the chunk is only acknowledged once it has been read
+            deferred = length > maxBufferSize;
+            queue.offer(new Chunk(copy, deferred ? callback : null));
+            changed.signalAll();
         }
-        else
+        finally
         {
-            LOG.debug("Queuing skipped, stream already closed");
+            lock.unlock();
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Queued {} bytes, {}", remaining, deferred ? "deferred" : "acknowledged");
+        }
+        if (!deferred) {
+            callback.succeeded();
         }
     }
 
@@ -166,17 +191,24 @@ public class InputStreamResponseListener extends Listener.Adapter
     public void onSuccess(Response response)
     {
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Queuing end of content {}{}", EOF, "");
+            LOG.debug("Queuing end of content");
+        }
+        lock.lock();
+        try
+        {
+            ended = true;
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
         }
-        queue.offer(EOF);
-        signal();
     }
 
     @Override
     public void onFailure(Response response, Throwable failure)
     {
         fail(failure);
-        signal();
     }
 
     @Override
@@ -193,38 +225,40 @@ public class InputStreamResponseListener extends Listener.Adapter
     private void fail(Throwable failure)
     {
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Queuing failure {} {}", FAILURE, failure);
+            LOG.debug("Queuing failure {}", failure);
         }
-        queue.offer(FAILURE);
-        this.failure = failure;
-        responseLatch.countDown();
-    }
-
-    protected boolean await()
-    {
+        // The content queued so far can still be read, but it will never be acknowledged
+        List<Callback> callbacks = new ArrayList<>();
+        lock.lock();
         try
         {
-            synchronized (this)
-            {
-                while ((length.get() >= maxBufferSize) && (failure == null) && !closed) {
-                    wait();
+            this.failure = failure;
+            for (Chunk chunk : queue) {
+                if (chunk.callback != null) {
+                    callbacks.add(chunk.callback);
+                    chunk.callback = null;
                 }
-                // Re-read the values as they may have changed while waiting.
-                return (failure == null) && !closed;
             }
+            changed.signalAll();
         }
-        catch (InterruptedException x)
+        finally
         {
-            Thread.currentThread().interrupt();
-            return false;
+            lock.unlock();
         }
+        callbacks.forEach(c -> c.failed(failure));
+        responseLatch.countDown();
     }
 
     protected void signal()
     {
-        synchronized (this)
+        lock.lock();
+        try
         {
-            notifyAll();
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
         }
     }
 
@@ -290,59 +324,34 @@ public class InputStreamResponseListener extends Listener.Adapter
         return IO.getClosedStream();
     }
 
+    private static class Chunk
+    {
+        private final ByteBuffer buffer;
+        // Set if the chunk is acknowledged only once it has been read
+        private Callback callback;
+
+        private Chunk(ByteBuffer buffer, Callback callback)
+        {
+            this.buffer = buffer;
+            this.callback = callback;
+        }
+    }
+
     private class Input extends InputStream
     {
-        private byte[] bytes;
-        private int index;
+        private final byte[] single = new byte[1];
 
         @Override
         public int read() throws IOException
         {
-            while (true)
-            {
-                if (bytes == EOF)
-                {
-                    // Mark the fact that we saw -1,
-                    // so that in the close case we don't throw
-                    index = -1;
-                    return -1;
-                }
-                else if (bytes == FAILURE)
-                {
-                    throw failure();
-                }
-                else if (bytes == CLOSED)
-                {
-                    if (index < 0) {
-                        return -1;
-                    }
-                    throw new AsynchronousCloseException();
-                }
-                else if (bytes != null)
-                {
-                    int result = bytes[index] & 0xFF;
-                    if (++index == bytes.length)
-                    {
-                        length.addAndGet(-index);
-                        bytes = null;
-                        index = 0;
-                        signal();
-                    }
-                    return result;
-                }
-                else
-                {
-                    bytes = take();
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Dequeued {}/{} bytes", bytes, bytes.length);
-                    }
-                }
-            }
+            int read = read(single, 0, 1);
+            return (read < 0) ? -1 : (single[0] & 0xFF);
         }
 
-        // START AMAZON CHANGES
+        // Returns as soon as some bytes are available rather than waiting for length bytes
         @Override
-        public int read(byte buffer[], int offset, int length) throws IOException {
+        public int read(byte buffer[], int offset, int length) throws IOException
+        {
             if (buffer == null) {
                 throw new NullPointerException();
             } else if ((offset < 0) || (length < 0) || (length > (buffer.length - offset))) {
@@ -351,67 +360,114 @@ public class InputStreamResponseListener extends Listener.Adapter
                 return 0;
             }
 
-            // Contract specifies must attempt to read at least one byte. If the stream is at end of file: the value -1 is returned
-            int singleByte = read();
-            if (singleByte == -1) {
-                return -1;
-            }
-            buffer[offset] = (byte)singleByte;
-
-            int bytesWritten = 1;
-            try {
-                while (bytesWritten < length) {
-                    singleByte = read();
-                    if (singleByte == -1) {
-                        break;
+            List<Callback> consumed = new ArrayList<>();
+            int read = 0;
+            try
+            {
+                lock.lock();
+                try
+                {
+                    while (queue.isEmpty())
+                    {
+                        if (closed) {
+                            throw new AsynchronousCloseException();
+                        } else if (failure != null) {
+                            throw failure();
+                        } else if (ended) {
+                            return -1;
+                        }
+                        changed.await();
                     }
-                    buffer[offset + bytesWritten] = (byte)singleByte;
-                    bytesWritten++;
 
-                    if (queue.isEmpty()) {
-                        break;
+                    while ((read < length) && !queue.isEmpty())
+                    {
+                        Chunk chunk = queue.peek();
+                        int count = Math.min(length - read, chunk.buffer.remaining());
+                        chunk.buffer.get(buffer, offset + read, count);
+                        read += count;
+                        if (!chunk.buffer.hasRemaining())
+                        {
+                            queue.poll();
+                            InputStreamResponseListener.this.length -= chunk.buffer.limit();
+                            pool.release(chunk.buffer);
+                            if (chunk.callback != null) {
+                                consumed.add(chunk.callback);
+                            }
+                        }
                     }
                 }
-            } catch (IOException ee) {
+                finally
+                {
+                    lock.unlock();
+                }
             }
-            return bytesWritten;
-        }
-        // END AMAZON CHANGES
-
-        private IOException failure()
-        {
-            if (failure instanceof IOException) {
-                return (IOException)failure;
-            } else {
-                return new IOException(failure);
+            catch (InterruptedException x)
+            {
+                throw new InterruptedIOException();
             }
+            finally
+            {
+                // Outside of the lock, as it may write a WINDOW_UPDATE
+                consumed.forEach(Callback::succeeded);
+            }
+            return read;
         }
 
-        private byte[] take() throws IOException
+        @Override
+        public int available()
         {
+            lock.lock();
             try
             {
-                return queue.take();
+                Chunk chunk = queue.peek();
+                return (chunk == null) ? 0 : chunk.buffer.remaining();
             }
-            catch (InterruptedException x)
+            finally
             {
-                throw new InterruptedIOException();
+                lock.unlock();
+            }
+        }
+
+        private IOException failure()
+        {
+            if (failure instanceof IOException) {
+                return (IOException)failure;
+            } else {
+                return new IOException(failure);
             }
         }
 
         @Override
         public void close() throws IOException
         {
-            if (!closed)
+            if (closed) {
+                return;
+            }
+            super.close();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Queuing close");
+            }
+            // Whatever is left is dropped, acknowledging it lets the rest of the response through
+            List<Callback> dropped = new ArrayList<>();
+            lock.lock();
+            try
             {
-                super.close();
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Queuing close {}{}", CLOSED, "");
-                }
-                queue.offer(CLOSED);
                 closed = true;
-                signal();
+                for (Chunk chunk : queue) {
+                    pool.release(chunk.buffer);
+                    if (chunk.callback != null) {
+                        dropped.add(chunk.callback);
+                    }
+                }
+                queue.clear();
+                InputStreamResponseListener.this.length = 0;
+                changed.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
             }
+            dropped.forEach(Callback::succeeded);
         }
     }
 }
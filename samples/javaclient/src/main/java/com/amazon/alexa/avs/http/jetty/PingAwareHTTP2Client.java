@@ -0,0 +1,117 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http.jetty;
+
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.frames.GoAwayFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link HTTP2Client} that lets {@link SessionEventListener}s see the PING replies and the
+ * closing of every session it opens. The HTTP client transport does not expose either.
+ *
+ * The client can be shared by several transports, each with its own listener; every listener
+ * sees the events of every session and ignores those of sessions it did not open.
+ */
+public class PingAwareHTTP2Client extends HTTP2Client {
+    private final List<SessionEventListener> sessionEventListeners = new CopyOnWriteArrayList<>();
+
+    public void addSessionEventListener(SessionEventListener sessionEventListener) {
+        sessionEventListeners.add(sessionEventListener);
+    }
+
+    public void removeSessionEventListener(SessionEventListener sessionEventListener) {
+        sessionEventListeners.remove(sessionEventListener);
+    }
+
+    @Override
+    public void connect(SslContextFactory sslContextFactory, InetSocketAddress address,
+            Session.Listener listener, Promise<Session> promise, Map<String, Object> context) {
+        super.connect(sslContextFactory, address, new SessionListenerWrapper(listener), promise,
+                context);
+    }
+
+    /**
+     * Listener for the session events the transport does not expose.
+     */
+    public interface SessionEventListener {
+        void onPingReply(Session session, PingFrame frame);
+
+        void onSessionClosed(Session session);
+    }
+
+    private class SessionListenerWrapper implements Session.Listener {
+        private final Session.Listener delegate;
+
+        private SessionListenerWrapper(Session.Listener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Map<Integer, Integer> onPreface(Session session) {
+            return delegate.onPreface(session);
+        }
+
+        @Override
+        public Stream.Listener onNewStream(Stream stream, HeadersFrame frame) {
+            return delegate.onNewStream(stream, frame);
+        }
+
+        @Override
+        public void onSettings(Session session, SettingsFrame frame) {
+            delegate.onSettings(session, frame);
+        }
+
+        @Override
+        public void onPing(Session session, PingFrame frame) {
+            if (frame.isReply()) {
+                sessionEventListeners.forEach(l -> l.onPingReply(session, frame));
+            }
+            delegate.onPing(session, frame);
+        }
+
+        @Override
+        public void onReset(Session session, ResetFrame frame) {
+            delegate.onReset(session, frame);
+        }
+
+        @Override
+        public void onClose(Session session, GoAwayFrame frame) {
+            sessionEventListeners.forEach(l -> l.onSessionClosed(session));
+            delegate.onClose(session, frame);
+        }
+
+        @Override
+        public boolean onIdleTimeout(Session session) {
+            return delegate.onIdleTimeout(session);
+        }
+
+        @Override
+        public void onFailure(Session session, Throwable failure) {
+            sessionEventListeners.forEach(l -> l.onSessionClosed(session));
+            delegate.onFailure(session, failure);
+        }
+    }
+}
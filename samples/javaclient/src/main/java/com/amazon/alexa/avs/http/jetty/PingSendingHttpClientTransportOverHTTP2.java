@@ -1,47 +1,130 @@
-/** 
- * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
  *
- * Licensed under the Amazon Software License (the "License"). You may not use this file 
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
  * except in compliance with the License. A copy of the License is located at
  *
- *   http://aws.amazon.com/asl/
+ * http://aws.amazon.com/asl/
  *
- * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS, 
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the 
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
  * specific language governing permissions and limitations under the License.
  */
 package com.amazon.alexa.avs.http.jetty;
 
+import com.amazon.alexa.avs.http.jetty.PingAwareHTTP2Client.SessionEventListener;
+import com.amazon.alexa.avs.metrics.Histogram;
+
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpDestination;
 import org.eclipse.jetty.client.Origin;
 import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.HTTP2Session;
 import org.eclipse.jetty.http2.api.Session;
-import org.eclipse.jetty.http2.client.HTTP2Client;
 import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
 import org.eclipse.jetty.http2.client.http.HttpConnectionOverHTTP2;
 import org.eclipse.jetty.http2.client.http.HttpDestinationOverHTTP2;
 import org.eclipse.jetty.http2.frames.PingFrame;
 import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Sends an HTTP/2 PING frame every 5 minutes after a connection is opened.
+ * Keeps HTTP/2 connections alive with PING frames, and tears down connections that stopped
+ * answering so they are re-established before they are needed.
+ *
+ * Every live session has exactly one scheduled ping, which is cancelled when the session closes.
+ * The round trip time of every PING is recorded. If the reply does not arrive within
+ * {@link #PING_REPLY_TIMEOUT_IN_S} the connection is considered dead and closed, which fails the
+ * downchannel and makes it reconnect right away instead of waiting for a TCP timeout.
+ *
+ * The ping interval adapts to the network: a PING that goes unanswered after an idle interval
+ * most likely means a NAT or firewall dropped the connection, so the interval is halved. After
+ * several consecutive replies it grows again, up to the 5 minutes AVS asks for.
  */
 public class PingSendingHttpClientTransportOverHTTP2 extends HttpClientTransportOverHTTP2 {
-    private static final int PING_INTERVAL_IN_MINUTES = 5;
-    private static final int INITIAL_PING_DELAY_IN_MINUTES = PING_INTERVAL_IN_MINUTES;
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private static final Logger log =
+            LoggerFactory.getLogger(PingSendingHttpClientTransportOverHTTP2.class);
+
+    private static final long MAX_PING_INTERVAL_IN_S = TimeUnit.MINUTES.toSeconds(5);
+    private static final long MIN_PING_INTERVAL_IN_S = 20;
+    private static final long PING_INTERVAL_STEP_IN_S = 30;
+    private static final int REPLIES_BEFORE_GROWING_INTERVAL = 3;
+    static final long PING_REPLY_TIMEOUT_IN_S = 15;
+
+    private final PingAwareHTTP2Client client;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final SessionEventListener sessionEventListener;
+    private final Map<Session, SessionKeepAlive> keepAlives = new ConcurrentHashMap<>();
+    private final Histogram pingRoundTripTimes;
     private Optional<ConnectionListener> connectionListener = Optional.empty();
     private HttpClient httpClient;
 
-    public PingSendingHttpClientTransportOverHTTP2(HTTP2Client client, ConnectionListener connectionListener) {
+    // The interval is a property of the network rather than of a session, so it is kept across
+    // reconnects
+    private volatile long pingIntervalSeconds = MAX_PING_INTERVAL_IN_S;
+    private int consecutiveReplies;
+
+    public PingSendingHttpClientTransportOverHTTP2(PingAwareHTTP2Client client,
+            ConnectionListener connectionListener) {
+        this(client, connectionListener, Histogram.latencyMillis());
+    }
+
+    /**
+     * @param client
+     * @param connectionListener
+     * @param pingRoundTripTimes
+     *            The histogram to record the round trip time of every PING to, in milliseconds.
+     */
+    public PingSendingHttpClientTransportOverHTTP2(PingAwareHTTP2Client client,
+            ConnectionListener connectionListener, Histogram pingRoundTripTimes) {
+        this(client, connectionListener, pingRoundTripTimes, null);
+    }
+
+    /**
+     * @param client
+     * @param connectionListener
+     * @param pingRoundTripTimes
+     *            The histogram to record the round trip time of every PING to, in milliseconds.
+     * @param scheduler
+     *            The scheduler to send PINGs from, shared with other transports and left running
+     *            when this one stops. If null, the transport uses a scheduler of its own.
+     */
+    public PingSendingHttpClientTransportOverHTTP2(PingAwareHTTP2Client client,
+            ConnectionListener connectionListener, Histogram pingRoundTripTimes,
+            ScheduledExecutorService scheduler) {
         super(client);
+        this.client = client;
         this.connectionListener = Optional.ofNullable(connectionListener);
+        this.pingRoundTripTimes = pingRoundTripTimes;
+        this.ownsScheduler = scheduler == null;
+        this.scheduler = ownsScheduler ? Executors.newScheduledThreadPool(1) : scheduler;
+        // The client may be shared, so only the sessions in keepAlives are this transport's
+        sessionEventListener = new SessionEventListener() {
+            @Override
+            public void onPingReply(Session session, PingFrame frame) {
+                SessionKeepAlive keepAlive = keepAlives.get(session);
+                if (keepAlive != null) {
+                    keepAlive.onPingReply(frame);
+                }
+            }
+
+            @Override
+            public void onSessionClosed(Session session) {
+                stopKeepAlive(session);
+            }
+        };
+        client.addSessionEventListener(sessionEventListener);
     }
 
     @Override
@@ -52,8 +135,7 @@ public class PingSendingHttpClientTransportOverHTTP2 extends HttpClientTransport
 
     @Override
     protected HttpConnectionOverHTTP2 newHttpConnection(HttpDestination destination, Session session) {
-        scheduler.scheduleAtFixedRate(new ServerPing(session), INITIAL_PING_DELAY_IN_MINUTES,
-                PING_INTERVAL_IN_MINUTES, TimeUnit.MINUTES);
+        keepAlives.computeIfAbsent(session, SessionKeepAlive::new).schedule();
         return super.newHttpConnection(destination, session);
     }
 
@@ -62,6 +144,55 @@ public class PingSendingHttpClientTransportOverHTTP2 extends HttpClientTransport
         return new ConnectionStatusHttpDestinationOverHTTP2(httpClient, origin);
     }
 
+    @Override
+    protected void doStop() throws Exception {
+        keepAlives.values().forEach(SessionKeepAlive::cancel);
+        keepAlives.clear();
+        client.removeSessionEventListener(sessionEventListener);
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+        super.doStop();
+    }
+
+    /**
+     * @return The round trip times of PINGs, in milliseconds.
+     */
+    public Histogram getPingRoundTripTimes() {
+        return pingRoundTripTimes;
+    }
+
+    /**
+     * @return The current interval between PINGs on an idle connection, in seconds.
+     */
+    public long getPingIntervalSeconds() {
+        return pingIntervalSeconds;
+    }
+
+    private void stopKeepAlive(Session session) {
+        SessionKeepAlive keepAlive = keepAlives.remove(session);
+        if (keepAlive != null) {
+            keepAlive.cancel();
+        }
+    }
+
+    private synchronized void onPingSucceeded() {
+        consecutiveReplies++;
+        if ((consecutiveReplies >= REPLIES_BEFORE_GROWING_INTERVAL)
+                && (pingIntervalSeconds < MAX_PING_INTERVAL_IN_S)) {
+            consecutiveReplies = 0;
+            pingIntervalSeconds =
+                    Math.min(MAX_PING_INTERVAL_IN_S, pingIntervalSeconds + PING_INTERVAL_STEP_IN_S);
+            log.info("Ping interval increased to {}s", pingIntervalSeconds);
+        }
+    }
+
+    private synchronized void onPingTimedOut() {
+        consecutiveReplies = 0;
+        pingIntervalSeconds = Math.max(MIN_PING_INTERVAL_IN_S, pingIntervalSeconds / 2);
+        log.info("Ping interval decreased to {}s", pingIntervalSeconds);
+    }
+
     /**
      * A {@link HttpDestinationOverHTTP2} to let the listener know when the connection is opened or closed.
      */
@@ -73,6 +204,9 @@ public class PingSendingHttpClientTransportOverHTTP2 extends HttpClientTransport
         @Override
         public void close(Connection connection) {
             super.close(connection);
+            if (connection instanceof HttpConnectionOverHTTP2) {
+                stopKeepAlive(((HttpConnectionOverHTTP2) connection).getSession());
+            }
             connectionListener.ifPresent(l -> l.onDisconnected());
         }
 
@@ -84,20 +218,81 @@ public class PingSendingHttpClientTransportOverHTTP2 extends HttpClientTransport
     }
 
     /**
-     * Task to send a PING frame over an open HTTP/2 Session.
+     * Sends PING frames over an open HTTP/2 Session and closes the session if one is not
+     * answered in time.
      */
-    private static class ServerPing implements Runnable {
-        private Session session;
+    private class SessionKeepAlive {
+        private final Session session;
+        private ScheduledFuture<?> nextPing;
+        private ScheduledFuture<?> replyDeadline;
+        private long outstandingPing = -1;
+        private boolean cancelled;
 
-        private ServerPing(Session session) {
+        private SessionKeepAlive(Session session) {
             this.session = session;
         }
 
-        @Override
-        public void run() {
-            if (!session.isClosed()) {
-                PingFrame frame = new PingFrame(false);
-                session.ping(frame, Callback.NOOP);
+        private synchronized void schedule() {
+            if (cancelled || (nextPing != null)) {
+                return;
+            }
+            nextPing = scheduler.schedule(this::ping, pingIntervalSeconds, TimeUnit.SECONDS);
+        }
+
+        private synchronized void ping() {
+            nextPing = null;
+            if (cancelled || session.isClosed()) {
+                return;
+            }
+            // The payload carries the send time, so the reply tells the round trip time
+            outstandingPing = System.nanoTime();
+            session.ping(new PingFrame(outstandingPing, false), Callback.NOOP);
+            replyDeadline =
+                    scheduler.schedule(this::onReplyTimeout, PING_REPLY_TIMEOUT_IN_S,
+                            TimeUnit.SECONDS);
+        }
+
+        private synchronized void onPingReply(PingFrame frame) {
+            if ((outstandingPing == -1) || (frame.getPayloadAsLong() != outstandingPing)) {
+                return;
+            }
+            pingRoundTripTimes.record(
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - outstandingPing));
+            outstandingPing = -1;
+            if (replyDeadline != null) {
+                replyDeadline.cancel(false);
+                replyDeadline = null;
+            }
+            onPingSucceeded();
+            schedule();
+        }
+
+        private void onReplyTimeout() {
+            synchronized (this) {
+                if (cancelled || (outstandingPing == -1)) {
+                    return;
+                }
+                cancelled = true;
+            }
+            log.warn("No PING reply within {}s, closing the connection", PING_REPLY_TIMEOUT_IN_S);
+            onPingTimedOut();
+            keepAlives.remove(session);
+            // A GOAWAY would not make it over a dead connection, so close the socket directly
+            session.close(ErrorCode.NO_ERROR.code, "ping timeout", Callback.NOOP);
+            if (session instanceof HTTP2Session) {
+                ((HTTP2Session) session).getEndPoint().close();
+            }
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            if (nextPing != null) {
+                nextPing.cancel(false);
+                nextPing = null;
+            }
+            if (replyDeadline != null) {
+                replyDeadline.cancel(false);
+                replyDeadline = null;
             }
         }
     }
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http.mock;
+
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A Jetty Handler for the directives resource of the {@link MockAVSServer}. It keeps the response
+ * open, like the AVS downchannel, and writes the directives pushed with
+ * {@link MockAVSServer#pushDirectives(MultipartResponse)} to it as they come.
+ */
+public class DirectivesHandler extends AbstractHandler {
+    private static final Logger log = LoggerFactory.getLogger(DirectivesHandler.class);
+    private static final long POLL_INTERVAL_MS = 500;
+
+    private final MockAVSServer server;
+
+    /**
+     * Creates a {@link DirectivesHandler} object.
+     *
+     * @param server
+     */
+    public DirectivesHandler(MockAVSServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request,
+            HttpServletResponse response) throws IOException, ServletException {
+        if (!request.getMethod().equals("GET")) {
+            baseRequest.setHandled(false);
+            return;
+        }
+        baseRequest.setHandled(true);
+
+        Downchannel downchannel =
+                new Downchannel(EventsHandler.getStream(baseRequest).getSession());
+        String boundary = MockAVSServer.newBoundary();
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MockAVSServer.getMultipartContentType(boundary));
+        OutputStream out = response.getOutputStream();
+        MultipartResponse.writeStreamStart(out, boundary);
+        out.flush();
+
+        server.onDownchannelOpened(downchannel);
+        try {
+            while (server.isRunning() && !downchannel.session.isClosed()) {
+                MultipartResponse directives =
+                        downchannel.pending.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (directives != null) {
+                    directives.writePartsTo(out, boundary);
+                    out.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.info("The downchannel was closed by the client");
+        } finally {
+            server.onDownchannelClosed(downchannel);
+        }
+    }
+
+    /**
+     * An open downchannel and the directives waiting to be written to it.
+     */
+    static class Downchannel {
+        private final Session session;
+        private final BlockingQueue<MultipartResponse> pending = new LinkedBlockingQueue<>();
+
+        private Downchannel(Session session) {
+            this.session = session;
+        }
+
+        Session getSession() {
+            return session;
+        }
+
+        void push(MultipartResponse directives) {
+            pending.add(directives);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http.mock;
+
+import com.amazon.alexa.avs.config.ObjectMapperFactory;
+import com.amazon.alexa.avs.http.HttpHeaders;
+import com.amazon.alexa.avs.http.mock.FaultInjector.Fault;
+import com.amazon.alexa.avs.message.Header;
+
+import org.apache.commons.fileupload.MultipartStream;
+import org.codehaus.jackson.JsonNode;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.http2.server.HttpTransportOverHTTP2;
+import org.eclipse.jetty.server.HttpTransport;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A Jetty Handler for the events resource of the {@link MockAVSServer}. It reads the multipart
+ * event, records it, and responds with the next scripted {@link MultipartResponse}, or with 204 No
+ * Content if none is scripted.
+ */
+public class EventsHandler extends AbstractHandler {
+    private static final Logger log = LoggerFactory.getLogger(EventsHandler.class);
+    private static final int READ_CHUNK_SIZE = 1024;
+
+    private final MockAVSServer server;
+
+    /**
+     * Creates an {@link EventsHandler} object.
+     *
+     * @param server
+     */
+    public EventsHandler(MockAVSServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request,
+            HttpServletResponse response) throws IOException, ServletException {
+        if (!request.getMethod().equals("POST")) {
+            baseRequest.setHandled(false);
+            return;
+        }
+        baseRequest.setHandled(true);
+
+        FaultInjector faults = server.getFaultInjector();
+        long start = System.nanoTime();
+        byte[] body = readBody(request.getInputStream(), faults.getReadBytesPerSecond());
+        long readMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        ReceivedEvent event;
+        try {
+            event = parseEvent(request.getContentType(), body,
+                    request.getHeader(HttpHeaders.AUTHORIZATION), start, readMillis);
+        } catch (IOException e) {
+            log.warn("Received a malformed event", e);
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        server.onEvent(event);
+
+        Fault fault = faults.nextEventFault();
+        if (fault == Fault.RST_STREAM) {
+            log.info("Resetting the stream of {}", event);
+            Stream stream = getStream(baseRequest);
+            stream.reset(new ResetFrame(stream.getId(), ErrorCode.REFUSED_STREAM_ERROR.code),
+                    Callback.NOOP);
+            return;
+        }
+
+        sleep(faults.getResponseLatencyMs());
+
+        MultipartResponse scripted = server.nextEventResponse();
+        if (scripted == null) {
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        } else {
+            String boundary = MockAVSServer.newBoundary();
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(MockAVSServer.getMultipartContentType(boundary));
+            scripted.writeTo(response.getOutputStream(), boundary);
+        }
+
+        if (fault == Fault.GOAWAY) {
+            log.info("Sending GOAWAY after {}", event);
+            baseRequest.getResponse().closeOutput();
+            getStream(baseRequest).getSession().close(ErrorCode.NO_ERROR.code, "goaway",
+                    Callback.NOOP);
+        }
+    }
+
+    private static ReceivedEvent parseEvent(String contentType, byte[] body,
+            String authorization, long receivedAtNanos, long readMillis) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        HttpFields.valueParameters(contentType, parameters);
+        String boundary = parameters.get(HttpHeaders.Parameters.BOUNDARY);
+        if (boundary == null) {
+            throw new IOException("The event has no multipart boundary");
+        }
+
+        MultipartStream multipartStream = new MultipartStream(new ByteArrayInputStream(body),
+                boundary.getBytes(StandardCharsets.US_ASCII), READ_CHUNK_SIZE, null);
+        String json = null;
+        int audioLength = 0;
+        boolean hasNext = multipartStream.skipPreamble();
+        while (hasNext) {
+            String headers = multipartStream.readHeaders();
+            ByteArrayOutputStream part = new ByteArrayOutputStream();
+            multipartStream.readBodyData(part);
+            if (headers.contains("name=\"metadata\"")) {
+                json = new String(part.toByteArray(), StandardCharsets.UTF_8);
+            } else {
+                audioLength += part.size();
+            }
+            hasNext = multipartStream.readBoundary();
+        }
+        if (json == null) {
+            throw new IOException("The event has no metadata part");
+        }
+
+        JsonNode header = ObjectMapperFactory.getObjectReader().readTree(json).path("event").path(
+                "header");
+        return new ReceivedEvent(
+                new Header(header.path("namespace").getTextValue(),
+                        header.path("name").getTextValue()),
+                json, audioLength, authorization, receivedAtNanos, readMillis);
+    }
+
+    /**
+     * Read the whole request, no faster than the given rate.
+     */
+    private static byte[] readBody(InputStream in, int bytesPerSecond) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] chunk = new byte[READ_CHUNK_SIZE];
+        long start = System.nanoTime();
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            body.write(chunk, 0, read);
+            if (bytesPerSecond > 0) {
+                long due = TimeUnit.SECONDS.toMillis(body.size()) / bytesPerSecond;
+                sleep(due - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+        return body.toByteArray();
+    }
+
+    static Stream getStream(Request baseRequest) {
+        HttpTransport transport = baseRequest.getHttpChannel().getHttpTransport();
+        if (!(transport instanceof HttpTransportOverHTTP2)) {
+            throw new IllegalStateException("The request was not made over HTTP/2");
+        }
+        return ((HttpTransportOverHTTP2) transport).getStream();
+    }
+
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+}
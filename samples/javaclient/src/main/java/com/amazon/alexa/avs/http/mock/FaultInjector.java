@@ -0,0 +1,89 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http.mock;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The faults the {@link MockAVSServer} injects into its handling of events.
+ */
+public class FaultInjector {
+    private final Queue<Fault> eventFaults = new ConcurrentLinkedQueue<>();
+    private volatile long responseLatencyMs;
+    private volatile int readBytesPerSecond;
+
+    /**
+     * A fault that affects a single event.
+     */
+    public enum Fault {
+        /**
+         * Respond to the event, then send a GOAWAY frame and close the connection.
+         */
+        GOAWAY,
+
+        /**
+         * Reset the stream of the event with a RST_STREAM frame instead of responding.
+         */
+        RST_STREAM;
+    }
+
+    /**
+     * Inject a fault into the next event that does not already have one. Faults are used up in the
+     * order they were added.
+     *
+     * @param fault
+     */
+    public void failNextEvent(Fault fault) {
+        eventFaults.add(fault);
+    }
+
+    /**
+     * @param responseLatencyMs
+     *            How long to wait after reading an event before responding to it.
+     */
+    public void setResponseLatencyMs(long responseLatencyMs) {
+        this.responseLatencyMs = responseLatencyMs;
+    }
+
+    public long getResponseLatencyMs() {
+        return responseLatencyMs;
+    }
+
+    /**
+     * Read events slowly, so the client runs out of HTTP/2 flow control window while sending them.
+     *
+     * @param readBytesPerSecond
+     *            The rate to read events at, or 0 to read them as fast as they arrive.
+     */
+    public void setReadBytesPerSecond(int readBytesPerSecond) {
+        this.readBytesPerSecond = readBytesPerSecond;
+    }
+
+    public int getReadBytesPerSecond() {
+        return readBytesPerSecond;
+    }
+
+    /**
+     * Remove all faults.
+     */
+    public void reset() {
+        eventFaults.clear();
+        responseLatencyMs = 0;
+        readBytesPerSecond = 0;
+    }
+
+    Fault nextEventFault() {
+        return eventFaults.poll();
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http.mock;
+
+import com.amazon.alexa.avs.ResultListener;
+import com.amazon.alexa.avs.TaskExecutor;
+import com.amazon.alexa.avs.http.AVSClient;
+import com.amazon.alexa.avs.http.MultipartParser.MultipartParserConsumer;
+import com.amazon.alexa.avs.http.SharedTransport;
+import com.amazon.alexa.avs.message.request.RequestFactory;
+import com.amazon.alexa.avs.message.response.Directive;
+
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs many virtual devices against a {@link MockAVSServer} in one JVM, each with its own
+ * {@link AVSClient} and access token over a {@link SharedTransport}, and reports what every device
+ * costs in heap, threads and resident memory.
+ *
+ * Every device opens its downchannel, sends an event and receives a directive pushed down all the
+ * downchannels. The number of devices is the first argument, 100 by default, and the
+ * {@link TaskExecutor.Mode} the second, platform by default.
+ */
+public class FleetSimulation {
+    private static final Logger log = LoggerFactory.getLogger(FleetSimulation.class);
+
+    private static final int DEFAULT_DEVICES = 100;
+    private static final int MAX_CONCURRENT_EVENTS = 1;
+    private static final long TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    public static void main(String[] args) throws Exception {
+        int devices = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_DEVICES;
+        TaskExecutor.Mode mode = TaskExecutor.configure((args.length > 1)
+                ? TaskExecutor.Mode.valueOf(args[1].toUpperCase(Locale.ROOT))
+                : TaskExecutor.Mode.PLATFORM);
+
+        // Every downchannel holds a server thread
+        MockAVSServer server = new MockAVSServer(0, devices + SharedTransport.DEFAULT_MAX_THREADS);
+        server.start();
+        SharedTransport transport =
+                new SharedTransport(SharedTransport.DEFAULT_MAX_THREADS, MAX_CONCURRENT_EVENTS);
+        transport.start();
+
+        long heapBefore = usedHeap();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long rssBefore = residentSetSize();
+        long start = System.nanoTime();
+
+        AtomicInteger directives = new AtomicInteger();
+        MultipartParserConsumer consumer = new MultipartParserConsumer() {
+            @Override
+            public void onDirective(Directive directive) {
+                directives.incrementAndGet();
+            }
+
+            @Override
+            public void onDirectiveAttachment(String contentId, InputStream attachmentContent) {
+            }
+        };
+        ResultListener resultListener = new ResultListener() {
+            @Override
+            public void onSuccess() {
+            }
+
+            @Override
+            public void onFailure() {
+            }
+        };
+
+        List<AVSClient> clients = new ArrayList<>(devices);
+        for (int i = 0; i < devices; i++) {
+            AVSClient client = new AVSClient(server.getURL(), consumer, new SslContextFactory(),
+                    unparsable -> log.warn("Could not parse {}", unparsable), resultListener,
+                    MAX_CONCURRENT_EVENTS, null, transport);
+            client.setAccessToken(tokenOf(i));
+            clients.add(client);
+        }
+        awaitCondition(() -> server.getDownchannelCount() == devices);
+        long connectedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        List<CompletableFuture<?>> sent = new ArrayList<>(devices);
+        for (AVSClient client : clients) {
+            sent.add(client.sendEventAsync(
+                    RequestFactory.createSpeakerVolumeChangedEvent(50, false)));
+        }
+        CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0]))
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        server.pushDirectives(new MultipartResponse().addDirective("Speaker", "SetVolume",
+                "{\"volume\":10}"));
+        awaitCondition(() -> directives.get() == devices);
+
+        long heapPerDevice = (usedHeap() - heapBefore) / devices;
+        // Virtual threads are not counted, only the platform threads they run on
+        double threadsPerDevice = (double) (ManagementFactory.getThreadMXBean().getThreadCount()
+                - threadsBefore) / devices;
+        long rssPerDevice = (residentSetSize() - rssBefore) / devices;
+        Set<String> tokens = new HashSet<>();
+        server.getReceivedEvents().forEach(event -> tokens.add(event.getAuthorization()));
+
+        System.out.println(String.format(
+                "%d devices connected in %d ms, %d distinct tokens, %d directives received",
+                devices, connectedMs, tokens.size(), directives.get()));
+        System.out.println(String.format(
+                "%s threads: %d KiB of heap, %d KiB resident and %.1f threads per device",
+                mode.name().toLowerCase(Locale.ROOT), heapPerDevice / 1024, rssPerDevice / 1024,
+                threadsPerDevice));
+
+        clients.forEach(AVSClient::shutdown);
+        transport.stop();
+        server.stop();
+        System.exit(0);
+    }
+
+    private static String tokenOf(int device) {
+        return "device-" + device;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return The resident set size of the JVM in bytes, or 0 where /proc is not available.
+     */
+    private static long residentSetSize() {
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith("VmRSS:")) {
+                    // In kB, as in "VmRSS:  123456 kB"
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Could not read {}", PROC_STATUS, e);
+        }
+        return 0;
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Timed out waiting for the devices");
+            }
+            Thread.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http.mock;
+
+import com.amazon.alexa.avs.http.mock.DirectivesHandler.Downchannel;
+
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * An in-process stand-in for AVS, for exercising the client without network access.
+ *
+ * It speaks HTTP/2 over plain TCP (h2c), so an AVSClient reaches it through an "http://" host,
+ * see {@link #getURL()}. It serves the events, directives and ping resources:
+ * <ul>
+ * <li>Every event is recorded as a {@link ReceivedEvent} and answered with the next response
+ * scripted with {@link #addEventResponse(MultipartResponse)}, or with 204 No Content.</li>
+ * <li>The downchannel stays open, and directives pushed with
+ * {@link #pushDirectives(MultipartResponse)} are streamed down every open downchannel.</li>
+ * <li>Latency, GOAWAY, RST_STREAM and slow reads are injected through the
+ * {@link FaultInjector}.</li>
+ * </ul>
+ *
+ * It can also be run on its own, with the port to listen on as its argument, and pointed at by
+ * setting avsHost to "http://localhost:port" in the config.
+ */
+public class MockAVSServer {
+    private static final Logger log = LoggerFactory.getLogger(MockAVSServer.class);
+
+    static final String EVENTS_ENDPOINT = "/v20160207/events";
+    static final String DIRECTIVES_ENDPOINT = "/v20160207/directives";
+    static final String PING_ENDPOINT = "/ping";
+    static final int DEFAULT_MAX_THREADS = 200;
+
+    private final Server jettyServer;
+    private final ServerConnector connector;
+    private final FaultInjector faultInjector = new FaultInjector();
+    private final Queue<MultipartResponse> eventResponses = new ConcurrentLinkedQueue<>();
+    private final List<ReceivedEvent> receivedEvents = new CopyOnWriteArrayList<>();
+    private final Set<Downchannel> downchannels = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a {@link MockAVSServer} that listens on a free port.
+     */
+    public MockAVSServer() {
+        this(0);
+    }
+
+    /**
+     * Creates a {@link MockAVSServer} object.
+     *
+     * @param port
+     *            The port to listen on, or 0 for any free port.
+     */
+    public MockAVSServer(int port) {
+        this(port, DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * Creates a {@link MockAVSServer} that serves as many clients at once as it has threads for.
+     * Every open downchannel holds one of them.
+     *
+     * @param port
+     *            The port to listen on, or 0 for any free port.
+     * @param maxThreads
+     *            The number of threads to serve requests with.
+     */
+    public MockAVSServer(int port, int maxThreads) {
+        jettyServer = new Server(new QueuedThreadPool(maxThreads));
+
+        ContextHandler eventsContext = new ContextHandler(EVENTS_ENDPOINT);
+        eventsContext.setAllowNullPathInfo(true);
+        eventsContext.setHandler(new EventsHandler(this));
+
+        ContextHandler directivesContext = new ContextHandler(DIRECTIVES_ENDPOINT);
+        directivesContext.setAllowNullPathInfo(true);
+        directivesContext.setHandler(new DirectivesHandler(this));
+
+        ContextHandler pingContext = new ContextHandler(PING_ENDPOINT);
+        pingContext.setAllowNullPathInfo(true);
+        pingContext.setHandler(new PingHandler());
+
+        ContextHandlerCollection contexts = new ContextHandlerCollection();
+        contexts.setHandlers(new Handler[] {
+                eventsContext,
+                directivesContext,
+                pingContext,
+        });
+        jettyServer.setHandler(contexts);
+
+        connector = new ServerConnector(jettyServer,
+                new HTTP2CServerConnectionFactory(new HttpConfiguration()));
+        connector.setHost("localhost");
+        connector.setPort(port);
+        jettyServer.addConnector(connector);
+    }
+
+    /**
+     * Start listening.
+     *
+     * @throws Exception
+     */
+    public void start() throws Exception {
+        jettyServer.start();
+        log.info("Mock AVS server listening on {}", getURL());
+    }
+
+    /**
+     * Close every connection and stop listening.
+     *
+     * @throws Exception
+     */
+    public void stop() throws Exception {
+        jettyServer.stop();
+    }
+
+    public boolean isRunning() {
+        return jettyServer.isRunning();
+    }
+
+    /**
+     * @return The URL to use as the AVS host, once the server has been started.
+     */
+    public URL getURL() {
+        try {
+            return new URL("http", "localhost", connector.getLocalPort(), "");
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public FaultInjector getFaultInjector() {
+        return faultInjector;
+    }
+
+    /**
+     * Script the response to an event. Responses are used up in the order they were added, one
+     * per event. Events that find no scripted response get 204 No Content.
+     *
+     * @param response
+     */
+    public void addEventResponse(MultipartResponse response) {
+        eventResponses.add(response);
+    }
+
+    /**
+     * Send directives down every open downchannel.
+     *
+     * @param directives
+     * @return The number of downchannels the directives were sent down.
+     */
+    public int pushDirectives(MultipartResponse directives) {
+        downchannels.forEach(d -> d.push(directives));
+        return downchannels.size();
+    }
+
+    /**
+     * Send a GOAWAY frame on every connection that has a downchannel open, which closes them.
+     */
+    public void goAway() {
+        downchannels.forEach(d -> d.getSession().close(ErrorCode.NO_ERROR.code, "goaway",
+                Callback.NOOP));
+    }
+
+    /**
+     * @return The number of downchannels currently open.
+     */
+    public int getDownchannelCount() {
+        return downchannels.size();
+    }
+
+    /**
+     * @return The events received so far, in the order they were read.
+     */
+    public List<ReceivedEvent> getReceivedEvents() {
+        return new ArrayList<>(receivedEvents);
+    }
+
+    /**
+     * Wait until the given number of events has been received.
+     *
+     * @param count
+     * @param timeoutMs
+     * @return Whether that many events were received in time.
+     * @throws InterruptedException
+     */
+    public boolean awaitEvents(int count, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (receivedEvents) {
+            while (receivedEvents.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                receivedEvents.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forget the received events, the scripted responses and the faults.
+     */
+    public void reset() {
+        receivedEvents.clear();
+        eventResponses.clear();
+        faultInjector.reset();
+    }
+
+    void onEvent(ReceivedEvent event) {
+        log.info("Received {}", event);
+        synchronized (receivedEvents) {
+            receivedEvents.add(event);
+            receivedEvents.notifyAll();
+        }
+    }
+
+    MultipartResponse nextEventResponse() {
+        return eventResponses.poll();
+    }
+
+    void onDownchannelOpened(Downchannel downchannel) {
+        log.info("Downchannel opened");
+        downchannels.add(downchannel);
+    }
+
+    void onDownchannelClosed(Downchannel downchannel) {
+        log.info("Downchannel closed");
+        downchannels.remove(downchannel);
+    }
+
+    static String newBoundary() {
+        return "------mock-avs-" + UUID.randomUUID();
+    }
+
+    static String getMultipartContentType(String boundary) {
+        return "multipart/related; boundary=" + boundary + "; type=\"application/json\"";
+    }
+
+    /**
+     * A Jetty Handler for the ping resource, which AVS answers with 204 No Content.
+     */
+    private static class PingHandler extends AbstractHandler {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                HttpServletResponse response) throws IOException, ServletException {
+            baseRequest.setHandled(true);
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        }
+    }
+
+    /**
+     * Run the server until the process is stopped.
+     *
+     * @param args
+     *            The port to listen on, 8080 if omitted.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 8080;
+        MockAVSServer server = new MockAVSServer(port);
+        server.start();
+        server.jettyServer.join();
+    }
+}
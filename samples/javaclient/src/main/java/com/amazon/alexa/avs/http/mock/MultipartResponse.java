@@ -0,0 +1,152 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http.mock;
+
+import com.amazon.alexa.avs.http.ContentTypes;
+import com.amazon.alexa.avs.http.HttpHeaders;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The directives and attachments the {@link MockAVSServer} sends in response to an event, or down
+ * the downchannel.
+ *
+ * On the downchannel, parts are written the way AVS writes them: every part is followed right away
+ * by the delimiter of the next one, so a client reading the stream sees a part as soon as it has
+ * been written, without waiting for the part after it.
+ */
+public class MultipartResponse {
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final List<Part> parts = new ArrayList<>();
+
+    /**
+     * Add a directive.
+     *
+     * @param namespace
+     * @param name
+     * @param payload
+     *            The JSON payload of the directive.
+     * @return this
+     */
+    public MultipartResponse addDirective(String namespace, String name, String payload) {
+        String json = String.format(
+                "{\"directive\":{\"header\":{\"namespace\":\"%1$s\",\"name\":\"%2$s\","
+                        + "\"messageId\":\"%3$s\"},\"payload\":%4$s}}",
+                namespace, name, UUID.randomUUID(), payload);
+        return addDirective(json);
+    }
+
+    /**
+     * Add a directive.
+     *
+     * @param json
+     *            The complete JSON message, including the directive envelope.
+     * @return this
+     */
+    public MultipartResponse addDirective(String json) {
+        parts.add(new Part(HttpHeaders.CONTENT_TYPE + ": " + ContentTypes.JSON_UTF8,
+                json.getBytes(StandardCharsets.UTF_8)));
+        return this;
+    }
+
+    /**
+     * Add an attachment, such as the audio a Speak directive refers to by "cid:contentId".
+     *
+     * @param contentId
+     * @param content
+     * @return this
+     */
+    public MultipartResponse addAttachment(String contentId, byte[] content) {
+        parts.add(new Part(HttpHeaders.CONTENT_ID + ": <" + contentId + ">\r\n"
+                + HttpHeaders.CONTENT_TYPE + ": " + ContentTypes.AUDIO, content));
+        return this;
+    }
+
+    /**
+     * @return The number of parts in the response.
+     */
+    public int size() {
+        return parts.size();
+    }
+
+    /**
+     * Write the whole response, from the opening delimiter to the closing one.
+     *
+     * @param out
+     * @param boundary
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out, String boundary) throws IOException {
+        writeAscii(out, "--" + boundary);
+        for (Part part : parts) {
+            out.write(CRLF);
+            part.writeTo(out, boundary);
+        }
+        writeAscii(out, "--");
+        out.write(CRLF);
+    }
+
+    /**
+     * Write the parts of the response to a stream that stays open, such as the downchannel. Each
+     * part is followed by the delimiter of the next one, so this can be called any number of times
+     * after {@link #writeStreamStart(OutputStream, String)}.
+     *
+     * @param out
+     * @param boundary
+     * @throws IOException
+     */
+    public void writePartsTo(OutputStream out, String boundary) throws IOException {
+        for (Part part : parts) {
+            part.writeTo(out, boundary);
+            // A reader only recognizes a delimiter once it sees what comes after it
+            out.write(CRLF);
+        }
+    }
+
+    static void writeStreamStart(OutputStream out, String boundary) throws IOException {
+        writeAscii(out, "--" + boundary);
+        out.write(CRLF);
+    }
+
+    private static void writeAscii(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static class Part {
+        private final String headers;
+        private final byte[] content;
+
+        private Part(String headers, byte[] content) {
+            this.headers = headers;
+            this.content = content;
+        }
+
+        /**
+         * Write the headers and content of the part, and the delimiter that ends it.
+         */
+        private void writeTo(OutputStream out, String boundary) throws IOException {
+            writeAscii(out, headers);
+            out.write(CRLF);
+            out.write(CRLF);
+            out.write(content);
+            out.write(CRLF);
+            writeAscii(out, "--" + boundary);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *   http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http.mock;
+
+import com.amazon.alexa.avs.message.Header;
+
+/**
+ * An event the {@link MockAVSServer} received.
+ */
+public class ReceivedEvent {
+    private final Header header;
+    private final String json;
+    private final int audioLength;
+    private final String authorization;
+    private final long receivedAtNanos;
+    private final long readMillis;
+
+    ReceivedEvent(Header header, String json, int audioLength, String authorization,
+            long receivedAtNanos, long readMillis) {
+        this.header = header;
+        this.json = json;
+        this.audioLength = audioLength;
+        this.authorization = authorization;
+        this.receivedAtNanos = receivedAtNanos;
+        this.readMillis = readMillis;
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    /**
+     * @return The metadata part of the event.
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * @return The number of bytes in the audio part of the event, or 0 if it had none.
+     */
+    public int getAudioLength() {
+        return audioLength;
+    }
+
+    /**
+     * @return The Authorization header the event was sent with, or null.
+     */
+    public String getAuthorization() {
+        return authorization;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} at which the server started reading the event.
+     */
+    public long getReceivedAtNanos() {
+        return receivedAtNanos;
+    }
+
+    /**
+     * @return How long it took to read the whole event, in milliseconds.
+     */
+    public long getReadMillis() {
+        return readMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%1$s.%2$s audio:%3$d", header.getNamespace(), header.getName(),
+                audioLength);
+    }
+}
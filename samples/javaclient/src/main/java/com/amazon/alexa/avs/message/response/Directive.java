@@ -28,6 +28,9 @@ public class Directive extends Message {
     @JsonIgnore
     private final String dialogRequestId;
 
+    @JsonIgnore
+    private volatile long enqueuedNanos;
+
     public Directive(Header header, JsonNode payload, String rawMessage)
             throws JsonParseException, JsonMappingException, IOException {
         super(header, payload, rawMessage);
@@ -38,6 +41,21 @@ public class Directive extends Message {
         return dialogRequestId;
     }
 
+    /**
+     * Note the time the directive was put on a directive queue, to measure how long it waits.
+     */
+    public void markEnqueued() {
+        enqueuedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} the directive was put on a directive queue, or 0 if
+     *         it never was.
+     */
+    public long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+
     private String extractDialogRequestId() {
         if (header instanceof DialogRequestIdHeader) {
             DialogRequestIdHeader dialogRequestIdHeader = (DialogRequestIdHeader) header;
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of long values, such as latencies in milliseconds, with fixed bucket bounds.
+ * Recording is lock free and allocation free, so it can be done on hot paths. Percentiles are
+ * estimated as the upper bound of the bucket they fall in.
+ */
+public class Histogram {
+    private final long[] bounds;
+    // One counter per bound, plus one for the values above the last bound
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, Long.MIN_VALUE);
+
+    /**
+     * @param bounds
+     *            The inclusive upper bounds of the buckets, in ascending order.
+     */
+    public Histogram(long... bounds) {
+        if (bounds.length == 0) {
+            throw new IllegalArgumentException("A histogram needs at least one bucket");
+        }
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("Bucket bounds must be ascending");
+            }
+        }
+        this.bounds = bounds.clone();
+        buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Create a histogram whose bucket bounds grow by a constant factor, which suits latencies
+     * well.
+     *
+     * @param first
+     *            The upper bound of the first bucket.
+     * @param factor
+     *            The factor between the bounds of consecutive buckets.
+     * @param count
+     *            The number of buckets.
+     * @return a new histogram.
+     */
+    public static Histogram exponential(long first, double factor, int count) {
+        long[] bounds = new long[count];
+        double bound = first;
+        for (int i = 0; i < count; i++) {
+            bounds[i] = (i == 0) ? first : Math.max(bounds[i - 1] + 1, Math.round(bound));
+            bound *= factor;
+        }
+        return new Histogram(bounds);
+    }
+
+    /**
+     * A histogram suited for latencies from a millisecond to about a minute, in milliseconds.
+     *
+     * @return a new histogram.
+     */
+    public static Histogram latencyMillis() {
+        return exponential(1, 1.5, 28);
+    }
+
+    public void record(long value) {
+        int index = Arrays.binarySearch(bounds, value);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        buckets[index].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return The largest value recorded, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        long value = max.get();
+        return (value == Long.MIN_VALUE) ? 0 : value;
+    }
+
+    public double getMean() {
+        long samples = getCount();
+        return (samples == 0) ? 0 : (double) getSum() / samples;
+    }
+
+    /**
+     * @param percentile
+     *            A percentile between 0 and 100.
+     * @return An estimate of the given percentile, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil((percentile / 100.0) * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if ((seen >= rank) && (counts[i] > 0)) {
+                return (i < bounds.length) ? Math.min(bounds[i], getMax()) : getMax();
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return The inclusive upper bounds of the buckets. Values above the last bound are counted
+     *         in an extra, unbounded bucket.
+     */
+    public long[] getBucketBounds() {
+        return bounds.clone();
+    }
+
+    /**
+     * @return The number of values in each bucket, including the unbounded one.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count:%1$d mean:%2$.1f p50:%3$d p90:%4$d p99:%5$d max:%6$d",
+                getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99),
+                getMax());
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.metrics;
+
+import com.amazon.alexa.avs.config.ObjectMapperFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Follows a voice interaction, identified by its dialogRequestId, from the moment recording starts
+ * to the moment Alexa's answer starts playing, to show where the time goes.
+ *
+ * Every {@link Stage} is stamped once per interaction, the first time it is reached, with
+ * {@link System#nanoTime()}. The time from the start of the interaction to every stage is recorded
+ * in a {@link Histogram} per stage, see {@link #getLatencies()}, and the stamps of each interaction
+ * are logged as one JSON record once the answer starts playing, or once the next interaction
+ * starts if it never does.
+ *
+ * Stamps for a dialogRequestId other than the one of the current interaction are ignored, and so
+ * are all stamps while no interaction is in progress.
+ */
+public class InteractionTracer {
+    private static final Logger log = LoggerFactory.getLogger(InteractionTracer.class);
+
+    public enum Stage {
+        RECORDING_STARTED,
+        MICROPHONE_OPENED,
+        FIRST_AUDIO_SENT,
+        END_OF_SPEECH_DETECTED,
+        STOP_CAPTURE_RECEIVED,
+        RESPONSE_HEADERS,
+        FIRST_DIRECTIVE_PARSED,
+        DIRECTIVE_ENQUEUED,
+        DIRECTIVE_DISPATCHED,
+        FIRST_AUDIO_PLAYED;
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final Map<Stage, Histogram> latencies = new EnumMap<>(Stage.class);
+    private final AtomicReference<Interaction> current = new AtomicReference<>();
+
+    public InteractionTracer() {
+        for (Stage stage : STAGES) {
+            latencies.put(stage, Histogram.latencyMillis());
+        }
+    }
+
+    /**
+     * Start following a new interaction. The previous one, if any, is logged as it is.
+     *
+     * @param dialogRequestId
+     */
+    public void begin(String dialogRequestId) {
+        Interaction interaction = new Interaction(dialogRequestId, System.nanoTime());
+        finish(current.getAndSet(interaction));
+        mark(interaction, Stage.RECORDING_STARTED);
+    }
+
+    /**
+     * Stamp a stage of the current interaction.
+     *
+     * @param stage
+     */
+    public void mark(Stage stage) {
+        Interaction interaction = current.get();
+        if (interaction != null) {
+            mark(interaction, stage);
+        }
+    }
+
+    /**
+     * Stamp a stage of the current interaction, if it is the one with the given dialogRequestId.
+     *
+     * @param stage
+     * @param dialogRequestId
+     */
+    public void mark(Stage stage, String dialogRequestId) {
+        Interaction interaction = current.get();
+        if ((interaction != null) && interaction.dialogRequestId.equals(dialogRequestId)) {
+            mark(interaction, stage);
+        }
+    }
+
+    /**
+     * @return The time from the start of an interaction to each stage, in milliseconds.
+     */
+    public Map<Stage, Histogram> getLatencies() {
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    private void mark(Interaction interaction, Stage stage) {
+        long elapsed = System.nanoTime() - interaction.startNanos;
+        if (!interaction.offsets.compareAndSet(stage.ordinal(), -1, elapsed)) {
+            return;
+        }
+        latencies.get(stage).record(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        if ((stage == Stage.FIRST_AUDIO_PLAYED) && current.compareAndSet(interaction, null)) {
+            finish(interaction);
+        }
+    }
+
+    private void finish(Interaction interaction) {
+        if (interaction == null) {
+            return;
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("dialogRequestId", interaction.dialogRequestId);
+        Map<String, Long> stages = new LinkedHashMap<>();
+        for (Stage stage : STAGES) {
+            long offset = interaction.offsets.get(stage.ordinal());
+            if (offset >= 0) {
+                stages.put(stage.name(), TimeUnit.NANOSECONDS.toMillis(offset));
+            }
+        }
+        record.put("stagesMs", stages);
+        try {
+            log.info("Interaction {}", ObjectMapperFactory.getObjectWriter().writeValueAsString(
+                    record));
+        } catch (IOException e) {
+            log.warn("Could not write the trace of {}", interaction.dialogRequestId, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("InteractionTracer");
+        latencies.forEach((stage, histogram) -> builder
+                .append(System.lineSeparator())
+                .append(stage)
+                .append(' ')
+                .append(histogram));
+        return builder.toString();
+    }
+
+    private static class Interaction {
+        private final String dialogRequestId;
+        private final long startNanos;
+        // Nanoseconds from the start to each stage, -1 until it is reached
+        private final AtomicLongArray offsets = new AtomicLongArray(STAGES.length);
+
+        private Interaction(String dialogRequestId, long startNanos) {
+            this.dialogRequestId = dialogRequestId;
+            this.startNanos = startNanos;
+            for (int i = 0; i < STAGES.length; i++) {
+                offsets.set(i, -1);
+            }
+        }
+    }
+}
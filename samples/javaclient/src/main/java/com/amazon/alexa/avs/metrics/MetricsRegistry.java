@@ -0,0 +1,284 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * The metrics of the client, by name, so they can be read from outside the process.
+ *
+ * Components own their {@link Counter}s and {@link Histogram}s and record into them directly; the
+ * registry only keeps references to them, so recording never goes through it. Metrics are named
+ * and labelled the Prometheus way, and metrics that share a name but not their labels, such as
+ * the responses with each status code, are written together as one family.
+ *
+ * Registering a metric under a name and labels that are already registered replaces the previous
+ * metric, so a component that is replaced, such as the AVSClient after a SetEndpoint directive,
+ * can register its metrics again.
+ */
+public class MetricsRegistry {
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private static final Pattern LABEL_NAME = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+    private static final Pattern NON_NAME_CHARACTERS = Pattern.compile("[^a-zA-Z0-9_]");
+
+    private enum Type {
+        COUNTER,
+        GAUGE,
+        HISTOGRAM;
+    }
+
+    // Sorted so the metrics of a component are listed together
+    private final Map<String, Family> families = new TreeMap<>();
+
+    /**
+     * @param name
+     * @param help
+     * @param counter
+     * @param labels
+     *            Label names and values, in pairs.
+     */
+    public void register(String name, String help, Counter counter, String... labels) {
+        register(name, help, Type.COUNTER, counter, labels);
+    }
+
+    /**
+     * @param name
+     * @param help
+     * @param gauge
+     * @param labels
+     *            Label names and values, in pairs.
+     */
+    public void register(String name, String help, Gauge gauge, String... labels) {
+        register(name, help, Type.GAUGE, gauge, labels);
+    }
+
+    /**
+     * @param name
+     * @param help
+     * @param histogram
+     * @param labels
+     *            Label names and values, in pairs.
+     */
+    public void register(String name, String help, Histogram histogram, String... labels) {
+        register(name, help, Type.HISTOGRAM, histogram, labels);
+    }
+
+    private synchronized void register(String name, String help, Type type, Object metric,
+            String[] labels) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid metric name: " + name);
+        }
+        if ((labels.length % 2) != 0) {
+            throw new IllegalArgumentException("Labels must be given as name and value pairs");
+        }
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException(name + " is already registered as a "
+                    + family.type.name().toLowerCase());
+        }
+        Metric entry = new Metric(name, labels, metric);
+        family.metrics.put(entry.labels, entry);
+    }
+
+    /**
+     * Write every metric in the Prometheus text exposition format, version 0.0.4.
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public void writeTextFormat(Writer writer) throws IOException {
+        for (Family family : getFamilies()) {
+            writer.write("# HELP ");
+            writer.write(family.name);
+            writer.write(' ');
+            writer.write(escapeHelp(family.help));
+            writer.write("\n# TYPE ");
+            writer.write(family.name);
+            writer.write(' ');
+            writer.write(family.type.name().toLowerCase());
+            writer.write('\n');
+            for (Metric metric : family.getMetrics()) {
+                switch (family.type) {
+                    case COUNTER:
+                        writeSample(writer, family.name, metric.labels, null,
+                                ((Counter) metric.value).get());
+                        break;
+                    case GAUGE:
+                        writeSample(writer, family.name, metric.labels, null,
+                                ((Gauge) metric.value).get());
+                        break;
+                    case HISTOGRAM:
+                        writeHistogram(writer, family.name, metric.labels,
+                                (Histogram) metric.value);
+                        break;
+                }
+            }
+        }
+    }
+
+    private static void writeHistogram(Writer writer, String name, String labels,
+            Histogram histogram) throws IOException {
+        long[] bounds = histogram.getBucketBounds();
+        long[] counts = histogram.getBucketCounts();
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            writeSample(writer, name + "_bucket", labels, "le=\"" + bounds[i] + "\"",
+                    cumulative);
+        }
+        cumulative += counts[bounds.length];
+        writeSample(writer, name + "_bucket", labels, "le=\"+Inf\"", cumulative);
+        writeSample(writer, name + "_sum", labels, null, histogram.getSum());
+        // The total of the buckets rather than the count, which may have moved on since
+        writeSample(writer, name + "_count", labels, null, cumulative);
+    }
+
+    private static void writeSample(Writer writer, String name, String labels,
+            String extraLabel, Number value) throws IOException {
+        writer.write(name);
+        if (!labels.isEmpty() || (extraLabel != null)) {
+            writer.write('{');
+            writer.write(labels);
+            if (extraLabel != null) {
+                if (!labels.isEmpty()) {
+                    writer.write(',');
+                }
+                writer.write(extraLabel);
+            }
+            writer.write('}');
+        }
+        writer.write(' ');
+        writer.write(formatValue(value));
+        writer.write('\n');
+    }
+
+    private static String formatValue(Number value) {
+        if (value instanceof Double) {
+            double d = value.doubleValue();
+            if (Double.isNaN(d)) {
+                return "NaN";
+            } else if (Double.isInfinite(d)) {
+                return (d > 0) ? "+Inf" : "-Inf";
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Read every metric as flat, named values, the way JMX attributes are. A counter or a gauge
+     * gives one value; a histogram gives its count, sum, mean, p50, p90, p99 and max. Labels are
+     * appended to the name, so the responses with status 200 are
+     * {@code avs_client_responses_total_status_200}.
+     *
+     * @return The values by name, in the order of the metrics.
+     */
+    public Map<String, Number> getValues() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Family family : getFamilies()) {
+            for (Metric metric : family.getMetrics()) {
+                switch (family.type) {
+                    case COUNTER:
+                        values.put(metric.flatName, ((Counter) metric.value).get());
+                        break;
+                    case GAUGE:
+                        values.put(metric.flatName, ((Gauge) metric.value).get());
+                        break;
+                    case HISTOGRAM:
+                        Histogram histogram = (Histogram) metric.value;
+                        values.put(metric.flatName + "_count", histogram.getCount());
+                        values.put(metric.flatName + "_sum", histogram.getSum());
+                        values.put(metric.flatName + "_mean", histogram.getMean());
+                        values.put(metric.flatName + "_p50", histogram.getPercentile(50));
+                        values.put(metric.flatName + "_p90", histogram.getPercentile(90));
+                        values.put(metric.flatName + "_p99", histogram.getPercentile(99));
+                        values.put(metric.flatName + "_max", histogram.getMax());
+                        break;
+                }
+            }
+        }
+        return values;
+    }
+
+    private synchronized List<Family> getFamilies() {
+        return new ArrayList<>(families.values());
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String escapeLabelValue(String value) {
+        return escapeHelp(value).replace("\"", "\\\"");
+    }
+
+    private class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        // By their formatted labels, in registration order
+        private final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+        private Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        private List<Metric> getMetrics() {
+            synchronized (MetricsRegistry.this) {
+                return new ArrayList<>(metrics.values());
+            }
+        }
+    }
+
+    private static class Metric {
+        // Formatted the Prometheus way, without the braces: status="200"
+        private final String labels;
+        // The name with the labels appended: avs_client_responses_total_status_200
+        private final String flatName;
+        private final Object value;
+
+        private Metric(String name, String[] labels, Object value) {
+            StringBuilder formatted = new StringBuilder();
+            StringBuilder flat = new StringBuilder(name);
+            for (int i = 0; i < labels.length; i += 2) {
+                if (!LABEL_NAME.matcher(labels[i]).matches()) {
+                    throw new IllegalArgumentException("Invalid label name: " + labels[i]);
+                }
+                if (formatted.length() > 0) {
+                    formatted.append(',');
+                }
+                formatted
+                        .append(labels[i])
+                        .append("=\"")
+                        .append(escapeLabelValue(labels[i + 1]))
+                        .append('"');
+                flat
+                        .append('_')
+                        .append(labels[i])
+                        .append('_')
+                        .append(NON_NAME_CHARACTERS.matcher(labels[i + 1]).replaceAll("_"));
+            }
+            this.labels = formatted.toString();
+            this.flatName = flat.toString();
+            this.value = value;
+        }
+    }
+}
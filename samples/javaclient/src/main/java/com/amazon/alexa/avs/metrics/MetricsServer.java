@@ -0,0 +1,102 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.metrics;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A Jetty server that serves the metrics of a {@link MetricsRegistry} in the Prometheus text
+ * format at {@value #PATH}, on the loopback interface only.
+ */
+public class MetricsServer {
+    public static final String PATH = "/metrics";
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int MAX_THREADS = 4;
+
+    private final Server server;
+    private final ServerConnector connector;
+
+    /**
+     * Creates a {@link MetricsServer} object.
+     *
+     * @param registry
+     * @param port
+     *            The port to listen on, or 0 for any free port.
+     */
+    public MetricsServer(MetricsRegistry registry, int port) {
+        QueuedThreadPool threadPool = new QueuedThreadPool(MAX_THREADS, 1);
+        threadPool.setName("metrics");
+        server = new Server(threadPool);
+
+        // One acceptor and one selector, scrapes are few and far between
+        connector = new ServerConnector(server, 1, 1);
+        connector.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+        connector.setPort(port);
+        server.addConnector(connector);
+
+        ContextHandler context = new ContextHandler(PATH);
+        context.setAllowNullPathInfo(true);
+        context.setHandler(new MetricsHandler(registry));
+        server.setHandler(context);
+    }
+
+    public void start() throws Exception {
+        server.start();
+    }
+
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    /**
+     * @return The port the server listens on once it is started.
+     */
+    public int getPort() {
+        return connector.getLocalPort();
+    }
+
+    private static class MetricsHandler extends AbstractHandler {
+        private final MetricsRegistry registry;
+
+        private MetricsHandler(MetricsRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                HttpServletResponse response) throws IOException {
+            baseRequest.setHandled(true);
+            if (!request.getMethod().equals("GET")) {
+                response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(CONTENT_TYPE);
+            Writer writer = response.getWriter();
+            registry.writeTextFormat(writer);
+            writer.flush();
+        }
+    }
+}
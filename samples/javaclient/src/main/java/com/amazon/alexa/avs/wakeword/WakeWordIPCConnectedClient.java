@@ -13,6 +13,7 @@
 
 package com.amazon.alexa.avs.wakeword;
 
+import com.amazon.alexa.avs.TaskExecutor;
 import com.amazon.alexa.avs.wakeword.WakeWordIPC.IPCCommand;
 
 import java.io.DataInputStream;
@@ -47,8 +48,7 @@ public class WakeWordIPCConnectedClient implements Runnable {
 
     public void init() {
         if (connectionThread == null) {
-            connectionThread = new Thread(this);
-            connectionThread.start();
+            connectionThread = TaskExecutor.start("WakeWordIPCClientThread", this);
         }
     }
 
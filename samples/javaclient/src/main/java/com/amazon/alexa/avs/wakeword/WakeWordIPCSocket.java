@@ -12,6 +12,8 @@
  */
 package com.amazon.alexa.avs.wakeword;
 
+import com.amazon.alexa.avs.TaskExecutor;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,8 +38,7 @@ public class WakeWordIPCSocket extends WakeWordIPC implements Runnable {
 
     public void init() {
         if (ipcThread == null) {
-            ipcThread = new Thread(this);
-            ipcThread.start();
+            ipcThread = TaskExecutor.start("WakeWordIPCThread", this);
         }
     }
 
@@ -78,11 +79,6 @@ public class WakeWordIPCSocket extends WakeWordIPC implements Runnable {
 
     public void processWakeWordDetected() {
         log.info("Wake Word Detected ......");
-        (new Thread() {
-            @Override
-            public void run() {
-                wakeWordDetected();
-            }
-        }).start();
+        TaskExecutor.start("WakeWordDetectedThread", this::wakeWordDetected);
     }
 }
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.audio;
+
+import static org.junit.Assert.assertTrue;
+
+import com.amazon.alexa.avs.AudioInputFormat;
+
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Converts reference tones from the formats microphones commonly capture in to the format AVS
+ * expects, and checks the tones in the speech band come through at the same level with little
+ * noise, and the tones above the output Nyquist frequency are filtered out rather than aliased
+ * into it. The throughput of the conversion is measured by the benchmarks.
+ */
+public class CaptureConverterTest {
+    private static final AudioFormat OUTPUT = AudioInputFormat.LPCM.getAudioFormat();
+    private static final int[] INPUT_RATES = { 8000, 16000, 22050, 32000, 44100, 48000, 96000 };
+    private static final int[] INPUT_CHANNELS = { 1, 2, 6 };
+    private static final double[] PASSBAND_HZ = { 100, 1000, 3000, 6000 };
+    private static final double[] STOPBAND_HZ = { 8500, 10000, 12000, 15000, 20000 };
+    private static final double AMPLITUDE = 0.5 * Short.MAX_VALUE;
+    private static final int BLOCK_MS = 10;
+    private static final int TONE_MS = 2000;
+    // The start of the output is left out of the measurements, while the filter fills up
+    private static final int SETTLE_MS = 200;
+
+    private static final double MAX_PASSBAND_GAIN_DB = 0.1;
+    private static final double MIN_SNR_DB = 80;
+    private static final double MAX_STOPBAND_LEVEL_DB = -80;
+
+    @Test
+    public void passbandTonesKeepTheirLevelWithLittleNoise() {
+        for (int rate : INPUT_RATES) {
+            for (int channels : INPUT_CHANNELS) {
+                AudioFormat input = new AudioFormat(rate, 16, channels, true, false);
+                for (double frequency : PASSBAND_HZ) {
+                    if (frequency >= (0.4 * rate)) {
+                        continue;
+                    }
+                    double[] fit = fitTone(convert(input, frequency), frequency);
+                    double gainDb = 20 * Math.log10(fit[0] / AMPLITUDE);
+                    double snrDb = 20 * Math.log10(fit[0] / (fit[1] * Math.sqrt(2)));
+                    String tone = describe(input, frequency);
+                    assertTrue(tone + " gain " + gainDb + " dB",
+                            Math.abs(gainDb) <= MAX_PASSBAND_GAIN_DB);
+                    assertTrue(tone + " SNR " + snrDb + " dB", snrDb >= MIN_SNR_DB);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void stopbandTonesDoNotAlias() {
+        for (int rate : INPUT_RATES) {
+            for (int channels : INPUT_CHANNELS) {
+                AudioFormat input = new AudioFormat(rate, 16, channels, true, false);
+                for (double frequency : STOPBAND_HZ) {
+                    if (frequency >= (0.5 * rate)) {
+                        continue;
+                    }
+                    double level = rms(convert(input, frequency)) * Math.sqrt(2);
+                    double levelDb = 20 * Math.log10(Math.max(level, 1e-3) / AMPLITUDE);
+                    assertTrue(describe(input, frequency) + " aliased at " + levelDb + " dB",
+                            levelDb <= MAX_STOPBAND_LEVEL_DB);
+                }
+            }
+        }
+    }
+
+    private static String describe(AudioFormat input, double frequency) {
+        return String.format("%1$.0f Hz tone in %2$.0f Hz x%3$d", frequency,
+                input.getSampleRate(), input.getChannels());
+    }
+
+    private static short[] convert(AudioFormat input, double frequency) {
+        int blockBytes = (int) ((input.getSampleRate() * BLOCK_MS) / 1000) * input.getFrameSize();
+        CaptureConverter converter = new CaptureConverter(input, OUTPUT,
+                CaptureConverter.MIX_CHANNELS, blockBytes);
+        int frames = (int) ((input.getSampleRate() * TONE_MS) / 1000);
+        byte[] pcm = new byte[frames * input.getFrameSize()];
+        for (int frame = 0, i = 0; frame < frames; frame++) {
+            int sample = (int) Math.round(AMPLITUDE
+                    * Math.sin((2 * Math.PI * frequency * frame) / input.getSampleRate()));
+            for (int c = 0; c < input.getChannels(); c++, i += 2) {
+                pcm[i] = (byte) sample;
+                pcm[i + 1] = (byte) (sample >> 8);
+            }
+        }
+        byte[] converted = new byte[((pcm.length / blockBytes) + 1) * converter.getMaxOutputBytes()];
+        int length = 0;
+        for (int offset = 0; offset < pcm.length; offset += blockBytes) {
+            length += converter.convert(pcm, offset, Math.min(blockBytes, pcm.length - offset),
+                    converted, length);
+        }
+        int settle = (int) ((OUTPUT.getSampleRate() * SETTLE_MS) / 1000);
+        short[] samples = new short[Math.max(0, (length / 2) - settle)];
+        for (int i = 0; i < samples.length; i++) {
+            int j = (settle + i) * 2;
+            samples[i] = (short) ((converted[j + 1] << 8) | (converted[j] & 0xff));
+        }
+        return samples;
+    }
+
+    /**
+     * @return The amplitude of the tone in the samples, and the RMS of what is left once it is
+     *         taken out.
+     */
+    private static double[] fitTone(short[] samples, double frequency) {
+        double w = (2 * Math.PI * frequency) / OUTPUT.getSampleRate();
+        double ss = 0, sc = 0, cc = 0, ys = 0, yc = 0;
+        for (int n = 0; n < samples.length; n++) {
+            double s = Math.sin(w * n);
+            double c = Math.cos(w * n);
+            ss += s * s;
+            sc += s * c;
+            cc += c * c;
+            ys += samples[n] * s;
+            yc += samples[n] * c;
+        }
+        double determinant = (ss * cc) - (sc * sc);
+        double a = ((ys * cc) - (yc * sc)) / determinant;
+        double b = ((yc * ss) - (ys * sc)) / determinant;
+        double residual = 0;
+        for (int n = 0; n < samples.length; n++) {
+            double error = samples[n] - (a * Math.sin(w * n)) - (b * Math.cos(w * n));
+            residual += error * error;
+        }
+        return new double[] { Math.hypot(a, b), Math.sqrt(residual / samples.length) };
+    }
+
+    private static double rms(short[] samples) {
+        double sum = 0;
+        for (short sample : samples) {
+            sum += sample * (double) sample;
+        }
+        return Math.sqrt(sum / samples.length);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazon.alexa.avs.AVSAPIConstants;
+import com.amazon.alexa.avs.AVSRequest;
+import com.amazon.alexa.avs.http.AVSClient.Resource;
+import com.amazon.alexa.avs.message.Header;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offers volume events to an {@link EventCoalescer} and checks which of them are sent, and when.
+ */
+public class EventCoalescerTest {
+    private static final Header VOLUME_CHANGED = new Header(AVSAPIConstants.Speaker.NAMESPACE,
+            AVSAPIConstants.Speaker.Events.VolumeChanged.NAME);
+    // Well within the window
+    private static final long IMMEDIATE_MS = 100;
+    // Well past the window
+    private static final long WINDOW_END_MS = 1000;
+
+    private ScheduledExecutorService scheduler;
+    private BlockingQueue<AVSRequest> sent;
+    private EventCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        sent = new LinkedBlockingQueue<>();
+        coalescer = new EventCoalescer(sent::add, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void singleEventIsSentRightAway() throws Exception {
+        AVSRequest request = newRequest();
+        coalescer.offer(request, VOLUME_CHANGED);
+        assertSame(request, sent.poll(IMMEDIATE_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void burstSendsTheFirstAndTheLastEvent() throws Exception {
+        AVSRequest first = newRequest();
+        AVSRequest second = newRequest();
+        AVSRequest last = newRequest();
+        coalescer.offer(first, VOLUME_CHANGED);
+        coalescer.offer(second, VOLUME_CHANGED);
+        coalescer.offer(last, VOLUME_CHANGED);
+
+        assertSame(first, sent.poll(IMMEDIATE_MS, TimeUnit.MILLISECONDS));
+        assertSame(last, sent.poll(WINDOW_END_MS, TimeUnit.MILLISECONDS));
+        assertTrue(sent.isEmpty());
+        assertEquals(1, coalescer.getTotalCoalesced());
+
+        last.getCompletion().complete(204);
+        assertEquals(Integer.valueOf(204), second.getCompletion().get());
+    }
+
+    @Test
+    public void eventAfterTheWindowIsSentRightAway() throws Exception {
+        AVSRequest first = newRequest();
+        coalescer.offer(first, VOLUME_CHANGED);
+        assertSame(first, sent.poll(IMMEDIATE_MS, TimeUnit.MILLISECONDS));
+        // Let the window close with nothing held back
+        Thread.sleep(WINDOW_END_MS);
+
+        AVSRequest next = newRequest();
+        coalescer.offer(next, VOLUME_CHANGED);
+        assertSame(next, sent.poll(IMMEDIATE_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private static AVSRequest newRequest() {
+        return new AVSRequest(Resource.EVENTS, null, null, null);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import com.amazon.alexa.avs.AVSAPIConstants;
+import com.amazon.alexa.avs.message.Header;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Appends to, compacts and reopens an {@link EventJournal} in a temporary folder.
+ */
+public class EventJournalTest {
+    private static final int CAPACITY = 4096;
+    private static final Header ALERT_STARTED =
+            new Header(AVSAPIConstants.Alerts.NAMESPACE, "AlertStarted");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void compactingKeepsTheEventsThatWereNotAcknowledged() throws Exception {
+        File file = new File(folder.getRoot(), "events.journal");
+        try (EventJournal journal = new EventJournal(file, CAPACITY)) {
+            // Far more than fits, so the journal is compacted several times
+            for (int i = 0; i < 100; i++) {
+                EventJournal.Record record = journal.append(ALERT_STARTED, json(200));
+                assertNotNull(record);
+                if ((i % 10) != 0) {
+                    journal.acknowledge(record);
+                }
+            }
+            assertEquals(10, journal.getPendingCount());
+        }
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        assertFalse(new File(file.getPath() + ".compact.tmp").exists());
+
+        try (EventJournal journal = new EventJournal(file, CAPACITY)) {
+            assertEquals(10, journal.getPendingCount());
+        }
+    }
+
+    @Test
+    public void compactionCutShortIsFinishedWhenTheJournalIsOpened() throws Exception {
+        File file = new File(folder.getRoot(), "events.journal");
+        try (EventJournal journal = new EventJournal(file, CAPACITY)) {
+            journal.append(ALERT_STARTED, json(100));
+            journal.append(ALERT_STARTED, json(100));
+        }
+        // A complete compaction, and a journal that was only partly overwritten with it
+        File compacted = new File(file.getPath() + ".compact");
+        Files.copy(file.toPath(), compacted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.write(file.toPath(), new byte[CAPACITY]);
+
+        try (EventJournal journal = new EventJournal(file, CAPACITY)) {
+            assertEquals(2, journal.getPendingCount());
+        }
+        assertFalse(compacted.exists());
+    }
+
+    private static Iterable<ByteBuffer> json(int length) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) ' ');
+        bytes[0] = '{';
+        bytes[length - 1] = '}';
+        return Collections.singletonList(ByteBuffer.wrap(bytes));
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazon.alexa.avs.AudioInputFormat;
+import com.amazon.alexa.avs.ResultListener;
+import com.amazon.alexa.avs.SpeechProfile;
+import com.amazon.alexa.avs.http.MultipartParser.MultipartParserConsumer;
+import com.amazon.alexa.avs.http.mock.FaultInjector.Fault;
+import com.amazon.alexa.avs.http.mock.MockAVSServer;
+import com.amazon.alexa.avs.message.request.RequestBody;
+import com.amazon.alexa.avs.message.request.RequestFactory;
+import com.amazon.alexa.avs.message.request.context.AlertsStatePayload;
+import com.amazon.alexa.avs.message.request.context.PlaybackStatePayload;
+import com.amazon.alexa.avs.message.request.context.SpeechStatePayload;
+import com.amazon.alexa.avs.message.request.context.VolumeStatePayload;
+import com.amazon.alexa.avs.message.request.settings.LocaleSetting;
+import com.amazon.alexa.avs.message.response.Directive;
+
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends events through the {@link RequestPipeline} of an {@link AVSClient} with a single stream,
+ * against a {@link MockAVSServer}.
+ */
+public class RequestPipelineTest {
+    private static final int MAX_CONCURRENT_EVENTS = 1;
+    // The Recognize is retried after a second
+    private static final long TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+    private static final int AUDIO_BYTES = 3200;
+    private static final String FORMAT = "AUDIO_L16_RATE_16000_CHANNELS_1";
+
+    private MockAVSServer server;
+    private AVSClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockAVSServer();
+        server.start();
+        MultipartParserConsumer consumer = new MultipartParserConsumer() {
+            @Override
+            public void onDirective(Directive directive) {
+            }
+
+            @Override
+            public void onDirectiveAttachment(String contentId, InputStream attachmentContent) {
+            }
+        };
+        ResultListener resultListener = new ResultListener() {
+            @Override
+            public void onSuccess() {
+            }
+
+            @Override
+            public void onFailure() {
+            }
+        };
+        client = new AVSClient(server.getURL(), consumer, new SslContextFactory(),
+                unparsable -> {
+                }, resultListener, MAX_CONCURRENT_EVENTS);
+        client.setAccessToken("device");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.shutdown();
+        server.stop();
+    }
+
+    /**
+     * A request waiting for its retry must not be starved of the stream by the requests queued
+     * behind its lane.
+     */
+    @Test(timeout = 30000)
+    public void retriedRequestIsNotStarvedByItsLane() throws Exception {
+        server.getFaultInjector().failNextEvent(Fault.RST_STREAM);
+        CompletableFuture<AVSResponse> recognize = client.sendEventAsync(createRecognizeEvent(),
+                new ByteArrayInputStream(new byte[AUDIO_BYTES]), AudioInputFormat.LPCM);
+        CompletableFuture<AVSResponse> speechStarted = client.sendEventAsync(
+                RequestFactory.createSpeechSynthesizerSpeechStartedEvent("speak"));
+        CompletableFuture<AVSResponse> settingsUpdated =
+                client.sendEventAsync(RequestFactory.createSettingsUpdatedEvent(
+                        Collections.singletonList(new LocaleSetting("en-US"))));
+
+        CompletableFuture.allOf(recognize, speechStarted, settingsUpdated)
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        RequestScheduler scheduler = client.getRequestScheduler();
+        assertEquals(0, scheduler.getQueueDepth(RequestPriority.RECOGNIZE));
+        assertEquals(0, scheduler.getQueueDepth(RequestPriority.BACKGROUND));
+    }
+
+    /**
+     * A request that is shed while it waits for its retry must give up its lane, so the requests
+     * queued behind it are still sent.
+     */
+    @Test(timeout = 60000)
+    public void shedRequestGivesUpItsLane() throws Exception {
+        long recognizeTimeToLiveMs = RequestPriority.RECOGNIZE.getTimeToLiveMs();
+        server.getFaultInjector().failNextEvent(Fault.RST_STREAM);
+        // Holds the only stream for longer than the Recognize may wait to be retried
+        server.getFaultInjector().setResponseLatencyMs(recognizeTimeToLiveMs + 1000);
+        CompletableFuture<AVSResponse> recognize = client.sendEventAsync(createRecognizeEvent(),
+                new ByteArrayInputStream(new byte[AUDIO_BYTES]), AudioInputFormat.LPCM);
+        CompletableFuture<AVSResponse> speechStarted = client.sendEventAsync(
+                RequestFactory.createSpeechSynthesizerSpeechStartedEvent("speak"));
+        CompletableFuture<AVSResponse> settingsUpdated =
+                client.sendEventAsync(RequestFactory.createSettingsUpdatedEvent(
+                        Collections.singletonList(new LocaleSetting("en-US"))));
+
+        // The Recognize, then the SettingsUpdated while the SpeechStarted waits in the lane
+        assertTrue(server.awaitEvents(2, TIMEOUT_MS));
+        // Give the SettingsUpdated its latency before the rest go without
+        Thread.sleep(500);
+        server.getFaultInjector().setResponseLatencyMs(0);
+
+        try {
+            recognize.get(recognizeTimeToLiveMs + TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail("The Recognize should have been shed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        CompletableFuture.allOf(speechStarted, settingsUpdated)
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(1, client.getRequestScheduler().getShedCount(RequestPriority.RECOGNIZE));
+    }
+
+    private static RequestBody createRecognizeEvent() {
+        return RequestFactory.createSpeechRecognizerRecognizeRequest(
+                UUID.randomUUID().toString(), SpeechProfile.CLOSE_TALK, FORMAT,
+                new PlaybackStatePayload("", 0, "IDLE"),
+                new SpeechStatePayload("", 0, "FINISHED"),
+                new AlertsStatePayload(new ArrayList<>(), new ArrayList<>()),
+                new VolumeStatePayload(50, false));
+    }
+}
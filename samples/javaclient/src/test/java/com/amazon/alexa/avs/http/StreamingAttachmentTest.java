@@ -0,0 +1,88 @@
+/**
+ * Copyright 2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ * http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.amazon.alexa.avs.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes to a {@link StreamingAttachment} past its limit on one thread while reading or closing it
+ * on another.
+ */
+public class StreamingAttachmentTest {
+    private static final int MAX_QUEUED_BYTES = 1024;
+    private static final int CHUNK_BYTES = 256;
+    private static final long BLOCKED_MS = 200;
+    private static final long TIMEOUT_MS = 5000;
+
+    @Test(timeout = 10000)
+    public void writingBlocksPastTheLimitUntilTheAttachmentIsRead() throws Exception {
+        StreamingAttachment attachment = new StreamingAttachment(MAX_QUEUED_BYTES);
+        CompletableFuture<Void> writer = write(attachment, 2 * MAX_QUEUED_BYTES);
+        assertBlocked(writer);
+        assertEquals(MAX_QUEUED_BYTES, attachment.available());
+
+        byte[] buffer = new byte[CHUNK_BYTES];
+        int total = 0;
+        int read;
+        while ((read = attachment.read(buffer)) >= 0) {
+            total += read;
+        }
+        writer.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(2 * MAX_QUEUED_BYTES, total);
+    }
+
+    @Test(timeout = 10000)
+    public void closingUnblocksTheWriter() throws Exception {
+        StreamingAttachment attachment = new StreamingAttachment(MAX_QUEUED_BYTES);
+        CompletableFuture<Void> writer = write(attachment, 2 * MAX_QUEUED_BYTES);
+        assertBlocked(writer);
+
+        attachment.close();
+        writer.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(0, attachment.available());
+    }
+
+    /**
+     * Write the given number of bytes in chunks, then finish the attachment, on a thread of its
+     * own.
+     */
+    private static CompletableFuture<Void> write(StreamingAttachment attachment, int bytes) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                for (int written = 0; written < bytes; written += CHUNK_BYTES) {
+                    attachment.getSink().write(new byte[CHUNK_BYTES], 0, CHUNK_BYTES);
+                }
+                attachment.finish();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static void assertBlocked(CompletableFuture<Void> writer) throws Exception {
+        try {
+            writer.get(BLOCKED_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Still writing
+        }
+        assertFalse(writer.isDone());
+    }
+}